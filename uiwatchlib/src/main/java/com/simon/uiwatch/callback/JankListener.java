@@ -0,0 +1,26 @@
+package com.simon.uiwatch.callback;
+
+import com.simon.uiwatch.log.JankEvent;
+
+import java.util.List;
+
+/**
+ * 卡顿事件监听,用于将卡顿数据接入自己的上报流程,不需要解析日志
+ * <p>
+ * 回调在独立的JankEvent_Thread中进行,不会阻塞主线程和采样;
+ * 同一时间段内的多次卡顿合并为一次回调,两次回调之间的最小间隔可通过
+ * {@link com.simon.uiwatch.core.UiWatcher#jankDispatchInterval(long)} 设置
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public interface JankListener {
+
+    /**
+     * 卡顿事件回调
+     *
+     * @param events 按发生顺序排列的卡顿事件(不可修改的列表,事件本身不可变,可以直接保存或交给其他线程)
+     */
+    void onJankEvents(List<JankEvent> events);
+}
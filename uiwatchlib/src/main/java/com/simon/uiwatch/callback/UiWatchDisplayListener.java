@@ -0,0 +1,78 @@
+package com.simon.uiwatch.callback;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.view.Display;
+
+import com.simon.uiwatch.log.LogMonitor;
+
+/**
+ * 用于监听屏幕刷新率的变化(api>=17),刷新率变化时更新帧间隔
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+public class UiWatchDisplayListener implements DisplayManager.DisplayListener {
+    /**
+     * 屏幕管理
+     */
+    private final DisplayManager displayManager;
+
+    /**
+     * 构造方法
+     *
+     * @param context 上下文
+     */
+    public UiWatchDisplayListener(Context context) {
+        this.displayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+    }
+
+    /**
+     * 读取当前刷新率并开始监听(主线程回调)
+     */
+    public void register() {
+        if (displayManager == null) {
+            return;
+        }
+        updateRefreshRate();
+        displayManager.registerDisplayListener(this, null);
+    }
+
+    /**
+     * 停止监听
+     */
+    public void unregister() {
+        if (displayManager != null) {
+            displayManager.unregisterDisplayListener(this);
+        }
+    }
+
+    @Override
+    public void onDisplayAdded(int displayId) {
+    }
+
+    @Override
+    public void onDisplayRemoved(int displayId) {
+    }
+
+    @Override
+    public void onDisplayChanged(int displayId) {
+        if (displayId == Display.DEFAULT_DISPLAY) {
+            updateRefreshRate();
+        }
+    }
+
+    /**
+     * 将默认屏幕的刷新率同步给监控
+     */
+    private void updateRefreshRate() {
+        Display display = displayManager.getDisplay(Display.DEFAULT_DISPLAY);
+        if (display != null) {
+            LogMonitor.getInstance().setDisplayRefreshRate(display.getRefreshRate());
+        }
+    }
+}
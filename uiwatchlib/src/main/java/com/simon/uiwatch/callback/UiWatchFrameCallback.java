@@ -3,10 +3,9 @@ package com.simon.uiwatch.callback;
 import android.annotation.SuppressLint;
 import android.view.Choreographer;
 
+import com.simon.uiwatch.log.FrameTimeRing;
 import com.simon.uiwatch.log.LogMonitor;
 
-import java.util.concurrent.TimeUnit;
-
 /**
  * 用于监听帧率的回调
  *
@@ -17,18 +16,14 @@ import java.util.concurrent.TimeUnit;
 @SuppressLint("NewApi")
 public class UiWatchFrameCallback implements Choreographer.FrameCallback {
     /**
-     * 上次帧率时间戳
-     */
-    long lastFrameTimeNanos = 0;
-    /**
-     * 当前帧率时间戳
+     * 帧时间环形缓冲,跳帧的计算在LogNotifier_Thread中进行
      */
-    long currentFrameTimeNanos = 0;
+    private final FrameTimeRing frameTimeRing;
 
     /**
-     * 最小允许的跳过帧率的数量
+     * 是否已经开启监控
      */
-    private int minSkipFrameCount;
+    private boolean isMonitorStarted = false;
 
     /**
      * 是否退出,默认false
@@ -37,27 +32,22 @@ public class UiWatchFrameCallback implements Choreographer.FrameCallback {
 
     /**
      * 构造方法
+     *
+     * @param frameTimeRing 帧时间环形缓冲
      */
-    public UiWatchFrameCallback(int minSkipFrameCount) {
-        this.minSkipFrameCount = minSkipFrameCount;
+    public UiWatchFrameCallback(FrameTimeRing frameTimeRing) {
+        this.frameTimeRing = frameTimeRing;
     }
 
     @Override
     public void doFrame(long frameTimeNanos) {
-        //首次初始化last时间,并开启监控
-        if (lastFrameTimeNanos == 0) {
-            lastFrameTimeNanos = frameTimeNanos;
+        //首次回调时开启监控
+        if (!isMonitorStarted) {
+            isMonitorStarted = true;
             LogMonitor.getInstance().startMonitor();
         }
-        //初始化当前时间,计算帧率时间差,计算跳过的帧率,超出限制输出log,并重置
-        currentFrameTimeNanos = frameTimeNanos;
-        long diffMs = TimeUnit.MILLISECONDS.convert(currentFrameTimeNanos - lastFrameTimeNanos, TimeUnit.NANOSECONDS);
-        int skipFrameCount = (int) (diffMs / 16.6);
-        if (skipFrameCount > minSkipFrameCount) {
-            LogMonitor.getInstance().startOutputAndResetCollectionMonitor();
-        }
-        //将当前的时间设置为last时间,用于下次计算,并重新注册
-        lastFrameTimeNanos = currentFrameTimeNanos;
+        //只记录帧时间,不在主线程做任何计算
+        frameTimeRing.add(frameTimeNanos);
         //没退出的时候通知下次,否则不通知
         if (!isExit) {
             Choreographer.getInstance().postFrameCallback(this);
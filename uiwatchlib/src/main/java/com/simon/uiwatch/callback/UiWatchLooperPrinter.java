@@ -0,0 +1,154 @@
+package com.simon.uiwatch.callback;
+
+import android.os.Looper;
+import android.util.Printer;
+
+import com.simon.uiwatch.log.LogMonitor;
+import com.simon.uiwatch.log.SlowMessage;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用于统计主线程每条消息的处理耗时
+ * Looper在处理每条消息前后分别打印 ">>>>> Dispatching to ..." 和 "<<<<< Finished to ...",
+ * 两次打印之间即为消息的处理耗时,超出阈值时交给LogMonitor输出
+ * <p>
+ * 每条消息都会回调,只判断首字符并记录时间,不解析字符串;超时消息的目标Handler、callback在输出时才解析
+ * 安装前已有的Printer(其他库或应用设置的)在安装时读取,之后继续转发,卸载时恢复
+ * <p>
+ * 读取通过隐藏字段Looper.mLogging,Field只解析一次;读取失败时无法确认当前的Printer是谁,卸载时不修改Looper,
+ * 只停止统计并继续转发,避免覆盖别人的Printer
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class UiWatchLooperPrinter implements Printer {
+    /**
+     * Looper.mLogging,只解析一次,不可用时为null
+     */
+    private static Field loggingField;
+
+    /**
+     * 是否已经解析过Looper.mLogging
+     */
+    private static boolean isLoggingFieldResolved;
+
+    /**
+     * 超时阈值(纳秒)
+     */
+    private final long thresholdNanos;
+
+    /**
+     * 安装前已有的Printer,可为null
+     */
+    private Printer originPrinter;
+
+    /**
+     * 是否正在统计,卸载后为false(无法从Looper移除时只转发)
+     */
+    private boolean isInstalled;
+
+    /**
+     * 最近一次读取Looper的Printer是否失败
+     */
+    private boolean isReadFailed;
+
+    /**
+     * 正在处理的消息的开始时间(纳秒),0表示没有
+     */
+    private long dispatchStartNanos;
+
+    /**
+     * 正在处理的消息的开始字符串
+     */
+    private String dispatchingLog;
+
+    /**
+     * 构造方法
+     *
+     * @param thresholdMs 超时阈值(ms)
+     */
+    public UiWatchLooperPrinter(long thresholdMs) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    }
+
+    /**
+     * 安装到主线程的Looper(主线程调用)
+     */
+    public void install() {
+        Looper mainLooper = Looper.getMainLooper();
+        originPrinter = readLogging(mainLooper);
+        isInstalled = true;
+        mainLooper.setMessageLogging(this);
+    }
+
+    /**
+     * 从主线程的Looper卸载,恢复安装前的Printer(主线程调用)
+     */
+    public void uninstall() {
+        Looper mainLooper = Looper.getMainLooper();
+        Printer current = readLogging(mainLooper);
+        isInstalled = false;
+        //安装之后被其他人替换,或读取失败无法确认时不恢复,避免覆盖别人的Printer
+        if (!isReadFailed && current == this) {
+            mainLooper.setMessageLogging(originPrinter);
+            originPrinter = null;
+        }
+        dispatchStartNanos = 0;
+        dispatchingLog = null;
+    }
+
+    @Override
+    public void println(String x) {
+        if (originPrinter != null) {
+            originPrinter.println(x);
+        }
+        if (!isInstalled || x == null || x.length() == 0) {
+            return;
+        }
+        char flag = x.charAt(0);
+        if (flag == '>') {
+            dispatchStartNanos = System.nanoTime();
+            dispatchingLog = x;
+        } else if (flag == '<' && dispatchStartNanos != 0) {
+            long endNanos = System.nanoTime();
+            long startNanos = dispatchStartNanos;
+            dispatchStartNanos = 0;
+            if (endNanos - startNanos >= thresholdNanos) {
+                LogMonitor.getInstance().outputSlowMessage(new SlowMessage(dispatchingLog, startNanos, endNanos));
+            }
+            dispatchingLog = null;
+        }
+    }
+
+    /**
+     * 读取Looper当前的Printer(隐藏字段mLogging),结果是否成功记录在 {@link #isReadFailed}
+     *
+     * @return 当前的Printer,读取失败时返回null
+     */
+    private Printer readLogging(Looper looper) {
+        isReadFailed = true;
+        if (!isLoggingFieldResolved) {
+            isLoggingFieldResolved = true;
+            try {
+                Field field = Looper.class.getDeclaredField("mLogging");
+                field.setAccessible(true);
+                loggingField = field;
+            } catch (Throwable e) {
+                loggingField = null;
+            }
+        }
+        if (loggingField == null) {
+            return null;
+        }
+        try {
+            Printer printer = (Printer) loggingField.get(looper);
+            isReadFailed = false;
+            return printer;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
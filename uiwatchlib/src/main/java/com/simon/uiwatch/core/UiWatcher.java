@@ -1,12 +1,33 @@
 package com.simon.uiwatch.core;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
 
+import com.simon.uiwatch.callback.JankListener;
+import com.simon.uiwatch.callback.UiWatchDisplayListener;
 import com.simon.uiwatch.callback.UiWatchFrameCallback;
+import com.simon.uiwatch.callback.UiWatchLooperPrinter;
+import com.simon.uiwatch.log.AdaptiveSampleScheduler;
+import com.simon.uiwatch.log.FrameHistogram;
+import com.simon.uiwatch.log.JankEventDispatcher;
+import com.simon.uiwatch.log.JankSeverity;
 import com.simon.uiwatch.log.LogMonitor;
+import com.simon.uiwatch.log.LogNotifier;
+import com.simon.uiwatch.log.LogStorageManager;
+import com.simon.uiwatch.log.LogWriter;
+import com.simon.uiwatch.log.SamplingStats;
+import com.simon.uiwatch.log.StackFrameFilter;
+import com.simon.uiwatch.sink.JankSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 用于观察Android Ui的卡顿情况
@@ -18,12 +39,27 @@ import com.simon.uiwatch.log.LogMonitor;
  * 3.设置存储的堆栈数量
  * 4.设置是否开启缓存本地
  * 5.设置本地缓存文件夹地址、按照天拆分文件夹
+ * 6.设置采样模式(持续采样或仅在帧超时时采样的看门狗模式)
+ * 7.设置采样间隔范围(流畅时回退到最大间隔,帧率下降时加速到最小间隔)
+ * 8.设置缓存文件的大小上限、分段压缩和总容量上限
+ * 9.缓存文件按记录写入(长度 + CRC),可设置同步策略,异常退出后自动截掉不完整的记录
+ * 10.可持久化最新的采样,ANR或进程被杀后下次开启时恢复
+ * 11.按屏幕的实际刷新周期计算跳帧(90/120Hz),主线程只记录帧时间,跳帧计算在后台线程进行
+ * 12.统计帧时长分布,可查询p50/p90/p99/p99.9、冻帧数量和慢帧比例
+ * 13.堆栈帧筛选：包含/排除关键词、折叠连续的系统帧、限制最大深度
+ * 14.采样以调用树保存(相同的前缀只保存一次),可输出折叠格式的堆栈用于生成火焰图
+ * 15.可注册卡顿事件监听(结构化数据,在后台线程合并回调,可限制回调频率)
+ * 16.可关闭logcat输出、添加自定义输出目标,各输出目标在自己的线程中异步处理,只生成需要的格式
+ * 17.卡顿按时长分为卡顿、慢帧、冻帧、接近ANR四个等级,冻帧及以上在卡住期间抓取一次全部线程的堆栈,接近ANR时立即输出并同步到存储设备
+ * 18.可在每次采样时读取主线程的CPU时间(/proc),报告中给出卡顿期间的CPU时间与墙上时间,区分主线程是在计算还是在等待
+ * 19.可统计主线程每条消息的处理耗时(Looper的Printer),报告中给出卡顿期间超时的消息(目标Handler、callback、what)
+ * 20.可在主线程不空闲的采样时读取主线程消息队列的积压(已到期未处理的消息数量、最早到期消息的延迟),区分一条慢消息和大量小消息造成的卡顿
  * <p>
  * 注意：此工具类要求api>=16
  * 细节处理：
  * 1.对于监控的内容采用高频采样,然后根据设置是否开启缓存,缓存到本地,方便后的定位(包含时间戳和分割)
  * 2.限制最大堆的数量
- * 3.采样间隔,16ms 默认获取采样卡顿前10帧的堆栈数据
+ * 3.采样间隔自适应,默认在5ms~80ms之间调整,默认获取采样卡顿前10帧的堆栈数据
  *
  * @author guohaiyang1
  * @date 18-6-27
@@ -32,11 +68,86 @@ import com.simon.uiwatch.log.LogMonitor;
  */
 public class UiWatcher {
 
+    /**
+     * 持续采样：全程按固定间隔采集主线程堆栈(默认)
+     */
+    public static final int SAMPLING_MODE_CONTINUOUS = LogNotifier.SAMPLING_MODE_CONTINUOUS;
+
+    /**
+     * 看门狗采样：仅在帧超时未到达时高频采集主线程堆栈,帧到达后停止,流畅时几乎无开销
+     */
+    public static final int SAMPLING_MODE_WATCHDOG = LogNotifier.SAMPLING_MODE_WATCHDOG;
+
+    /**
+     * 缓存文件格式：文本(默认)
+     */
+    public static final int LOG_FORMAT_TEXT = LogWriter.FORMAT_TEXT;
+
+    /**
+     * 缓存文件格式：紧凑的二进制格式,可通过 {@link com.simon.uiwatch.format.BinaryLogDecoder} 还原为文本或JSON
+     */
+    public static final int LOG_FORMAT_BINARY = LogWriter.FORMAT_BINARY;
+
+    /**
+     * 写入队列已满时丢弃最新的日志(默认)
+     */
+    public static final int DROP_POLICY_NEWEST = LogWriter.DROP_POLICY_NEWEST;
+
+    /**
+     * 写入队列已满时丢弃最旧的日志
+     */
+    public static final int DROP_POLICY_OLDEST = LogWriter.DROP_POLICY_OLDEST;
+
+    /**
+     * 缓存文件同步：不主动同步,由系统决定写回时机(进程被杀不丢数据,断电可能丢失)
+     */
+    public static final int JOURNAL_SYNC_NONE = LogWriter.SYNC_NONE;
+
+    /**
+     * 缓存文件同步：每次写入后同步
+     */
+    public static final int JOURNAL_SYNC_BATCH = LogWriter.SYNC_BATCH;
+
+    /**
+     * 缓存文件同步：间隔一段时间同步(默认)
+     */
+    public static final int JOURNAL_SYNC_INTERVAL = LogWriter.SYNC_INTERVAL;
+
+    /**
+     * 卡顿等级：卡顿(跳帧超出帧率阈值)
+     */
+    public static final int SEVERITY_JANK = JankSeverity.JANK;
+
+    /**
+     * 卡顿等级：慢帧
+     */
+    public static final int SEVERITY_SLOW_FRAME = JankSeverity.SLOW_FRAME;
+
+    /**
+     * 卡顿等级：冻帧,卡住期间抓取一次全部线程的堆栈
+     */
+    public static final int SEVERITY_FREEZE = JankSeverity.FREEZE;
+
+    /**
+     * 卡顿等级：接近ANR,抓取全部线程的堆栈后立即输出,并同步到存储设备
+     */
+    public static final int SEVERITY_NEAR_ANR = JankSeverity.NEAR_ANR;
+
     /**
      * 帧率阈值,默认为1(超出1帧时间视为卡顿)
      */
     private int minSkipFrameCount = 1;
 
+    /**
+     * 上下文,用于读取屏幕刷新率,可为null(根据观测到的帧间隔估算)
+     */
+    private Context context;
+
+    /**
+     * 屏幕刷新率监听(api>=17)
+     */
+    private UiWatchDisplayListener displayListener;
+
     /**
      * 堆栈信息最多保存条数,最少1至多无限制,默认10
      */
@@ -62,11 +173,141 @@ public class UiWatcher {
      */
     private String[] keyWords = null;
 
+    /**
+     * 排除的关键词(包含任一关键词的帧直接丢弃,可选)
+     */
+    private String[] excludeKeyWords = null;
+
+    /**
+     * 是否将连续的系统帧(android.*、java.*、com.android.internal.*等)折叠为一个占位帧,默认否
+     */
+    private boolean isCollapseFrameworkFrames = false;
+
+    /**
+     * 每次采样保留的最大深度(从栈顶开始),默认0不限制
+     */
+    private int maxStackDepth = StackFrameFilter.UNLIMITED_DEPTH;
+
+    /**
+     * 采样模式,默认持续采样
+     */
+    private int samplingMode = SAMPLING_MODE_CONTINUOUS;
+
+    /**
+     * 最小采样间隔(ms),帧率下降或卡顿时使用,默认5
+     */
+    private long minSampleInterval = AdaptiveSampleScheduler.DEFAULT_MIN_INTERVAL_MS;
+
+    /**
+     * 最大采样间隔(ms),长时间流畅时回退到此间隔,默认80
+     */
+    private long maxSampleInterval = AdaptiveSampleScheduler.DEFAULT_MAX_INTERVAL_MS;
+
+    /**
+     * 缓存文件格式,默认文本
+     */
+    private int logFormat = LOG_FORMAT_TEXT;
+
+    /**
+     * 写入队列已满时的丢弃策略,默认丢弃最新的日志
+     */
+    private int reportDropPolicy = DROP_POLICY_NEWEST;
+
+    /**
+     * 单个缓存文件大小上限(字节),超出后切换到新的分段,默认4MB,0为不限制
+     */
+    private long maxLogFileSize = LogStorageManager.DEFAULT_MAX_FILE_SIZE;
+
+    /**
+     * 是否压缩分段后的缓存文件(gzip),默认不压缩
+     */
+    private boolean isNeedCompressLog = false;
+
+    /**
+     * 缓存文件总容量上限(字节),超出后从最旧的文件开始删除,默认0不限制
+     */
+    private long maxLogDiskUsage = LogStorageManager.UNLIMITED;
+
+    /**
+     * 是否持久化最新的采样(内存映射文件),默认否
+     */
+    private boolean isNeedPersistSamples = false;
+
+    /**
+     * 是否在日志中输出折叠格式的堆栈(用于生成火焰图),默认否
+     */
+    private boolean isNeedFoldedStacks = false;
+
+    /**
+     * 缓存文件的同步策略,默认间隔同步
+     */
+    private int journalSyncPolicy = JOURNAL_SYNC_INTERVAL;
+
+    /**
+     * 缓存文件的同步间隔(ms),默认1000
+     */
+    private long journalSyncInterval = LogWriter.DEFAULT_SYNC_INTERVAL_MS;
+
+    /**
+     * 是否输出到logcat,默认为true
+     */
+    private boolean isNeedLogcat = true;
+
+    /**
+     * 自定义的输出目标
+     */
+    private final List<JankSink> customSinks = new ArrayList<>();
+
+    /**
+     * 卡顿事件的监听者,开启监控后增删同样生效
+     */
+    private final List<JankListener> jankListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 卡顿事件两次回调之间的最小间隔(ms),默认1000
+     */
+    private long jankDispatchInterval = JankEventDispatcher.DEFAULT_DISPATCH_INTERVAL_MS;
+
+    /**
+     * 慢帧阈值(ms),默认200
+     */
+    private long slowFrameThreshold = JankSeverity.DEFAULT_SLOW_FRAME_MS;
+
+    /**
+     * 冻帧阈值(ms),默认700
+     */
+    private long freezeThreshold = JankSeverity.DEFAULT_FREEZE_MS;
+
+    /**
+     * 接近ANR阈值(ms),默认4000
+     */
+    private long nearAnrThreshold = JankSeverity.DEFAULT_NEAR_ANR_MS;
+
+    /**
+     * 是否在每次采样时读取主线程的CPU时间,默认为false
+     */
+    private boolean isNeedCpuTime = false;
+
+    /**
+     * 主线程消息的超时阈值(ms),0为不统计消息耗时,默认为0
+     */
+    private long messageTimingThreshold = 0;
+
+    /**
+     * 是否在主线程不空闲的采样时读取主线程消息队列的积压,默认为false
+     */
+    private boolean isNeedQueueBacklog = false;
+
     /**
      * 帧率回调
      */
     private UiWatchFrameCallback frameCallback;
 
+    /**
+     * 主线程消息耗时统计,未开启时为null
+     */
+    private UiWatchLooperPrinter looperPrinter;
+
     /**
      * 是否观察中
      */
@@ -155,7 +396,7 @@ public class UiWatcher {
     }
 
     /**
-     * 待筛选的关键词
+     * 待筛选的关键词,与帧的 类名.方法名 匹配(如包名前缀),开启监控时编译,关键词的数量不影响采样的耗时
      *
      * @param keyWords 关键词
      */
@@ -164,6 +405,278 @@ public class UiWatcher {
         return this;
     }
 
+    /**
+     * 排除的关键词,包含任一关键词的帧直接丢弃,优先于 {@link #keyWords(String...)}
+     *
+     * @param excludeKeyWords 关键词
+     */
+    public UiWatcher excludeKeyWords(String... excludeKeyWords) {
+        this.excludeKeyWords = excludeKeyWords;
+        return this;
+    }
+
+    /**
+     * 是否将连续的系统帧折叠为一个占位帧(栈顶帧和匹配关键词的帧不折叠),保留上下文的同时减小日志
+     *
+     * @param isCollapseFrameworkFrames true:折叠 false:不折叠
+     */
+    public UiWatcher collapseFrameworkFrames(boolean isCollapseFrameworkFrames) {
+        this.isCollapseFrameworkFrames = isCollapseFrameworkFrames;
+        return this;
+    }
+
+    /**
+     * 每次采样保留的最大深度(从栈顶开始,筛选和折叠之后计算),栈顶方向最先出现的应用帧始终保留
+     *
+     * @param maxStackDepth 最大深度,0为不限制
+     */
+    public UiWatcher maxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+        return this;
+    }
+
+    /**
+     * 是否在日志中(堆栈之后)输出折叠格式的堆栈,每行为 栈底帧;...;栈顶帧 次数,
+     * 可直接交给 flamegraph.pl、speedscope 等工具生成火焰图
+     *
+     * @param isNeedFoldedStacks true:输出 false:不输出
+     */
+    public UiWatcher foldedStacks(boolean isNeedFoldedStacks) {
+        this.isNeedFoldedStacks = isNeedFoldedStacks;
+        return this;
+    }
+
+    /**
+     * 采样模式
+     *
+     * @param samplingMode {@link #SAMPLING_MODE_CONTINUOUS} 或 {@link #SAMPLING_MODE_WATCHDOG}
+     */
+    public UiWatcher samplingMode(int samplingMode) {
+        this.samplingMode = samplingMode;
+        return this;
+    }
+
+    /**
+     * 最小采样间隔(默认5ms),帧率下降或卡顿时采样间隔逐步缩短至此值
+     *
+     * @param minSampleInterval 最小采样间隔(ms)
+     */
+    public UiWatcher minSampleInterval(long minSampleInterval) {
+        this.minSampleInterval = minSampleInterval;
+        return this;
+    }
+
+    /**
+     * 最大采样间隔(默认80ms),长时间流畅时采样间隔逐步回退至此值,与最小间隔相同时即为固定间隔
+     *
+     * @param maxSampleInterval 最大采样间隔(ms)
+     */
+    public UiWatcher maxSampleInterval(long maxSampleInterval) {
+        this.maxSampleInterval = maxSampleInterval;
+        return this;
+    }
+
+    /**
+     * 缓存文件格式(默认文本),二进制格式只保存一次帧字符串,文件更小
+     *
+     * @param logFormat {@link #LOG_FORMAT_TEXT} 或 {@link #LOG_FORMAT_BINARY}
+     */
+    public UiWatcher logFormat(int logFormat) {
+        this.logFormat = logFormat;
+        return this;
+    }
+
+    /**
+     * 写入队列已满时的丢弃策略(默认丢弃最新的日志),写文件在独立线程进行,存储过慢时按此策略丢弃
+     *
+     * @param reportDropPolicy {@link #DROP_POLICY_NEWEST} 或 {@link #DROP_POLICY_OLDEST}
+     */
+    public UiWatcher reportDropPolicy(int reportDropPolicy) {
+        this.reportDropPolicy = reportDropPolicy;
+        return this;
+    }
+
+    /**
+     * 单个缓存文件大小上限(默认4MB),超出后当前文件重命名为带序号的分段(如UiWatcherLogData.1.txt),再写入新文件
+     *
+     * @param maxLogFileSize 大小上限(字节),0为不限制
+     */
+    public UiWatcher maxLogFileSize(long maxLogFileSize) {
+        this.maxLogFileSize = maxLogFileSize;
+        return this;
+    }
+
+    /**
+     * 是否压缩分段后的缓存文件(默认否),压缩在写入线程空闲时进行,生成 .gz 文件
+     *
+     * @param isNeedCompressLog 是否压缩
+     */
+    public UiWatcher compressLog(boolean isNeedCompressLog) {
+        this.isNeedCompressLog = isNeedCompressLog;
+        return this;
+    }
+
+    /**
+     * 缓存文件总容量上限(默认不限制),统计所有日期文件夹,超出后从最旧的日期、最早的分段开始删除
+     *
+     * @param maxLogDiskUsage 总容量上限(字节),0为不限制
+     */
+    public UiWatcher maxLogDiskUsage(long maxLogDiskUsage) {
+        this.maxLogDiskUsage = maxLogDiskUsage;
+        return this;
+    }
+
+    /**
+     * 缓存文件的同步策略(默认间隔同步),每条日志带有长度和CRC,异常退出后再次打开时会截掉不完整的记录
+     *
+     * @param journalSyncPolicy {@link #JOURNAL_SYNC_NONE}、{@link #JOURNAL_SYNC_BATCH} 或 {@link #JOURNAL_SYNC_INTERVAL}
+     */
+    public UiWatcher journalSyncPolicy(int journalSyncPolicy) {
+        this.journalSyncPolicy = journalSyncPolicy;
+        return this;
+    }
+
+    /**
+     * 缓存文件的同步间隔(默认1000ms),仅 {@link #JOURNAL_SYNC_INTERVAL} 时有效
+     *
+     * @param journalSyncInterval 同步间隔(ms)
+     */
+    public UiWatcher journalSyncInterval(long journalSyncInterval) {
+        this.journalSyncInterval = journalSyncInterval;
+        return this;
+    }
+
+    /**
+     * 设置上下文(可选),用于读取屏幕的刷新率,并在刷新率变化时(api>=17)更新帧间隔;
+     * 不设置时根据观测到的帧间隔估算刷新周期
+     *
+     * @param context 上下文,内部只持有ApplicationContext
+     */
+    public UiWatcher context(Context context) {
+        this.context = context == null ? null : context.getApplicationContext();
+        return this;
+    }
+
+    /**
+     * 是否持久化最新的采样(默认否)
+     * 开启后最新的cacheSize条采样同时写入缓存文件夹下session目录中的内存映射文件,
+     * 主线程卡死导致ANR或进程被杀时(此时不会再有帧回调,不会输出日志),下次开启时恢复并输出这些采样
+     *
+     * @param isNeedPersistSamples 是否持久化
+     */
+    public UiWatcher persistSamples(boolean isNeedPersistSamples) {
+        this.isNeedPersistSamples = isNeedPersistSamples;
+        return this;
+    }
+
+    /**
+     * 是否输出到logcat(默认是),正式版本可以关闭,
+     * 关闭且没有其他需要文本的输出目标(例如文本格式的缓存文件)时不会格式化文本
+     *
+     * @param isNeedLogcat true:输出 false:不输出
+     */
+    public UiWatcher logcat(boolean isNeedLogcat) {
+        this.isNeedLogcat = isNeedLogcat;
+        return this;
+    }
+
+    /**
+     * 添加自定义输出目标(例如 {@link com.simon.uiwatch.sink.MemoryJankSink},或继承
+     * {@link com.simon.uiwatch.sink.AsyncJankSink} 上报到自己的服务),需要在开启监控前添加
+     *
+     * @param sink 输出目标
+     */
+    public UiWatcher addSink(JankSink sink) {
+        if (sink != null && !customSinks.contains(sink)) {
+            customSinks.add(sink);
+        }
+        return this;
+    }
+
+    /**
+     * 添加卡顿事件监听,每次卡顿生成一个 {@link com.simon.uiwatch.log.JankEvent}
+     * (卡顿帧的开始/结束时间、跳过的帧数、去重后的堆栈及其采样次数、采样时主线程的状态),
+     * 在独立的后台线程中回调,开启监控前后均可添加
+     *
+     * @param jankListener 监听者
+     */
+    public UiWatcher addJankListener(JankListener jankListener) {
+        if (jankListener != null && !jankListeners.contains(jankListener)) {
+            jankListeners.add(jankListener);
+        }
+        return this;
+    }
+
+    /**
+     * 移除卡顿事件监听
+     *
+     * @param jankListener 监听者
+     */
+    public UiWatcher removeJankListener(JankListener jankListener) {
+        jankListeners.remove(jankListener);
+        return this;
+    }
+
+    /**
+     * 卡顿事件两次回调之间的最小间隔(默认1000ms),期间发生的卡顿合并到下一次回调中,0为不限制
+     *
+     * @param jankDispatchInterval 最小间隔(ms)
+     */
+    public UiWatcher jankDispatchInterval(long jankDispatchInterval) {
+        this.jankDispatchInterval = jankDispatchInterval;
+        return this;
+    }
+
+    /**
+     * 卡顿等级的阈值(默认200ms、700ms、4000ms),需要依次递增
+     * 冻帧及以上在主线程卡住期间抓取一次全部线程的堆栈(冻帧至少间隔10s),接近ANR时不等待卡顿结束,立即输出
+     *
+     * @param slowFrameThreshold 慢帧阈值(ms)
+     * @param freezeThreshold    冻帧阈值(ms)
+     * @param nearAnrThreshold   接近ANR阈值(ms)
+     */
+    public UiWatcher severityThresholds(long slowFrameThreshold, long freezeThreshold, long nearAnrThreshold) {
+        this.slowFrameThreshold = slowFrameThreshold;
+        this.freezeThreshold = freezeThreshold;
+        this.nearAnrThreshold = nearAnrThreshold;
+        return this;
+    }
+
+    /**
+     * 是否在每次采样时读取主线程的CPU时间(默认false),开启后报告中给出卡顿期间主线程的CPU时间与墙上时间,
+     * 接近时主线程在计算,远小于时主线程在等待(锁、IO、CPU调度);每次采样多一次读取/proc的系统调用,精度为10ms
+     *
+     * @param isNeedCpuTime true:需要 false:不需要
+     */
+    public UiWatcher cpuTime(boolean isNeedCpuTime) {
+        this.isNeedCpuTime = isNeedCpuTime;
+        return this;
+    }
+
+    /**
+     * 主线程消息的超时阈值(默认0,不统计),开启后通过Looper的Printer统计每条消息的处理耗时,
+     * 超时的消息随覆盖它的卡顿一起输出,没有卡顿帧覆盖时(例如没有绘制)单独输出;
+     * 安装前已有的Printer会继续收到回调,停止时恢复
+     *
+     * @param messageTimingThreshold 超时阈值(ms),0为不统计
+     */
+    public UiWatcher messageTiming(long messageTimingThreshold) {
+        this.messageTimingThreshold = messageTimingThreshold;
+        return this;
+    }
+
+    /**
+     * 是否在主线程不空闲的采样时读取主线程消息队列的积压(默认false),开启后报告中给出卡顿期间已到期未处理的消息的最大数量
+     * 和最早到期消息的最大延迟;通过反射遍历队列,遍历的数量和耗时有上限;
+     * Android 9(API 28)及以上隐藏接口被限制,不生效
+     *
+     * @param isNeedQueueBacklog true:需要 false:不需要
+     */
+    public UiWatcher queueBacklog(boolean isNeedQueueBacklog) {
+        this.isNeedQueueBacklog = isNeedQueueBacklog;
+        return this;
+    }
+
     /**
      * 用于开启监听，必执行方法！！
      */
@@ -179,10 +692,50 @@ public class UiWatcher {
         if (cacheDataSize < 1) {
             throw new IllegalArgumentException("cacheDataSize 必须大于等于1！");
         }
+        if (samplingMode != SAMPLING_MODE_CONTINUOUS && samplingMode != SAMPLING_MODE_WATCHDOG) {
+            throw new IllegalArgumentException("samplingMode 不合法！");
+        }
+        if (minSampleInterval < 1) {
+            throw new IllegalArgumentException("minSampleInterval 必须大于等于1！");
+        }
+        if (maxSampleInterval < minSampleInterval) {
+            throw new IllegalArgumentException("maxSampleInterval 必须大于等于minSampleInterval！");
+        }
+        if (logFormat != LOG_FORMAT_TEXT && logFormat != LOG_FORMAT_BINARY) {
+            throw new IllegalArgumentException("logFormat 不合法！");
+        }
+        if (reportDropPolicy != DROP_POLICY_NEWEST && reportDropPolicy != DROP_POLICY_OLDEST) {
+            throw new IllegalArgumentException("reportDropPolicy 不合法！");
+        }
+        if (maxLogFileSize < 0) {
+            throw new IllegalArgumentException("maxLogFileSize 必须大于等于0！");
+        }
+        if (maxLogDiskUsage < 0) {
+            throw new IllegalArgumentException("maxLogDiskUsage 必须大于等于0！");
+        }
+        if (journalSyncPolicy != JOURNAL_SYNC_NONE && journalSyncPolicy != JOURNAL_SYNC_BATCH
+                && journalSyncPolicy != JOURNAL_SYNC_INTERVAL) {
+            throw new IllegalArgumentException("journalSyncPolicy 不合法！");
+        }
+        if (journalSyncInterval < 1) {
+            throw new IllegalArgumentException("journalSyncInterval 必须大于等于1！");
+        }
+        if (maxStackDepth < 0) {
+            throw new IllegalArgumentException("maxStackDepth 必须大于等于0！");
+        }
+        if (jankDispatchInterval < 0) {
+            throw new IllegalArgumentException("jankDispatchInterval 必须大于等于0！");
+        }
+        if (slowFrameThreshold < 1 || freezeThreshold <= slowFrameThreshold || nearAnrThreshold <= freezeThreshold) {
+            throw new IllegalArgumentException("severityThresholds 必须大于0且依次递增！");
+        }
+        if (messageTimingThreshold < 0) {
+            throw new IllegalArgumentException("messageTimingThreshold 必须大于等于0！");
+        }
         if (TextUtils.isEmpty(tag)) {
             throw new IllegalArgumentException("tag 不允许为null或者空！");
         }
-        if (isNeedCacheToFile) {
+        if (isNeedCacheToFile || isNeedPersistSamples) {
             if (TextUtils.isEmpty(cacheFolder)) {
                 throw new IllegalArgumentException("缓存文件夹不允许为null或者空！");
             }
@@ -192,10 +745,96 @@ public class UiWatcher {
         LogMonitor.getInstance().setCacheFolder(cacheFolder);
         LogMonitor.getInstance().setNeedCacheToFile(isNeedCacheToFile);
         LogMonitor.getInstance().setKeyWords(keyWords);
+        LogMonitor.getInstance().setStackFilter(excludeKeyWords, isCollapseFrameworkFrames, maxStackDepth);
         LogMonitor.getInstance().setTag(tag);
+        LogMonitor.getInstance().setSamplingMode(samplingMode);
+        LogMonitor.getInstance().setSampleIntervalRange(minSampleInterval, maxSampleInterval);
+        LogMonitor.getInstance().setReportDropPolicy(reportDropPolicy);
+        LogMonitor.getInstance().setLogFormat(logFormat);
+        LogMonitor.getInstance().setLogStoragePolicy(maxLogFileSize, isNeedCompressLog, maxLogDiskUsage);
+        LogMonitor.getInstance().setJournalSyncPolicy(journalSyncPolicy, journalSyncInterval);
+        LogMonitor.getInstance().setNeedPersistSamples(isNeedPersistSamples);
+        LogMonitor.getInstance().setNeedFoldedStacks(isNeedFoldedStacks);
+        LogMonitor.getInstance().setJankListeners(jankListeners, jankDispatchInterval);
+        LogMonitor.getInstance().setOutputSinks(isNeedLogcat, new ArrayList<>(customSinks));
+        LogMonitor.getInstance().setMinSkipFrameCount(minSkipFrameCount);
+        LogMonitor.getInstance().setSeverityThresholds(slowFrameThreshold, freezeThreshold, nearAnrThreshold);
+        LogMonitor.getInstance().setNeedCpuTime(isNeedCpuTime);
+        LogMonitor.getInstance().setNeedQueueBacklog(isNeedQueueBacklog);
+        registerDisplayListener();
         //将当前回调注册到系统
-        frameCallback = new UiWatchFrameCallback(minSkipFrameCount);
+        frameCallback = new UiWatchFrameCallback(LogMonitor.getInstance().getFrameTimeRing());
         Choreographer.getInstance().postFrameCallback(frameCallback);
+        if (messageTimingThreshold > 0) {
+            looperPrinter = new UiWatchLooperPrinter(messageTimingThreshold);
+            looperPrinter.install();
+        }
+    }
+
+    /**
+     * 读取屏幕刷新率,api>=17时监听刷新率的变化
+     */
+    private void registerDisplayListener() {
+        if (context == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            displayListener = new UiWatchDisplayListener(context);
+            displayListener.register();
+            return;
+        }
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        Display display = windowManager == null ? null : windowManager.getDefaultDisplay();
+        if (display != null) {
+            LogMonitor.getInstance().setDisplayRefreshRate(display.getRefreshRate());
+        }
+    }
+
+    /**
+     * 获取采样统计,用于确认实际的采样精度(实际采样频率、跳过的采样点、采样时间的抖动)
+     */
+    public SamplingStats getSamplingStats() {
+        return LogMonitor.getInstance().getSamplingStats();
+    }
+
+    /**
+     * 获取开始监控以来的帧时长直方图(分位数、冻帧数量、慢帧比例)
+     *
+     * @return 未开启时返回null
+     */
+    public FrameHistogram getFrameHistogram() {
+        return LogMonitor.getInstance().getFrameHistogram();
+    }
+
+    /**
+     * 获取上次调用以来的帧时长直方图,并开始新的统计时间段,适合定时上报;
+     * 多个时间段可以通过 {@link FrameHistogram#add(FrameHistogram)} 合并
+     *
+     * @return 未开启时返回null
+     */
+    public FrameHistogram getIntervalFrameHistogram() {
+        return LogMonitor.getInstance().getIntervalFrameHistogram();
+    }
+
+    /**
+     * 因写入队列已满而丢弃的日志数量
+     */
+    public long getDroppedReportCount() {
+        return LogMonitor.getInstance().getDroppedReportCount();
+    }
+
+    /**
+     * 与其他日志合并为一次写入的日志数量
+     */
+    public long getCoalescedReportCount() {
+        return LogMonitor.getInstance().getCoalescedReportCount();
+    }
+
+    /**
+     * 因待分发的卡顿事件过多(监听者处理过慢)而丢弃的事件数量
+     */
+    public long getDroppedJankEventCount() {
+        return LogMonitor.getInstance().getDroppedJankEventCount();
     }
 
     @SuppressLint("NewApi")
@@ -206,6 +845,14 @@ public class UiWatcher {
             Choreographer.getInstance().removeFrameCallback(frameCallback);
             frameCallback = null;
         }
+        if (displayListener != null) {
+            displayListener.unregister();
+            displayListener = null;
+        }
+        if (looperPrinter != null) {
+            looperPrinter.uninstall();
+            looperPrinter = null;
+        }
         //关闭日志监听以及相关的线程等资源
         LogMonitor.getInstance().stopMonitor();
         //切换当前的状态
@@ -0,0 +1,657 @@
+package com.simon.uiwatch.format;
+
+import com.simon.uiwatch.log.JankSeverity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 二进制卡顿日志解码器(纯Java,不依赖Android,可在电脑上直接运行)
+ * <p>
+ * 用法：java -cp uiwatchlib.jar com.simon.uiwatch.format.BinaryLogDecoder [--json|--folded] UiWatcherLogData.bin
+ * <p>
+ * 默认输出与文本日志相同格式的文本,--json 输出JSON(每行一条卡顿记录),
+ * --folded 输出所有卡顿合并后的折叠堆栈(见 {@link FoldedStackFormat}),可直接用于生成火焰图
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class BinaryLogDecoder {
+    /**
+     * UTF-8
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 分割线
+     */
+    private static final String SEPARATOR = "---------------------------------------------------";
+
+    /**
+     * 线程状态,下标为记录中的序号
+     */
+    private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+    /**
+     * 文件内容
+     */
+    private final byte[] data;
+
+    /**
+     * 当前读取位置
+     */
+    private int position;
+
+    /**
+     * 当前的帧字符串表
+     */
+    private final List<String> frameTable = new ArrayList<>();
+
+    /**
+     * 紧接其后的卡顿记录的补充信息,没有时为null
+     */
+    private Detail pendingDetail;
+
+    /**
+     * 时间格式化
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+
+    /**
+     * @param data 文件内容,记录日志格式(见 {@link LogJournal})时自动取出其中有效的记录
+     */
+    public BinaryLogDecoder(byte[] data) {
+        this.data = LogJournal.isJournal(data) ? LogJournal.unwrap(data) : data;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean isJson = false;
+        boolean isFolded = false;
+        String path = null;
+        for (String arg : args) {
+            if ("--json".equals(arg)) {
+                isJson = true;
+            } else if ("--folded".equals(arg)) {
+                isFolded = true;
+            } else {
+                path = arg;
+            }
+        }
+        if (path == null) {
+            System.err.println("usage: BinaryLogDecoder [--json|--folded] <file.bin>");
+            System.exit(1);
+            return;
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, UTF_8));
+        BinaryLogDecoder decoder = new BinaryLogDecoder(readFile(new File(path)));
+        if (isJson) {
+            decoder.decodeToJson(out);
+        } else if (isFolded) {
+            decoder.decodeToFolded(out);
+        } else {
+            decoder.decodeToText(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * 读取整个文件
+     */
+    public static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(16, file.length()));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 解码为文本格式
+     */
+    public void decodeToText(final PrintWriter out) throws IOException {
+        decode(new DetailedJankVisitor() {
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples) {
+                onJank(wallTimeMillis, durationNanos, skippedFrames, samples, null);
+            }
+
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples,
+                               Detail detail) {
+                out.println(" ");
+                out.println("~~~~~~~~~~~~~~~~~~~start~~~~~~~~~~~~~~~~~~~~~~");
+                out.println("time: " + dateFormat.format(new Date(wallTimeMillis))
+                        + ", duration: " + durationNanos / 1000000 + "ms, skipped frames: " + skippedFrames
+                        + (detail == null ? "" : ", severity: " + JankSeverity.getName(detail.severity))
+                        + (detail == null || detail.cpuTimeNanos < 0 ? "" : ", main thread cpu: "
+                        + detail.cpuTimeNanos / 1000000 + "ms of " + detail.cpuWallNanos / 1000000 + "ms"));
+                if (detail != null && detail.slowMessage != null) {
+                    out.println("slow message: " + detail.slowMessage + ", " + detail.slowMessageNanos / 1000000 + "ms");
+                }
+                if (detail != null && detail.queueSampleCount > 0) {
+                    out.println("main queue: up to " + detail.queueMaxPendingCount
+                            + (detail.isQueuePendingTruncated ? "+" : "") + " pending, oldest late "
+                            + detail.queueMaxLatenessNanos / 1000000 + "ms (" + detail.queueSampleCount + " samples)");
+                }
+                out.println(" ");
+                int totalRepeatCount = 0;
+                for (Sample sample : samples) {
+                    totalRepeatCount += sample.repeatCount;
+                }
+                for (Sample sample : samples) {
+                    out.println(SEPARATOR + " +" + sample.offsetNanos / 1000000 + "ms, seen in "
+                            + sample.repeatCount + " of " + totalRepeatCount + " samples"
+                            + (sample.repeatCount > 1 ? ", " + sample.durationNanos / 1000000 + "ms" : "")
+                            + (sample.threadState == null ? "" : ", " + sample.threadState)
+                            + (sample.lockInfo == null ? "" : " on " + sample.lockInfo));
+                    for (String frame : sample.frames) {
+                        out.println(frame);
+                    }
+                    out.println(SEPARATOR);
+                    out.println();
+                }
+                if (detail != null && !detail.threadGroups.isEmpty()) {
+                    out.println("~~~~~~~~~~~~~~~~~~~threads~~~~~~~~~~~~~~~~~~~~~~ +"
+                            + detail.threadDumpOffsetNanos / 1000000 + "ms");
+                    for (ThreadDumpGroup group : detail.threadGroups) {
+                        out.println(SEPARATOR + " " + group.state + " x" + group.threadCount + ": " + group.threadNames);
+                        for (String frame : group.frames) {
+                            out.println(frame);
+                        }
+                        out.println(SEPARATOR);
+                    }
+                }
+                out.println("~~~~~~~~~~~~~~~~~~~end~~~~~~~~~~~~~~~~~~~~~~");
+            }
+        });
+    }
+
+    /**
+     * 解码为JSON格式,每行一条卡顿记录
+     */
+    public void decodeToJson(final PrintWriter out) throws IOException {
+        decode(new DetailedJankVisitor() {
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples) {
+                onJank(wallTimeMillis, durationNanos, skippedFrames, samples, null);
+            }
+
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples,
+                               Detail detail) {
+                StringBuilder json = new StringBuilder();
+                json.append("{\"time\":").append(wallTimeMillis)
+                        .append(",\"durationNanos\":").append(durationNanos)
+                        .append(",\"skippedFrames\":").append(skippedFrames)
+                        .append(",\"severity\":");
+                appendJsonString(json, JankSeverity.getName(detail == null ? JankSeverity.JANK : detail.severity));
+                if (detail != null && detail.cpuTimeNanos >= 0) {
+                    json.append(",\"cpuTimeNanos\":").append(detail.cpuTimeNanos)
+                            .append(",\"cpuWallNanos\":").append(detail.cpuWallNanos);
+                }
+                if (detail != null && detail.slowMessage != null) {
+                    json.append(",\"slowMessage\":");
+                    appendJsonString(json, detail.slowMessage);
+                    json.append(",\"slowMessageNanos\":").append(detail.slowMessageNanos);
+                }
+                if (detail != null && detail.queueSampleCount > 0) {
+                    json.append(",\"queue\":{\"samples\":").append(detail.queueSampleCount)
+                            .append(",\"maxPending\":").append(detail.queueMaxPendingCount)
+                            .append(",\"truncated\":").append(detail.isQueuePendingTruncated)
+                            .append(",\"maxLatenessNanos\":").append(detail.queueMaxLatenessNanos).append("}");
+                }
+                json.append(",\"samples\":[");
+                for (int i = 0; i < samples.size(); i++) {
+                    Sample sample = samples.get(i);
+                    json.append(i == 0 ? "" : ",").append("{\"offsetNanos\":").append(sample.offsetNanos)
+                            .append(",\"count\":").append(sample.repeatCount)
+                            .append(",\"durationNanos\":").append(sample.durationNanos);
+                    if (sample.threadState != null) {
+                        json.append(",\"threadState\":");
+                        appendJsonString(json, sample.threadState.name());
+                    }
+                    if (sample.lockInfo != null) {
+                        json.append(",\"lock\":");
+                        appendJsonString(json, sample.lockInfo);
+                    }
+                    json.append(",\"frames\":[");
+                    for (int j = 0; j < sample.frames.size(); j++) {
+                        json.append(j == 0 ? "" : ",");
+                        appendJsonString(json, sample.frames.get(j));
+                    }
+                    json.append("]}");
+                }
+                json.append("]");
+                if (detail != null && !detail.threadGroups.isEmpty()) {
+                    json.append(",\"threadDumpOffsetNanos\":").append(detail.threadDumpOffsetNanos)
+                            .append(",\"threads\":[");
+                    for (int i = 0; i < detail.threadGroups.size(); i++) {
+                        ThreadDumpGroup group = detail.threadGroups.get(i);
+                        json.append(i == 0 ? "" : ",").append("{\"names\":");
+                        appendJsonString(json, group.threadNames);
+                        json.append(",\"count\":").append(group.threadCount)
+                                .append(",\"state\":");
+                        appendJsonString(json, String.valueOf(group.state));
+                        json.append(",\"frames\":[");
+                        for (int j = 0; j < group.frames.size(); j++) {
+                            json.append(j == 0 ? "" : ",");
+                            appendJsonString(json, group.frames.get(j));
+                        }
+                        json.append("]}");
+                    }
+                    json.append("]");
+                }
+                json.append("}");
+                out.println(json);
+            }
+        });
+    }
+
+    /**
+     * 解码为折叠堆栈格式,所有卡顿中相同的堆栈合并,每行一个堆栈
+     */
+    public void decodeToFolded(PrintWriter out) throws IOException {
+        final Map<String, Long> foldedCounts = new TreeMap<>();
+        final StringBuilder line = new StringBuilder();
+        decode(new JankVisitor() {
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples) {
+                for (Sample sample : samples) {
+                    if (sample.frames.isEmpty()) {
+                        continue;
+                    }
+                    line.setLength(0);
+                    for (int i = sample.frames.size() - 1; i >= 0; i--) {
+                        FoldedStackFormat.appendFrame(line, sample.frames.get(i), i == sample.frames.size() - 1);
+                    }
+                    String stack = line.toString();
+                    Long count = foldedCounts.get(stack);
+                    foldedCounts.put(stack, (count == null ? 0 : count) + sample.repeatCount);
+                }
+            }
+        });
+        for (Map.Entry<String, Long> entry : foldedCounts.entrySet()) {
+            line.setLength(0);
+            line.append(entry.getKey());
+            FoldedStackFormat.appendCount(line, entry.getValue());
+            out.print(line);
+        }
+    }
+
+    /**
+     * 依次解码所有的卡顿记录,遇到不完整的记录(写入时进程被杀)时停止
+     *
+     * @param visitor 卡顿记录回调
+     */
+    public void decode(JankVisitor visitor) throws IOException {
+        position = 0;
+        frameTable.clear();
+        pendingDetail = null;
+        if (data.length < BinaryLogFormat.MAGIC.length + 1) {
+            throw new IOException("not a UiWatcher binary log");
+        }
+        for (int i = 0; i < BinaryLogFormat.MAGIC.length; i++) {
+            if (data[position++] != BinaryLogFormat.MAGIC[i]) {
+                throw new IOException("not a UiWatcher binary log");
+            }
+        }
+        int version = data[position++];
+        if (version != BinaryLogFormat.VERSION) {
+            throw new IOException("unsupported version: " + version);
+        }
+        try {
+            while (position < data.length) {
+                byte type = data[position++];
+                if (type == 0) {
+                    //映射区域残留的0,文件结束
+                    return;
+                }
+                switch (type) {
+                    case BinaryLogFormat.RECORD_STRING:
+                        int length = (int) readVarLong();
+                        checkAvailable(length);
+                        frameTable.add(new String(data, position, length, UTF_8));
+                        position += length;
+                        break;
+                    case BinaryLogFormat.RECORD_RESET:
+                        frameTable.clear();
+                        break;
+                    case BinaryLogFormat.RECORD_JANK:
+                        decodeJank(visitor, false);
+                        break;
+                    case BinaryLogFormat.RECORD_JANK_COUNTED:
+                        decodeJank(visitor, true);
+                        break;
+                    case BinaryLogFormat.RECORD_JANK_DETAIL:
+                        pendingDetail = decodeDetail();
+                        break;
+                    default:
+                        throw new IOException("unknown record type: " + type + " at " + (position - 1));
+                }
+                checkAvailable(1);
+                if (data[position++] != BinaryLogFormat.RECORD_END) {
+                    throw new IOException("corrupted record at " + position);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            //末尾的记录不完整,忽略
+        }
+    }
+
+    /**
+     * 解码一条卡顿记录
+     *
+     * @param isCounted 是否带有堆栈出现的次数
+     */
+    private void decodeJank(JankVisitor visitor, boolean isCounted) throws IOException {
+        long wallTimeMillis = readVarLong();
+        long durationNanos = readVarLong();
+        long skippedFrames = readVarLong();
+        int sampleCount = (int) readVarLong();
+        List<Sample> samples = new ArrayList<>(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            Sample sample = new Sample();
+            sample.offsetNanos = BinaryLogFormat.zigzagDecode(readVarLong());
+            int frameCount = (int) readVarLong();
+            sample.frames = new ArrayList<>(frameCount);
+            for (int j = 0; j < frameCount; j++) {
+                int frameId = (int) readVarLong();
+                if (frameId >= frameTable.size()) {
+                    throw new IOException("unknown frame id: " + frameId);
+                }
+                sample.frames.add(frameTable.get(frameId));
+            }
+            if (isCounted) {
+                sample.repeatCount = (int) readVarLong();
+                sample.durationNanos = readVarLong();
+            }
+            samples.add(sample);
+        }
+        //记录完整才回调
+        checkAvailable(1);
+        if (data[position] != BinaryLogFormat.RECORD_END) {
+            throw new IOException("corrupted record at " + position);
+        }
+        Detail detail = pendingDetail;
+        pendingDetail = null;
+        if (detail != null && detail.sampleThreadStates.length == sampleCount) {
+            for (int i = 0; i < sampleCount; i++) {
+                samples.get(i).threadState = detail.sampleThreadStates[i];
+                samples.get(i).lockInfo = detail.sampleLockInfos[i];
+            }
+        }
+        if (visitor instanceof DetailedJankVisitor) {
+            ((DetailedJankVisitor) visitor).onJank(wallTimeMillis, durationNanos, skippedFrames, samples, detail);
+        } else {
+            visitor.onJank(wallTimeMillis, durationNanos, skippedFrames, samples);
+        }
+    }
+
+    /**
+     * 解码一条卡顿的补充信息记录
+     */
+    private Detail decodeDetail() throws IOException {
+        Detail detail = new Detail();
+        detail.severity = (int) readVarLong();
+        int groupCount = (int) readVarLong();
+        detail.threadGroups = new ArrayList<>(groupCount);
+        if (groupCount > 0) {
+            detail.threadDumpOffsetNanos = BinaryLogFormat.zigzagDecode(readVarLong());
+        }
+        for (int i = 0; i < groupCount; i++) {
+            ThreadDumpGroup group = new ThreadDumpGroup();
+            group.threadNames = readString();
+            group.threadCount = (int) readVarLong();
+            int state = (int) readVarLong() - 1;
+            group.state = state >= 0 && state < THREAD_STATES.length ? THREAD_STATES[state] : null;
+            int frameCount = (int) readVarLong();
+            group.frames = new ArrayList<>(frameCount);
+            for (int j = 0; j < frameCount; j++) {
+                group.frames.add(readString());
+            }
+            detail.threadGroups.add(group);
+        }
+        int stateCount = (int) readVarLong();
+        detail.sampleThreadStates = new Thread.State[stateCount];
+        detail.sampleLockInfos = new String[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            int state = (int) readVarLong() - 1;
+            detail.sampleThreadStates[i] = state >= 0 && state < THREAD_STATES.length ? THREAD_STATES[state] : null;
+            int lockInfoId = (int) readVarLong();
+            detail.sampleLockInfos[i] = lockInfoId == 0 ? null : readString(lockInfoId - 1);
+        }
+        detail.cpuWallNanos = readVarLong();
+        detail.cpuTimeNanos = detail.cpuWallNanos == 0 ? -1 : readVarLong();
+        int slowMessageId = (int) readVarLong();
+        if (slowMessageId != 0) {
+            detail.slowMessage = readString(slowMessageId - 1);
+            detail.slowMessageNanos = readVarLong();
+        }
+        detail.queueSampleCount = (int) readVarLong();
+        if (detail.queueSampleCount > 0) {
+            detail.queueMaxPendingCount = (int) readVarLong();
+            detail.isQueuePendingTruncated = readVarLong() != 0;
+            detail.queueMaxLatenessNanos = readVarLong();
+        }
+        return detail;
+    }
+
+    /**
+     * 读取字符串编号并取出字符串
+     */
+    private String readString() throws IOException {
+        return readString((int) readVarLong());
+    }
+
+    /**
+     * 按编号取出字符串
+     */
+    private String readString(int id) throws IOException {
+        if (id >= frameTable.size()) {
+            throw new IOException("unknown frame id: " + id);
+        }
+        return frameTable.get(id);
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            checkAvailable(1);
+            byte b = data[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private void checkAvailable(int length) {
+        if (position + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * 一次采样
+     */
+    public static class Sample {
+        /**
+         * 相对卡顿帧开始时间的偏移(纳秒),负数表示在卡顿帧开始之前
+         */
+        public long offsetNanos;
+
+        /**
+         * 帧字符串,栈顶在前
+         */
+        public List<String> frames;
+
+        /**
+         * 堆栈出现的次数
+         */
+        public int repeatCount = 1;
+
+        /**
+         * 堆栈首次到最近一次出现的时长(纳秒)
+         */
+        public long durationNanos;
+
+        /**
+         * 主线程的状态,未知时为null
+         */
+        public Thread.State threadState;
+
+        /**
+         * 主线程等待的锁及其持有者(仅BLOCKED时),可为null
+         */
+        public String lockInfo;
+    }
+
+    /**
+     * 卡顿的补充信息
+     */
+    public static class Detail {
+        /**
+         * 卡顿等级,见 {@link JankSeverity}
+         */
+        public int severity;
+
+        /**
+         * 全部线程堆栈的抓取时间相对卡顿帧开始时间的偏移(纳秒)
+         */
+        public long threadDumpOffsetNanos;
+
+        /**
+         * 全部线程的堆栈(按状态和堆栈分组),没有抓取时为空
+         */
+        public List<ThreadDumpGroup> threadGroups;
+
+        /**
+         * 每次采样时主线程的状态,没有记录时长度为0
+         */
+        public Thread.State[] sampleThreadStates;
+
+        /**
+         * 每次采样时主线程等待的锁及其持有者,没有记录时长度为0
+         */
+        public String[] sampleLockInfos;
+
+        /**
+         * 卡顿期间主线程的CPU时间(纳秒),-1为未知
+         */
+        public long cpuTimeNanos = -1;
+
+        /**
+         * CPU时间对应的墙上时间(纳秒)
+         */
+        public long cpuWallNanos;
+
+        /**
+         * 卡顿期间耗时最长的超时主线程消息,没有时为null
+         */
+        public String slowMessage;
+
+        /**
+         * 超时消息的耗时(纳秒)
+         */
+        public long slowMessageNanos;
+
+        /**
+         * 主线程消息队列积压的采样次数,0为没有
+         */
+        public int queueSampleCount;
+
+        /**
+         * 积压消息的最大数量
+         */
+        public int queueMaxPendingCount;
+
+        /**
+         * 积压消息的最大数量是否超出遍历限制(实际更多)
+         */
+        public boolean isQueuePendingTruncated;
+
+        /**
+         * 最早到期消息的最大延迟(纳秒)
+         */
+        public long queueMaxLatenessNanos;
+    }
+
+    /**
+     * 状态和堆栈都相同的一组线程
+     */
+    public static class ThreadDumpGroup {
+        /**
+         * 线程名称(以", "分隔)
+         */
+        public String threadNames;
+
+        /**
+         * 线程数量
+         */
+        public int threadCount;
+
+        /**
+         * 线程状态,未知时为null
+         */
+        public Thread.State state;
+
+        /**
+         * 帧字符串,栈顶在前
+         */
+        public List<String> frames;
+    }
+
+    /**
+     * 卡顿记录回调
+     */
+    public interface JankVisitor {
+        void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples);
+    }
+
+    /**
+     * 带有补充信息的卡顿记录回调
+     */
+    public interface DetailedJankVisitor extends JankVisitor {
+        /**
+         * @param detail 补充信息,记录中没有时为null(等级为卡顿、没有线程堆栈)
+         */
+        void onJank(long wallTimeMillis, long durationNanos, long skippedFrames, List<Sample> samples, Detail detail);
+    }
+}
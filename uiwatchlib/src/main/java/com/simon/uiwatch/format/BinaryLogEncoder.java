@@ -0,0 +1,243 @@
+package com.simon.uiwatch.format;
+
+import com.simon.uiwatch.log.JankReport;
+import com.simon.uiwatch.log.JankSeverity;
+import com.simon.uiwatch.log.QueueBacklog;
+import com.simon.uiwatch.log.ThreadDump;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二进制卡顿日志编码器
+ * 维护当前文件的帧字符串表,每个帧字符串在一个文件中只写入一次,之后只写入varint编号
+ * <p>
+ * 注意：非线程安全,只允许在LogWriter_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class BinaryLogEncoder {
+    /**
+     * UTF-8
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 帧字符串 -> 文件内编号
+     */
+    private final Map<String, Integer> fileFrameIds = new HashMap<>();
+
+    /**
+     * 报告内帧下标 -> 文件内编号,复用
+     */
+    private int[] reportFrameIds = new int[64];
+
+    /**
+     * 线程堆栈内帧下标 -> 文件内编号,复用
+     */
+    private int[] dumpFrameIds = new int[64];
+
+    /**
+     * 编码缓冲,复用
+     */
+    private byte[] buffer = new byte[4096];
+
+    /**
+     * 缓冲中的有效长度
+     */
+    private int length;
+
+    /**
+     * 编码文件头,并清空字符串表(新文件)
+     */
+    public void encodeHeader() {
+        fileFrameIds.clear();
+        ensureCapacity(BinaryLogFormat.MAGIC.length + 1);
+        System.arraycopy(BinaryLogFormat.MAGIC, 0, buffer, length, BinaryLogFormat.MAGIC.length);
+        length += BinaryLogFormat.MAGIC.length;
+        buffer[length++] = BinaryLogFormat.VERSION;
+    }
+
+    /**
+     * 编码清空字符串表的记录(向已有文件追加)
+     */
+    public void encodeReset() {
+        fileFrameIds.clear();
+        writeByte(BinaryLogFormat.RECORD_RESET);
+        writeByte(BinaryLogFormat.RECORD_END);
+    }
+
+    /**
+     * 编码一次卡顿,之前未出现过的帧会先写入字符串记录;等级高于卡顿或有线程堆栈时先写入补充信息记录
+     *
+     * @param report 卡顿报告
+     */
+    public void encode(JankReport report) {
+        int frameCount = report.getFrameCount();
+        if (reportFrameIds.length < frameCount) {
+            reportFrameIds = new int[Math.max(frameCount, reportFrameIds.length * 2)];
+        }
+        for (int i = 0; i < frameCount; i++) {
+            reportFrameIds[i] = internFrame(report.getFrame(i));
+        }
+        if (report.getSeverity() > JankSeverity.JANK || report.getThreadDump() != null || report.hasThreadStates()
+                || report.getCpuTimeNanos() >= 0 || report.getSlowMessage() != null
+                || report.getQueueBacklog() != null) {
+            encodeDetail(report);
+        }
+        writeByte(BinaryLogFormat.RECORD_JANK_COUNTED);
+        writeVarLong(report.getWallTimeMillis());
+        writeVarLong(Math.max(0, report.getFrameEndNanos() - report.getFrameStartNanos()));
+        writeVarLong(report.getSkippedFrames());
+        int sampleCount = report.getSampleCount();
+        writeVarLong(sampleCount);
+        for (int sample = 0; sample < sampleCount; sample++) {
+            writeVarLong(BinaryLogFormat.zigzagEncode(report.getSampleTimestamp(sample) - report.getFrameStartNanos()));
+            int sampleFrameCount = report.getSampleFrameCount(sample);
+            writeVarLong(sampleFrameCount);
+            for (int frame = 0; frame < sampleFrameCount; frame++) {
+                writeVarLong(reportFrameIds[report.getSampleFrame(sample, frame)]);
+            }
+            writeVarLong(report.getSampleRepeatCount(sample));
+            writeVarLong(Math.max(0, report.getSampleLastTimestamp(sample) - report.getSampleTimestamp(sample)));
+        }
+        writeByte(BinaryLogFormat.RECORD_END);
+    }
+
+    /**
+     * 编码卡顿的补充信息,线程堆栈中未出现过的帧、线程名称、锁信息和超时消息先写入字符串记录
+     */
+    private void encodeDetail(JankReport report) {
+        ThreadDump threadDump = report.getThreadDump();
+        int groupCount = threadDump == null ? 0 : threadDump.getGroupCount();
+        int[] groupNameIds = new int[groupCount];
+        int stateCount = report.hasThreadStates() ? report.getSampleCount() : 0;
+        int[] lockInfoIds = new int[stateCount];
+        for (int sample = 0; sample < stateCount; sample++) {
+            String lockInfo = report.getSampleLockInfo(sample);
+            lockInfoIds[sample] = lockInfo == null ? 0 : internFrame(lockInfo) + 1;
+        }
+        int slowMessageId = report.getSlowMessage() == null ? 0 : internFrame(report.getSlowMessage()) + 1;
+        if (threadDump != null) {
+            int frameCount = threadDump.getFrameCount();
+            if (dumpFrameIds.length < frameCount) {
+                dumpFrameIds = new int[Math.max(frameCount, dumpFrameIds.length * 2)];
+            }
+            for (int i = 0; i < frameCount; i++) {
+                dumpFrameIds[i] = internFrame(threadDump.getFrame(i));
+            }
+            for (int group = 0; group < groupCount; group++) {
+                groupNameIds[group] = internFrame(threadDump.getGroupThreadNames(group));
+            }
+        }
+        writeByte(BinaryLogFormat.RECORD_JANK_DETAIL);
+        writeVarLong(report.getSeverity());
+        writeVarLong(groupCount);
+        if (groupCount > 0) {
+            writeVarLong(BinaryLogFormat.zigzagEncode(threadDump.getCaptureNanos() - report.getFrameStartNanos()));
+        }
+        for (int group = 0; group < groupCount; group++) {
+            writeVarLong(groupNameIds[group]);
+            writeVarLong(threadDump.getGroupThreadCount(group));
+            writeVarLong(threadDump.getGroupThreadStateOrdinal(group) + 1);
+            int groupFrameCount = threadDump.getGroupFrameCount(group);
+            writeVarLong(groupFrameCount);
+            for (int frame = 0; frame < groupFrameCount; frame++) {
+                writeVarLong(dumpFrameIds[threadDump.getGroupFrame(group, frame)]);
+            }
+        }
+        writeVarLong(stateCount);
+        for (int sample = 0; sample < stateCount; sample++) {
+            writeVarLong(report.getSampleThreadState(sample) + 1);
+            writeVarLong(lockInfoIds[sample]);
+        }
+        if (report.getCpuTimeNanos() >= 0) {
+            writeVarLong(report.getCpuWallNanos());
+            writeVarLong(report.getCpuTimeNanos());
+        } else {
+            writeVarLong(0);
+        }
+        writeVarLong(slowMessageId);
+        if (slowMessageId != 0) {
+            writeVarLong(report.getSlowMessageNanos());
+        }
+        QueueBacklog queueBacklog = report.getQueueBacklog();
+        if (queueBacklog != null) {
+            writeVarLong(queueBacklog.getSampleCount());
+            writeVarLong(queueBacklog.getMaxPendingCount());
+            writeVarLong(queueBacklog.isPendingCountTruncated() ? 1 : 0);
+            writeVarLong(queueBacklog.getMaxLatenessNanos());
+        } else {
+            writeVarLong(0);
+        }
+        writeByte(BinaryLogFormat.RECORD_END);
+    }
+
+    /**
+     * 已编码的数据
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * 已编码的数据长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 清空已编码的数据(字符串表保留)
+     */
+    public void clearBuffer() {
+        length = 0;
+    }
+
+    /**
+     * 获取帧字符串在文件内的编号,首次出现时写入字符串记录
+     */
+    private int internFrame(String frame) {
+        Integer id = fileFrameIds.get(frame);
+        if (id != null) {
+            return id;
+        }
+        int newId = fileFrameIds.size();
+        fileFrameIds.put(frame, newId);
+        byte[] bytes = frame.getBytes(UTF_8);
+        writeByte(BinaryLogFormat.RECORD_STRING);
+        writeVarLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        writeByte(BinaryLogFormat.RECORD_END);
+        return newId;
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+    }
+
+    /**
+     * 写入无符号varint(每字节7位,最高位表示后面还有字节)
+     */
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length + extra, buffer.length * 2));
+        }
+    }
+}
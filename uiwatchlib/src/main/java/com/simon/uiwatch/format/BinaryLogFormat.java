@@ -0,0 +1,92 @@
+package com.simon.uiwatch.format;
+
+/**
+ * 二进制卡顿日志格式
+ * <p>
+ * 文件头：MAGIC(4字节) + VERSION(1字节)
+ * <p>
+ * 之后为连续的记录,每条记录以类型开头,以 {@link #RECORD_END} 结尾：
+ * <p>
+ * 1.RECORD_STRING：varint长度 + UTF-8字节,依次编号(从0开始)组成文件内的帧字符串表
+ * 2.RECORD_RESET：清空字符串表,编号重新从0开始(再次打开已有文件追加时写入)
+ * 3.RECORD_JANK：varint64时间(ms) + varint64卡顿时长(纳秒) + varint跳过的帧数 + varint采样数量,
+ * 每次采样为：zigzag varint64采样时间相对卡顿帧开始时间的偏移(纳秒) + varint帧数量 + 每个帧的varint编号(栈顶在前)
+ * 4.RECORD_JANK_COUNTED：与RECORD_JANK相同,每次采样在帧编号之后追加 varint堆栈出现的次数 + varint64首次到最近一次出现的时长(纳秒)
+ * 5.RECORD_JANK_DETAIL：紧接其后的卡顿记录的补充信息(可选,等级高于卡顿、有线程堆栈、主线程状态、CPU时间、超时消息或队列积压时写入)：varint卡顿等级 + varint线程组数量,
+ * 有线程组时接 zigzag varint64抓取时间相对卡顿帧开始时间的偏移(纳秒),每组为：varint线程名称的字符串编号 + varint线程数量
+ * + varint线程状态(Thread.State的序号+1,0为未知) + varint帧数量 + 每个帧的varint编号(栈顶在前);
+ * 之后为 varint主线程状态的数量(0或采样数量),每次采样为：varint主线程状态(序号+1,0为未知) + varint等待的锁及其持有者的字符串编号+1(0为没有);
+ * 之后为 varint64主线程CPU时间对应的墙上时间(纳秒,0为未知),不为0时接 varint64主线程CPU时间(纳秒);
+ * 之后为 varint超时消息的字符串编号+1(0为没有),不为0时接 varint64超时消息的耗时(纳秒);
+ * 最后为 varint队列积压的采样次数(0为没有),不为0时接 varint积压消息的最大数量 + varint是否超出遍历限制(0或1)
+ * + varint64最早到期消息的最大延迟(纳秒)
+ * <p>
+ * 记录以非0字节结尾,保证异常退出后截掉末尾的0时不会截断完整的记录
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class BinaryLogFormat {
+    /**
+     * 文件头标识
+     */
+    public static final byte[] MAGIC = {'U', 'W', 'J', 'L'};
+
+    /**
+     * 格式版本
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * 帧字符串记录
+     */
+    public static final byte RECORD_STRING = 1;
+
+    /**
+     * 卡顿记录
+     */
+    public static final byte RECORD_JANK = 2;
+
+    /**
+     * 清空字符串表记录
+     */
+    public static final byte RECORD_RESET = 3;
+
+    /**
+     * 带有堆栈出现次数的卡顿记录
+     */
+    public static final byte RECORD_JANK_COUNTED = 4;
+
+    /**
+     * 卡顿记录的补充信息(等级、全部线程的堆栈)
+     */
+    public static final byte RECORD_JANK_DETAIL = 5;
+
+    /**
+     * 记录结束标记
+     */
+    public static final byte RECORD_END = (byte) 0xFE;
+
+    /**
+     * 二进制日志文件的扩展名
+     */
+    public static final String FILE_EXTENSION = ".bin";
+
+    private BinaryLogFormat() {
+    }
+
+    /**
+     * zigzag编码,将有符号数映射为无符号数,绝对值小的数编码后也小
+     */
+    public static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * zigzag解码
+     */
+    public static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,53 @@
+package com.simon.uiwatch.format;
+
+/**
+ * 折叠堆栈(folded/collapsed stack)格式,可直接作为火焰图工具(如 flamegraph.pl、speedscope)的输入
+ * <p>
+ * 每行一个堆栈：栈底帧;...;栈顶帧 + 空格 + 采样次数
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class FoldedStackFormat {
+    /**
+     * 帧之间的分隔符
+     */
+    public static final char FRAME_SEPARATOR = ';';
+
+    private FoldedStackFormat() {
+    }
+
+    /**
+     * 追加一个帧,帧内的分隔符和换行替换为其他字符,避免破坏格式
+     *
+     * @param builder builder
+     * @param frame   帧字符串
+     * @param isFirst 是否为栈底帧(不需要分隔符)
+     */
+    public static void appendFrame(StringBuilder builder, String frame, boolean isFirst) {
+        if (!isFirst) {
+            builder.append(FRAME_SEPARATOR);
+        }
+        for (int i = 0; i < frame.length(); i++) {
+            char c = frame.charAt(i);
+            if (c == FRAME_SEPARATOR) {
+                builder.append(',');
+            } else if (c == '\n' || c == '\r') {
+                builder.append(' ');
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * 追加采样次数并换行,结束一个堆栈
+     *
+     * @param builder builder
+     * @param count   采样次数
+     */
+    public static void appendCount(StringBuilder builder, long count) {
+        builder.append(' ').append(count).append('\n');
+    }
+}
@@ -0,0 +1,372 @@
+package com.simon.uiwatch.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 日志文件的记录日志(journal)格式,文本和二进制格式的缓存文件都以此格式分帧
+ * <p>
+ * 每条记录：头部(19字节) + 内容 + '\n'
+ * 头部为ASCII："#J" + 8位十六进制的内容长度 + 8位十六进制的内容CRC32 + '\n',
+ * 文本格式的文件仍然可以直接阅读,每条卡顿日志前多一行记录头
+ * <p>
+ * 进程在写入过程中被杀时,文件末尾可能残留不完整的记录,再次打开时通过 {@link #recover(File, long)}
+ * 从检查点开始校验长度和CRC,截掉第一条无效记录及之后的内容;检查点之前的内容已经校验过,不需要重新读取
+ * <p>
+ * 注意：非线程安全,编码只允许在LogWriter_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class LogJournal {
+    /**
+     * 记录头标识
+     */
+    private static final byte[] RECORD_MAGIC = {'#', 'J'};
+
+    /**
+     * 记录头长度
+     */
+    public static final int HEADER_SIZE = RECORD_MAGIC.length + 8 + 8 + 1;
+
+    /**
+     * 记录结尾
+     */
+    private static final byte RECORD_TRAILER = '\n';
+
+    /**
+     * 检查点文件的扩展名
+     */
+    public static final String CHECKPOINT_EXTENSION = ".ckpt";
+
+    /**
+     * 单条记录内容的最大长度,超出视为损坏
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 恢复时每次读取的大小
+     */
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    /**
+     * 编码缓冲,复用
+     */
+    private byte[] buffer = new byte[8192];
+
+    /**
+     * 缓冲中的有效长度
+     */
+    private int length;
+
+    /**
+     * 校验,复用
+     */
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * 字符编码器,复用
+     */
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+
+    /**
+     * 追加一条记录
+     *
+     * @param data 内容
+     * @param off  起始位置
+     * @param len  长度
+     */
+    public void appendRecord(byte[] data, int off, int len) {
+        ensureCapacity(HEADER_SIZE + len + 1);
+        int headerStart = length;
+        length += HEADER_SIZE;
+        System.arraycopy(data, off, buffer, length, len);
+        length += len;
+        finishRecord(headerStart, len);
+    }
+
+    /**
+     * 以UTF-8编码追加一条记录,直接编码到缓冲中
+     *
+     * @param text 内容
+     */
+    public void appendRecord(CharSequence text) {
+        ensureCapacity(HEADER_SIZE + text.length() + 1);
+        int headerStart = length;
+        int contentStart = headerStart + HEADER_SIZE;
+        CharBuffer charBuffer = CharBuffer.wrap(text);
+        encoder.reset();
+        ByteBuffer out = ByteBuffer.wrap(buffer, contentStart, buffer.length - contentStart);
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, out, true);
+            if (result.isOverflow()) {
+                //缓冲已满,扩容后继续编码
+                int position = out.position();
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                out = ByteBuffer.wrap(buffer, position, buffer.length - position);
+                continue;
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+            //无法编码的字符(不成对的代理字符),跳过
+            charBuffer.position(charBuffer.position() + result.length());
+        }
+        length = out.position();
+        ensureCapacity(1);
+        finishRecord(headerStart, length - contentStart);
+    }
+
+    /**
+     * 缓冲
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * 缓冲中的有效长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 清空缓冲
+     */
+    public void clearBuffer() {
+        length = 0;
+    }
+
+    /**
+     * 写入记录头和结尾
+     */
+    private void finishRecord(int headerStart, int contentLength) {
+        crc32.reset();
+        crc32.update(buffer, headerStart + HEADER_SIZE, contentLength);
+        int position = headerStart;
+        buffer[position++] = RECORD_MAGIC[0];
+        buffer[position++] = RECORD_MAGIC[1];
+        position = writeHex(buffer, position, contentLength);
+        position = writeHex(buffer, position, (int) crc32.getValue());
+        buffer[position] = '\n';
+        buffer[length++] = RECORD_TRAILER;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length + extra, buffer.length * 2));
+        }
+    }
+
+    private static int writeHex(byte[] target, int position, int value) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            target[position++] = HEX[(value >>> shift) & 0xF];
+        }
+        return position;
+    }
+
+    /**
+     * 解析8位十六进制,不合法时返回-1
+     */
+    private static long readHex(byte[] source, int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = source[position + i];
+            int digit;
+            if (b >= '0' && b <= '9') {
+                digit = b - '0';
+            } else if (b >= 'A' && b <= 'F') {
+                digit = b - 'A' + 10;
+            } else {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * 校验data中position处的记录
+     *
+     * @return 记录的总长度,记录不完整或损坏时返回-1
+     */
+    private static int checkRecord(byte[] data, int position, int limit, CRC32 crc32) {
+        if (limit - position < HEADER_SIZE + 1
+                || data[position] != RECORD_MAGIC[0] || data[position + 1] != RECORD_MAGIC[1]
+                || data[position + HEADER_SIZE - 1] != '\n') {
+            return -1;
+        }
+        long contentLength = readHex(data, position + RECORD_MAGIC.length);
+        long crc = readHex(data, position + RECORD_MAGIC.length + 8);
+        if (contentLength < 0 || crc < 0 || contentLength > MAX_RECORD_SIZE
+                || limit - position < HEADER_SIZE + contentLength + 1) {
+            return -1;
+        }
+        int contentStart = position + HEADER_SIZE;
+        if (data[contentStart + (int) contentLength] != RECORD_TRAILER) {
+            return -1;
+        }
+        crc32.reset();
+        crc32.update(data, contentStart, (int) contentLength);
+        if (crc32.getValue() != crc) {
+            return -1;
+        }
+        return HEADER_SIZE + (int) contentLength + 1;
+    }
+
+    /**
+     * 恢复文件：从检查点开始校验记录,截掉第一条无效记录及之后的内容(不完整的记录、映射区域残留的0)
+     *
+     * @param file       文件
+     * @param checkpoint 检查点(已校验的内容末尾),不可信或没有时传0
+     * @return 有效内容的长度
+     */
+    public static long recover(File file, long checkpoint) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            long fileSize = randomAccessFile.length();
+            long position = checkpoint > 0 && checkpoint <= fileSize ? checkpoint : 0;
+            CRC32 crc32 = new CRC32();
+            byte[] scanBuffer = new byte[SCAN_BUFFER_SIZE];
+            while (position < fileSize) {
+                //读取一段,依次校验其中完整的记录;一条记录都不完整时扩大读取范围
+                int len = (int) Math.min(scanBuffer.length, fileSize - position);
+                randomAccessFile.seek(position);
+                randomAccessFile.readFully(scanBuffer, 0, len);
+                int offset = 0;
+                while (true) {
+                    int recordSize = checkRecord(scanBuffer, offset, len, crc32);
+                    if (recordSize < 0) {
+                        break;
+                    }
+                    offset += recordSize;
+                }
+                if (offset > 0) {
+                    position += offset;
+                    continue;
+                }
+                long needSize = requiredSize(scanBuffer, len);
+                if (needSize > scanBuffer.length && needSize <= fileSize - position) {
+                    scanBuffer = new byte[(int) needSize];
+                    continue;
+                }
+                break;
+            }
+            if (position < fileSize) {
+                randomAccessFile.setLength(position);
+            }
+            return position;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * 缓冲开头的记录需要的总长度,无法判断时返回-1
+     */
+    private static long requiredSize(byte[] data, int limit) {
+        if (limit < HEADER_SIZE || data[0] != RECORD_MAGIC[0] || data[1] != RECORD_MAGIC[1]) {
+            return -1;
+        }
+        long contentLength = readHex(data, RECORD_MAGIC.length);
+        if (contentLength < 0 || contentLength > MAX_RECORD_SIZE) {
+            return -1;
+        }
+        return HEADER_SIZE + contentLength + 1;
+    }
+
+    /**
+     * 文件是否为空或者记录日志格式(旧版本直接写入的文件不是),不是时不能调用 {@link #recover(File, long)}
+     *
+     * @param file 文件
+     */
+    public static boolean isJournalOrEmpty(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            if (randomAccessFile.length() < RECORD_MAGIC.length) {
+                return randomAccessFile.length() == 0;
+            }
+            return randomAccessFile.readByte() == RECORD_MAGIC[0] && randomAccessFile.readByte() == RECORD_MAGIC[1];
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * 是否为记录日志格式的内容
+     */
+    public static boolean isJournal(byte[] data) {
+        return data.length >= RECORD_MAGIC.length && data[0] == RECORD_MAGIC[0] && data[1] == RECORD_MAGIC[1];
+    }
+
+    /**
+     * 取出所有有效记录的内容并依次拼接,遇到无效记录时停止
+     *
+     * @param data 文件内容
+     */
+    public static byte[] unwrap(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        CRC32 crc32 = new CRC32();
+        int position = 0;
+        while (true) {
+            int recordSize = checkRecord(data, position, data.length, crc32);
+            if (recordSize < 0) {
+                break;
+            }
+            out.write(data, position + HEADER_SIZE, recordSize - HEADER_SIZE - 1);
+            position += recordSize;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 读取检查点,不存在或损坏时返回0
+     *
+     * @param checkpointFile 检查点文件
+     */
+    public static long readCheckpoint(File checkpointFile) {
+        if (!checkpointFile.isFile()) {
+            return 0;
+        }
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(checkpointFile, "r");
+            try {
+                if (randomAccessFile.length() < 16) {
+                    return 0;
+                }
+                long checkpoint = randomAccessFile.readLong();
+                //第二个long为校验,防止检查点文件写了一半
+                return randomAccessFile.readLong() == ~checkpoint ? checkpoint : 0;
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 写入检查点
+     *
+     * @param checkpointFile 检查点文件
+     * @param checkpoint     已校验的内容末尾
+     */
+    public static void writeCheckpoint(RandomAccessFile checkpointFile, long checkpoint) throws IOException {
+        checkpointFile.seek(0);
+        checkpointFile.writeLong(checkpoint);
+        checkpointFile.writeLong(~checkpoint);
+    }
+}
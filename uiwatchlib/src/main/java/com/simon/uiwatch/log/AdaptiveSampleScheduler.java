@@ -0,0 +1,133 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 自适应采样间隔调度
+ * <p>
+ * 1.帧已超时且主线程不空闲(卡顿进行中)：直接切换到最小间隔,高频采样;超时超过ANR的时长后不再视为卡顿进行中
+ * 帧已超时但主线程空闲(静止画面没有绘制、在后台、灭屏)：直接回退到最大间隔
+ * 2.最近出现过慢帧(帧率开始下降)：间隔逐步减半,向最小间隔靠拢
+ * 3.长时间没有慢帧：间隔逐步翻倍,向最大间隔回退,降低采样开销
+ * 4.其余情况：回到默认间隔(限制在最小与最大间隔之间)
+ * <p>
+ * 注意：非线程安全,只允许在LogNotifier_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class AdaptiveSampleScheduler {
+    /**
+     * 默认采样间隔(ms)
+     */
+    public static final long DEFAULT_INTERVAL_MS = 16;
+
+    /**
+     * 默认最小采样间隔(ms)
+     */
+    public static final long DEFAULT_MIN_INTERVAL_MS = 5;
+
+    /**
+     * 默认最大采样间隔(ms)
+     */
+    public static final long DEFAULT_MAX_INTERVAL_MS = 80;
+
+    /**
+     * 慢帧后保持加速的时间窗口(纳秒)
+     */
+    private static final long DEGRADE_WINDOW_NANOS = 1000000000L;
+
+    /**
+     * 超过此时间没有慢帧则开始回退(纳秒)
+     */
+    private static final long IDLE_BACKOFF_NANOS = 5000000000L;
+
+    /**
+     * 超过多少个帧间隔没有新的帧才认为帧已超时;帧时间为vsync的时间,vsync到帧回调之间本身就会超过一个帧间隔
+     */
+    private static final int LATE_FRAME_INTERVALS = 2;
+
+    /**
+     * 帧超时的时长上限(纳秒,输入事件5s未处理即ANR),超过后(例如在后台长时间没有帧)不再视为卡顿进行中
+     */
+    private static final long MAX_STALL_NANOS = 5000000000L;
+
+    /**
+     * 最小采样间隔(ms)
+     */
+    private long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+
+    /**
+     * 最大采样间隔(ms)
+     */
+    private long maxIntervalMs = DEFAULT_MAX_INTERVAL_MS;
+
+    /**
+     * 当前采样间隔(ms)
+     */
+    private long currentIntervalMs = DEFAULT_INTERVAL_MS;
+
+    /**
+     * 计算下次采样的间隔
+     *
+     * @param nowNanos           当前时间
+     * @param lastFrameNanos     最近一帧的时间,0表示还没有帧
+     * @param frameIntervalNanos 当前的帧间隔(刷新周期)
+     * @param lastSlowFrameNanos 最近一次慢帧的时间,0表示还没有慢帧
+     * @param isMainThreadIdle   本次采样时主线程是否空闲
+     * @return 下次采样间隔(ms)
+     */
+    public long nextInterval(long nowNanos, long lastFrameNanos, long frameIntervalNanos, long lastSlowFrameNanos,
+                             boolean isMainThreadIdle) {
+        long frameGapNanos = nowNanos - lastFrameNanos;
+        boolean isFrameLate = lastFrameNanos != 0 && frameGapNanos > frameIntervalNanos * LATE_FRAME_INTERVALS;
+        if (isFrameLate && !isMainThreadIdle && frameGapNanos < MAX_STALL_NANOS) {
+            //卡顿进行中
+            currentIntervalMs = minIntervalMs;
+        } else if (isFrameLate) {
+            //没有帧且主线程空闲(或没有帧的时间已经很长),不属于卡顿
+            currentIntervalMs = maxIntervalMs;
+        } else if (lastSlowFrameNanos != 0 && nowNanos - lastSlowFrameNanos < DEGRADE_WINDOW_NANOS) {
+            //帧率下降,逐步加速
+            currentIntervalMs = Math.max(minIntervalMs, currentIntervalMs / 2);
+        } else if (lastSlowFrameNanos == 0 || nowNanos - lastSlowFrameNanos > IDLE_BACKOFF_NANOS) {
+            //长时间流畅,逐步回退
+            currentIntervalMs = Math.min(maxIntervalMs, currentIntervalMs * 2);
+        } else {
+            currentIntervalMs = clamp(DEFAULT_INTERVAL_MS);
+        }
+        return currentIntervalMs;
+    }
+
+    /**
+     * 重置为默认间隔
+     */
+    public void reset() {
+        currentIntervalMs = clamp(DEFAULT_INTERVAL_MS);
+    }
+
+    /**
+     * 最小采样间隔(ms)
+     */
+    public long getMinIntervalMs() {
+        return minIntervalMs;
+    }
+
+    /**
+     * 设置采样间隔的范围
+     *
+     * @param minIntervalMs 最小采样间隔(ms)
+     * @param maxIntervalMs 最大采样间隔(ms)
+     */
+    public void setIntervalRange(long minIntervalMs, long maxIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        reset();
+    }
+
+    /**
+     * 将间隔限制在最小与最大间隔之间
+     */
+    private long clamp(long intervalMs) {
+        return Math.max(minIntervalMs, Math.min(maxIntervalMs, intervalMs));
+    }
+}
@@ -0,0 +1,237 @@
+package com.simon.uiwatch.log;
+
+import java.util.Arrays;
+
+/**
+ * 调用树(前缀树)
+ * 每次采样从栈底(ActivityThread.main、Looper.loop等)向栈顶插入,相同的前缀只保存一次,
+ * 一个堆栈对应树中的一个节点,比较两个堆栈是否相同只需要比较节点;
+ * 每个节点记录经过该节点的采样次数,次数为0的节点会被回收复用
+ * <p>
+ * 节点以数组存储,(父节点, 帧ID) -> 子节点 使用拉链哈希表查找,稳定运行时不分配内存
+ * 注意：非线程安全,只允许在LogExecutor_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class CallTree {
+    /**
+     * 根节点(不对应任何帧)
+     */
+    public static final int ROOT = 0;
+
+    /**
+     * 无效节点
+     */
+    private static final int NONE = -1;
+
+    /**
+     * 初始节点容量
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * 节点对应的帧ID
+     */
+    private int[] frameIds;
+
+    /**
+     * 父节点
+     */
+    private int[] parents;
+
+    /**
+     * 节点深度(根节点为0,栈底帧为1)
+     */
+    private int[] depths;
+
+    /**
+     * 经过该节点的采样次数
+     */
+    private int[] totalCounts;
+
+    /**
+     * 哈希表同一个桶内的下一个节点
+     */
+    private int[] bucketNexts;
+
+    /**
+     * 哈希桶 -> 第一个节点
+     */
+    private int[] buckets;
+
+    /**
+     * 已分配的节点数量(含已回收的)
+     */
+    private int nodeCount;
+
+    /**
+     * 回收的节点(通过bucketNexts串联)
+     */
+    private int freeNode = NONE;
+
+    public CallTree() {
+        frameIds = new int[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        depths = new int[INITIAL_CAPACITY];
+        totalCounts = new int[INITIAL_CAPACITY];
+        bucketNexts = new int[INITIAL_CAPACITY];
+        buckets = new int[INITIAL_CAPACITY];
+        Arrays.fill(buckets, NONE);
+        parents[ROOT] = NONE;
+        frameIds[ROOT] = NONE;
+        nodeCount = 1;
+    }
+
+    /**
+     * 查找堆栈对应的节点,不存在时创建
+     * 新创建的节点在 {@link #addSamples(int, int)} 之前经过次数为0,需要立即添加采样
+     *
+     * @param ids   帧ID(栈顶在前)
+     * @param count 帧数量
+     * @return 栈顶帧对应的节点
+     */
+    public int insert(int[] ids, int count) {
+        int node = ROOT;
+        for (int i = count - 1; i >= 0; i--) {
+            int child = findChild(node, ids[i]);
+            if (child == NONE) {
+                child = newNode(node, ids[i]);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * 增加(或减少)以节点为栈顶的采样次数,经过次数减为0的节点被回收;
+     * 同时有新插入的堆栈时,需要先为其添加采样,再减少其他堆栈的采样,避免共用的节点被提前回收
+     *
+     * @param node  栈顶节点
+     * @param delta 次数变化
+     */
+    public void addSamples(int node, int delta) {
+        while (node != ROOT) {
+            int parent = parents[node];
+            totalCounts[node] += delta;
+            if (totalCounts[node] <= 0) {
+                removeNode(node);
+            }
+            node = parent;
+        }
+        totalCounts[ROOT] += delta;
+    }
+
+    /**
+     * 经过节点的采样次数
+     */
+    public int getSampleCount(int node) {
+        return totalCounts[node];
+    }
+
+    /**
+     * 节点的深度,即堆栈的帧数量
+     */
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    /**
+     * 将节点对应的堆栈写入缓冲(栈顶在前)
+     *
+     * @param node 栈顶节点
+     * @param out  缓冲,长度不小于 {@link #getDepth(int)}
+     * @return 帧数量
+     */
+    public int getFrameIds(int node, int[] out) {
+        int depth = depths[node];
+        for (int i = 0; i < depth; i++) {
+            out[i] = frameIds[node];
+            node = parents[node];
+        }
+        return depth;
+    }
+
+    /**
+     * 清空
+     */
+    public void clear() {
+        Arrays.fill(buckets, NONE);
+        totalCounts[ROOT] = 0;
+        nodeCount = 1;
+        freeNode = NONE;
+    }
+
+    private int findChild(int parent, int frameId) {
+        int node = buckets[bucketOf(parent, frameId)];
+        while (node != NONE) {
+            if (parents[node] == parent && frameIds[node] == frameId) {
+                return node;
+            }
+            node = bucketNexts[node];
+        }
+        return NONE;
+    }
+
+    private int newNode(int parent, int frameId) {
+        int node;
+        if (freeNode != NONE) {
+            node = freeNode;
+            freeNode = bucketNexts[node];
+        } else {
+            if (nodeCount == frameIds.length) {
+                grow();
+            }
+            node = nodeCount++;
+        }
+        frameIds[node] = frameId;
+        parents[node] = parent;
+        depths[node] = depths[parent] + 1;
+        totalCounts[node] = 0;
+        int bucket = bucketOf(parent, frameId);
+        bucketNexts[node] = buckets[bucket];
+        buckets[bucket] = node;
+        return node;
+    }
+
+    private void removeNode(int node) {
+        int bucket = bucketOf(parents[node], frameIds[node]);
+        if (buckets[bucket] == node) {
+            buckets[bucket] = bucketNexts[node];
+        } else {
+            int previous = buckets[bucket];
+            while (bucketNexts[previous] != node) {
+                previous = bucketNexts[previous];
+            }
+            bucketNexts[previous] = bucketNexts[node];
+        }
+        bucketNexts[node] = freeNode;
+        freeNode = node;
+    }
+
+    private int bucketOf(int parent, int frameId) {
+        int hash = parent * 31 + frameId;
+        hash ^= hash >>> 16;
+        return hash & (buckets.length - 1);
+    }
+
+    /**
+     * 节点数组按2倍扩容,并重建哈希表(只在没有可复用的节点时发生)
+     */
+    private void grow() {
+        int newCapacity = frameIds.length * 2;
+        frameIds = Arrays.copyOf(frameIds, newCapacity);
+        parents = Arrays.copyOf(parents, newCapacity);
+        depths = Arrays.copyOf(depths, newCapacity);
+        totalCounts = Arrays.copyOf(totalCounts, newCapacity);
+        bucketNexts = new int[newCapacity];
+        buckets = new int[newCapacity];
+        Arrays.fill(buckets, NONE);
+        for (int node = 1; node < nodeCount; node++) {
+            int bucket = bucketOf(parents[node], frameIds[node]);
+            bucketNexts[node] = buckets[bucket];
+            buckets[bucket] = node;
+        }
+    }
+}
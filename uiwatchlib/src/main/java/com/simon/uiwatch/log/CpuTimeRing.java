@@ -0,0 +1,94 @@
+package com.simon.uiwatch.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 主线程CPU时间环形缓冲
+ * 每次采样时由LogNotifier_Thread写入采样时间和主线程的CPU时间,输出卡顿时由LogExecutor_Thread读取,
+ * 计算卡顿帧时间范围内主线程的CPU时间与墙上时间之比,用于区分主线程是在计算还是在等待(锁、IO、调度)
+ * <p>
+ * 单写单读：只允许一个线程调用 {@link #add(long, long)},读取时不加锁,通过写入数量判断是否被覆盖
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class CpuTimeRing {
+    /**
+     * 容量(2的幂),以5ms的最小采样间隔约可保存5秒
+     */
+    private static final int CAPACITY = 1024;
+
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * 采样时间(纳秒,System.nanoTime)
+     */
+    private final long[] timestamps = new long[CAPACITY];
+
+    /**
+     * 采样时主线程的CPU时间(纳秒)
+     */
+    private final long[] cpuTimes = new long[CAPACITY];
+
+    /**
+     * 已写入的数量,写入数据之后再更新
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+
+    /**
+     * 写入一次采样(不分配内存、不加锁)
+     *
+     * @param timestampNanos 采样时间
+     * @param cpuTimeNanos   主线程的CPU时间
+     */
+    public void add(long timestampNanos, long cpuTimeNanos) {
+        long count = writeCount.get();
+        int slot = (int) (count & MASK);
+        timestamps[slot] = timestampNanos;
+        cpuTimes[slot] = cpuTimeNanos;
+        writeCount.lazySet(count + 1);
+    }
+
+    /**
+     * 计算时间范围内(第一次到最后一次采样之间)主线程的CPU时间
+     *
+     * @param startNanos 开始时间
+     * @param endNanos   结束时间
+     * @param out        long[2],依次写入CPU时间和对应的墙上时间(纳秒)
+     * @return 范围内是否至少有两次采样
+     */
+    public boolean getCpuTime(long startNanos, long endNanos, long[] out) {
+        long count = writeCount.get();
+        long oldest = Math.max(0, count - CAPACITY);
+        long lastIndex = -1;
+        long firstIndex = -1;
+        for (long index = count - 1; index >= oldest; index--) {
+            long timestamp = timestamps[(int) (index & MASK)];
+            if (timestamp > endNanos) {
+                continue;
+            }
+            if (timestamp < startNanos) {
+                break;
+            }
+            if (lastIndex < 0) {
+                lastIndex = index;
+            }
+            firstIndex = index;
+        }
+        if (lastIndex < 0 || firstIndex == lastIndex) {
+            return false;
+        }
+        int first = (int) (firstIndex & MASK);
+        int last = (int) (lastIndex & MASK);
+        long cpuNanos = cpuTimes[last] - cpuTimes[first];
+        long wallNanos = timestamps[last] - timestamps[first];
+        //读取期间被覆盖则放弃
+        if (writeCount.get() - firstIndex > CAPACITY || cpuNanos < 0 || wallNanos <= 0) {
+            return false;
+        }
+        out[0] = cpuNanos;
+        out[1] = wallNanos;
+        return true;
+    }
+}
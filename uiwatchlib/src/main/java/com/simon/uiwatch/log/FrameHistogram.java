@@ -0,0 +1,247 @@
+package com.simon.uiwatch.log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 帧时长直方图
+ * 参考HdrHistogram的对数分桶：以微秒为单位,每个2的幂区间再均分为64个子桶,相对误差不超过1/64,
+ * 占用固定内存(约16KB),记录时不分配内存
+ * <p>
+ * 1.分位数：p50、p90、p99、p99.9等,见 {@link #getValueAtPercentile(double)}
+ * 2.冻帧(超过700ms)数量、慢帧比例
+ * 3.支持按时间段取出并重置({@link #snapshotAndReset()}),以及合并多个时间段({@link #add(FrameHistogram)})
+ * <p>
+ * 所有方法线程安全
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class FrameHistogram {
+    /**
+     * 冻帧阈值(纳秒)
+     */
+    public static final long FROZEN_FRAME_NANOS = 700000000L;
+
+    /**
+     * 子桶数量的位数,前128个值精确记录,之后每个2的幂区间分为64个子桶
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * 可记录的最大值(微秒),约19小时,超出按最大值记录
+     */
+    private static final long MAX_VALUE_MICROS = (1L << 36) - 1;
+
+    /**
+     * 桶的数量
+     */
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE_MICROS) + 1;
+
+    /**
+     * 每个桶的帧数量
+     */
+    private final long[] counts = new long[BUCKET_COUNT];
+
+    /**
+     * 总帧数
+     */
+    private long totalCount;
+
+    /**
+     * 帧时长总和(纳秒)
+     */
+    private long totalNanos;
+
+    /**
+     * 最长的帧(纳秒)
+     */
+    private long maxNanos;
+
+    /**
+     * 慢帧数量
+     */
+    private long slowFrameCount;
+
+    /**
+     * 冻帧数量
+     */
+    private long frozenFrameCount;
+
+    /**
+     * 记录一帧
+     *
+     * @param durationNanos 帧时长(与上一帧的时间差)
+     * @param isSlow        是否为慢帧
+     */
+    public synchronized void record(long durationNanos, boolean isSlow) {
+        if (durationNanos < 0) {
+            return;
+        }
+        counts[indexOf(Math.min(durationNanos / 1000, MAX_VALUE_MICROS))]++;
+        totalCount++;
+        totalNanos += durationNanos;
+        maxNanos = Math.max(maxNanos, durationNanos);
+        if (isSlow) {
+            slowFrameCount++;
+        }
+        if (durationNanos >= FROZEN_FRAME_NANOS) {
+            frozenFrameCount++;
+        }
+    }
+
+    /**
+     * 合并另一个直方图
+     *
+     * @param other 另一个直方图
+     */
+    public void add(FrameHistogram other) {
+        FrameHistogram copy = other.copy();
+        synchronized (this) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += copy.counts[i];
+            }
+            totalCount += copy.totalCount;
+            totalNanos += copy.totalNanos;
+            maxNanos = Math.max(maxNanos, copy.maxNanos);
+            slowFrameCount += copy.slowFrameCount;
+            frozenFrameCount += copy.frozenFrameCount;
+        }
+    }
+
+    /**
+     * 复制当前内容
+     */
+    public synchronized FrameHistogram copy() {
+        FrameHistogram copy = new FrameHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKET_COUNT);
+        copy.totalCount = totalCount;
+        copy.totalNanos = totalNanos;
+        copy.maxNanos = maxNanos;
+        copy.slowFrameCount = slowFrameCount;
+        copy.frozenFrameCount = frozenFrameCount;
+        return copy;
+    }
+
+    /**
+     * 取出当前内容并重置,用于按时间段统计
+     */
+    public synchronized FrameHistogram snapshotAndReset() {
+        FrameHistogram copy = copy();
+        reset();
+        return copy;
+    }
+
+    /**
+     * 重置
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        slowFrameCount = 0;
+        frozenFrameCount = 0;
+    }
+
+    /**
+     * 分位数对应的帧时长(纳秒),误差不超过1/64
+     *
+     * @param percentile 百分位,如 50、90、99、99.9
+     * @return 帧时长(纳秒),没有数据时返回0
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.max(0, Math.min(100, percentile));
+        long targetCount = Math.max(1, (long) Math.ceil(clamped / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts[i];
+            if (count >= targetCount) {
+                return Math.min(highestValueOf(i) * 1000 + 999, maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * 总帧数
+     */
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 平均帧时长(纳秒)
+     */
+    public synchronized long getMeanNanos() {
+        return totalCount == 0 ? 0 : totalNanos / totalCount;
+    }
+
+    /**
+     * 最长的帧(纳秒)
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * 慢帧数量(超过1.5个刷新周期)
+     */
+    public synchronized long getSlowFrameCount() {
+        return slowFrameCount;
+    }
+
+    /**
+     * 慢帧比例(0~1)
+     */
+    public synchronized double getSlowFrameRatio() {
+        return totalCount == 0 ? 0 : (double) slowFrameCount / totalCount;
+    }
+
+    /**
+     * 冻帧数量(超过700ms)
+     */
+    public synchronized long getFrozenFrameCount() {
+        return frozenFrameCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "frames: %d, p50: %.1fms, p90: %.1fms, p99: %.1fms, p99.9: %.1fms, max: %.1fms, slow: %.2f%%, frozen: %d",
+                totalCount, getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6, getValueAtPercentile(99) / 1e6,
+                getValueAtPercentile(99.9) / 1e6, maxNanos / 1e6, getSlowFrameRatio() * 100, frozenFrameCount);
+    }
+
+    /**
+     * 值(微秒)对应的桶下标
+     */
+    private static int indexOf(long valueMicros) {
+        if (valueMicros < SUB_BUCKET_COUNT) {
+            return (int) valueMicros;
+        }
+        //将值右移到 [64, 128) 区间,移动的位数即为所在的2的幂区间
+        int shift = 63 - Long.numberOfLeadingZeros(valueMicros) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (valueMicros >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    /**
+     * 桶内的最大值(微秒)
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
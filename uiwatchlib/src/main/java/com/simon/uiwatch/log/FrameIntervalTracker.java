@@ -0,0 +1,117 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 帧间隔(刷新周期)跟踪
+ * 优先使用屏幕报告的刷新率(设置了Context时由DisplayListener更新),
+ * 否则根据观测到的帧间隔估算：每个窗口内的最小帧间隔即为刷新周期,窗口内大部分帧流畅时才采用
+ * <p>
+ * 注意：{@link #onFrameDelta(long)} 只允许在LogNotifier_Thread中调用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class FrameIntervalTracker {
+    /**
+     * 默认帧间隔(纳秒),60Hz
+     */
+    public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+    /**
+     * 有效帧间隔的下限(纳秒),约240Hz
+     */
+    private static final long MIN_FRAME_INTERVAL_NANOS = 4000000L;
+
+    /**
+     * 有效帧间隔的上限(纳秒),约20Hz
+     */
+    private static final long MAX_FRAME_INTERVAL_NANOS = 50000000L;
+
+    /**
+     * 估算窗口的帧数量
+     */
+    private static final int WINDOW_SIZE = 60;
+
+    /**
+     * 屏幕报告的帧间隔(纳秒),0表示未知
+     */
+    private volatile long displayFrameIntervalNanos;
+
+    /**
+     * 估算的帧间隔(纳秒)
+     */
+    private long estimatedFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    /**
+     * 当前窗口的帧间隔
+     */
+    private final long[] windowDeltas = new long[WINDOW_SIZE];
+
+    /**
+     * 当前窗口已有的帧间隔数量
+     */
+    private int windowCount;
+
+    /**
+     * 当前使用的帧间隔(纳秒)
+     */
+    public long getFrameIntervalNanos() {
+        long displayInterval = displayFrameIntervalNanos;
+        return displayInterval > 0 ? displayInterval : estimatedFrameIntervalNanos;
+    }
+
+    /**
+     * 屏幕刷新率变化(任意线程调用)
+     *
+     * @param refreshRate 刷新率(Hz),不合法时忽略
+     */
+    public void setDisplayRefreshRate(float refreshRate) {
+        if (refreshRate <= 0) {
+            return;
+        }
+        long interval = (long) (1000000000L / refreshRate);
+        if (interval >= MIN_FRAME_INTERVAL_NANOS && interval <= MAX_FRAME_INTERVAL_NANOS) {
+            displayFrameIntervalNanos = interval;
+        }
+    }
+
+    /**
+     * 记录一次观测到的帧间隔
+     *
+     * @param deltaNanos 相邻两帧的时间差
+     */
+    public void onFrameDelta(long deltaNanos) {
+        windowDeltas[windowCount++] = deltaNanos;
+        if (windowCount < WINDOW_SIZE) {
+            return;
+        }
+        windowCount = 0;
+        long min = Long.MAX_VALUE;
+        for (long delta : windowDeltas) {
+            if (delta >= MIN_FRAME_INTERVAL_NANOS && delta < min) {
+                min = delta;
+            }
+        }
+        if (min > MAX_FRAME_INTERVAL_NANOS) {
+            return;
+        }
+        //窗口内一半以上的帧接近最小间隔,才认为最小间隔是刷新周期,避免持续卡顿时误判
+        int smoothCount = 0;
+        for (long delta : windowDeltas) {
+            if (delta <= min + min / 2) {
+                smoothCount++;
+            }
+        }
+        if (smoothCount * 2 >= WINDOW_SIZE) {
+            estimatedFrameIntervalNanos = min;
+        }
+    }
+
+    /**
+     * 重置估算
+     */
+    public void reset() {
+        windowCount = 0;
+        estimatedFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+}
@@ -0,0 +1,84 @@
+package com.simon.uiwatch.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 帧时间环形缓冲
+ * 主线程在帧回调中只写入一个long(帧时间戳),跳帧的计算全部在LogNotifier_Thread中进行
+ * <p>
+ * 单写单读：只允许主线程调用 {@link #add(long)},只允许一个读线程读取;
+ * 读取过慢时旧的帧时间会被覆盖,读线程通过 {@link #isOverwritten(long)} 判断
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class FrameTimeRing {
+    /**
+     * 容量(2的幂),120Hz下约可保存4秒的帧
+     */
+    private static final int CAPACITY = 512;
+
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * 帧时间戳
+     */
+    private final long[] frameTimes = new long[CAPACITY];
+
+    /**
+     * 已写入的帧数量,写入帧时间之后再更新,读线程据此判断可读范围
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+
+    /**
+     * 写入一帧的时间戳(主线程调用,不分配内存、不加锁)
+     *
+     * @param frameTimeNanos 帧时间戳
+     */
+    public void add(long frameTimeNanos) {
+        long count = writeCount.get();
+        frameTimes[(int) (count & MASK)] = frameTimeNanos;
+        writeCount.lazySet(count + 1);
+    }
+
+    /**
+     * 已写入的帧数量
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * 读取第index帧的时间戳,读取后需要通过 {@link #isOverwritten(long)} 确认没有被覆盖
+     *
+     * @param index 帧序号,小于 {@link #getWriteCount()}
+     */
+    public long get(long index) {
+        return frameTimes[(int) (index & MASK)];
+    }
+
+    /**
+     * 第index帧是否已经被覆盖
+     *
+     * @param index 帧序号
+     */
+    public boolean isOverwritten(long index) {
+        return writeCount.get() - index > CAPACITY;
+    }
+
+    /**
+     * 最近一帧的时间戳,还没有帧时返回0
+     */
+    public long getLatest() {
+        long count = writeCount.get();
+        return count == 0 ? 0 : frameTimes[(int) ((count - 1) & MASK)];
+    }
+
+    /**
+     * 最多可保存的帧数量
+     */
+    public int capacity() {
+        return CAPACITY;
+    }
+}
@@ -0,0 +1,332 @@
+package com.simon.uiwatch.log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次卡顿的事件(不可变)
+ * 由LogExecutor_Thread直接根据采样缓冲生成(不经过文本格式化),通过 {@link com.simon.uiwatch.callback.JankListener} 回调;
+ * 相同的堆栈只出现一次,并记录出现次数、首次/最近一次出现的时间以及采样时主线程的状态
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public final class JankEvent {
+    /**
+     * 折叠后的占位帧的类名,方法名为折叠的说明(例如 "... 12 framework frames ...")
+     */
+    public static final String COLLAPSED_FRAMES_CLASS_NAME = StackFrameDictionary.PLACEHOLDER_CLASS_NAME;
+
+    /**
+     * 卡顿发生时的时间(ms,System.currentTimeMillis)
+     */
+    private final long wallTimeMillis;
+
+    /**
+     * 卡顿帧的开始时间(纳秒,System.nanoTime)
+     */
+    private final long frameStartNanos;
+
+    /**
+     * 卡顿帧的结束时间(纳秒,System.nanoTime)
+     */
+    private final long frameEndNanos;
+
+    /**
+     * 跳过的帧数,单独输出的超时消息(没有对应的卡顿帧)为0
+     */
+    private final int skippedFrames;
+
+    /**
+     * 卡顿期间的堆栈(去重),按首次出现的时间排列
+     */
+    private final List<Stack> stacks;
+
+    /**
+     * 所有堆栈的出现次数之和
+     */
+    private final int totalSampleCount;
+
+    /**
+     * 卡顿等级,见 {@link JankSeverity}
+     */
+    private final int severity;
+
+    /**
+     * 卡顿期间抓取的全部线程的堆栈,可为null
+     */
+    private final ThreadDump threadDump;
+
+    /**
+     * 卡顿期间主线程的CPU时间(纳秒),-1为未知
+     */
+    private final long cpuTimeNanos;
+
+    /**
+     * CPU时间对应的墙上时间(纳秒)
+     */
+    private final long cpuWallNanos;
+
+    /**
+     * 卡顿期间耗时最长的超时主线程消息,可为null
+     */
+    private final String slowMessage;
+
+    /**
+     * 超时消息的耗时(纳秒)
+     */
+    private final long slowMessageNanos;
+
+    /**
+     * 卡顿期间主线程消息队列的积压,可为null
+     */
+    private final QueueBacklog queueBacklog;
+
+    JankEvent(long wallTimeMillis, long frameStartNanos, long frameEndNanos, int skippedFrames, Stack[] stacks,
+              int severity, ThreadDump threadDump, long cpuTimeNanos, long cpuWallNanos, String slowMessage,
+              long slowMessageNanos, QueueBacklog queueBacklog) {
+        this.wallTimeMillis = wallTimeMillis;
+        this.frameStartNanos = frameStartNanos;
+        this.frameEndNanos = frameEndNanos;
+        this.skippedFrames = skippedFrames;
+        this.stacks = Collections.unmodifiableList(Arrays.asList(stacks));
+        int sampleCount = 0;
+        for (Stack stack : stacks) {
+            sampleCount += stack.sampleCount;
+        }
+        this.totalSampleCount = sampleCount;
+        this.severity = severity;
+        this.threadDump = threadDump;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.cpuWallNanos = cpuWallNanos;
+        this.slowMessage = slowMessage;
+        this.slowMessageNanos = slowMessageNanos;
+        this.queueBacklog = queueBacklog;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    /**
+     * 卡顿帧的开始时间(纳秒,System.nanoTime),0表示未知
+     */
+    public long getFrameStartNanos() {
+        return frameStartNanos;
+    }
+
+    /**
+     * 卡顿帧的结束时间(纳秒,System.nanoTime)
+     */
+    public long getFrameEndNanos() {
+        return frameEndNanos;
+    }
+
+    /**
+     * 卡顿时长(纳秒),开始时间未知时为0
+     */
+    public long getDurationNanos() {
+        return frameStartNanos == 0 ? 0 : frameEndNanos - frameStartNanos;
+    }
+
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * 卡顿期间的堆栈(去重,不可修改),按首次出现的时间排列
+     */
+    public List<Stack> getStacks() {
+        return stacks;
+    }
+
+    /**
+     * 所有堆栈的出现次数之和(采样次数)
+     */
+    public int getTotalSampleCount() {
+        return totalSampleCount;
+    }
+
+    /**
+     * 卡顿等级,见 {@link JankSeverity}
+     */
+    public int getSeverity() {
+        return severity;
+    }
+
+    /**
+     * 卡顿期间(冻帧及以上)抓取的全部线程的堆栈
+     *
+     * @return 没有抓取时返回null
+     */
+    public ThreadDump getThreadDump() {
+        return threadDump;
+    }
+
+    /**
+     * 卡顿期间主线程的CPU时间(纳秒,utime + stime)
+     *
+     * @return 未开启或采样不足时返回-1
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * CPU时间对应的墙上时间(纳秒,卡顿期间第一次到最后一次采样)
+     */
+    public long getCpuWallNanos() {
+        return cpuWallNanos;
+    }
+
+    /**
+     * 卡顿期间耗时最长的超时主线程消息(目标Handler、callback、what)
+     *
+     * @return 未开启消息耗时统计或没有超时消息时返回null
+     */
+    public String getSlowMessage() {
+        return slowMessage;
+    }
+
+    /**
+     * 超时消息的耗时(纳秒)
+     */
+    public long getSlowMessageNanos() {
+        return slowMessageNanos;
+    }
+
+    /**
+     * 卡顿期间主线程消息队列的积压
+     *
+     * @return 未开启或卡顿期间没有采样时返回null
+     */
+    public QueueBacklog getQueueBacklog() {
+        return queueBacklog;
+    }
+
+    @Override
+    public String toString() {
+        return "JankEvent{severity=" + JankSeverity.getName(severity)
+                + ", skippedFrames=" + skippedFrames
+                + ", duration=" + getDurationNanos() / 1000000 + "ms"
+                + ", stacks=" + stacks.size()
+                + ", samples=" + totalSampleCount
+                + (cpuTimeNanos < 0 ? "" : ", cpu=" + cpuTimeNanos / 1000000 + "ms/" + cpuWallNanos / 1000000 + "ms")
+                + (slowMessage == null ? "" : ", slowMessage=" + slowMessage + " " + slowMessageNanos / 1000000 + "ms")
+                + (queueBacklog == null ? "" : ", queueBacklog=" + queueBacklog)
+                + "}";
+    }
+
+    /**
+     * 卡顿期间的一个堆栈(不可变)
+     */
+    public static final class Stack {
+        /**
+         * 线程状态,下标为采样时记录的序号
+         */
+        private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+        /**
+         * 帧(栈顶在前),折叠的系统帧以类名为 {@link #COLLAPSED_FRAMES_CLASS_NAME} 的占位帧表示
+         */
+        private final StackTraceElement[] frames;
+
+        /**
+         * 出现次数
+         */
+        private final int sampleCount;
+
+        /**
+         * 首次出现的时间(纳秒,System.nanoTime)
+         */
+        private final long firstTimestampNanos;
+
+        /**
+         * 最近一次出现的时间(纳秒,System.nanoTime)
+         */
+        private final long lastTimestampNanos;
+
+        /**
+         * 最近一次出现时主线程的状态,未知时为null
+         */
+        private final Thread.State threadState;
+
+        /**
+         * 最近一次出现时主线程等待的锁及其持有者,可为null
+         */
+        private final String lockInfo;
+
+        Stack(StackTraceElement[] frames, int sampleCount, long firstTimestampNanos, long lastTimestampNanos,
+              int threadState, String lockInfo) {
+            this.frames = frames;
+            this.sampleCount = sampleCount;
+            this.firstTimestampNanos = firstTimestampNanos;
+            this.lastTimestampNanos = lastTimestampNanos;
+            this.threadState = threadState >= 0 && threadState < THREAD_STATES.length ? THREAD_STATES[threadState] : null;
+            this.lockInfo = lockInfo;
+        }
+
+        /**
+         * 帧数量
+         */
+        public int getFrameCount() {
+            return frames.length;
+        }
+
+        /**
+         * 获取帧
+         *
+         * @param index 0为栈顶
+         */
+        public StackTraceElement getFrame(int index) {
+            return frames[index];
+        }
+
+        /**
+         * 获取全部帧(栈顶在前),返回副本
+         */
+        public StackTraceElement[] getFrames() {
+            return frames.clone();
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        public long getFirstTimestampNanos() {
+            return firstTimestampNanos;
+        }
+
+        public long getLastTimestampNanos() {
+            return lastTimestampNanos;
+        }
+
+        /**
+         * 最近一次出现时主线程的状态(RUNNABLE、BLOCKED、WAITING等)
+         *
+         * @return 未知时返回null
+         */
+        public Thread.State getThreadState() {
+            return threadState;
+        }
+
+        /**
+         * 最近一次出现时主线程等待的锁及其持有者(仅BLOCKED时),例如 "java.lang.Object@1a2b3c held by worker-1"
+         *
+         * @return 不是BLOCKED或平台不支持时返回null
+         */
+        public String getLockInfo() {
+            return lockInfo;
+        }
+
+        @Override
+        public String toString() {
+            return "Stack{samples=" + sampleCount
+                    + ", threadState=" + threadState
+                    + (lockInfo == null ? "" : ", lock=" + lockInfo)
+                    + ", top=" + (frames.length == 0 ? null : frames[0]) + "}";
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.simon.uiwatch.log;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+import com.simon.uiwatch.callback.JankListener;
+import com.simon.uiwatch.sink.JankSink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 卡顿事件分发者
+ * 独立的JankEvent_Thread负责回调 {@link JankListener},监听者的耗时不会影响采样和日志输出
+ * <p>
+ * 1.提交时直接加入待分发列表(加锁),到达分发时间后一次性回调,同一时间段内的多次卡顿合并为一批,
+ * 每批只发送一条分发消息,监听者处理过慢时分发线程的消息队列也不会堆积
+ * 2.两次回调之间至少间隔dispatchInterval(ms),即最多每秒 1000/dispatchInterval 次回调
+ * 3.待分发的事件超过{@link #MAX_PENDING_EVENTS}条时在提交时丢弃最旧的一条,并记录丢弃的数量
+ * 4.作为输出目标时只需要卡顿事件,没有监听者时不需要任何内容,分发线程在首次有事件时才创建
+ * <p>
+ * 注意：{@link #submit(JankEvent)} 和 {@link #stop()} 只允许在LogExecutor_Thread中调用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class JankEventDispatcher implements JankSink {
+    /**
+     * 默认的最小回调间隔(ms)
+     */
+    public static final long DEFAULT_DISPATCH_INTERVAL_MS = 1000;
+
+    /**
+     * 待分发事件的最大数量
+     */
+    private static final int MAX_PENDING_EVENTS = 64;
+
+    //------------- type config-------------------
+    /**
+     * 分发
+     */
+    private static final int TYPE_DISPATCH = 1;
+
+    /**
+     * 监听者(由调用方持有,可随时增删)
+     */
+    private final List<JankListener> listeners;
+
+    /**
+     * 两次回调之间的最小间隔(ms)
+     */
+    private final long dispatchIntervalMs;
+
+    /**
+     * 待分发的事件,同时作为锁,保护isDispatchScheduled和lastDispatchUptime
+     */
+    private final List<JankEvent> pendingEvents = new ArrayList<>();
+
+    /**
+     * 丢弃的事件数量
+     */
+    private final AtomicLong droppedEventCount = new AtomicLong();
+
+    private HandlerThread dispatcherThread;
+
+    private Handler dispatcherHandler;
+
+    /**
+     * 是否已经安排了分发(发送了分发消息)
+     */
+    private boolean isDispatchScheduled = false;
+
+    /**
+     * 上一次回调的时间(uptime ms)
+     */
+    private long lastDispatchUptime = 0;
+
+    /**
+     * 构造方法
+     *
+     * @param listeners          监听者,遍历时不加锁,需要为线程安全的列表(例如CopyOnWriteArrayList)
+     * @param dispatchIntervalMs 两次回调之间的最小间隔(ms),0为不限制
+     */
+    public JankEventDispatcher(List<JankListener> listeners, long dispatchIntervalMs) {
+        this.listeners = listeners;
+        this.dispatchIntervalMs = Math.max(0, dispatchIntervalMs);
+    }
+
+    @Override
+    public int getInputs() {
+        return listeners.isEmpty() ? 0 : INPUT_EVENT;
+    }
+
+    /**
+     * 分发线程在首次提交事件时创建
+     */
+    @Override
+    public void start() {
+    }
+
+    /**
+     * 开启分发线程
+     */
+    private void startDispatcherThread() {
+        dispatcherThread = new HandlerThread("JankEvent_Thread");
+        dispatcherThread.start();
+        dispatcherHandler = new Handler(dispatcherThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                super.handleMessage(msg);
+                handleDispatcherMessage(msg);
+            }
+        };
+    }
+
+    /**
+     * 提交事件,不等待回调
+     *
+     * @param event 事件
+     */
+    public void submit(JankEvent event) {
+        if (event == null) {
+            return;
+        }
+        if (dispatcherHandler == null) {
+            startDispatcherThread();
+        }
+        long dispatchUptime;
+        synchronized (pendingEvents) {
+            if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+                pendingEvents.remove(0);
+                droppedEventCount.incrementAndGet();
+            }
+            pendingEvents.add(event);
+            if (isDispatchScheduled) {
+                return;
+            }
+            isDispatchScheduled = true;
+            dispatchUptime = Math.max(SystemClock.uptimeMillis(), lastDispatchUptime + dispatchIntervalMs);
+        }
+        dispatcherHandler.sendEmptyMessageAtTime(TYPE_DISPATCH, dispatchUptime);
+    }
+
+    @Override
+    public void submit(JankReport report, JankEvent event) {
+        submit(event);
+    }
+
+    /**
+     * 分发剩余的事件后退出分发线程(不等待最小回调间隔)
+     */
+    @Override
+    public void stop() {
+        if (dispatcherHandler == null) {
+            return;
+        }
+        dispatcherHandler.removeMessages(TYPE_DISPATCH);
+        synchronized (pendingEvents) {
+            isDispatchScheduled = false;
+        }
+        dispatcherHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                dispatchPendingEvents();
+                Looper.myLooper().quit();
+            }
+        });
+        dispatcherHandler = null;
+        dispatcherThread = null;
+    }
+
+    /**
+     * 丢弃的事件数量
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    private void handleDispatcherMessage(Message msg) {
+        switch (msg.what) {
+            case TYPE_DISPATCH:
+                dispatchPendingEvents();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 一次性回调所有待分发的事件,单个监听者的异常不影响其他监听者
+     */
+    private void dispatchPendingEvents() {
+        List<JankEvent> events;
+        synchronized (pendingEvents) {
+            isDispatchScheduled = false;
+            if (pendingEvents.isEmpty()) {
+                return;
+            }
+            lastDispatchUptime = SystemClock.uptimeMillis();
+            events = Collections.unmodifiableList(new ArrayList<>(pendingEvents));
+            pendingEvents.clear();
+        }
+        for (JankListener listener : listeners) {
+            try {
+                listener.onJankEvents(events);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
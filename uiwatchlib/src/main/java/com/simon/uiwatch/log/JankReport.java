@@ -0,0 +1,369 @@
+package com.simon.uiwatch.log;
+
+import java.util.Arrays;
+
+/**
+ * 一次卡顿的报告(不可变)
+ * 由LogExecutor_Thread根据采样缓冲的快照生成,交给LogWriter_Thread写入文件,
+ * 帧使用报告内的下标引用,同一个帧在报告中只保存一次
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class JankReport {
+    /**
+     * 卡顿发生时的时间(ms,System.currentTimeMillis)
+     */
+    private final long wallTimeMillis;
+
+    /**
+     * 卡顿帧的开始时间(纳秒,System.nanoTime)
+     */
+    private final long frameStartNanos;
+
+    /**
+     * 卡顿帧的结束时间(纳秒,System.nanoTime)
+     */
+    private final long frameEndNanos;
+
+    /**
+     * 跳过的帧数,单独输出的超时消息(没有对应的卡顿帧)为0
+     */
+    private final int skippedFrames;
+
+    /**
+     * 报告中用到的所有帧(去重)
+     */
+    private final String[] frames;
+
+    /**
+     * 每次采样(不同的堆栈)首次出现的时间(纳秒,System.nanoTime)
+     */
+    private final long[] sampleTimestamps;
+
+    /**
+     * 每次采样(不同的堆栈)最近一次出现的时间(纳秒,System.nanoTime)
+     */
+    private final long[] sampleLastTimestamps;
+
+    /**
+     * 每次采样(不同的堆栈)出现的次数
+     */
+    private final int[] sampleRepeatCounts;
+
+    /**
+     * 每次采样的帧在sampleFrames中的起始位置,长度为采样数量+1
+     */
+    private final int[] sampleOffsets;
+
+    /**
+     * 所有采样的帧下标(指向frames),栈顶在前
+     */
+    private final int[] sampleFrames;
+
+    /**
+     * 文本格式的内容,可为null
+     */
+    private final String text;
+
+    /**
+     * 卡顿等级,见 {@link JankSeverity}
+     */
+    private final int severity;
+
+    /**
+     * 卡顿期间抓取的全部线程的堆栈,可为null
+     */
+    private final ThreadDump threadDump;
+
+    /**
+     * 每次采样(不同的堆栈)最近一次出现时主线程的状态(Thread.State的序号,-1为未知),可为null(全部未知)
+     */
+    private final int[] sampleThreadStates;
+
+    /**
+     * 每次采样(不同的堆栈)最近一次出现时主线程等待的锁及其持有者,可为null(全部未知)
+     */
+    private final String[] sampleLockInfos;
+
+    /**
+     * 卡顿期间主线程的CPU时间(纳秒),-1为未知
+     */
+    private final long cpuTimeNanos;
+
+    /**
+     * CPU时间对应的墙上时间(纳秒,卡顿期间第一次到最后一次采样)
+     */
+    private final long cpuWallNanos;
+
+    /**
+     * 卡顿期间耗时最长的超时主线程消息(目标Handler、callback、what),可为null
+     */
+    private final String slowMessage;
+
+    /**
+     * 超时消息的耗时(纳秒)
+     */
+    private final long slowMessageNanos;
+
+    /**
+     * 卡顿期间主线程消息队列的积压,可为null
+     */
+    private final QueueBacklog queueBacklog;
+
+    /**
+     * 每个堆栈只出现一次的报告
+     */
+    public JankReport(long wallTimeMillis, long frameStartNanos, long frameEndNanos, int skippedFrames,
+                      String[] frames, long[] sampleTimestamps, int[] sampleOffsets, int[] sampleFrames, String text) {
+        this(wallTimeMillis, frameStartNanos, frameEndNanos, skippedFrames, frames, sampleTimestamps,
+                sampleTimestamps, filledCounts(sampleTimestamps.length), sampleOffsets, sampleFrames, text);
+    }
+
+    /**
+     * 等级为 {@link JankSeverity#JANK}、没有线程堆栈和超时消息、线程状态、CPU时间和队列积压未知的报告
+     */
+    public JankReport(long wallTimeMillis, long frameStartNanos, long frameEndNanos, int skippedFrames,
+                      String[] frames, long[] sampleTimestamps, long[] sampleLastTimestamps, int[] sampleRepeatCounts,
+                      int[] sampleOffsets, int[] sampleFrames, String text) {
+        this(wallTimeMillis, frameStartNanos, frameEndNanos, skippedFrames, frames, sampleTimestamps,
+                sampleLastTimestamps, sampleRepeatCounts, sampleOffsets, sampleFrames, text, JankSeverity.JANK, null,
+                null, null, -1, 0, null, 0, null);
+    }
+
+    public JankReport(long wallTimeMillis, long frameStartNanos, long frameEndNanos, int skippedFrames,
+                      String[] frames, long[] sampleTimestamps, long[] sampleLastTimestamps, int[] sampleRepeatCounts,
+                      int[] sampleOffsets, int[] sampleFrames, String text, int severity, ThreadDump threadDump,
+                      int[] sampleThreadStates, String[] sampleLockInfos, long cpuTimeNanos, long cpuWallNanos,
+                      String slowMessage, long slowMessageNanos, QueueBacklog queueBacklog) {
+        this.wallTimeMillis = wallTimeMillis;
+        this.frameStartNanos = frameStartNanos;
+        this.frameEndNanos = frameEndNanos;
+        this.skippedFrames = skippedFrames;
+        this.frames = frames;
+        this.sampleTimestamps = sampleTimestamps;
+        this.sampleLastTimestamps = sampleLastTimestamps;
+        this.sampleRepeatCounts = sampleRepeatCounts;
+        this.sampleOffsets = sampleOffsets;
+        this.sampleFrames = sampleFrames;
+        this.text = text;
+        this.severity = severity;
+        this.threadDump = threadDump;
+        this.sampleThreadStates = sampleThreadStates;
+        this.sampleLockInfos = sampleLockInfos;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.cpuWallNanos = cpuWallNanos;
+        this.slowMessage = slowMessage;
+        this.slowMessageNanos = slowMessageNanos;
+        this.queueBacklog = queueBacklog;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public long getFrameStartNanos() {
+        return frameStartNanos;
+    }
+
+    public long getFrameEndNanos() {
+        return frameEndNanos;
+    }
+
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * 报告中不同帧的数量
+     */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * 获取帧的字符串
+     *
+     * @param frameIndex 帧下标
+     */
+    public String getFrame(int frameIndex) {
+        return frames[frameIndex];
+    }
+
+    /**
+     * 采样数量
+     */
+    public int getSampleCount() {
+        return sampleTimestamps.length;
+    }
+
+    /**
+     * 获取采样时间(堆栈首次出现的时间)
+     *
+     * @param sampleIndex 采样下标
+     */
+    public long getSampleTimestamp(int sampleIndex) {
+        return sampleTimestamps[sampleIndex];
+    }
+
+    /**
+     * 获取堆栈最近一次出现的时间
+     *
+     * @param sampleIndex 采样下标
+     */
+    public long getSampleLastTimestamp(int sampleIndex) {
+        return sampleLastTimestamps[sampleIndex];
+    }
+
+    /**
+     * 获取堆栈出现的次数
+     *
+     * @param sampleIndex 采样下标
+     */
+    public int getSampleRepeatCount(int sampleIndex) {
+        return sampleRepeatCounts[sampleIndex];
+    }
+
+    /**
+     * 是否记录了主线程的状态
+     */
+    public boolean hasThreadStates() {
+        return sampleThreadStates != null;
+    }
+
+    /**
+     * 获取堆栈最近一次出现时主线程的状态
+     *
+     * @param sampleIndex 采样下标
+     * @return Thread.State的序号,-1为未知
+     */
+    public int getSampleThreadState(int sampleIndex) {
+        return sampleThreadStates == null ? -1 : sampleThreadStates[sampleIndex];
+    }
+
+    /**
+     * 获取堆栈最近一次出现时主线程等待的锁及其持有者
+     *
+     * @param sampleIndex 采样下标
+     * @return 不是BLOCKED或平台不支持时返回null
+     */
+    public String getSampleLockInfo(int sampleIndex) {
+        return sampleLockInfos == null ? null : sampleLockInfos[sampleIndex];
+    }
+
+    /**
+     * 卡顿期间主线程的CPU时间(纳秒,utime + stime),与 {@link #getCpuWallNanos()} 相比接近时主线程在计算,
+     * 远小于时主线程在等待(锁、IO、CPU调度)
+     *
+     * @return 未开启或采样不足时返回-1
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * CPU时间对应的墙上时间(纳秒,卡顿期间第一次到最后一次采样)
+     */
+    public long getCpuWallNanos() {
+        return cpuWallNanos;
+    }
+
+    /**
+     * 卡顿期间耗时最长的超时主线程消息,例如 "Handler (com.example.MainHandler) {1a2b3c}, callback=null, what=1"
+     *
+     * @return 未开启消息耗时统计或没有超时消息时返回null
+     */
+    public String getSlowMessage() {
+        return slowMessage;
+    }
+
+    /**
+     * 超时消息的耗时(纳秒)
+     */
+    public long getSlowMessageNanos() {
+        return slowMessageNanos;
+    }
+
+    /**
+     * 卡顿期间主线程消息队列的积压(已到期未处理的消息数量、最早到期消息的延迟),
+     * 积压多而堆栈各不相同时,卡顿由大量很小的消息造成
+     *
+     * @return 未开启或卡顿期间没有采样时返回null
+     */
+    public QueueBacklog getQueueBacklog() {
+        return queueBacklog;
+    }
+
+    /**
+     * 所有堆栈出现的次数之和(实际的采样次数)
+     */
+    public int getTotalRepeatCount() {
+        int total = 0;
+        for (int count : sampleRepeatCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 获取采样的帧数量
+     *
+     * @param sampleIndex 采样下标
+     */
+    public int getSampleFrameCount(int sampleIndex) {
+        return sampleOffsets[sampleIndex + 1] - sampleOffsets[sampleIndex];
+    }
+
+    /**
+     * 获取采样的帧下标
+     *
+     * @param sampleIndex 采样下标
+     * @param frameIndex  第几个帧,0为栈顶
+     * @return 帧下标,可通过 {@link #getFrame(int)} 获取字符串
+     */
+    public int getSampleFrame(int sampleIndex, int frameIndex) {
+        return sampleFrames[sampleOffsets[sampleIndex] + frameIndex];
+    }
+
+    /**
+     * 文本格式的内容
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 卡顿等级,见 {@link JankSeverity}
+     */
+    public int getSeverity() {
+        return severity;
+    }
+
+    /**
+     * 卡顿期间抓取的全部线程的堆栈
+     *
+     * @return 没有抓取时返回null
+     */
+    public ThreadDump getThreadDump() {
+        return threadDump;
+    }
+
+    /**
+     * 生成内容相同、文本不同的报告
+     *
+     * @param text 文本格式的内容
+     */
+    public JankReport withText(String text) {
+        return new JankReport(wallTimeMillis, frameStartNanos, frameEndNanos, skippedFrames, frames,
+                sampleTimestamps, sampleLastTimestamps, sampleRepeatCounts, sampleOffsets, sampleFrames, text,
+                severity, threadDump, sampleThreadStates, sampleLockInfos, cpuTimeNanos, cpuWallNanos, slowMessage,
+                slowMessageNanos, queueBacklog);
+    }
+
+    private static int[] filledCounts(int length) {
+        int[] counts = new int[length];
+        Arrays.fill(counts, 1);
+        return counts;
+    }
+}
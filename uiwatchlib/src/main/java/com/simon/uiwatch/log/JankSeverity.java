@@ -0,0 +1,95 @@
+package com.simon.uiwatch.log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 卡顿等级
+ * 按卡顿时长(上一帧到卡顿帧的时间,或主线程卡住的时长)从低到高分为：
+ * 卡顿、慢帧、冻帧、接近ANR;冻帧及以上会抓取一次全部线程的堆栈,接近ANR时立即输出并同步到存储设备
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class JankSeverity {
+    /**
+     * 卡顿：跳过的帧数超过帧率阈值
+     */
+    public static final int JANK = 0;
+
+    /**
+     * 慢帧
+     */
+    public static final int SLOW_FRAME = 1;
+
+    /**
+     * 冻帧
+     */
+    public static final int FREEZE = 2;
+
+    /**
+     * 接近ANR(输入事件5s未处理即ANR)
+     */
+    public static final int NEAR_ANR = 3;
+
+    /**
+     * 默认的慢帧阈值(ms)
+     */
+    public static final long DEFAULT_SLOW_FRAME_MS = 200;
+
+    /**
+     * 默认的冻帧阈值(ms),与 {@link FrameHistogram#FROZEN_FRAME_NANOS} 一致
+     */
+    public static final long DEFAULT_FREEZE_MS = TimeUnit.NANOSECONDS.toMillis(FrameHistogram.FROZEN_FRAME_NANOS);
+
+    /**
+     * 默认的接近ANR阈值(ms)
+     */
+    public static final long DEFAULT_NEAR_ANR_MS = 4000;
+
+    private static final String[] NAMES = {"JANK", "SLOW_FRAME", "FREEZE", "NEAR_ANR"};
+
+    private long slowFrameNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_FRAME_MS);
+
+    private long freezeNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FREEZE_MS);
+
+    private long nearAnrNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_NEAR_ANR_MS);
+
+    /**
+     * 设置各等级的阈值,需要依次递增
+     *
+     * @param slowFrameMs 慢帧阈值(ms)
+     * @param freezeMs    冻帧阈值(ms)
+     * @param nearAnrMs   接近ANR阈值(ms)
+     */
+    public void setThresholds(long slowFrameMs, long freezeMs, long nearAnrMs) {
+        slowFrameNanos = TimeUnit.MILLISECONDS.toNanos(slowFrameMs);
+        freezeNanos = TimeUnit.MILLISECONDS.toNanos(freezeMs);
+        nearAnrNanos = TimeUnit.MILLISECONDS.toNanos(nearAnrMs);
+    }
+
+    /**
+     * 根据时长计算等级
+     *
+     * @param durationNanos 卡顿时长(纳秒)
+     */
+    public int classify(long durationNanos) {
+        if (durationNanos >= nearAnrNanos) {
+            return NEAR_ANR;
+        }
+        if (durationNanos >= freezeNanos) {
+            return FREEZE;
+        }
+        if (durationNanos >= slowFrameNanos) {
+            return SLOW_FRAME;
+        }
+        return JANK;
+    }
+
+    /**
+     * 等级的名称
+     */
+    public static String getName(int severity) {
+        return severity >= 0 && severity < NAMES.length ? NAMES[severity] : String.valueOf(severity);
+    }
+}
@@ -0,0 +1,234 @@
+package com.simon.uiwatch.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关键词匹配器
+ * 开启监控时将全部关键词编译为一个Aho-Corasick自动机(完整的状态转移表),
+ * 匹配时直接按 类名 + '.' + 方法名 逐个字符转移状态,不需要构建帧字符串,
+ * 耗时只与帧的长度有关,与关键词的数量无关
+ * <p>
+ * 编译后不可修改,可在任意线程中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class KeywordMatcher {
+    /**
+     * ASCII字符的字符类别表大小
+     */
+    private static final int ASCII_SIZE = 128;
+
+    /**
+     * ASCII字符 -> 字符类别,0表示不在任何关键词中出现
+     */
+    private final int[] asciiClasses;
+
+    /**
+     * 非ASCII字符(已排序)及其字符类别
+     */
+    private final char[] extraChars;
+    private final int[] extraClasses;
+
+    /**
+     * 字符类别的数量(含0)
+     */
+    private final int classCount;
+
+    /**
+     * 状态转移表：状态 * classCount + 字符类别 -> 下一个状态
+     */
+    private final int[] transitions;
+
+    /**
+     * 状态是否为匹配状态(包含以该状态结尾的关键词)
+     */
+    private final boolean[] accepts;
+
+    private KeywordMatcher(int[] asciiClasses, char[] extraChars, int[] extraClasses, int classCount,
+                           int[] transitions, boolean[] accepts) {
+        this.asciiClasses = asciiClasses;
+        this.extraChars = extraChars;
+        this.extraClasses = extraClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepts = accepts;
+    }
+
+    /**
+     * 编译关键词
+     *
+     * @param keyWords 关键词集合,忽略其中的null
+     * @return 没有关键词时返回null(即全部通过)
+     */
+    public static KeywordMatcher compile(String[] keyWords) {
+        if (keyWords == null) {
+            return null;
+        }
+        //为关键词中出现的字符分配类别
+        int[] asciiClasses = new int[ASCII_SIZE];
+        Map<Character, Integer> extraClassMap = new HashMap<>();
+        int classCount = 1;
+        int keyWordCount = 0;
+        for (String keyWord : keyWords) {
+            if (keyWord == null) {
+                continue;
+            }
+            keyWordCount++;
+            for (int i = 0; i < keyWord.length(); i++) {
+                char c = keyWord.charAt(i);
+                if (c < ASCII_SIZE) {
+                    if (asciiClasses[c] == 0) {
+                        asciiClasses[c] = classCount++;
+                    }
+                } else if (!extraClassMap.containsKey(c)) {
+                    extraClassMap.put(c, classCount++);
+                }
+            }
+        }
+        if (keyWordCount == 0) {
+            return null;
+        }
+        char[] extraChars = new char[extraClassMap.size()];
+        int index = 0;
+        for (Character c : extraClassMap.keySet()) {
+            extraChars[index++] = c;
+        }
+        Arrays.sort(extraChars);
+        int[] extraClasses = new int[extraChars.length];
+        for (int i = 0; i < extraChars.length; i++) {
+            extraClasses[i] = extraClassMap.get(extraChars[i]);
+        }
+
+        //构建前缀树,-1表示没有子节点
+        List<int[]> children = new ArrayList<>();
+        List<Boolean> acceptList = new ArrayList<>();
+        children.add(newNode(classCount));
+        acceptList.add(false);
+        for (String keyWord : keyWords) {
+            if (keyWord == null) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyWord.length(); i++) {
+                int charClass = classOf(keyWord.charAt(i), asciiClasses, extraChars, extraClasses);
+                int next = children.get(state)[charClass];
+                if (next < 0) {
+                    next = children.size();
+                    children.get(state)[charClass] = next;
+                    children.add(newNode(classCount));
+                    acceptList.add(false);
+                }
+                state = next;
+            }
+            acceptList.set(state, true);
+        }
+
+        //按广度优先计算失配指针,并补全为完整的状态转移表
+        int stateCount = children.size();
+        int[] transitions = new int[stateCount * classCount];
+        boolean[] accepts = new boolean[stateCount];
+        int[] fail = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        accepts[0] = acceptList.get(0);
+        for (int c = 0; c < classCount; c++) {
+            int next = children.get(0)[c];
+            if (next < 0) {
+                transitions[c] = 0;
+            } else {
+                transitions[c] = next;
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            //任一后缀为关键词时,该状态也是匹配状态
+            accepts[state] = acceptList.get(state) || accepts[fail[state]];
+            for (int c = 0; c < classCount; c++) {
+                int next = children.get(state)[c];
+                if (next < 0) {
+                    transitions[state * classCount + c] = transitions[fail[state] * classCount + c];
+                } else {
+                    transitions[state * classCount + c] = next;
+                    fail[next] = transitions[fail[state] * classCount + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return new KeywordMatcher(asciiClasses, extraChars, extraClasses, classCount, transitions, accepts);
+    }
+
+    /**
+     * 帧的 类名 + '.' + 方法名 中是否包含任一关键词
+     *
+     * @param frame 堆栈帧
+     */
+    public boolean matches(StackTraceElement frame) {
+        if (accepts[0]) {
+            //包含空的关键词
+            return true;
+        }
+        int state = step(0, frame.getClassName());
+        if (state < 0) {
+            return true;
+        }
+        state = next(state, '.');
+        if (accepts[state]) {
+            return true;
+        }
+        return step(state, frame.getMethodName()) < 0;
+    }
+
+    /**
+     * 文本中是否包含任一关键词
+     *
+     * @param text 文本
+     */
+    public boolean matches(CharSequence text) {
+        return accepts[0] || step(0, text) < 0;
+    }
+
+    /**
+     * 按文本逐个字符转移状态
+     *
+     * @return 匹配到关键词时返回-1,否则返回最终的状态
+     */
+    private int step(int state, CharSequence text) {
+        if (text == null) {
+            return state;
+        }
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = next(state, text.charAt(i));
+            if (accepts[state]) {
+                return -1;
+            }
+        }
+        return state;
+    }
+
+    private int next(int state, char c) {
+        return transitions[state * classCount + classOf(c, asciiClasses, extraChars, extraClasses)];
+    }
+
+    private static int classOf(char c, int[] asciiClasses, char[] extraChars, int[] extraClasses) {
+        if (c < ASCII_SIZE) {
+            return asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(extraChars, c);
+        return index < 0 ? 0 : extraClasses[index];
+    }
+
+    private static int[] newNode(int classCount) {
+        int[] node = new int[classCount];
+        Arrays.fill(node, -1);
+        return node;
+    }
+}
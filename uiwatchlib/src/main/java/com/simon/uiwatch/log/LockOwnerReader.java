@@ -0,0 +1,204 @@
+package com.simon.uiwatch.log;
+
+import java.lang.reflect.Method;
+
+/**
+ * 读取线程阻塞(BLOCKED)时等待的锁及其持有者,平台提供时才可用：
+ * <p>
+ * 1.JVM：通过ThreadMXBean(ThreadInfo.getLockName、getLockOwnerName)
+ * 2.Android 9及以上：通过dalvik.system.VMStack.getAnnotatedThreadStackTrace,栈顶帧的blockedOn为等待的锁,
+ * 持有者通过其他线程的heldLocks查找
+ * <p>
+ * 反射只在首次使用时解析一次,都不可用时返回null;长时间阻塞在同一处时(栈顶帧相同)在缓存时间内直接返回上次的结果,不重复查找
+ * <p>
+ * 注意：非线程安全,只允许在LogNotifier_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class LockOwnerReader {
+    /**
+     * 栈顶帧相同时结果的缓存时间(纳秒)
+     */
+    private static final long CACHE_NANOS = 1000000000L;
+
+    /**
+     * 查找持有者时最多检查的线程数量
+     */
+    private static final int MAX_OWNER_SCAN_THREADS = 64;
+
+    /**
+     * 是否已经解析过反射
+     */
+    private boolean isResolved;
+
+    //------------- JVM -------------------
+    private Object threadMXBean;
+    private Method getThreadInfoMethod;
+    private Method getLockNameMethod;
+    private Method getLockOwnerNameMethod;
+
+    //------------- Android -------------------
+    private Method getAnnotatedStackTraceMethod;
+    private Method getBlockedOnMethod;
+    private Method getHeldLocksMethod;
+
+    /**
+     * 上次读取时的栈顶帧
+     */
+    private StackTraceElement lastTopFrame;
+
+    /**
+     * 上次读取的结果
+     */
+    private String lastLockInfo;
+
+    /**
+     * 上次读取的时间(纳秒)
+     */
+    private long lastReadNanos;
+
+    /**
+     * 枚举线程的缓冲,复用
+     */
+    private Thread[] threads = new Thread[32];
+
+    /**
+     * 读取线程等待的锁及其持有者
+     *
+     * @param thread   处于BLOCKED状态的线程
+     * @param topFrame 线程当前的栈顶帧,用于判断是否仍阻塞在同一处
+     * @return 例如 "java.lang.Object@1a2b3c held by worker-1",平台不支持或读取失败时返回null
+     */
+    public String read(Thread thread, StackTraceElement topFrame) {
+        long now = System.nanoTime();
+        if (topFrame != null && topFrame.equals(lastTopFrame) && now - lastReadNanos < CACHE_NANOS) {
+            return lastLockInfo;
+        }
+        if (!isResolved) {
+            resolve();
+        }
+        String lockInfo = null;
+        try {
+            if (getThreadInfoMethod != null) {
+                lockInfo = readFromThreadMXBean(thread);
+            } else if (getAnnotatedStackTraceMethod != null) {
+                lockInfo = readFromAnnotatedStackTrace(thread);
+            }
+        } catch (Exception e) {
+            //隐藏接口被限制或实现不同,之后不再尝试
+            getThreadInfoMethod = null;
+            getAnnotatedStackTraceMethod = null;
+        }
+        lastTopFrame = topFrame;
+        lastLockInfo = lockInfo;
+        lastReadNanos = now;
+        return lockInfo;
+    }
+
+    /**
+     * 解析反射,只进行一次
+     */
+    private void resolve() {
+        isResolved = true;
+        try {
+            Class<?> managementFactory = Class.forName("java.lang.management.ManagementFactory");
+            threadMXBean = managementFactory.getMethod("getThreadMXBean").invoke(null);
+            Class<?> threadMXBeanClass = Class.forName("java.lang.management.ThreadMXBean");
+            Class<?> threadInfoClass = Class.forName("java.lang.management.ThreadInfo");
+            getLockNameMethod = threadInfoClass.getMethod("getLockName");
+            getLockOwnerNameMethod = threadInfoClass.getMethod("getLockOwnerName");
+            getThreadInfoMethod = threadMXBeanClass.getMethod("getThreadInfo", long.class);
+            return;
+        } catch (Throwable e) {
+            //Android上没有java.lang.management
+            getThreadInfoMethod = null;
+        }
+        try {
+            Class<?> vmStack = Class.forName("dalvik.system.VMStack");
+            Class<?> annotatedElement = Class.forName("dalvik.system.AnnotatedStackTraceElement");
+            getBlockedOnMethod = annotatedElement.getMethod("getBlockedOn");
+            getHeldLocksMethod = annotatedElement.getMethod("getHeldLocks");
+            getAnnotatedStackTraceMethod = vmStack.getMethod("getAnnotatedThreadStackTrace", Thread.class);
+        } catch (Throwable e) {
+            getAnnotatedStackTraceMethod = null;
+        }
+    }
+
+    private String readFromThreadMXBean(Thread thread) throws Exception {
+        Object threadInfo = getThreadInfoMethod.invoke(threadMXBean, thread.getId());
+        if (threadInfo == null) {
+            return null;
+        }
+        String lockName = (String) getLockNameMethod.invoke(threadInfo);
+        if (lockName == null) {
+            return null;
+        }
+        String ownerName = (String) getLockOwnerNameMethod.invoke(threadInfo);
+        return ownerName == null ? lockName : lockName + " held by " + ownerName;
+    }
+
+    private String readFromAnnotatedStackTrace(Thread thread) throws Exception {
+        Object[] elements = (Object[]) getAnnotatedStackTraceMethod.invoke(null, thread);
+        if (elements == null || elements.length == 0) {
+            return null;
+        }
+        Object lock = getBlockedOnMethod.invoke(elements[0]);
+        if (lock == null) {
+            return null;
+        }
+        String lockName = lock.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(lock));
+        Thread owner = findOwner(thread, lock);
+        return owner == null ? lockName : lockName + " held by " + owner.getName();
+    }
+
+    /**
+     * 在其他线程持有的锁中查找
+     *
+     * @param blockedThread 阻塞的线程
+     * @param lock          等待的锁
+     * @return 持有者,找不到时返回null
+     */
+    private Thread findOwner(Thread blockedThread, Object lock) throws Exception {
+        ThreadGroup rootGroup = Thread.currentThread().getThreadGroup();
+        while (rootGroup.getParent() != null) {
+            rootGroup = rootGroup.getParent();
+        }
+        int count;
+        while ((count = rootGroup.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        Thread owner = null;
+        for (int i = 0; i < count && i < MAX_OWNER_SCAN_THREADS && owner == null; i++) {
+            Thread thread = threads[i];
+            if (thread == blockedThread || thread == Thread.currentThread()) {
+                continue;
+            }
+            Object[] elements = (Object[]) getAnnotatedStackTraceMethod.invoke(null, thread);
+            if (elements != null && holdsLock(elements, lock)) {
+                owner = thread;
+            }
+        }
+        //不持有线程的引用
+        for (int i = 0; i < count; i++) {
+            threads[i] = null;
+        }
+        return owner;
+    }
+
+    private boolean holdsLock(Object[] elements, Object lock) throws Exception {
+        for (Object element : elements) {
+            Object[] heldLocks = (Object[]) getHeldLocksMethod.invoke(element);
+            if (heldLocks == null) {
+                continue;
+            }
+            for (Object heldLock : heldLocks) {
+                if (heldLock == lock) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
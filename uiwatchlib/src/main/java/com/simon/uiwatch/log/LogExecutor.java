@@ -3,22 +3,31 @@ package com.simon.uiwatch.log;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
-import android.text.TextUtils;
+import android.os.SystemClock;
 
-import com.simon.uiwatch.util.LogUtils;
+import com.simon.uiwatch.callback.JankListener;
+import com.simon.uiwatch.format.FoldedStackFormat;
+import com.simon.uiwatch.sink.JankSink;
+import com.simon.uiwatch.sink.LogcatSink;
 import com.simon.uiwatch.util.TimeUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 负责日志收集和输出
+ * 输出时按输出目标({@link JankSink})的需要生成文本、报告或事件,每种只生成一次,再分发给所有输出目标
+ * <p>
+ * 1.采样只记录帧ID(见 {@link StackFrameDictionary}),关键词等筛选在帧ID上进行,每个帧只分类一次,帧字符串在输出时才构建
+ * 2.冻帧时抓取全部线程的堆栈,至少间隔10s一次,用于查看其他线程是否持有主线程等待的锁;接近ANR时不受间隔限制
  *
  * @author Simon
  * @version v1.0
@@ -55,6 +64,16 @@ public class LogExecutor {
      */
     private boolean isNeedCacheToFile = true;
 
+    /**
+     * 是否输出到logcat,默认为true
+     */
+    private boolean isNeedLogcat = true;
+
+    /**
+     * 自定义的输出目标,可为null
+     */
+    private List<JankSink> customSinks;
+
     /**
      * 缓存的文件夹地址
      */
@@ -66,9 +85,94 @@ public class LogExecutor {
     private String cacheFileName = "UiWatcherLogData";
 
     /**
-     * 关键词
+     * 堆栈帧筛选(包含、排除、折叠系统帧、最大深度)
+     */
+    private StackFrameFilter stackFrameFilter = new StackFrameFilter();
+
+    /**
+     * 日志写入队列已满时的丢弃策略
+     */
+    private int reportDropPolicy = LogWriter.DROP_POLICY_NEWEST;
+
+    /**
+     * 缓存文件格式
+     */
+    private int logFormat = LogWriter.FORMAT_TEXT;
+
+    /**
+     * 单个缓存文件大小上限(字节),0为不限制
+     */
+    private long maxLogFileSize = LogStorageManager.DEFAULT_MAX_FILE_SIZE;
+
+    /**
+     * 是否压缩分段后的缓存文件
      */
-    private String[] keyWords = null;
+    private boolean isNeedCompressLog;
+
+    /**
+     * 缓存文件总容量上限(字节),0为不限制
+     */
+    private long maxLogDiskUsage = LogStorageManager.UNLIMITED;
+
+    /**
+     * 缓存文件的同步策略
+     */
+    private int journalSyncPolicy = LogWriter.SYNC_INTERVAL;
+
+    /**
+     * 缓存文件的同步间隔(ms)
+     */
+    private long journalSyncInterval = LogWriter.DEFAULT_SYNC_INTERVAL_MS;
+
+    /**
+     * 是否将最新的采样持久化到内存映射文件,用于ANR或进程被杀后恢复
+     */
+    private boolean isNeedPersistSamples = false;
+
+    /**
+     * 是否在日志中输出折叠格式的堆栈(用于生成火焰图)
+     */
+    private boolean isNeedFoldedStacks = false;
+
+    /**
+     * 卡顿事件的监听者(由UiWatcher持有,可随时增删),为null或为空时不生成事件
+     */
+    private List<JankListener> jankListeners;
+
+    /**
+     * 卡顿事件两次回调之间的最小间隔(ms)
+     */
+    private long jankDispatchInterval = JankEventDispatcher.DEFAULT_DISPATCH_INTERVAL_MS;
+
+    /**
+     * 卡顿事件分发者(独立线程),没有设置监听者时为null
+     */
+    private JankEventDispatcher jankEventDispatcher;
+
+    /**
+     * 本次监控的全部输出目标,开启时创建,之后只在LogExecutor_Thread中使用
+     */
+    private List<JankSink> sinks = new ArrayList<>();
+
+    /**
+     * 日志写入者(独立线程),不需要缓存到文件时为null
+     */
+    private LogWriter logWriter;
+
+    /**
+     * 主线程CPU时间环形缓冲(由LogNotifier写入),未开启时为null
+     */
+    private CpuTimeRing cpuTimeRing;
+
+    /**
+     * 主线程消息队列积压的环形缓冲(由LogNotifier写入),未开启时为null
+     */
+    private QueueBacklogRing queueBacklogRing;
+
+    /**
+     * 持久化的采样缓冲,未开启或打开失败时为null
+     */
+    private PersistentSampleRing persistentSampleRing;
 
 
     //------------- type config-------------------
@@ -80,6 +184,68 @@ public class LogExecutor {
      * 数据输出
      */
     private static final int TYPE_OUTPUT = 1;
+    /**
+     * 恢复上次会话的采样
+     */
+    private static final int TYPE_RECOVER = 2;
+    /**
+     * 抓取全部线程的堆栈
+     */
+    private static final int TYPE_THREAD_DUMP = 3;
+    /**
+     * 记录超时的主线程消息
+     */
+    private static final int TYPE_SLOW_MESSAGE = 4;
+
+    /**
+     * 持久化采样的文件夹名称(位于缓存文件夹下)
+     */
+    private static final String SESSION_FOLDER_NAME = "session";
+
+    /**
+     * 主线程空闲时的栈顶帧
+     */
+    private static final String IDLE_TOP_FRAME_PREFIX = "android.os.MessageQueue.nativePollOnce(";
+
+    /**
+     * 单次采样帧ID的初始缓冲大小,不够时自动扩容
+     */
+    private static final int DEFAULT_SAMPLE_BUFFER_SIZE = 64;
+
+    /**
+     * 帧字典的帧数量上限,达到后只保留采样缓冲仍在使用的帧重建字典
+     */
+    private static final int MAX_FRAME_DICTIONARY_SIZE = 8192;
+
+    /**
+     * 采集时间的低3位用于保存主线程的状态(Thread.State的序号,共6种),7表示未知
+     */
+    private static final long THREAD_STATE_MASK = 0x7L;
+
+    /**
+     * 线程状态,下标为采集时记录的序号
+     */
+    private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+    /**
+     * 两次抓取全部线程堆栈的最小间隔(ms),接近ANR时不受限制
+     */
+    private static final long THREAD_DUMP_MIN_INTERVAL_MS = 10000;
+
+    /**
+     * 抓取全部线程堆栈时每个线程保留的最大帧数(栈顶在前)
+     */
+    private static final int MAX_THREAD_DUMP_DEPTH = 64;
+
+    /**
+     * 每组最多列出的线程名称数量
+     */
+    private static final int MAX_GROUP_THREAD_NAMES = 8;
+
+    /**
+     * 保留的最近超时消息的数量
+     */
+    private static final int RECENT_SLOW_MESSAGE_COUNT = 8;
 
     //------------- data config-------------------
     /**
@@ -88,9 +254,92 @@ public class LogExecutor {
     private StringBuilder logStackInfoBuilder;
 
     /**
-     * log堆栈信息队列,只保存限制的条数,防止内存占用过大
+     * 堆栈帧字典,每个不同的帧只保存一次
+     */
+    private StackFrameDictionary frameDictionary;
+
+    /**
+     * 触发重建帧字典的帧数量,重建后仍在使用的帧过多时提高,避免频繁重建
+     */
+    private int frameDictionaryLimit;
+
+    /**
+     * 单次采样的帧ID缓冲,复用以避免每次采样都创建新数组
+     */
+    private int[] sampleFrameIds;
+
+    /**
+     * log堆栈信息环形缓冲,只保存限制的条数,防止内存占用过大
      */
-    private List<String> logStackInfoQueue;
+    private StackSampleRing stackSampleRing;
+
+    /**
+     * 输出的堆栈在缓冲中的下标(位于卡顿帧时间范围内的),复用
+     */
+    private int[] outputIndexes = new int[0];
+
+    /**
+     * 输出的堆栈数量
+     */
+    private int outputCount;
+
+    /**
+     * 输出的堆栈在卡顿帧时间范围内出现的次数、首次/最近一次出现的时间,与outputIndexes对应,复用
+     */
+    private int[] outputRepeatCounts = new int[0];
+    private long[] outputTimestamps = new long[0];
+    private long[] outputLastTimestamps = new long[0];
+
+    /**
+     * 输出的堆栈出现的次数之和
+     */
+    private int outputRepeatCount;
+
+    /**
+     * 输出时读取一条堆栈的帧ID缓冲,复用
+     */
+    private int[] outputFrameIds = new int[DEFAULT_SAMPLE_BUFFER_SIZE];
+
+    /**
+     * 生成报告时帧ID -> 报告内下标的映射缓冲(-1表示未出现),复用
+     */
+    private int[] reportFrameIndexes = new int[0];
+
+    /**
+     * 抓取全部线程堆栈时用于去重的调用树,每次抓取前清空
+     */
+    private CallTree threadDumpTree;
+
+    /**
+     * 抓取全部线程堆栈时使用的帧字典,每次抓取后清空;
+     * 其他线程的帧只在本次抓取中使用,不进入frameDictionary,避免帧字典随抓取次数不断增长
+     */
+    private StackFrameDictionary threadDumpDictionary;
+
+    /**
+     * 最近一次抓取的全部线程的堆栈,抓取时间位于卡顿帧时间范围内时随报告输出
+     */
+    private ThreadDump latestThreadDump;
+
+    /**
+     * 最近一次抓取全部线程堆栈的时间(uptime ms)
+     */
+    private long lastThreadDumpUptime;
+
+    /**
+     * 卡顿帧时间范围内主线程的CPU时间和对应的墙上时间,复用
+     */
+    private final long[] cpuTimeWindow = new long[2];
+
+    /**
+     * 最近的超时消息(环形),输出时取卡顿帧时间范围内耗时最长的一条
+     */
+    private final SlowMessage[] recentSlowMessages = new SlowMessage[RECENT_SLOW_MESSAGE_COUNT];
+
+    /**
+     * 下一条超时消息在recentSlowMessages中的位置
+     */
+    private int nextSlowMessageIndex;
 
 
     private LogExecutor() {
@@ -118,14 +367,110 @@ public class LogExecutor {
         if (logExecutorThread == null) {
             init();
         }
+        initSampleRing();
+        //筛选规则可能已经变化,重新分类
+        stackFrameFilter.reset(frameDictionary);
+        startSinks();
         logExecutorThread.start();
         initLogExecutorHandler();
+        if (isNeedPersistSamples) {
+            //先恢复上次会话,再开始新的会话,均在LogExecutor_Thread中进行
+            logExecutorHandler.sendEmptyMessage(TYPE_RECOVER);
+        }
     }
 
     private void init() {
         logExecutorThread = new HandlerThread("LogExecutor_Thread");
         logStackInfoBuilder = new StringBuilder();
-        logStackInfoQueue = new LinkedList<>();
+        frameDictionary = new StackFrameDictionary();
+        frameDictionaryLimit = MAX_FRAME_DICTIONARY_SIZE;
+        sampleFrameIds = new int[DEFAULT_SAMPLE_BUFFER_SIZE];
+        threadDumpTree = new CallTree();
+        threadDumpDictionary = new StackFrameDictionary();
+        latestThreadDump = null;
+        lastThreadDumpUptime = 0;
+        Arrays.fill(recentSlowMessages, null);
+        nextSlowMessageIndex = 0;
+    }
+
+    /**
+     * 根据配置创建并开启输出目标
+     */
+    private void startSinks() {
+        sinks = new ArrayList<>();
+        if (isNeedLogcat) {
+            sinks.add(new LogcatSink(tag));
+        }
+        if (isNeedCacheToFile) {
+            logWriter = new LogWriter(cacheFolder, cacheFileName, logFormat, reportDropPolicy,
+                    maxLogFileSize, isNeedCompressLog, maxLogDiskUsage);
+            logWriter.setSyncPolicy(journalSyncPolicy, journalSyncInterval);
+            sinks.add(logWriter);
+        }
+        if (jankListeners != null) {
+            jankEventDispatcher = new JankEventDispatcher(jankListeners, jankDispatchInterval);
+            sinks.add(jankEventDispatcher);
+        }
+        if (customSinks != null) {
+            sinks.addAll(customSinks);
+        }
+        for (JankSink sink : sinks) {
+            sink.start();
+        }
+    }
+
+    /**
+     * 关闭输出目标,已提交的内容由各自的线程处理完
+     *
+     * @param stoppedSinks 输出目标
+     */
+    private static void stopSinks(List<JankSink> stoppedSinks) {
+        for (JankSink sink : stoppedSinks) {
+            sink.stop();
+        }
+    }
+
+    /**
+     * 所有输出目标需要的内容
+     */
+    private int getSinkInputs() {
+        int inputs = 0;
+        for (JankSink sink : sinks) {
+            inputs |= sink.getInputs();
+        }
+        return inputs;
+    }
+
+    /**
+     * 分发给需要的输出目标
+     *
+     * @param report 报告,可为null
+     * @param event  事件,可为null
+     */
+    private void submitToSinks(JankReport report, JankEvent event) {
+        int available = 0;
+        if (report != null) {
+            available |= report.getText() != null ? JankSink.INPUT_REPORT | JankSink.INPUT_TEXT : JankSink.INPUT_REPORT;
+        }
+        if (event != null) {
+            available |= JankSink.INPUT_EVENT;
+        }
+        for (JankSink sink : sinks) {
+            if ((sink.getInputs() & available) != 0) {
+                sink.submit(report, event);
+            }
+        }
+    }
+
+    /**
+     * 根据缓存数量初始化采样缓冲
+     */
+    private void initSampleRing() {
+        stackSampleRing = new StackSampleRing(cacheDataSize);
+        outputIndexes = new int[stackSampleRing.capacity()];
+        outputRepeatCounts = new int[stackSampleRing.capacity()];
+        outputTimestamps = new long[stackSampleRing.capacity()];
+        outputLastTimestamps = new long[stackSampleRing.capacity()];
     }
 
     /**
@@ -154,118 +499,670 @@ public class LogExecutor {
         Object stackInfo = msg.obj;
         switch (type) {
             case TYPE_COLLECTION:
-                handleLogExecutorCollectionMessage(stackInfo);
+                long packedTimestamp = unpackTimestamp(msg.arg1, msg.arg2);
+                handleLogExecutorCollectionMessage(stackInfo, packedTimestamp & ~THREAD_STATE_MASK,
+                        unpackThreadState(packedTimestamp));
                 break;
             case TYPE_OUTPUT:
-                handleLogExecutorOutputMessage();
+                handleLogExecutorOutputMessage(msg.arg1, msg.arg2, msg.obj);
+                break;
+            case TYPE_RECOVER:
+                handleLogExecutorRecoverMessage();
+                break;
+            case TYPE_THREAD_DUMP:
+                handleLogExecutorThreadDumpMessage(msg.arg1, msg.arg2, msg.obj);
+                break;
+            case TYPE_SLOW_MESSAGE:
+                if (msg.obj instanceof SlowMessage) {
+                    recentSlowMessages[nextSlowMessageIndex] = (SlowMessage) msg.obj;
+                    nextSlowMessageIndex = (nextSlowMessageIndex + 1) % RECENT_SLOW_MESSAGE_COUNT;
+                }
                 break;
             default:
                 break;
         }
     }
 
+    /**
+     * 用于处理恢复消息：上次会话没有正常结束(ANR或进程被杀)时,输出持久化的采样,然后开始新的会话
+     */
+    private void handleLogExecutorRecoverMessage() {
+        File folder = new File(Environment.getExternalStorageDirectory() + "/" + cacheFolder + "/" + SESSION_FOLDER_NAME);
+        persistentSampleRing = new PersistentSampleRing(folder);
+        JankReport report = persistentSampleRing.recover();
+        if (report != null && !isIdleSample(report, report.getSampleCount() - 1)) {
+            outputRecoveredReport(report);
+        }
+        try {
+            persistentSampleRing.open(cacheDataSize);
+            persistentSampleRing.appendFrames(frameDictionary);
+        } catch (IOException e) {
+            e.printStackTrace();
+            closePersistentSampleRing();
+        }
+    }
+
+    /**
+     * 采样的栈顶是否为主线程空闲(进程在空闲时被杀不属于卡顿)
+     */
+    private static boolean isIdleSample(JankReport report, int sampleIndex) {
+        return report.getSampleFrameCount(sampleIndex) > 0
+                && report.getFrame(report.getSampleFrame(sampleIndex, 0)).startsWith(IDLE_TOP_FRAME_PREFIX);
+    }
+
+    /**
+     * 输出恢复出的报告
+     */
+    private void outputRecoveredReport(JankReport report) {
+        if ((getSinkInputs() & JankSink.INPUT_TEXT) == 0) {
+            submitToSinks(report, null);
+            return;
+        }
+        logStackInfoBuilder.delete(0, logStackInfoBuilder.length());
+        logStackInfoBuilder.append(" \n");
+        logStackInfoBuilder.append(" \n");
+        logStackInfoBuilder.append("~~~~~~~~~~~~~~~~~~~recovered~~~~~~~~~~~~~~~~~~~~~~");
+        logStackInfoBuilder.append(" \n");
+        logStackInfoBuilder.append("上次会话没有正常结束(ANR或进程被杀),以下为最后的 ").append(report.getSampleCount())
+                .append(" 条采样,时间: ").append(TimeUtils.formatTime(report.getWallTimeMillis()))
+                .append(",采样跨度: ").append((report.getFrameEndNanos() - report.getFrameStartNanos()) / 1000000).append("ms");
+        logStackInfoBuilder.append(" \n");
+        logStackInfoBuilder.append(" \n");
+        for (int i = 0; i < report.getSampleCount(); i++) {
+            logStackInfoBuilder.append("---------------------------------------------------");
+            logStackInfoBuilder.append("\n");
+            int frameCount = report.getSampleFrameCount(i);
+            for (int j = 0; j < frameCount; j++) {
+                logStackInfoBuilder.append(report.getFrame(report.getSampleFrame(i, j)));
+                logStackInfoBuilder.append("\n");
+            }
+            logStackInfoBuilder.append("---------------------------------------------------");
+            logStackInfoBuilder.append("\n");
+            logStackInfoBuilder.append("\n");
+        }
+        logStackInfoBuilder.append("~~~~~~~~~~~~~~~~~~~end~~~~~~~~~~~~~~~~~~~~~~");
+        logStackInfoBuilder.append("\n");
+        logStackInfoBuilder.append(" \n");
+        submitToSinks(report.withText(logStackInfoBuilder.toString()), null);
+    }
+
+    /**
+     * 关闭持久化的采样缓冲(标记会话正常结束)
+     */
+    private void closePersistentSampleRing() {
+        if (persistentSampleRing != null) {
+            persistentSampleRing.close();
+            persistentSampleRing = null;
+        }
+    }
+
     /**
      * 用于处理输出消息
+     *
+     * @param skippedFrames 跳过的帧数
+     * @param severity      卡顿等级
+     * @param frameWindow   卡顿帧的开始和结束时间(纳秒),long[2]
      */
-    private void handleLogExecutorOutputMessage() {
+    private void handleLogExecutorOutputMessage(int skippedFrames, int severity, Object frameWindow) {
+        long frameStartNanos = 0;
+        long frameEndNanos = 0;
+        if (frameWindow instanceof long[] && ((long[]) frameWindow).length == 2) {
+            frameStartNanos = ((long[]) frameWindow)[0];
+            frameEndNanos = ((long[]) frameWindow)[1];
+        }
         //输出堆栈信息
-        startOutputLogTask();
+        startOutputLogTask(skippedFrames, severity, frameStartNanos, frameEndNanos);
+    }
+
+    /**
+     * 用于处理抓取全部线程堆栈的消息：主线程卡住达到冻帧时抓取(卡顿结束后再抓取已经看不到卡住时其他线程在做什么),
+     * 非接近ANR的抓取按最小间隔限制;接近ANR时不等待卡顿结束,立即输出(应用可能在卡顿结束前被系统结束),
+     * 卡顿结束后同一次卡住不再输出(由LogNotifier跳过)
+     *
+     * @param severity      卡顿等级
+     * @param skippedFrames 到目前为止跳过的帧数
+     * @param stallWindow   卡住的开始时间和最近一次采集的时间(纳秒),long[2]
+     */
+    private void handleLogExecutorThreadDumpMessage(int severity, int skippedFrames, Object stallWindow) {
+        long now = SystemClock.uptimeMillis();
+        if (severity < JankSeverity.NEAR_ANR && lastThreadDumpUptime != 0
+                && now - lastThreadDumpUptime < THREAD_DUMP_MIN_INTERVAL_MS) {
+            return;
+        }
+        lastThreadDumpUptime = now;
+        latestThreadDump = captureThreadDump();
+        if (severity >= JankSeverity.NEAR_ANR) {
+            handleLogExecutorOutputMessage(skippedFrames, severity, stallWindow);
+        }
+    }
+
+    /**
+     * 抓取除主线程外全部线程的堆栈：帧经过单独的帧字典去重,堆栈插入调用树去重,状态和堆栈都相同的线程合并为一组;
+     * 帧在返回前转换为字符串,之后清空单独的帧字典
+     */
+    private ThreadDump captureThreadDump() {
+        Map<Thread, StackTraceElement[]> allStackTraces = Thread.getAllStackTraces();
+        long captureNanos = System.nanoTime();
+        Thread mainThread = Looper.getMainLooper().getThread();
+        threadDumpTree.clear();
+        int groupCount = 0;
+        int[] groupNodes = new int[allStackTraces.size()];
+        int[] groupStates = new int[allStackTraces.size()];
+        int[] groupThreadCounts = new int[allStackTraces.size()];
+        StringBuilder[] groupNames = new StringBuilder[allStackTraces.size()];
+        for (Map.Entry<Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+            Thread thread = entry.getKey();
+            StackTraceElement[] stackTraceElements = entry.getValue();
+            if (thread == mainThread || stackTraceElements == null) {
+                continue;
+            }
+            int frameCount = Math.min(stackTraceElements.length, MAX_THREAD_DUMP_DEPTH);
+            if (frameCount > sampleFrameIds.length) {
+                sampleFrameIds = new int[Math.max(frameCount, sampleFrameIds.length * 2)];
+            }
+            for (int i = 0; i < frameCount; i++) {
+                sampleFrameIds[i] = threadDumpDictionary.intern(stackTraceElements[i]);
+            }
+            int node = threadDumpTree.insert(sampleFrameIds, frameCount);
+            threadDumpTree.addSamples(node, 1);
+            int state = thread.getState().ordinal();
+            int group = 0;
+            while (group < groupCount && (groupNodes[group] != node || groupStates[group] != state)) {
+                group++;
+            }
+            if (group == groupCount) {
+                groupNodes[group] = node;
+                groupStates[group] = state;
+                groupNames[group] = new StringBuilder();
+                groupCount++;
+            }
+            if (groupThreadCounts[group] < MAX_GROUP_THREAD_NAMES) {
+                groupNames[group].append(groupThreadCounts[group] == 0 ? "" : ", ").append(thread.getName());
+            } else if (groupThreadCounts[group] == MAX_GROUP_THREAD_NAMES) {
+                groupNames[group].append(", ...");
+            }
+            groupThreadCounts[group]++;
+        }
+        if (reportFrameIndexes.length < threadDumpDictionary.size()) {
+            reportFrameIndexes = new int[Math.max(threadDumpDictionary.size(), reportFrameIndexes.length * 2)];
+            Arrays.fill(reportFrameIndexes, -1);
+        }
+        int totalFrameCount = 0;
+        for (int group = 0; group < groupCount; group++) {
+            totalFrameCount += threadDumpTree.getDepth(groupNodes[group]);
+        }
+        String[] threadNames = new String[groupCount];
+        int[] threadStates = Arrays.copyOf(groupStates, groupCount);
+        int[] threadCounts = Arrays.copyOf(groupThreadCounts, groupCount);
+        int[] groupOffsets = new int[groupCount + 1];
+        int[] groupFrames = new int[totalFrameCount];
+        int[] dumpFrameIds = new int[totalFrameCount];
+        int dumpFrameCount = 0;
+        int offset = 0;
+        for (int group = 0; group < groupCount; group++) {
+            threadNames[group] = groupNames[group].toString();
+            groupOffsets[group] = offset;
+            int node = groupNodes[group];
+            if (outputFrameIds.length < threadDumpTree.getDepth(node)) {
+                outputFrameIds = new int[Math.max(threadDumpTree.getDepth(node), outputFrameIds.length * 2)];
+            }
+            int frameCount = threadDumpTree.getFrameIds(node, outputFrameIds);
+            for (int j = 0; j < frameCount; j++) {
+                int frameId = outputFrameIds[j];
+                if (reportFrameIndexes[frameId] < 0) {
+                    reportFrameIndexes[frameId] = dumpFrameCount;
+                    dumpFrameIds[dumpFrameCount++] = frameId;
+                }
+                groupFrames[offset++] = reportFrameIndexes[frameId];
+            }
+        }
+        groupOffsets[groupCount] = offset;
+        String[] frames = new String[dumpFrameCount];
+        for (int i = 0; i < dumpFrameCount; i++) {
+            frames[i] = threadDumpDictionary.getFrameString(dumpFrameIds[i]);
+            //还原下标缓冲,供下次使用
+            reportFrameIndexes[dumpFrameIds[i]] = -1;
+        }
+        threadDumpDictionary.clear();
+        threadDumpTree.clear();
+        return new ThreadDump(captureNanos, frames, threadNames, threadCounts, threadStates, groupOffsets, groupFrames);
+    }
+
+    /**
+     * 获取卡顿帧时间范围内抓取的全部线程的堆栈
+     *
+     * @return 冻帧以下或不在时间范围内时返回null
+     */
+    private ThreadDump getThreadDumpInWindow(int severity, long frameStartNanos, long frameEndNanos) {
+        ThreadDump threadDump = latestThreadDump;
+        if (threadDump == null || severity < JankSeverity.FREEZE) {
+            return null;
+        }
+        long captureNanos = threadDump.getCaptureNanos();
+        if (frameStartNanos != 0 && (captureNanos < frameStartNanos || captureNanos > frameEndNanos)) {
+            return null;
+        }
+        return threadDump;
+    }
+
+    /**
+     * 获取与卡顿帧时间范围有重叠的超时消息中耗时最长的一条
+     *
+     * @return 没有或开始时间未知时返回null
+     */
+    private SlowMessage getSlowMessageInWindow(long frameStartNanos, long frameEndNanos) {
+        if (frameStartNanos == 0) {
+            return null;
+        }
+        SlowMessage longest = null;
+        for (SlowMessage slowMessage : recentSlowMessages) {
+            if (slowMessage != null && slowMessage.getEndNanos() >= frameStartNanos
+                    && slowMessage.getStartNanos() <= frameEndNanos
+                    && (longest == null || slowMessage.getDurationNanos() > longest.getDurationNanos())) {
+                longest = slowMessage;
+            }
+        }
+        return longest;
     }
 
     /**
      * 开始输出日志任务
+     *
+     * @param skippedFrames   跳过的帧数
+     * @param severity        卡顿等级
+     * @param frameStartNanos 卡顿帧的开始时间
+     * @param frameEndNanos   卡顿帧的结束时间
      */
-    private void startOutputLogTask() {
+    private void startOutputLogTask(int skippedFrames, int severity, long frameStartNanos, long frameEndNanos) {
         //校验缓存信息的队列
-        if (logStackInfoQueue == null || logStackInfoQueue.isEmpty()) {
+        if (stackSampleRing == null || stackSampleRing.size() == 0) {
+            return;
+        }
+        int inputs = getSinkInputs();
+        if (inputs == 0) {
             return;
         }
-        //将获取的队列内的内容遍历获取
+        //在当前线程直接读取缓冲,不清空,相邻两次卡顿可以共用重叠的采样
+        selectOutputSamples(frameStartNanos, frameEndNanos);
+        ThreadDump threadDump = getThreadDumpInWindow(severity, frameStartNanos, frameEndNanos);
+        //卡顿期间主线程的CPU时间,未开启或采样不足时为-1
+        long cpuTimeNanos = -1;
+        long cpuWallNanos = 0;
+        CpuTimeRing ring = cpuTimeRing;
+        if (ring != null && frameStartNanos != 0 && ring.getCpuTime(frameStartNanos, frameEndNanos, cpuTimeWindow)) {
+            cpuTimeNanos = cpuTimeWindow[0];
+            cpuWallNanos = cpuTimeWindow[1];
+        }
+        //卡顿期间超时的主线程消息,目标Handler和callback在这里才解析
+        SlowMessage slowMessage = getSlowMessageInWindow(frameStartNanos, frameEndNanos);
+        String slowMessageInfo = slowMessage == null ? null : slowMessage.describe();
+        long slowMessageNanos = slowMessage == null ? 0 : slowMessage.getDurationNanos();
+        //卡顿期间主线程消息队列的积压,未开启或没有采样时为null
+        QueueBacklogRing backlogRing = queueBacklogRing;
+        QueueBacklog queueBacklog = backlogRing == null || frameStartNanos == 0 ? null
+                : backlogRing.getBacklog(frameStartNanos, frameEndNanos);
+        //只生成输出目标需要的内容,每种只生成一次,耗时的输出在各输出目标自己的线程中进行
+        String text = null;
+        if ((inputs & JankSink.INPUT_TEXT) != 0) {
+            text = buildStackText(skippedFrames, severity, frameStartNanos, frameEndNanos, threadDump, cpuTimeNanos,
+                    cpuWallNanos, slowMessageInfo, slowMessageNanos, queueBacklog);
+        }
+        JankReport report = null;
+        if ((inputs & (JankSink.INPUT_REPORT | JankSink.INPUT_TEXT)) != 0) {
+            report = buildJankReport(stackSampleRing, skippedFrames, frameStartNanos, frameEndNanos, text,
+                    severity, threadDump, cpuTimeNanos, cpuWallNanos, slowMessageInfo, slowMessageNanos, queueBacklog);
+        }
+        JankEvent event = null;
+        if ((inputs & JankSink.INPUT_EVENT) != 0) {
+            event = buildJankEvent(stackSampleRing, skippedFrames, frameStartNanos, frameEndNanos, severity,
+                    threadDump, cpuTimeNanos, cpuWallNanos, slowMessageInfo, slowMessageNanos, queueBacklog);
+        }
+        submitToSinks(report, event);
+    }
+
+    /**
+     * 将选出的堆栈格式化为文本
+     *
+     * @param skippedFrames    跳过的帧数
+     * @param severity         卡顿等级
+     * @param frameStartNanos  卡顿帧的开始时间
+     * @param frameEndNanos    卡顿帧的结束时间
+     * @param threadDump       全部线程的堆栈,可为null
+     * @param cpuTimeNanos     主线程的CPU时间,-1为未知
+     * @param cpuWallNanos     CPU时间对应的墙上时间
+     * @param slowMessage      超时的主线程消息,可为null
+     * @param slowMessageNanos 超时消息的耗时
+     * @param queueBacklog     主线程消息队列的积压,可为null
+     */
+    private String buildStackText(int skippedFrames, int severity, long frameStartNanos, long frameEndNanos,
+                                  ThreadDump threadDump, long cpuTimeNanos, long cpuWallNanos, String slowMessage,
+                                  long slowMessageNanos, QueueBacklog queueBacklog) {
         logStackInfoBuilder.delete(0, logStackInfoBuilder.length());
         logStackInfoBuilder.append(" \n");
         logStackInfoBuilder.append(" \n");
         logStackInfoBuilder.append("~~~~~~~~~~~~~~~~~~~start~~~~~~~~~~~~~~~~~~~~~~");
         logStackInfoBuilder.append(" \n");
+        logStackInfoBuilder.append("severity: ").append(JankSeverity.getName(severity));
+        if (frameStartNanos != 0) {
+            logStackInfoBuilder.append(", ").append((frameEndNanos - frameStartNanos) / 1000000).append("ms");
+        }
+        //单独输出的超时消息没有跳过的帧
+        if (skippedFrames > 0) {
+            logStackInfoBuilder.append(", skipped ").append(skippedFrames).append(" frames");
+        }
+        if (cpuTimeNanos >= 0) {
+            logStackInfoBuilder.append(", main thread cpu ").append(cpuTimeNanos / 1000000).append("ms of ")
+                    .append(cpuWallNanos / 1000000).append("ms (").append(cpuTimeNanos * 100 / cpuWallNanos).append("%)");
+        }
+        logStackInfoBuilder.append(" \n");
+        if (slowMessage != null) {
+            logStackInfoBuilder.append("slow message: ").append(slowMessage).append(", ")
+                    .append(slowMessageNanos / 1000000).append("ms");
+            logStackInfoBuilder.append(" \n");
+        }
+        if (queueBacklog != null) {
+            logStackInfoBuilder.append("main queue: up to ").append(queueBacklog.getMaxPendingCount())
+                    .append(queueBacklog.isPendingCountTruncated() ? "+" : "").append(" pending, oldest late ")
+                    .append(queueBacklog.getMaxLatenessNanos() / 1000000).append("ms (")
+                    .append(queueBacklog.getSampleCount()).append(" samples)");
+            logStackInfoBuilder.append(" \n");
+        }
         logStackInfoBuilder.append(" \n");
-        for (String stackInfo : logStackInfoQueue) {
-            logStackInfoBuilder.append(stackInfo);
+        for (int i = 0; i < outputCount; i++) {
+            appendStackInfo(stackSampleRing, i, frameStartNanos);
             logStackInfoBuilder.append("\n");
         }
+        if (isNeedFoldedStacks) {
+            logStackInfoBuilder.append("~~~~~~~~~~~~~~~~~~~folded~~~~~~~~~~~~~~~~~~~~~~");
+            logStackInfoBuilder.append("\n");
+            for (int i = 0; i < outputCount; i++) {
+                appendFoldedStack(stackSampleRing, i);
+            }
+        }
+        if (threadDump != null) {
+            appendThreadDump(threadDump, frameStartNanos);
+        }
         logStackInfoBuilder.append("~~~~~~~~~~~~~~~~~~~end~~~~~~~~~~~~~~~~~~~~~~");
         logStackInfoBuilder.append("\n");
         logStackInfoBuilder.append(" \n");
-        //清除原队列数据
-        logStackInfoQueue.clear();
-        //获取全部的堆栈信息
-        String allStackInfo = logStackInfoBuilder.toString();
-        //输出信息并视情况缓存
-        LogUtils.printLog(tag, allStackInfo);
-        //检测是否需要存储到本地
-        if (isNeedCacheToFile) {
-            saveAllStackInfoToFile(allStackInfo);
+        return logStackInfoBuilder.toString();
+    }
+
+    /**
+     * 将全部线程的堆栈追加到builder中,每组一段
+     *
+     * @param threadDump      全部线程的堆栈
+     * @param frameStartNanos 卡顿帧的开始时间,0表示未知
+     */
+    private void appendThreadDump(ThreadDump threadDump, long frameStartNanos) {
+        logStackInfoBuilder.append("~~~~~~~~~~~~~~~~~~~threads~~~~~~~~~~~~~~~~~~~~~~");
+        if (frameStartNanos != 0) {
+            logStackInfoBuilder.append(" +").append((threadDump.getCaptureNanos() - frameStartNanos) / 1000000).append("ms");
+        }
+        logStackInfoBuilder.append("\n");
+        for (int group = 0; group < threadDump.getGroupCount(); group++) {
+            logStackInfoBuilder.append("---------------------------------------------------");
+            logStackInfoBuilder.append(" ").append(threadDump.getGroupThreadState(group))
+                    .append(" x").append(threadDump.getGroupThreadCount(group))
+                    .append(": ").append(threadDump.getGroupThreadNames(group));
+            logStackInfoBuilder.append("\n");
+            for (int j = 0; j < threadDump.getGroupFrameCount(group); j++) {
+                logStackInfoBuilder.append(threadDump.getFrame(threadDump.getGroupFrame(group, j)));
+                logStackInfoBuilder.append("\n");
+            }
+            logStackInfoBuilder.append("---------------------------------------------------");
+            logStackInfoBuilder.append("\n");
         }
     }
 
     /**
-     * 保存所有的堆栈信息到文件
+     * 选出在卡顿帧时间范围内出现过的堆栈,次数和首次/最近一次出现的时间只统计范围内的采样,
+     * 范围内没有采样时(采样间隔大于卡顿时长)选出卡顿开始前最近出现的一条,只计最近的一次
      *
-     * @param allStackInfo 所有的堆栈信息
+     * @param frameStartNanos 卡顿帧的开始时间,0表示未知(全部输出,次数为会话内累计)
+     * @param frameEndNanos   卡顿帧的结束时间
      */
-    private void saveAllStackInfoToFile(String allStackInfo) {
-        RandomAccessFile rfile = null;
-        //获取文件通道
-        FileChannel channel;
-        try {
-            //根据配置生成文件夹地址
-            final String finalFileRootFolderPath = Environment.getExternalStorageDirectory() + "/" + cacheFolder;
-            final String finalFileFolderPath = finalFileRootFolderPath + "/" + TimeUtils.getFileFolderNameByTime();
-            //校验文件夹是否存在,不存在则创建
-            File fileFolder = new File(finalFileFolderPath);
-            if (!fileFolder.exists()) {
-                fileFolder.mkdirs();
+    private void selectOutputSamples(long frameStartNanos, long frameEndNanos) {
+        outputCount = 0;
+        outputRepeatCount = 0;
+        if (frameStartNanos == 0) {
+            for (int i = 0; i < stackSampleRing.size(); i++) {
+                addOutputSample(i, stackSampleRing.getRepeatCount(i), stackSampleRing.getTimestamp(i),
+                        stackSampleRing.getLastTimestamp(i));
             }
-            //校验文件是否存在
-            String cacheFilePath = finalFileFolderPath + "/" + cacheFileName + ".txt";
-            File cacheFile = new File(cacheFilePath);
-            if (!cacheFile.exists()) {
-                cacheFile.createNewFile();
+            return;
+        }
+        stackSampleRing.selectWindow(frameStartNanos, frameEndNanos);
+        int latestIndex = -1;
+        for (int i = 0; i < stackSampleRing.size(); i++) {
+            int repeatCount = stackSampleRing.getWindowRepeatCount(i);
+            if (repeatCount > 0) {
+                addOutputSample(i, repeatCount, stackSampleRing.getWindowTimestamp(i),
+                        stackSampleRing.getWindowLastTimestamp(i));
+            } else {
+                long last = stackSampleRing.getLastTimestamp(i);
+                if (last < frameStartNanos
+                        && (latestIndex < 0 || last > stackSampleRing.getLastTimestamp(latestIndex))) {
+                    latestIndex = i;
+                }
             }
-            //追加文件写入新的堆栈信息
-            //获取文件
-            rfile = new RandomAccessFile(cacheFilePath, "rw");
-            //获取文件通道
-            channel = rfile.getChannel();
-            channel.position(channel.size());
-            //写入缓冲区
-            byte[] allStackInfoBytes = allStackInfo.getBytes();
-            ByteBuffer buff = ByteBuffer.wrap(allStackInfoBytes);
-            buff.put(allStackInfoBytes);
-            buff.flip();
-            //写入文件
-            channel.write(buff);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            //关闭流,刷新到文件
-            if (rfile != null) {
-                try {
-                    rfile.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+        }
+        if (outputCount == 0 && latestIndex >= 0) {
+            long last = stackSampleRing.getLastTimestamp(latestIndex);
+            addOutputSample(latestIndex, 1, last, last);
+        }
+    }
+
+    /**
+     * 追加一条输出的堆栈,按首次出现的时间排列
+     */
+    private void addOutputSample(int index, int repeatCount, long timestamp, long lastTimestamp) {
+        int position = outputCount;
+        while (position > 0 && outputTimestamps[position - 1] > timestamp) {
+            outputIndexes[position] = outputIndexes[position - 1];
+            outputRepeatCounts[position] = outputRepeatCounts[position - 1];
+            outputTimestamps[position] = outputTimestamps[position - 1];
+            outputLastTimestamps[position] = outputLastTimestamps[position - 1];
+            position--;
+        }
+        outputIndexes[position] = index;
+        outputRepeatCounts[position] = repeatCount;
+        outputTimestamps[position] = timestamp;
+        outputLastTimestamps[position] = lastTimestamp;
+        outputCount++;
+        outputRepeatCount += repeatCount;
+    }
+
+    /**
+     * 根据选出的堆栈生成卡顿报告,帧ID转换为报告内的下标,同一个帧只保存一次
+     *
+     * @param sampleRing       采样缓冲
+     * @param skippedFrames    跳过的帧数
+     * @param frameStartNanos  卡顿帧的开始时间
+     * @param frameEndNanos    卡顿帧的结束时间
+     * @param text             文本格式的内容,可为null
+     * @param severity         卡顿等级
+     * @param threadDump       全部线程的堆栈,可为null
+     * @param cpuTimeNanos     主线程的CPU时间,-1为未知
+     * @param cpuWallNanos     CPU时间对应的墙上时间
+     * @param slowMessage      超时的主线程消息,可为null
+     * @param slowMessageNanos 超时消息的耗时
+     * @param queueBacklog     主线程消息队列的积压,可为null
+     */
+    private JankReport buildJankReport(StackSampleRing sampleRing, int skippedFrames, long frameStartNanos,
+                                       long frameEndNanos, String text, int severity, ThreadDump threadDump,
+                                       long cpuTimeNanos, long cpuWallNanos, String slowMessage,
+                                       long slowMessageNanos, QueueBacklog queueBacklog) {
+        int sampleCount = outputCount;
+        int totalFrameCount = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            totalFrameCount += sampleRing.getFrameCount(outputIndexes[i]);
+        }
+        if (reportFrameIndexes.length < frameDictionary.size()) {
+            reportFrameIndexes = new int[Math.max(frameDictionary.size(), reportFrameIndexes.length * 2)];
+            Arrays.fill(reportFrameIndexes, -1);
+        }
+        long[] sampleTimestamps = new long[sampleCount];
+        long[] sampleLastTimestamps = new long[sampleCount];
+        int[] sampleRepeatCounts = new int[sampleCount];
+        int[] sampleThreadStates = new int[sampleCount];
+        String[] sampleLockInfos = new String[sampleCount];
+        int[] sampleOffsets = new int[sampleCount + 1];
+        int[] sampleFrames = new int[totalFrameCount];
+        int[] reportFrameIds = new int[totalFrameCount];
+        int reportFrameCount = 0;
+        int offset = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            int index = outputIndexes[i];
+            sampleTimestamps[i] = outputTimestamps[i];
+            sampleLastTimestamps[i] = outputLastTimestamps[i];
+            sampleRepeatCounts[i] = outputRepeatCounts[i];
+            sampleThreadStates[i] = sampleRing.getThreadState(index);
+            sampleLockInfos[i] = sampleRing.getLockInfo(index);
+            sampleOffsets[i] = offset;
+            int frameCount = readFrameIds(sampleRing, index);
+            for (int j = 0; j < frameCount; j++) {
+                int frameId = outputFrameIds[j];
+                if (reportFrameIndexes[frameId] < 0) {
+                    reportFrameIndexes[frameId] = reportFrameCount;
+                    reportFrameIds[reportFrameCount++] = frameId;
                 }
+                sampleFrames[offset++] = reportFrameIndexes[frameId];
             }
         }
+        sampleOffsets[sampleCount] = offset;
+        String[] frames = new String[reportFrameCount];
+        for (int i = 0; i < reportFrameCount; i++) {
+            frames[i] = frameDictionary.getFrameString(reportFrameIds[i]);
+            //还原下标缓冲,供下次使用
+            reportFrameIndexes[reportFrameIds[i]] = -1;
+        }
+        return new JankReport(System.currentTimeMillis(), frameStartNanos, frameEndNanos, skippedFrames, frames,
+                sampleTimestamps, sampleLastTimestamps, sampleRepeatCounts, sampleOffsets, sampleFrames, text,
+                severity, threadDump, sampleThreadStates, sampleLockInfos, cpuTimeNanos, cpuWallNanos, slowMessage,
+                slowMessageNanos, queueBacklog);
+    }
+
+    /**
+     * 根据选出的堆栈生成卡顿事件,帧直接取自帧字典,不经过文本格式化
+     *
+     * @param sampleRing       采样缓冲
+     * @param skippedFrames    跳过的帧数
+     * @param frameStartNanos  卡顿帧的开始时间
+     * @param frameEndNanos    卡顿帧的结束时间
+     * @param severity         卡顿等级
+     * @param threadDump       全部线程的堆栈,可为null
+     * @param cpuTimeNanos     主线程的CPU时间,-1为未知
+     * @param cpuWallNanos     CPU时间对应的墙上时间
+     * @param slowMessage      超时的主线程消息,可为null
+     * @param slowMessageNanos 超时消息的耗时
+     * @param queueBacklog     主线程消息队列的积压,可为null
+     */
+    private JankEvent buildJankEvent(StackSampleRing sampleRing, int skippedFrames, long frameStartNanos,
+                                     long frameEndNanos, int severity, ThreadDump threadDump, long cpuTimeNanos,
+                                     long cpuWallNanos, String slowMessage, long slowMessageNanos,
+                                     QueueBacklog queueBacklog) {
+        JankEvent.Stack[] stacks = new JankEvent.Stack[outputCount];
+        for (int i = 0; i < outputCount; i++) {
+            int index = outputIndexes[i];
+            int frameCount = readFrameIds(sampleRing, index);
+            StackTraceElement[] frames = new StackTraceElement[frameCount];
+            for (int j = 0; j < frameCount; j++) {
+                frames[j] = frameDictionary.getFrame(outputFrameIds[j]);
+            }
+            stacks[i] = new JankEvent.Stack(frames, outputRepeatCounts[i], outputTimestamps[i],
+                    outputLastTimestamps[i], sampleRing.getThreadState(index), sampleRing.getLockInfo(index));
+        }
+        return new JankEvent(System.currentTimeMillis(), frameStartNanos, frameEndNanos, skippedFrames, stacks, severity,
+                threadDump, cpuTimeNanos, cpuWallNanos, slowMessage, slowMessageNanos, queueBacklog);
+    }
+
+    /**
+     * 将一次采样的帧ID还原为字符串追加到builder中
+     *
+     * @param sampleRing      采样缓冲
+     * @param output          输出的堆栈的下标(outputIndexes中)
+     * @param frameStartNanos 卡顿帧的开始时间,0表示未知
+     */
+    private void appendStackInfo(StackSampleRing sampleRing, int output, long frameStartNanos) {
+        int index = outputIndexes[output];
+        logStackInfoBuilder.append("---------------------------------------------------");
+        //相对卡顿帧开始时间的偏移,以及相同堆栈的出现次数和持续时间
+        if (frameStartNanos != 0) {
+            long offsetMillis = (outputTimestamps[output] - frameStartNanos) / 1000000;
+            logStackInfoBuilder.append(offsetMillis < 0 ? " " : " +").append(offsetMillis).append("ms,");
+        }
+        logStackInfoBuilder.append(" seen in ").append(outputRepeatCounts[output])
+                .append(" of ").append(outputRepeatCount).append(" samples");
+        if (outputRepeatCounts[output] > 1) {
+            logStackInfoBuilder.append(", ")
+                    .append((outputLastTimestamps[output] - outputTimestamps[output]) / 1000000).append("ms");
+        }
+        //主线程的状态,阻塞时附带等待的锁及其持有者
+        int threadState = sampleRing.getThreadState(index);
+        if (threadState >= 0 && threadState < THREAD_STATES.length) {
+            logStackInfoBuilder.append(", ").append(THREAD_STATES[threadState]);
+        }
+        String lockInfo = sampleRing.getLockInfo(index);
+        if (lockInfo != null) {
+            logStackInfoBuilder.append(" on ").append(lockInfo);
+        }
+        logStackInfoBuilder.append("\n");
+        int frameCount = readFrameIds(sampleRing, index);
+        for (int i = 0; i < frameCount; i++) {
+            logStackInfoBuilder.append(frameDictionary.getFrameString(outputFrameIds[i]));
+            logStackInfoBuilder.append("\n");
+        }
+        logStackInfoBuilder.append("---------------------------------------------------");
+        logStackInfoBuilder.append("\n");
+    }
+
+    /**
+     * 将一条堆栈按折叠格式(栈底在前,以;分隔,末尾为出现次数)追加到builder中,可直接用于生成火焰图
+     *
+     * @param sampleRing 采样缓冲
+     * @param output     输出的堆栈的下标(outputIndexes中)
+     */
+    private void appendFoldedStack(StackSampleRing sampleRing, int output) {
+        int index = outputIndexes[output];
+        int frameCount = readFrameIds(sampleRing, index);
+        for (int i = frameCount - 1; i >= 0; i--) {
+            FoldedStackFormat.appendFrame(logStackInfoBuilder, frameDictionary.getFrameString(outputFrameIds[i]),
+                    i == frameCount - 1);
+        }
+        FoldedStackFormat.appendCount(logStackInfoBuilder, outputRepeatCounts[output]);
+    }
 
+    /**
+     * 读取一条堆栈的帧ID到outputFrameIds中(栈顶在前)
+     *
+     * @return 帧数量
+     */
+    private int readFrameIds(StackSampleRing sampleRing, int index) {
+        int frameCount = sampleRing.getFrameCount(index);
+        if (outputFrameIds.length < frameCount) {
+            outputFrameIds = new int[Math.max(frameCount, outputFrameIds.length * 2)];
+        }
+        return sampleRing.getFrameIds(index, outputFrameIds);
     }
 
     /**
      * 用于处理收集消息
      *
-     * @param stackInfo 待缓存堆栈信息
+     * @param stackInfo   待缓存堆栈信息
+     * @param timestamp   采集时间(纳秒,System.nanoTime)
+     * @param threadState 采集时主线程的状态(Thread.State的序号,-1为未知)
      */
-    private void handleLogExecutorCollectionMessage(Object stackInfo) {
+    private void handleLogExecutorCollectionMessage(Object stackInfo, long timestamp, int threadState) {
+        //主线程阻塞在锁上时堆栈和锁信息一起发送
+        String lockInfo = null;
+        if (stackInfo instanceof Object[] && !(stackInfo instanceof StackTraceElement[])
+                && ((Object[]) stackInfo).length == 2) {
+            lockInfo = (String) ((Object[]) stackInfo)[1];
+            stackInfo = ((Object[]) stackInfo)[0];
+        }
         //收集堆栈信息
-        startCollectionLogTask(stackInfo);
+        startCollectionLogTask(stackInfo, timestamp, threadState, lockInfo);
     }
 
     /**
@@ -283,32 +1180,86 @@ public class LogExecutor {
     /**
      * 创建收集的消息
      *
-     * @param stackInfo 堆栈消息
+     * @param stackInfo   堆栈消息
+     * @param timestamp   采集时间(纳秒,System.nanoTime)
+     * @param threadState 采集时主线程的状态,可为null
+     *                    采集时间的低3位替换为状态的序号(精度损失不超过8ns),再拆分为arg1和arg2,避免额外分配对象
+     * @param lockInfo    主线程等待的锁及其持有者,只在BLOCKED时不为null(此时才额外分配对象)
      */
-    public Message obtainCollectionMessage(Object stackInfo) {
+    public Message obtainCollectionMessage(Object stackInfo, long timestamp, Thread.State threadState, String lockInfo) {
         if (stackInfo == null) {
             return null;
         }
-        Message collectionMsg = Message.obtain(logExecutorHandler, TYPE_COLLECTION, stackInfo);
+        long packedTimestamp = (timestamp & ~THREAD_STATE_MASK)
+                | (threadState == null ? THREAD_STATE_MASK : threadState.ordinal());
+        Message collectionMsg = Message.obtain(logExecutorHandler, TYPE_COLLECTION,
+                (int) (packedTimestamp >>> 32), (int) packedTimestamp,
+                lockInfo == null ? stackInfo : new Object[]{stackInfo, lockInfo});
         return collectionMsg;
     }
 
+    /**
+     * 由arg1和arg2还原采集时间
+     */
+    private static long unpackTimestamp(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 由采集时间的低3位还原主线程的状态
+     *
+     * @return Thread.State的序号,-1为未知
+     */
+    private static int unpackThreadState(long packedTimestamp) {
+        int threadState = (int) (packedTimestamp & THREAD_STATE_MASK);
+        return threadState == THREAD_STATE_MASK ? -1 : threadState;
+    }
+
     /**
      * 创建输出的消息
+     *
+     * @param skippedFrames 跳过的帧数
+     * @param frameWindow   卡顿帧的开始和结束时间(纳秒),long[2],可为null
+     * @param severity      卡顿等级
      */
-    public Message obtainOutputMessage() {
-        Message outputMsg = Message.obtain(logExecutorHandler, TYPE_OUTPUT, null);
+    public Message obtainOutputMessage(int skippedFrames, long[] frameWindow, int severity) {
+        Message outputMsg = Message.obtain(logExecutorHandler, TYPE_OUTPUT, skippedFrames, severity, frameWindow);
         return outputMsg;
     }
 
+    /**
+     * 创建抓取全部线程堆栈的消息
+     *
+     * @param severity      卡顿等级,冻帧及以上
+     * @param skippedFrames 到目前为止跳过的帧数
+     * @param stallWindow   卡住的开始时间和最近一次采集的时间(纳秒),long[2]
+     */
+    public Message obtainThreadDumpMessage(int severity, int skippedFrames, long[] stallWindow) {
+        Message threadDumpMsg = Message.obtain(logExecutorHandler, TYPE_THREAD_DUMP, severity, skippedFrames, stallWindow);
+        return threadDumpMsg;
+    }
+
+    /**
+     * 创建记录超时消息的消息
+     *
+     * @param slowMessage 超时的主线程消息
+     */
+    public Message obtainSlowMessageMessage(SlowMessage slowMessage) {
+        Message slowMsg = Message.obtain(logExecutorHandler, TYPE_SLOW_MESSAGE, slowMessage);
+        return slowMsg;
+    }
+
     /**
      * 开始日志收集任务
      *
-     * @param stackInfo 堆栈信息对象
+     * @param stackInfo   堆栈信息对象
+     * @param timestamp   采集时间(纳秒,System.nanoTime)
+     * @param threadState 采集时主线程的状态(Thread.State的序号,-1为未知)
+     * @param lockInfo    采集时主线程等待的锁及其持有者,可为null
      */
-    private void startCollectionLogTask(Object stackInfo) {
+    private void startCollectionLogTask(Object stackInfo, long timestamp, int threadState, String lockInfo) {
         //校验数据类型是否正确
-        if (!(stackInfo instanceof StackTraceElement[])) {
+        if (!(stackInfo instanceof StackTraceElement[]) || stackSampleRing == null) {
             return;
         }
         StackTraceElement[] stackTraceElements = (StackTraceElement[]) stackInfo;
@@ -318,74 +1269,132 @@ public class LogExecutor {
             return;
         }
 
-        //初始化Log信息
-        logStackInfoBuilder.delete(0, logStackInfoBuilder.length());
-        logStackInfoBuilder.append("---------------------------------------------------");
-        logStackInfoBuilder.append("\n");
-
-        //追加堆栈信息
-        boolean hasUsefulInfo = false;
-        for (StackTraceElement mStackInfo : stackTraceElements) {
-            String info = mStackInfo.toString();
-            if (checkInfoUseful(info)) {
-                logStackInfoBuilder.append(info);
-                logStackInfoBuilder.append("\n");
-                hasUsefulInfo = true;
-            }
+        //调用树回收的堆栈不会释放帧ID,帧字典达到上限时重建
+        if (frameDictionary.size() >= frameDictionaryLimit) {
+            rebuildFrameDictionary();
         }
-        logStackInfoBuilder.append("---------------------------------------------------");
-        logStackInfoBuilder.append("\n");
+        //将帧转换为ID,再在ID上进行筛选,只有首次出现的帧才需要分类
+        if (stackTraceElements.length > sampleFrameIds.length) {
+            sampleFrameIds = new int[Math.max(stackTraceElements.length, sampleFrameIds.length * 2)];
+        }
+        for (int i = 0; i < stackTraceElements.length; i++) {
+            sampleFrameIds[i] = frameDictionary.intern(stackTraceElements[i]);
+        }
+        int frameCount = stackFrameFilter.filter(frameDictionary, sampleFrameIds, stackTraceElements.length, sampleFrameIds);
 
-        //判断是否需要添加
-        //获取当前堆栈信息,存储到队列
-        String currentStackInfo = logStackInfoBuilder.toString();
-        //获取上一个堆栈信息比较是否相同
-        String lastInfo = logStackInfoQueue.isEmpty() ? "" : logStackInfoQueue.get(logStackInfoQueue.size() - 1);
-        //不相同且有有效内容
-        boolean isNeedAdd = hasUsefulInfo && !currentStackInfo.equals(lastInfo);
-        if (isNeedAdd) {
-            //将当前堆栈信息存储到队列中
-            logStackInfoQueue.add(currentStackInfo);
+        //无有效内容时不添加
+        if (frameCount == 0) {
+            return;
         }
-        //判断存储队列是否已经超出限制,视情况移除队列前的内容,在队尾增加
-        if (logStackInfoQueue.size() > cacheDataSize) {
-            logStackInfoQueue.remove(0);
+        //插入调用树去重,已存在的堆栈只累加次数,超出容量时淘汰最久没有出现的一条
+        boolean isNewStack = stackSampleRing.add(sampleFrameIds, frameCount, timestamp, threadState, lockInfo);
+        //新的堆栈同时写入持久化的缓冲,新出现的帧先写入帧字典
+        if (isNewStack && persistentSampleRing != null) {
+            try {
+                persistentSampleRing.appendFrames(frameDictionary);
+                persistentSampleRing.add(sampleFrameIds, frameCount, timestamp);
+            } catch (IOException e) {
+                e.printStackTrace();
+                closePersistentSampleRing();
+            }
         }
     }
 
     /**
-     * 校验信息是否有效
+     * 重建帧字典：只收录采样缓冲中仍在使用的帧,并替换采样缓冲中的帧ID;
+     * 持久化的缓冲引用旧的ID,重新开始会话并写入当前的堆栈
      */
-    private boolean checkInfoUseful(String info) {
-        //未设置关键词默认为全通过
-        if (keyWords == null || keyWords.length == 0) {
-            return true;
-        }
-        //校验内容是否有效,无效直接
-        if (TextUtils.isEmpty(info)) {
-            return false;
+    private void rebuildFrameDictionary() {
+        StackFrameDictionary newDictionary = new StackFrameDictionary();
+        int[] idMap = new int[frameDictionary.size()];
+        for (int i = 0; i < stackSampleRing.size(); i++) {
+            int frameCount = readFrameIds(stackSampleRing, i);
+            for (int j = 0; j < frameCount; j++) {
+                int frameId = outputFrameIds[j];
+                idMap[frameId] = newDictionary.internFrom(frameDictionary, frameId);
+            }
         }
-        //校验是否包含关键词,包含返回true,反之返回false
-        for (String keyWord : keyWords) {
-            if (info.contains(keyWord)) {
-                return true;
+        stackSampleRing.remapFrameIds(idMap);
+        frameDictionary = newDictionary;
+        //占位帧的ID和帧的分类结果都属于旧的字典
+        stackFrameFilter.reset(frameDictionary);
+        frameDictionaryLimit = Math.max(MAX_FRAME_DICTIONARY_SIZE, frameDictionary.size() * 2);
+        if (persistentSampleRing != null) {
+            try {
+                persistentSampleRing.open(cacheDataSize);
+                persistentSampleRing.appendFrames(frameDictionary);
+                //按最近一次出现的时间写入,恢复时按写入顺序排列
+                List<Integer> indexes = new ArrayList<>();
+                for (int i = 0; i < stackSampleRing.size(); i++) {
+                    indexes.add(i);
+                }
+                Collections.sort(indexes, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        long lastA = stackSampleRing.getLastTimestamp(a);
+                        long lastB = stackSampleRing.getLastTimestamp(b);
+                        return lastA < lastB ? -1 : (lastA == lastB ? 0 : 1);
+                    }
+                });
+                for (int index : indexes) {
+                    int frameCount = readFrameIds(stackSampleRing, index);
+                    persistentSampleRing.add(outputFrameIds, frameCount, stackSampleRing.getLastTimestamp(index));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                closePersistentSampleRing();
             }
         }
-        return false;
     }
 
     /**
      * 关闭执行
      */
     public void stop() {
+        final List<JankSink> stoppedSinks = sinks;
         if (logExecutorHandler != null) {
             logExecutorHandler.removeCallbacksAndMessages(null);
+            //在LogExecutor_Thread中标记持久化的会话正常结束、关闭输出目标后再退出,保证关闭后不会再有提交
+            logExecutorHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    closePersistentSampleRing();
+                    stopSinks(stoppedSinks);
+                    Looper.myLooper().quit();
+                }
+            });
             logExecutorHandler = null;
+        } else {
+            if (logExecutorThread != null) {
+                logExecutorThread.quit();
+            }
+            stopSinks(stoppedSinks);
         }
-        if (logExecutorThread != null) {
-            logExecutorThread.quit();
-            logExecutorThread = null;
-        }
+        logExecutorThread = null;
+        logWriter = null;
+        jankEventDispatcher = null;
+    }
+
+    /**
+     * 因待分发的卡顿事件过多而丢弃的事件数量
+     */
+    public long getDroppedJankEventCount() {
+        JankEventDispatcher dispatcher = jankEventDispatcher;
+        return dispatcher == null ? 0 : dispatcher.getDroppedEventCount();
+    }
+
+    /**
+     * 因写入队列已满而丢弃的日志数量
+     */
+    public long getDroppedReportCount() {
+        return logWriter == null ? 0 : logWriter.getDroppedReportCount();
+    }
+
+    /**
+     * 与其他日志合并写入的日志数量
+     */
+    public long getCoalescedReportCount() {
+        return logWriter == null ? 0 : logWriter.getCoalescedReportCount();
     }
 
     //----------------基础信息的配置函数----------------
@@ -408,6 +1417,13 @@ public class LogExecutor {
         this.tag = tag;
     }
 
+    /**
+     * 获取日志输出TAG
+     */
+    public String getTag() {
+        return tag;
+    }
+
     /**
      * 设置是否需要缓存到本地文件
      *
@@ -436,11 +1452,124 @@ public class LogExecutor {
     }
 
     /**
-     * 设置过滤关键词 （排除不是关键词内的内容）
+     * 设置过滤关键词 （排除不是关键词内的内容）,设置时编译为匹配器
      *
      * @param keyWords 关键词
      */
     public void setKeyWords(String[] keyWords) {
-        this.keyWords = keyWords;
+        stackFrameFilter.setIncludeKeyWords(keyWords);
+    }
+
+    /**
+     * 设置堆栈帧的筛选规则
+     *
+     * @param excludeKeyWords           排除的关键词
+     * @param isCollapseFrameworkFrames 是否折叠连续的系统帧
+     * @param maxStackDepth             最大深度,0为不限制
+     */
+    public void setStackFilter(String[] excludeKeyWords, boolean isCollapseFrameworkFrames, int maxStackDepth) {
+        stackFrameFilter.setExcludeKeyWords(excludeKeyWords);
+        stackFrameFilter.setCollapseFrameworkFrames(isCollapseFrameworkFrames);
+        stackFrameFilter.setMaxDepth(maxStackDepth);
+    }
+
+    /**
+     * 设置缓存文件格式
+     *
+     * @param logFormat {@link LogWriter#FORMAT_TEXT} 或 {@link LogWriter#FORMAT_BINARY}
+     */
+    public void setLogFormat(int logFormat) {
+        this.logFormat = logFormat;
+    }
+
+    /**
+     * 设置写入队列已满时的丢弃策略
+     *
+     * @param reportDropPolicy {@link LogWriter#DROP_POLICY_NEWEST} 或 {@link LogWriter#DROP_POLICY_OLDEST}
+     */
+    public void setReportDropPolicy(int reportDropPolicy) {
+        this.reportDropPolicy = reportDropPolicy;
+    }
+
+    /**
+     * 设置是否持久化最新的采样
+     *
+     * @param needPersistSamples true:需要 false:不需要
+     */
+    public void setNeedPersistSamples(boolean needPersistSamples) {
+        isNeedPersistSamples = needPersistSamples;
+    }
+
+    /**
+     * 设置是否在日志中输出折叠格式的堆栈
+     *
+     * @param needFoldedStacks true:需要 false:不需要
+     */
+    public void setNeedFoldedStacks(boolean needFoldedStacks) {
+        isNeedFoldedStacks = needFoldedStacks;
+    }
+
+    /**
+     * 设置输出目标
+     *
+     * @param needLogcat  是否输出到logcat,不输出且没有其他需要文本的输出目标时不会格式化文本
+     * @param customSinks 自定义的输出目标,可为null
+     */
+    public void setOutputSinks(boolean needLogcat, List<JankSink> customSinks) {
+        isNeedLogcat = needLogcat;
+        this.customSinks = customSinks;
+    }
+
+    /**
+     * 设置卡顿事件的监听者
+     *
+     * @param jankListeners        监听者,需要为线程安全的列表,之后的增删直接生效
+     * @param jankDispatchInterval 两次回调之间的最小间隔(ms)
+     */
+    public void setJankListeners(List<JankListener> jankListeners, long jankDispatchInterval) {
+        this.jankListeners = jankListeners;
+        this.jankDispatchInterval = jankDispatchInterval;
+    }
+
+    /**
+     * 设置主线程CPU时间环形缓冲
+     *
+     * @param cpuTimeRing 环形缓冲,为null时不统计
+     */
+    public void setCpuTimeRing(CpuTimeRing cpuTimeRing) {
+        this.cpuTimeRing = cpuTimeRing;
+    }
+
+    /**
+     * 设置主线程消息队列积压的环形缓冲
+     *
+     * @param queueBacklogRing 环形缓冲,为null时不统计
+     */
+    public void setQueueBacklogRing(QueueBacklogRing queueBacklogRing) {
+        this.queueBacklogRing = queueBacklogRing;
+    }
+
+    /**
+     * 设置缓存文件的同步策略
+     *
+     * @param journalSyncPolicy   {@link LogWriter#SYNC_NONE}、{@link LogWriter#SYNC_BATCH} 或 {@link LogWriter#SYNC_INTERVAL}
+     * @param journalSyncInterval 同步间隔(ms)
+     */
+    public void setJournalSyncPolicy(int journalSyncPolicy, long journalSyncInterval) {
+        this.journalSyncPolicy = journalSyncPolicy;
+        this.journalSyncInterval = journalSyncInterval;
+    }
+
+    /**
+     * 设置缓存文件的存储策略
+     *
+     * @param maxLogFileSize    单个文件大小上限(字节),0为不限制
+     * @param isNeedCompressLog 是否压缩分段后的文件
+     * @param maxLogDiskUsage   总容量上限(字节),0为不限制
+     */
+    public void setLogStoragePolicy(long maxLogFileSize, boolean isNeedCompressLog, long maxLogDiskUsage) {
+        this.maxLogFileSize = maxLogFileSize;
+        this.isNeedCompressLog = isNeedCompressLog;
+        this.maxLogDiskUsage = maxLogDiskUsage;
     }
 }
@@ -8,6 +8,8 @@ import android.os.Message;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.simon.uiwatch.callback.JankListener;
+import com.simon.uiwatch.sink.JankSink;
 import com.simon.uiwatch.util.LogUtils;
 import com.simon.uiwatch.util.TimeUtils;
 
@@ -83,17 +85,263 @@ public class LogMonitor {
 
     /**
      * 开始输出并重新开始收集日志
+     *
+     * @param frameStartNanos 卡顿帧的开始时间
+     * @param frameEndNanos   卡顿帧的结束时间
+     * @param skippedFrames   跳过的帧数
      */
-    public void startOutputAndResetCollectionMonitor() {
+    public void startOutputAndResetCollectionMonitor(long frameStartNanos, long frameEndNanos, int skippedFrames) {
         if (logNotifier == null) {
             return;
         }
-        logNotifier.startOutputAndRestartCollectionNotifier();
+        logNotifier.startOutputAndRestartCollectionNotifier(frameStartNanos, frameEndNanos, skippedFrames);
+    }
+
+
+    /**
+     * 输出超时的主线程消息(主线程调用),未开启时忽略
+     *
+     * @param slowMessage 超时消息
+     */
+    public void outputSlowMessage(SlowMessage slowMessage) {
+        if (logNotifier != null) {
+            logNotifier.outputSlowMessage(slowMessage);
+        }
+    }
+
+    /**
+     * 获取帧时间环形缓冲,主线程的帧回调只向其中写入帧时间
+     */
+    public FrameTimeRing getFrameTimeRing() {
+        return logNotifier == null ? null : logNotifier.getFrameTimeRing();
     }
 
+    /**
+     * 屏幕刷新率变化
+     *
+     * @param refreshRate 刷新率(Hz)
+     */
+    public void setDisplayRefreshRate(float refreshRate) {
+        if (logNotifier != null) {
+            logNotifier.setDisplayRefreshRate(refreshRate);
+        }
+    }
+
+    /**
+     * 因写入队列已满而丢弃的日志数量
+     */
+    public long getDroppedReportCount() {
+        return logNotifier == null ? 0 : logNotifier.getDroppedReportCount();
+    }
+
+    /**
+     * 与其他日志合并写入的日志数量
+     */
+    public long getCoalescedReportCount() {
+        return logNotifier == null ? 0 : logNotifier.getCoalescedReportCount();
+    }
+
+    /**
+     * 因待分发的卡顿事件过多而丢弃的事件数量
+     */
+    public long getDroppedJankEventCount() {
+        return logNotifier == null ? 0 : logNotifier.getDroppedJankEventCount();
+    }
+
+    /**
+     * 获取采样统计
+     *
+     * @return 未开启时返回null
+     */
+    public SamplingStats getSamplingStats() {
+        if (logNotifier == null) {
+            return null;
+        }
+        return logNotifier.getSamplingStats();
+    }
+
+    /**
+     * 获取开始监控以来的帧时长直方图
+     *
+     * @return 未开启时返回null
+     */
+    public FrameHistogram getFrameHistogram() {
+        return logNotifier == null ? null : logNotifier.getFrameHistogram();
+    }
+
+    /**
+     * 获取上次调用以来的帧时长直方图,并开始新的时间段
+     *
+     * @return 未开启时返回null
+     */
+    public FrameHistogram getIntervalFrameHistogram() {
+        return logNotifier == null ? null : logNotifier.getIntervalFrameHistogram();
+    }
 
     //-----------------基础信息---------------------
 
+    /**
+     * 设置帧率阈值
+     *
+     * @param minSkipFrameCount 帧率阈值
+     */
+    public void setMinSkipFrameCount(int minSkipFrameCount) {
+        if (logNotifier != null) {
+            logNotifier.setMinSkipFrameCount(minSkipFrameCount);
+        }
+    }
+
+    /**
+     * 设置卡顿等级的阈值
+     *
+     * @param slowFrameMs 慢帧阈值(ms)
+     * @param freezeMs    冻帧阈值(ms)
+     * @param nearAnrMs   接近ANR阈值(ms)
+     */
+    public void setSeverityThresholds(long slowFrameMs, long freezeMs, long nearAnrMs) {
+        if (logNotifier != null) {
+            logNotifier.setSeverityThresholds(slowFrameMs, freezeMs, nearAnrMs);
+        }
+    }
+
+    /**
+     * 设置是否在每次采样时读取主线程的CPU时间
+     *
+     * @param needCpuTime true:需要 false:不需要
+     */
+    public void setNeedCpuTime(boolean needCpuTime) {
+        if (logNotifier != null) {
+            logNotifier.setNeedCpuTime(needCpuTime);
+        }
+    }
+
+    /**
+     * 设置是否在每次采样时读取主线程消息队列的积压
+     *
+     * @param needQueueBacklog true:需要 false:不需要
+     */
+    public void setNeedQueueBacklog(boolean needQueueBacklog) {
+        if (logNotifier != null) {
+            logNotifier.setNeedQueueBacklog(needQueueBacklog);
+        }
+    }
+
+    /**
+     * 设置缓存文件格式
+     *
+     * @param logFormat 文件格式
+     */
+    public void setLogFormat(int logFormat) {
+        if (logNotifier != null) {
+            logNotifier.setLogFormat(logFormat);
+        }
+    }
+
+    /**
+     * 设置是否持久化最新的采样
+     *
+     * @param needPersistSamples true:需要 false:不需要
+     */
+    public void setNeedPersistSamples(boolean needPersistSamples) {
+        if (logNotifier != null) {
+            logNotifier.setNeedPersistSamples(needPersistSamples);
+        }
+    }
+
+    /**
+     * 设置是否在日志中输出折叠格式的堆栈
+     *
+     * @param needFoldedStacks true:需要 false:不需要
+     */
+    public void setNeedFoldedStacks(boolean needFoldedStacks) {
+        if (logNotifier != null) {
+            logNotifier.setNeedFoldedStacks(needFoldedStacks);
+        }
+    }
+
+    /**
+     * 设置输出目标
+     *
+     * @param needLogcat  是否输出到logcat
+     * @param customSinks 自定义的输出目标
+     */
+    public void setOutputSinks(boolean needLogcat, List<JankSink> customSinks) {
+        if (logNotifier != null) {
+            logNotifier.setOutputSinks(needLogcat, customSinks);
+        }
+    }
+
+    /**
+     * 设置卡顿事件的监听者
+     *
+     * @param jankListeners        监听者
+     * @param jankDispatchInterval 两次回调之间的最小间隔(ms)
+     */
+    public void setJankListeners(List<JankListener> jankListeners, long jankDispatchInterval) {
+        if (logNotifier != null) {
+            logNotifier.setJankListeners(jankListeners, jankDispatchInterval);
+        }
+    }
+
+    /**
+     * 设置缓存文件的同步策略
+     *
+     * @param journalSyncPolicy   同步策略
+     * @param journalSyncInterval 同步间隔(ms)
+     */
+    public void setJournalSyncPolicy(int journalSyncPolicy, long journalSyncInterval) {
+        if (logNotifier != null) {
+            logNotifier.setJournalSyncPolicy(journalSyncPolicy, journalSyncInterval);
+        }
+    }
+
+    /**
+     * 设置缓存文件的存储策略
+     *
+     * @param maxLogFileSize    单个文件大小上限(字节)
+     * @param isNeedCompressLog 是否压缩分段后的文件
+     * @param maxLogDiskUsage   总容量上限(字节)
+     */
+    public void setLogStoragePolicy(long maxLogFileSize, boolean isNeedCompressLog, long maxLogDiskUsage) {
+        if (logNotifier != null) {
+            logNotifier.setLogStoragePolicy(maxLogFileSize, isNeedCompressLog, maxLogDiskUsage);
+        }
+    }
+
+    /**
+     * 设置写入队列已满时的丢弃策略
+     *
+     * @param reportDropPolicy 丢弃策略
+     */
+    public void setReportDropPolicy(int reportDropPolicy) {
+        if (logNotifier != null) {
+            logNotifier.setReportDropPolicy(reportDropPolicy);
+        }
+    }
+
+    /**
+     * 设置采样模式
+     *
+     * @param samplingMode 采样模式
+     */
+    public void setSamplingMode(int samplingMode) {
+        if (logNotifier != null) {
+            logNotifier.setSamplingMode(samplingMode);
+        }
+    }
+
+    /**
+     * 设置采样间隔的范围
+     *
+     * @param minSampleInterval 最小采样间隔(ms)
+     * @param maxSampleInterval 最大采样间隔(ms)
+     */
+    public void setSampleIntervalRange(long minSampleInterval, long maxSampleInterval) {
+        if (logNotifier != null) {
+            logNotifier.setSampleIntervalRange(minSampleInterval, maxSampleInterval);
+        }
+    }
+
     /**
      * 设置缓存数量
      *
@@ -138,6 +386,19 @@ public class LogMonitor {
         }
     }
 
+    /**
+     * 设置堆栈帧的筛选规则
+     *
+     * @param excludeKeyWords           排除的关键词
+     * @param isCollapseFrameworkFrames 是否折叠连续的系统帧
+     * @param maxStackDepth             最大深度,0为不限制
+     */
+    public void setStackFilter(String[] excludeKeyWords, boolean isCollapseFrameworkFrames, int maxStackDepth) {
+        if (logNotifier != null) {
+            logNotifier.setStackFilter(excludeKeyWords, isCollapseFrameworkFrames, maxStackDepth);
+        }
+    }
+
     /**
      * 设置筛选关键词
      *
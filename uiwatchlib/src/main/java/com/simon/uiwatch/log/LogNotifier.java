@@ -4,7 +4,14 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 
+import com.simon.uiwatch.callback.JankListener;
+import com.simon.uiwatch.sink.JankSink;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 日志通知者
@@ -12,6 +19,10 @@ import android.os.Message;
  * 为保证数据获取的准确性和时效性，
  * 需要启用线程定时获取
  * <p>
+ * 1.持续采样模式按自适应间隔一直采样;看门狗模式只在帧超时未到达时高频采样,帧到达后停止,
+ * 流畅时几乎没有采样开销,且采集到的都是卡顿期间的堆栈;没有帧且主线程空闲时检查间隔逐次加倍,最长1秒
+ * 2.超时消息随覆盖它的卡顿帧一起输出,没有卡顿帧覆盖时(例如没有绘制)附带期间的采样单独输出
+ * <p>
  *
  * @author Simon
  * @version v1.0
@@ -35,11 +46,170 @@ public class LogNotifier {
      * 数据输出
      */
     private static final int TYPE_OUTPUT = 1;
+    /**
+     * 看门狗检查
+     */
+    private static final int TYPE_WATCHDOG = 2;
+    /**
+     * 超时消息检查
+     */
+    private static final int TYPE_SLOW_MESSAGE = 3;
+
+    //------------- sampling mode config-------------------
+    /**
+     * 持续采样：全程按固定间隔采集主线程堆栈
+     */
+    public static final int SAMPLING_MODE_CONTINUOUS = 0;
+    /**
+     * 看门狗采样：仅在帧超时未到达时采集主线程堆栈,帧到达后停止
+     */
+    public static final int SAMPLING_MODE_WATCHDOG = 1;
+
+    /**
+     * 看门狗的超时时间(帧数),即下一帧未能按时到达
+     */
+    private static final int WATCHDOG_TIMEOUT_FRAMES = 2;
+
+    /**
+     * 看门狗在主线程空闲(或还没有帧)时的最长检查间隔(ms)
+     */
+    private static final long WATCHDOG_MAX_IDLE_DELAY_MS = 1000;
+
+    /**
+     * 超时消息结束后等待下一帧的时间(ms),不小于有效帧间隔的上限;期间没有卡顿帧覆盖时单独输出
+     */
+    private static final long SLOW_MESSAGE_CHECK_DELAY_MS = 50;
+
+    /**
+     * 采样模式,默认持续采样
+     */
+    private int samplingMode = SAMPLING_MODE_CONTINUOUS;
+
+    /**
+     * 帧率阈值,跳过的帧数超出此值时输出
+     */
+    private int minSkipFrameCount = 1;
+
+    /**
+     * 帧时间环形缓冲,由主线程写入,LogNotifier_Thread读取
+     */
+    private final FrameTimeRing frameTimeRing = new FrameTimeRing();
+
+    /**
+     * 帧间隔(刷新周期)跟踪
+     */
+    private final FrameIntervalTracker frameIntervalTracker = new FrameIntervalTracker();
+
+    /**
+     * 当前时间段的帧时长直方图
+     */
+    private final FrameHistogram intervalFrameHistogram = new FrameHistogram();
+
+    /**
+     * 之前各时间段合并后的帧时长直方图
+     */
+    private final FrameHistogram previousFrameHistogram = new FrameHistogram();
+
+    /**
+     * 卡顿等级的划分
+     */
+    private final JankSeverity jankSeverity = new JankSeverity();
 
     /**
-     * 默认Log的获取间隔
+     * 主线程阻塞时读取等待的锁及其持有者
      */
-    private static final long DEFAULT_DELAY = 16;
+    private final LockOwnerReader lockOwnerReader = new LockOwnerReader();
+
+    /**
+     * 是否在每次采样时读取主线程的CPU时间
+     */
+    private boolean isNeedCpuTime = false;
+
+    /**
+     * 主线程CPU时间的读取,未开启时为null
+     */
+    private ThreadCpuTimeReader cpuTimeReader;
+
+    /**
+     * 主线程CPU时间环形缓冲,由LogNotifier_Thread写入,LogExecutor_Thread读取
+     */
+    private final CpuTimeRing cpuTimeRing = new CpuTimeRing();
+
+    /**
+     * 是否在每次采样时读取主线程消息队列的积压
+     */
+    private boolean isNeedQueueBacklog = false;
+
+    /**
+     * 主线程消息队列的积压采样,未开启时为null
+     */
+    private MessageQueueSampler queueSampler;
+
+    /**
+     * 主线程消息队列积压的环形缓冲,由LogNotifier_Thread写入,LogExecutor_Thread读取
+     */
+    private final QueueBacklogRing queueBacklogRing = new QueueBacklogRing();
+
+    /**
+     * 主线程卡住的跟踪
+     */
+    private final StallTracker stallTracker = new StallTracker(jankSeverity);
+
+    /**
+     * 下一个待计算的帧序号
+     */
+    private long nextFrameIndex = 0;
+
+    /**
+     * 上一个已计算的帧时间戳(纳秒),0表示没有
+     */
+    private long lastEvaluatedFrameNanos = 0;
+
+    /**
+     * 最近一次慢帧的时间戳(纳秒),0表示没有
+     */
+    private long lastSlowFrameTimeNanos = 0;
+
+    /**
+     * 最近一次输出的卡顿帧的开始和结束时间(纳秒),0表示没有
+     */
+    private long lastJankStartNanos = 0;
+    private long lastJankEndNanos = 0;
+
+    /**
+     * 自适应采样间隔调度
+     */
+    private AdaptiveSampleScheduler sampleScheduler = new AdaptiveSampleScheduler();
+
+    /**
+     * 采样频率统计
+     */
+    private SampleRateMeter sampleRateMeter = new SampleRateMeter();
+
+    /**
+     * 下一次采样计划的绝对时间(uptime ms),按此时间排期,避免采样耗时累积造成的漂移
+     */
+    private long nextSampleUptime;
+
+    /**
+     * 最近一次采样时主线程是否空闲
+     */
+    private boolean isLastSampleIdle = false;
+
+    /**
+     * 看门狗模式下,上一次检查是否进行了采样
+     */
+    private boolean isWatchdogSampling = false;
+
+    /**
+     * 看门狗在主线程空闲时的当前检查间隔(ms),0表示不在空闲回退中
+     */
+    private long watchdogIdleDelayMs = 0;
+
+    /**
+     * 看门狗开始空闲回退时的最近一帧(纳秒),有新的帧时结束回退
+     */
+    private long watchdogIdleFrameNanos = 0;
 
     private LogNotifier() {
         init();
@@ -63,6 +233,24 @@ public class LogNotifier {
         if (logExecutor == null || logNotifierThread == null) {
             init();
         }
+        sampleRateMeter.reset();
+        frameIntervalTracker.reset();
+        synchronized (previousFrameHistogram) {
+            intervalFrameHistogram.reset();
+            previousFrameHistogram.reset();
+        }
+        nextFrameIndex = frameTimeRing.getWriteCount();
+        lastEvaluatedFrameNanos = 0;
+        lastSlowFrameTimeNanos = 0;
+        lastJankStartNanos = 0;
+        lastJankEndNanos = 0;
+        isLastSampleIdle = false;
+        stallTracker.reset();
+        //主线程的线程ID与进程ID相同
+        cpuTimeReader = isNeedCpuTime ? ThreadCpuTimeReader.forThread(Process.myPid()) : null;
+        logExecutor.setCpuTimeRing(isNeedCpuTime ? cpuTimeRing : null);
+        queueSampler = isNeedQueueBacklog ? new MessageQueueSampler(logExecutor.getTag()) : null;
+        logExecutor.setQueueBacklogRing(isNeedQueueBacklog ? queueBacklogRing : null);
         logExecutor.start();
         logNotifierThread.start();
         initLogNotifierHandler();
@@ -101,28 +289,228 @@ public class LogNotifier {
         int type = msg.what;
         switch (type) {
             case TYPE_COLLECTION:
+                if (evaluateFrames()) {
+                    //发现卡顿,已经重新开始收集
+                    break;
+                }
+                long now = SystemClock.uptimeMillis();
+                sampleRateMeter.onSample(nextSampleUptime, now, true);
                 //通知LogExecutor处理收集任务
                 sendCollectionMessageToLogExecutor();
-                //通知自身下次收集
-                sendCollectionMessage(DEFAULT_DELAY);
+                //根据帧率情况计算间隔,按绝对时间通知自身下次收集
+                long interval = sampleScheduler.nextInterval(System.nanoTime(), frameTimeRing.getLatest(),
+                        frameIntervalTracker.getFrameIntervalNanos(), lastSlowFrameTimeNanos, isLastSampleIdle);
+                sendCollectionMessageAtTime(computeNextSampleUptime(SystemClock.uptimeMillis(), interval));
                 break;
             case TYPE_OUTPUT:
                 //通知LogExecutor处理输出任务
-                sendOutputMessageToLogExecutor();
+                long[] frameWindow = (long[]) msg.obj;
+                sendOutputMessageToLogExecutor(msg.arg1, frameWindow,
+                        jankSeverity.classify(frameWindow[1] - frameWindow[0]));
+                break;
+            case TYPE_WATCHDOG:
+                if (evaluateFrames()) {
+                    break;
+                }
+                //检查帧是否超时,超时则采集,否则等待下次检查
+                handleWatchdogMessage();
+                break;
+            case TYPE_SLOW_MESSAGE:
+                handleSlowMessage((SlowMessage) msg.obj);
                 break;
             default:
                 break;
         }
     }
 
+    /**
+     * 计算主线程写入的帧：根据当前的刷新周期计算跳过的帧数,超出阈值时输出,并重新开始收集
+     *
+     * @return 是否发现卡顿
+     */
+    private boolean evaluateFrames() {
+        long writeCount = frameTimeRing.getWriteCount();
+        if (writeCount - nextFrameIndex > frameTimeRing.capacity()) {
+            //读取过慢,旧的帧已被覆盖,从可读的最早一帧重新开始
+            nextFrameIndex = writeCount - frameTimeRing.capacity();
+            lastEvaluatedFrameNanos = 0;
+        }
+        boolean isJank = false;
+        for (; nextFrameIndex < writeCount; nextFrameIndex++) {
+            long frameTimeNanos = frameTimeRing.get(nextFrameIndex);
+            if (frameTimeRing.isOverwritten(nextFrameIndex)) {
+                lastEvaluatedFrameNanos = 0;
+                continue;
+            }
+            long lastFrameNanos = lastEvaluatedFrameNanos;
+            lastEvaluatedFrameNanos = frameTimeNanos;
+            if (lastFrameNanos == 0) {
+                continue;
+            }
+            long deltaNanos = frameTimeNanos - lastFrameNanos;
+            frameIntervalTracker.onFrameDelta(deltaNanos);
+            long frameIntervalNanos = frameIntervalTracker.getFrameIntervalNanos();
+            boolean isSlow = deltaNanos > frameIntervalNanos + frameIntervalNanos / 2;
+            if (isSlow) {
+                lastSlowFrameTimeNanos = frameTimeNanos;
+            }
+            intervalFrameHistogram.record(deltaNanos, isSlow);
+            //卡住期间(接近ANR)已经提前输出过时,结束该次卡住的卡顿帧不再重复输出
+            boolean isStallReported = stallTracker.consumeReportedFrame(lastFrameNanos);
+            //四舍五入为刷新周期的个数,避免时间戳的抖动
+            int skipFrameCount = (int) ((deltaNanos + frameIntervalNanos / 2) / frameIntervalNanos);
+            if (skipFrameCount > minSkipFrameCount) {
+                isJank = true;
+                lastJankStartNanos = lastFrameNanos;
+                lastJankEndNanos = frameTimeNanos;
+                if (isStallReported) {
+                    continue;
+                }
+                sendOutputMessageToLogExecutor(skipFrameCount, new long[]{lastFrameNanos, frameTimeNanos},
+                        jankSeverity.classify(deltaNanos));
+            }
+        }
+        if (isJank) {
+            removeCollectionMessages();
+            startCollectionNotifier();
+        }
+        return isJank;
+    }
+
+    /**
+     * 处理看门狗检查
+     * 帧未超时：在超时时刻再次检查,期间不采集
+     * 帧已超时：采集一次堆栈,并以较短的间隔继续检查,直到帧到达
+     * 主线程空闲或还没有帧：检查间隔从超时时间开始逐次加倍,最长 {@link #WATCHDOG_MAX_IDLE_DELAY_MS},
+     * 静止画面、后台时不会一直以帧的频率获取主线程堆栈;有新的帧后恢复
+     */
+    private void handleWatchdogMessage() {
+        long now = SystemClock.uptimeMillis();
+        long frameTimeNanos = frameTimeRing.getLatest();
+        long watchdogTimeoutNanos = frameIntervalTracker.getFrameIntervalNanos() * WATCHDOG_TIMEOUT_FRAMES;
+        if (frameTimeNanos == 0) {
+            isWatchdogSampling = false;
+            sendWatchdogMessageAtTime(computeIdleWatchdogUptime(now, frameTimeNanos, watchdogTimeoutNanos));
+            return;
+        }
+        long remainingNanos = frameTimeNanos + watchdogTimeoutNanos - System.nanoTime();
+        if (remainingNanos > 0) {
+            //向上取整,保证下次检查时已经到达超时时刻
+            isWatchdogSampling = false;
+            watchdogIdleDelayMs = 0;
+            sendWatchdogMessageAtTime(now + TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+            return;
+        }
+        //主线程处于空闲(没有绘制请求时不会有帧回调),不属于卡顿,逐次加大间隔继续检查
+        long targetUptime = nextSampleUptime;
+        if (!sendCollectionMessageToLogExecutor(true)) {
+            isWatchdogSampling = false;
+            sendWatchdogMessageAtTime(computeIdleWatchdogUptime(now, frameTimeNanos, watchdogTimeoutNanos));
+            return;
+        }
+        watchdogIdleDelayMs = 0;
+        sampleRateMeter.onSample(targetUptime, now, isWatchdogSampling);
+        if (!isWatchdogSampling) {
+            //新的一段采样从当前时间开始排期
+            nextSampleUptime = now;
+            isWatchdogSampling = true;
+        }
+        sendWatchdogMessageAtTime(computeNextSampleUptime(SystemClock.uptimeMillis(), sampleScheduler.getMinIntervalMs()));
+    }
+
+    /**
+     * 处理超时消息检查：先计算已经到达的帧,超时消息被输出的卡顿帧覆盖时随卡顿帧一起输出,不再单独输出;
+     * 否则(例如没有绘制请求时不会有帧回调)以消息的开始和结束时间单独输出;
+     * 单独输出时没有帧被跳过(或无法确定),跳过的帧数记为0,不按消息耗时推算
+     *
+     * @param slowMessage 超时消息
+     */
+    private void handleSlowMessage(SlowMessage slowMessage) {
+        evaluateFrames();
+        if (lastJankEndNanos >= slowMessage.getStartNanos() && lastJankStartNanos <= slowMessage.getEndNanos()) {
+            return;
+        }
+        if (stallTracker.consumeReportedMessage(slowMessage.getStartNanos(), slowMessage.getEndNanos())) {
+            return;
+        }
+        long durationNanos = slowMessage.getDurationNanos();
+        sendOutputMessageToLogExecutor(0, new long[]{slowMessage.getStartNanos(), slowMessage.getEndNanos()},
+                jankSeverity.classify(durationNanos));
+    }
+
+    /**
+     * 检查主线程已经卡住的时长,达到冻帧或接近ANR时请求抓取一次全部线程的堆栈;
+     * 同一次卡住期间每个等级只请求一次,卡顿结束后再抓取已经看不到卡住时其他线程在做什么,见 {@link StallTracker}
+     *
+     * @param timestamp 本次采样的时间(纳秒)
+     */
+    private void checkStall(long timestamp) {
+        long frameTimeNanos = frameTimeRing.getLatest();
+        if (frameTimeNanos == 0 || logExecutor == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int severity = stallTracker.onBusySample(frameTimeNanos, timestamp, now);
+        if (severity < JankSeverity.FREEZE) {
+            return;
+        }
+        long startNanos = stallTracker.getStallStartNanos();
+        long frameIntervalNanos = frameIntervalTracker.getFrameIntervalNanos();
+        int skippedFrames = (int) ((now - startNanos) / frameIntervalNanos);
+        Message message = logExecutor.obtainThreadDumpMessage(severity, skippedFrames, new long[]{startNanos, now});
+        logExecutor.sendLogExecutorMessage(message);
+    }
+
+    /**
+     * 计算主线程空闲(或还没有帧)时看门狗的下一次检查时间：
+     * 首次为超时时间,之后每次加倍,最长 {@link #WATCHDOG_MAX_IDLE_DELAY_MS};期间有新的帧时从超时时间重新开始
+     *
+     * @param now                  当前时间(uptime ms)
+     * @param frameTimeNanos       最近一帧的时间(纳秒),0表示还没有帧
+     * @param watchdogTimeoutNanos 超时时间(纳秒)
+     * @return 下一次检查的时间(uptime ms)
+     */
+    private long computeIdleWatchdogUptime(long now, long frameTimeNanos, long watchdogTimeoutNanos) {
+        long timeoutMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(watchdogTimeoutNanos));
+        if (watchdogIdleDelayMs == 0 || frameTimeNanos != watchdogIdleFrameNanos) {
+            watchdogIdleFrameNanos = frameTimeNanos;
+            watchdogIdleDelayMs = timeoutMs;
+        } else {
+            watchdogIdleDelayMs = Math.min(watchdogIdleDelayMs * 2, Math.max(timeoutMs, WATCHDOG_MAX_IDLE_DELAY_MS));
+        }
+        return now + watchdogIdleDelayMs;
+    }
+
+    /**
+     * 根据上一次计划的采样时间计算下一次的采样时间
+     * 若因为采样耗时或线程繁忙错过了若干采样点,直接跳过这些采样点,不会堆积补采
+     *
+     * @param now      当前时间(uptime ms)
+     * @param interval 采样间隔(ms)
+     * @return 下一次采样的时间(uptime ms)
+     */
+    private long computeNextSampleUptime(long now, long interval) {
+        long next = nextSampleUptime + interval;
+        if (next < now) {
+            long skippedSlots = (now - next + interval - 1) / interval;
+            next += skippedSlots * interval;
+            sampleRateMeter.onSkippedSlots(skippedSlots);
+        }
+        return next;
+    }
+
     /**
      * 发送输出日志消息给LogExecutor
+     *
+     * @param skippedFrames 跳过的帧数
+     * @param frameWindow   卡顿帧的开始和结束时间(纳秒)
+     * @param severity      卡顿等级
      */
-    private void sendOutputMessageToLogExecutor() {
+    private void sendOutputMessageToLogExecutor(int skippedFrames, long[] frameWindow, int severity) {
         if (logExecutor == null) {
             return;
         }
-        Message message = logExecutor.obtainOutputMessage();
+        Message message = logExecutor.obtainOutputMessage(skippedFrames, frameWindow, severity);
         logExecutor.sendLogExecutorMessage(message);
     }
 
@@ -130,28 +518,165 @@ public class LogNotifier {
      * 发送手机日志消息给LogExecutor
      */
     private void sendCollectionMessageToLogExecutor() {
+        sendCollectionMessageToLogExecutor(false);
+    }
+
+    /**
+     * 发送手机日志消息给LogExecutor
+     *
+     * @param skipIdle true:主线程空闲时不发送
+     * @return 是否发送
+     */
+    private boolean sendCollectionMessageToLogExecutor(boolean skipIdle) {
         if (logExecutor == null) {
-            return;
+            return false;
         }
         Thread mainThread = Looper.getMainLooper().getThread();
+        //采集时间取获取堆栈前后的中点,与帧回调使用同一个单调时钟(System.nanoTime)
+        long startNanos = System.nanoTime();
         StackTraceElement[] stackInfo = mainThread.getStackTrace();
-        Message message = logExecutor.obtainCollectionMessage(stackInfo);
+        long timestamp = startNanos + (System.nanoTime() - startNanos) / 2;
+        boolean isIdle = isMainThreadIdle(stackInfo);
+        isLastSampleIdle = isIdle;
+        if (isIdle) {
+            stallTracker.onIdleSample();
+        }
+        if (skipIdle && isIdle) {
+            return false;
+        }
+        //线程状态(RUNNABLE、BLOCKED、WAITING等)随采集时间一起发送,不额外分配对象
+        Thread.State threadState = mainThread.getState();
+        //只有阻塞在锁上时才读取锁及其持有者(平台支持时)
+        String lockInfo = null;
+        if (threadState == Thread.State.BLOCKED && stackInfo.length > 0) {
+            lockInfo = lockOwnerReader.read(mainThread, stackInfo[0]);
+        }
+        //开启时读取主线程的CPU时间,写入环形缓冲,不随消息发送
+        if (cpuTimeReader != null) {
+            long cpuTimeNanos = cpuTimeReader.read();
+            if (cpuTimeNanos >= 0) {
+                cpuTimeRing.add(timestamp, cpuTimeNanos);
+            }
+        }
+        //开启时读取主线程消息队列的积压,同样写入环形缓冲;主线程空闲时没有到期的消息,不需要遍历
+        if (queueSampler != null && !isIdle && queueSampler.sample()) {
+            queueBacklogRing.add(timestamp, queueSampler.getPendingCount(), queueSampler.isTruncated(),
+                    queueSampler.getLatenessNanos());
+        }
+        Message message = logExecutor.obtainCollectionMessage(stackInfo, timestamp, threadState, lockInfo);
         logExecutor.sendLogExecutorMessage(message);
+        //主线程空闲(例如在后台没有帧回调)时不属于卡住
+        if (!isIdle) {
+            checkStall(timestamp);
+        }
+        return true;
+    }
+
+    /**
+     * 主线程是否处于空闲状态(栈顶为MessageQueue.nativePollOnce,即等待消息)
+     *
+     * @param stackInfo 主线程堆栈
+     */
+    private boolean isMainThreadIdle(StackTraceElement[] stackInfo) {
+        if (stackInfo == null || stackInfo.length == 0) {
+            return true;
+        }
+        StackTraceElement topFrame = stackInfo[0];
+        return "nativePollOnce".equals(topFrame.getMethodName())
+                && "android.os.MessageQueue".equals(topFrame.getClassName());
     }
 
     /**
      * 开始收集通知
+     * 持续采样模式下立即开始采集,看门狗模式下等待帧超时
      */
     public void startCollectionNotifier() {
-        sendCollectionMessage(0);
+        long now = SystemClock.uptimeMillis();
+        if (samplingMode == SAMPLING_MODE_WATCHDOG) {
+            isWatchdogSampling = false;
+            watchdogIdleDelayMs = 0;
+            sendWatchdogMessageAtTime(now);
+        } else {
+            sendCollectionMessageAtTime(now);
+        }
+    }
+
+    /**
+     * 因写入队列已满而丢弃的日志数量
+     */
+    public long getDroppedReportCount() {
+        return logExecutor == null ? 0 : logExecutor.getDroppedReportCount();
+    }
+
+    /**
+     * 与其他日志合并写入的日志数量
+     */
+    public long getCoalescedReportCount() {
+        return logExecutor == null ? 0 : logExecutor.getCoalescedReportCount();
+    }
+
+    /**
+     * 因待分发的卡顿事件过多而丢弃的事件数量
+     */
+    public long getDroppedJankEventCount() {
+        return logExecutor == null ? 0 : logExecutor.getDroppedJankEventCount();
+    }
+
+    /**
+     * 获取采样统计(实际采样频率、跳过的采样点、抖动)
+     */
+    public SamplingStats getSamplingStats() {
+        return sampleRateMeter.snapshot();
+    }
+
+    /**
+     * 获取开始监控以来的帧时长直方图
+     */
+    public FrameHistogram getFrameHistogram() {
+        synchronized (previousFrameHistogram) {
+            FrameHistogram histogram = previousFrameHistogram.copy();
+            histogram.add(intervalFrameHistogram);
+            return histogram;
+        }
+    }
+
+    /**
+     * 获取上次调用以来(时间段内)的帧时长直方图,并开始新的时间段
+     */
+    public FrameHistogram getIntervalFrameHistogram() {
+        synchronized (previousFrameHistogram) {
+            FrameHistogram histogram = intervalFrameHistogram.snapshotAndReset();
+            previousFrameHistogram.add(histogram);
+            return histogram;
+        }
+    }
+
+    /**
+     * 获取帧时间环形缓冲
+     */
+    public FrameTimeRing getFrameTimeRing() {
+        return frameTimeRing;
+    }
+
+    /**
+     * 屏幕刷新率变化(任意线程调用)
+     *
+     * @param refreshRate 刷新率(Hz)
+     */
+    public void setDisplayRefreshRate(float refreshRate) {
+        frameIntervalTracker.setDisplayRefreshRate(refreshRate);
     }
 
     /**
      * 开始输出并重启收集通知
+     *
+     * @param frameStartNanos 卡顿帧的开始时间
+     * @param frameEndNanos   卡顿帧的结束时间
+     * @param skippedFrames   跳过的帧数
      */
-    public void startOutputAndRestartCollectionNotifier() {
-        removeAllMessage();
-        sendOutputMessage(0);
+    public void startOutputAndRestartCollectionNotifier(long frameStartNanos, long frameEndNanos, int skippedFrames) {
+        removeCollectionMessages();
+        sendOutputMessage(skippedFrames, new long[]{frameStartNanos, frameEndNanos});
         startCollectionNotifier();
     }
 
@@ -163,51 +688,251 @@ public class LogNotifier {
             logExecutor.stop();
             logExecutor = null;
         }
+        final ThreadCpuTimeReader stoppedCpuTimeReader = cpuTimeReader;
         if (logNotifierHandler != null) {
             logNotifierHandler.removeCallbacksAndMessages(null);
+            //在LogNotifier_Thread中关闭stat文件后再退出,避免与正在进行的采集冲突
+            logNotifierHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (stoppedCpuTimeReader != null) {
+                        stoppedCpuTimeReader.close();
+                    }
+                    Looper.myLooper().quit();
+                }
+            });
             logNotifierHandler = null;
-        }
-        if (logNotifierThread != null) {
+        } else if (logNotifierThread != null) {
             logNotifierThread.quit();
-            logNotifierThread = null;
         }
+        logNotifierThread = null;
+        cpuTimeReader = null;
+        queueSampler = null;
     }
 
     /**
-     * 移除所有消息
+     * 移除收集和看门狗检查的消息,等待中的输出和超时消息检查保留
      */
-    private void removeAllMessage() {
+    private void removeCollectionMessages() {
         if (logNotifierHandler == null) {
             return;
         }
-        logNotifierHandler.removeCallbacksAndMessages(null);
+        logNotifierHandler.removeMessages(TYPE_COLLECTION);
+        logNotifierHandler.removeMessages(TYPE_WATCHDOG);
+    }
+
+    /**
+     * 输出超时的主线程消息(主线程调用)
+     * 消息立即交给LogExecutor记录,等待下一帧到达后再决定是否单独输出
+     *
+     * @param slowMessage 超时消息
+     */
+    public void outputSlowMessage(SlowMessage slowMessage) {
+        Handler handler = logNotifierHandler;
+        LogExecutor executor = logExecutor;
+        if (handler == null || executor == null) {
+            return;
+        }
+        executor.sendLogExecutorMessage(executor.obtainSlowMessageMessage(slowMessage));
+        Message checkMessage = Message.obtain(handler, TYPE_SLOW_MESSAGE, slowMessage);
+        handler.sendMessageDelayed(checkMessage, SLOW_MESSAGE_CHECK_DELAY_MS);
     }
 
 
     /**
      * 发送输出消息
+     *
+     * @param skippedFrames 跳过的帧数
+     * @param frameWindow   卡顿帧的开始和结束时间(纳秒)
      */
-    private void sendOutputMessage(long delay) {
+    private void sendOutputMessage(int skippedFrames, long[] frameWindow) {
         if (logNotifierHandler == null) {
             return;
         }
-        Message outputMessage = Message.obtain(logNotifierHandler, TYPE_OUTPUT);
-        logNotifierHandler.sendMessageDelayed(outputMessage, delay);
+        Message outputMessage = Message.obtain(logNotifierHandler, TYPE_OUTPUT, skippedFrames, 0, frameWindow);
+        logNotifierHandler.sendMessage(outputMessage);
     }
 
     /**
-     * 发送收集消息到当前的handler
+     * 在指定的时间发送收集消息到当前的handler
+     *
+     * @param uptime 绝对时间(uptime ms)
      */
-    private void sendCollectionMessage(long delay) {
+    private void sendCollectionMessageAtTime(long uptime) {
         if (logNotifierHandler == null) {
             return;
         }
+        nextSampleUptime = uptime;
         Message collectionMessage = Message.obtain(logNotifierHandler, TYPE_COLLECTION);
-        logNotifierHandler.sendMessageDelayed(collectionMessage, delay);
+        logNotifierHandler.sendMessageAtTime(collectionMessage, uptime);
+    }
+
+    /**
+     * 在指定的时间发送看门狗检查消息
+     *
+     * @param uptime 绝对时间(uptime ms)
+     */
+    private void sendWatchdogMessageAtTime(long uptime) {
+        if (logNotifierHandler == null) {
+            return;
+        }
+        nextSampleUptime = uptime;
+        Message watchdogMessage = Message.obtain(logNotifierHandler, TYPE_WATCHDOG);
+        logNotifierHandler.sendMessageAtTime(watchdogMessage, uptime);
     }
 
     //-----------------基础信息---------------------
 
+    /**
+     * 设置帧率阈值
+     *
+     * @param minSkipFrameCount 帧率阈值
+     */
+    public void setMinSkipFrameCount(int minSkipFrameCount) {
+        this.minSkipFrameCount = minSkipFrameCount;
+    }
+
+    /**
+     * 设置卡顿等级的阈值
+     *
+     * @param slowFrameMs 慢帧阈值(ms)
+     * @param freezeMs    冻帧阈值(ms)
+     * @param nearAnrMs   接近ANR阈值(ms)
+     */
+    public void setSeverityThresholds(long slowFrameMs, long freezeMs, long nearAnrMs) {
+        jankSeverity.setThresholds(slowFrameMs, freezeMs, nearAnrMs);
+    }
+
+    /**
+     * 设置是否在每次采样时读取主线程的CPU时间
+     *
+     * @param needCpuTime true:需要 false:不需要
+     */
+    public void setNeedCpuTime(boolean needCpuTime) {
+        isNeedCpuTime = needCpuTime;
+    }
+
+    /**
+     * 设置是否在每次采样时读取主线程消息队列的积压
+     *
+     * @param needQueueBacklog true:需要 false:不需要
+     */
+    public void setNeedQueueBacklog(boolean needQueueBacklog) {
+        isNeedQueueBacklog = needQueueBacklog;
+    }
+
+    /**
+     * 设置缓存文件格式
+     *
+     * @param logFormat 文件格式
+     */
+    public void setLogFormat(int logFormat) {
+        if (logExecutor != null) {
+            logExecutor.setLogFormat(logFormat);
+        }
+    }
+
+    /**
+     * 设置是否持久化最新的采样
+     *
+     * @param needPersistSamples true:需要 false:不需要
+     */
+    public void setNeedPersistSamples(boolean needPersistSamples) {
+        if (logExecutor != null) {
+            logExecutor.setNeedPersistSamples(needPersistSamples);
+        }
+    }
+
+    /**
+     * 设置是否在日志中输出折叠格式的堆栈
+     *
+     * @param needFoldedStacks true:需要 false:不需要
+     */
+    public void setNeedFoldedStacks(boolean needFoldedStacks) {
+        if (logExecutor != null) {
+            logExecutor.setNeedFoldedStacks(needFoldedStacks);
+        }
+    }
+
+    /**
+     * 设置输出目标
+     *
+     * @param needLogcat  是否输出到logcat
+     * @param customSinks 自定义的输出目标
+     */
+    public void setOutputSinks(boolean needLogcat, List<JankSink> customSinks) {
+        if (logExecutor != null) {
+            logExecutor.setOutputSinks(needLogcat, customSinks);
+        }
+    }
+
+    /**
+     * 设置卡顿事件的监听者
+     *
+     * @param jankListeners        监听者
+     * @param jankDispatchInterval 两次回调之间的最小间隔(ms)
+     */
+    public void setJankListeners(List<JankListener> jankListeners, long jankDispatchInterval) {
+        if (logExecutor != null) {
+            logExecutor.setJankListeners(jankListeners, jankDispatchInterval);
+        }
+    }
+
+    /**
+     * 设置缓存文件的同步策略
+     *
+     * @param journalSyncPolicy   同步策略
+     * @param journalSyncInterval 同步间隔(ms)
+     */
+    public void setJournalSyncPolicy(int journalSyncPolicy, long journalSyncInterval) {
+        if (logExecutor != null) {
+            logExecutor.setJournalSyncPolicy(journalSyncPolicy, journalSyncInterval);
+        }
+    }
+
+    /**
+     * 设置缓存文件的存储策略
+     *
+     * @param maxLogFileSize    单个文件大小上限(字节)
+     * @param isNeedCompressLog 是否压缩分段后的文件
+     * @param maxLogDiskUsage   总容量上限(字节)
+     */
+    public void setLogStoragePolicy(long maxLogFileSize, boolean isNeedCompressLog, long maxLogDiskUsage) {
+        if (logExecutor != null) {
+            logExecutor.setLogStoragePolicy(maxLogFileSize, isNeedCompressLog, maxLogDiskUsage);
+        }
+    }
+
+    /**
+     * 设置写入队列已满时的丢弃策略
+     *
+     * @param reportDropPolicy 丢弃策略
+     */
+    public void setReportDropPolicy(int reportDropPolicy) {
+        if (logExecutor != null) {
+            logExecutor.setReportDropPolicy(reportDropPolicy);
+        }
+    }
+
+    /**
+     * 设置采样模式
+     *
+     * @param samplingMode {@link #SAMPLING_MODE_CONTINUOUS} 或 {@link #SAMPLING_MODE_WATCHDOG}
+     */
+    public void setSamplingMode(int samplingMode) {
+        this.samplingMode = samplingMode;
+    }
+
+    /**
+     * 设置采样间隔的范围
+     *
+     * @param minSampleInterval 最小采样间隔(ms)
+     * @param maxSampleInterval 最大采样间隔(ms)
+     */
+    public void setSampleIntervalRange(long minSampleInterval, long maxSampleInterval) {
+        sampleScheduler.setIntervalRange(minSampleInterval, maxSampleInterval);
+    }
+
     /**
      * 设置缓存数量
      *
@@ -252,6 +977,19 @@ public class LogNotifier {
         }
     }
 
+    /**
+     * 设置堆栈帧的筛选规则
+     *
+     * @param excludeKeyWords           排除的关键词
+     * @param isCollapseFrameworkFrames 是否折叠连续的系统帧
+     * @param maxStackDepth             最大深度,0为不限制
+     */
+    public void setStackFilter(String[] excludeKeyWords, boolean isCollapseFrameworkFrames, int maxStackDepth) {
+        if (logExecutor != null) {
+            logExecutor.setStackFilter(excludeKeyWords, isCollapseFrameworkFrames, maxStackDepth);
+        }
+    }
+
     /**
      * 设置筛选关键词
      *
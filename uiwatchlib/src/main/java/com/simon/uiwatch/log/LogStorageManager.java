@@ -0,0 +1,318 @@
+package com.simon.uiwatch.log;
+
+import com.simon.uiwatch.util.FileUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 日志存储管理
+ * <p>
+ * 1.单个文件大小上限：当天的文件超出上限后关闭,重命名为带序号的分段(UiWatcherLogData.1.txt),再打开新文件
+ * 2.压缩：关闭的分段在写入线程空闲时压缩为gzip(UiWatcherLogData.1.txt.gz)
+ * 3.总容量上限：所有日期文件夹的总大小超出上限时,从最旧的日期、最早的分段开始删除(正在写入的文件除外)
+ * <p>
+ * 注意：非线程安全,只允许在LogWriter_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class LogStorageManager {
+    /**
+     * 默认单个文件大小上限(4MB)
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * 不限制
+     */
+    public static final long UNLIMITED = 0;
+
+    /**
+     * 压缩文件的扩展名
+     */
+    private static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * 压缩中的临时文件扩展名
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * 日期文件夹名称
+     */
+    private static final Pattern DAY_FOLDER_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    /**
+     * 缓存根目录
+     */
+    private final File rootFolder;
+
+    /**
+     * 缓存文件名称
+     */
+    private final String cacheFileName;
+
+    /**
+     * 缓存文件扩展名
+     */
+    private final String extension;
+
+    /**
+     * 单个文件大小上限,{@link #UNLIMITED}为不限制
+     */
+    private final long maxFileSize;
+
+    /**
+     * 是否压缩关闭的分段
+     */
+    private final boolean isNeedCompress;
+
+    /**
+     * 总容量上限,{@link #UNLIMITED}为不限制
+     */
+    private final long maxDiskUsage;
+
+    /**
+     * 分段文件名称(名称.序号.扩展名[.gz])
+     */
+    private final Pattern segmentPattern;
+
+    /**
+     * 待压缩的分段
+     */
+    private final LinkedList<File> pendingCompressFiles = new LinkedList<>();
+
+    /**
+     * 是否需要检查总容量
+     */
+    private boolean isNeedCheckDiskUsage;
+
+    /**
+     * 构造方法
+     *
+     * @param rootFolder     缓存根目录
+     * @param cacheFileName  缓存文件名称
+     * @param extension      缓存文件扩展名
+     * @param maxFileSize    单个文件大小上限
+     * @param isNeedCompress 是否压缩关闭的分段
+     * @param maxDiskUsage   总容量上限
+     */
+    public LogStorageManager(File rootFolder, String cacheFileName, String extension, long maxFileSize,
+                             boolean isNeedCompress, long maxDiskUsage) {
+        this.rootFolder = rootFolder;
+        this.cacheFileName = cacheFileName;
+        this.extension = extension;
+        this.maxFileSize = maxFileSize;
+        this.isNeedCompress = isNeedCompress;
+        this.maxDiskUsage = maxDiskUsage;
+        this.segmentPattern = Pattern.compile(Pattern.quote(cacheFileName) + "\\.(\\d+)" + Pattern.quote(extension)
+                + "(" + Pattern.quote(GZIP_EXTENSION) + ")?");
+    }
+
+    /**
+     * 启动时调用：找出上次未压缩的分段、清理压缩的临时文件,并检查一次总容量
+     */
+    public void recover() {
+        for (File dayFolder : listDayFolders()) {
+            File[] files = dayFolder.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_EXTENSION)) {
+                    file.delete();
+                } else if (isNeedCompress && isUncompressedSegment(file)) {
+                    pendingCompressFiles.add(file);
+                }
+            }
+        }
+        isNeedCheckDiskUsage = maxDiskUsage != UNLIMITED;
+    }
+
+    /**
+     * 当前文件是否已经达到大小上限
+     *
+     * @param size 当前文件的大小
+     */
+    public boolean isNeedRollover(long size) {
+        return maxFileSize != UNLIMITED && size >= maxFileSize;
+    }
+
+    /**
+     * 将已关闭的当天文件重命名为下一个序号的分段,并安排压缩和容量检查
+     *
+     * @param closedFile 已关闭的文件
+     */
+    public void rollover(File closedFile) {
+        File dayFolder = closedFile.getParentFile();
+        File segment = new File(dayFolder, cacheFileName + "." + nextSegmentNumber(dayFolder) + extension);
+        if (!closedFile.renameTo(segment)) {
+            return;
+        }
+        if (isNeedCompress) {
+            pendingCompressFiles.add(segment);
+        }
+        isNeedCheckDiskUsage = maxDiskUsage != UNLIMITED;
+    }
+
+    /**
+     * 是否有待处理的压缩或清理工作
+     */
+    public boolean hasPendingWork() {
+        return !pendingCompressFiles.isEmpty() || isNeedCheckDiskUsage;
+    }
+
+    /**
+     * 处理一项待处理的工作(写入线程空闲时调用,每次只处理一项,避免长时间阻塞写入)
+     *
+     * @param activeFile 正在写入的文件,不会被删除,可为null
+     */
+    public void doPendingWork(File activeFile) {
+        if (!pendingCompressFiles.isEmpty()) {
+            compress(pendingCompressFiles.removeFirst());
+            return;
+        }
+        if (isNeedCheckDiskUsage) {
+            isNeedCheckDiskUsage = false;
+            enforceDiskUsage(activeFile);
+        }
+    }
+
+    /**
+     * 压缩分段,成功后删除原文件
+     */
+    private void compress(File segment) {
+        if (!segment.exists()) {
+            return;
+        }
+        File target = new File(segment.getPath() + GZIP_EXTENSION);
+        File temp = new File(target.getPath() + TEMP_EXTENSION);
+        try {
+            FileUtils.gzip(segment, temp);
+            if (temp.renameTo(target)) {
+                segment.delete();
+            } else {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        }
+    }
+
+    /**
+     * 总容量超出上限时,从最旧的文件开始删除
+     */
+    private void enforceDiskUsage(File activeFile) {
+        List<File> files = new ArrayList<>();
+        long totalSize = 0;
+        List<File> dayFolders = listDayFolders();
+        for (File dayFolder : dayFolders) {
+            File[] dayFiles = dayFolder.listFiles();
+            if (dayFiles == null) {
+                continue;
+            }
+            //同一天内：分段按序号,当天正在写入的文件最后
+            Arrays.sort(dayFiles, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    long diff = segmentNumberOf(a) - segmentNumberOf(b);
+                    return diff < 0 ? -1 : (diff == 0 ? a.getName().compareTo(b.getName()) : 1);
+                }
+            });
+            for (File file : dayFiles) {
+                if (file.isFile()) {
+                    files.add(file);
+                    totalSize += file.length();
+                }
+            }
+        }
+        for (File file : files) {
+            if (totalSize <= maxDiskUsage) {
+                break;
+            }
+            if (file.equals(activeFile)) {
+                continue;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                totalSize -= size;
+                pendingCompressFiles.remove(file);
+            }
+        }
+        //删除空的日期文件夹
+        for (File dayFolder : dayFolders) {
+            String[] names = dayFolder.list();
+            if (names != null && names.length == 0) {
+                dayFolder.delete();
+            }
+        }
+    }
+
+    /**
+     * 所有的日期文件夹,按日期从旧到新排序
+     */
+    private List<File> listDayFolders() {
+        File[] folders = rootFolder.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && DAY_FOLDER_PATTERN.matcher(file.getName()).matches();
+            }
+        });
+        if (folders == null) {
+            return Collections.emptyList();
+        }
+        List<File> dayFolders = new ArrayList<>(Arrays.asList(folders));
+        Collections.sort(dayFolders, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return dayFolders;
+    }
+
+    /**
+     * 文件夹内下一个分段序号
+     */
+    private long nextSegmentNumber(File dayFolder) {
+        long max = 0;
+        String[] names = dayFolder.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = segmentPattern.matcher(name);
+                if (matcher.matches()) {
+                    max = Math.max(max, Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        return max + 1;
+    }
+
+    /**
+     * 分段序号,不是分段(正在写入的文件等)时返回Long.MAX_VALUE
+     */
+    private long segmentNumberOf(File file) {
+        Matcher matcher = segmentPattern.matcher(file.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : Long.MAX_VALUE;
+    }
+
+    /**
+     * 是否为未压缩的分段
+     */
+    private boolean isUncompressedSegment(File file) {
+        Matcher matcher = segmentPattern.matcher(file.getName());
+        return matcher.matches() && matcher.group(2) == null;
+    }
+}
@@ -0,0 +1,588 @@
+package com.simon.uiwatch.log;
+
+import android.os.Environment;
+import android.os.SystemClock;
+
+import com.simon.uiwatch.format.BinaryLogEncoder;
+import com.simon.uiwatch.format.BinaryLogFormat;
+import com.simon.uiwatch.format.LogJournal;
+import com.simon.uiwatch.sink.JankSink;
+import com.simon.uiwatch.util.FileUtils;
+import com.simon.uiwatch.util.TimeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志写入者
+ * 独立的LogWriter_Thread负责将卡顿日志写入文件,与LogExecutor_Thread的收集工作分离,
+ * 采样永远不会等待存储
+ * <p>
+ * 1.待写入的日志存放在有界队列中,队列已满时按照丢弃策略处理,并记录丢弃的数量
+ * 2.每次写入时取出队列中所有待写入的日志(最多{@link #MAX_BATCH_SIZE}条),合并为一次文件写入
+ * 3.文件分段、压缩、总容量清理由 {@link LogStorageManager} 负责,同样在写入线程中进行,压缩和清理只在队列为空时进行
+ * 4.文件以 {@link LogJournal} 格式分帧(长度 + CRC),同步到存储设备的时机由同步策略决定,
+ * 每次同步后更新检查点,再次打开文件时只需校验检查点之后的内容
+ * 5.作为输出目标时,文本格式只需要带文本的报告,二进制格式只需要结构化的报告(不会格式化文本)
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class LogWriter implements JankSink {
+    /**
+     * 文件格式：文本(默认)
+     */
+    public static final int FORMAT_TEXT = 0;
+
+    /**
+     * 文件格式：二进制,见 {@link BinaryLogFormat}
+     */
+    public static final int FORMAT_BINARY = 1;
+
+    /**
+     * 丢弃策略：队列已满时丢弃最新的日志(默认)
+     */
+    public static final int DROP_POLICY_NEWEST = 0;
+
+    /**
+     * 丢弃策略：队列已满时丢弃最旧的日志
+     */
+    public static final int DROP_POLICY_OLDEST = 1;
+
+    /**
+     * 同步策略：不主动同步,由系统决定写回时机(进程被杀不丢数据,断电可能丢失)
+     */
+    public static final int SYNC_NONE = 0;
+
+    /**
+     * 同步策略：每次合并写入后同步
+     */
+    public static final int SYNC_BATCH = 1;
+
+    /**
+     * 同步策略：距上次同步超过同步间隔后同步(默认)
+     */
+    public static final int SYNC_INTERVAL = 2;
+
+    /**
+     * 默认同步间隔(ms)
+     */
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 1000;
+
+    /**
+     * 待写入队列的容量
+     */
+    private static final int QUEUE_CAPACITY = 32;
+
+    /**
+     * 单次合并写入的最大日志条数
+     */
+    private static final int MAX_BATCH_SIZE = 16;
+
+    /**
+     * 结束标记
+     */
+    private static final JankReport STOP_MARKER = new JankReport(0, 0, 0, 0, new String[0], new long[0], new int[1], new int[0], null);
+
+    /**
+     * 缓存的文件夹地址
+     */
+    private final String cacheFolder;
+
+    /**
+     * 缓存文件名称
+     */
+    private final String cacheFileName;
+
+    /**
+     * 文件格式
+     */
+    private final int format;
+
+    /**
+     * 丢弃策略
+     */
+    private final int dropPolicy;
+
+    /**
+     * 单个文件大小上限
+     */
+    private final long maxFileSize;
+
+    /**
+     * 是否压缩分段
+     */
+    private final boolean isNeedCompress;
+
+    /**
+     * 总容量上限
+     */
+    private final long maxDiskUsage;
+
+    /**
+     * 存储管理,仅在LogWriter_Thread中使用
+     */
+    private LogStorageManager storageManager;
+
+    /**
+     * 同步策略
+     */
+    private int syncPolicy = SYNC_INTERVAL;
+
+    /**
+     * 同步间隔(ms)
+     */
+    private long syncIntervalMillis = DEFAULT_SYNC_INTERVAL_MS;
+
+    /**
+     * 记录日志编码,仅在LogWriter_Thread中使用
+     */
+    private final LogJournal journal = new LogJournal();
+
+    /**
+     * 当前缓存文件的检查点文件,仅在LogWriter_Thread中使用
+     */
+    private RandomAccessFile checkpointFile;
+
+    /**
+     * 是否有未同步的内容
+     */
+    private boolean isNeedSync;
+
+    /**
+     * 上次同步的时间(ms,SystemClock.uptimeMillis)
+     */
+    private long lastSyncMillis;
+
+    /**
+     * 二进制格式的编码器,仅在LogWriter_Thread中使用
+     */
+    private final BinaryLogEncoder binaryLogEncoder = new BinaryLogEncoder();
+
+    /**
+     * 待写入的日志
+     */
+    private final BlockingQueue<JankReport> pendingReports = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * 写入线程
+     */
+    private Thread logWriterThread;
+
+    /**
+     * 当天的缓存文件,仅在LogWriter_Thread中使用
+     */
+    private FileUtils.MappedAppendFile cacheFile;
+
+    /**
+     * 下次切换文件的时间(ms),即下一天的0点
+     */
+    private long nextRolloverMillis;
+
+    /**
+     * 丢弃的日志数量
+     */
+    private final AtomicLong droppedReportCount = new AtomicLong();
+
+    /**
+     * 与其他日志合并写入的日志数量(批次中除第一条之外的日志)
+     */
+    private volatile long coalescedReportCount;
+
+    /**
+     * 构造方法
+     *
+     * @param cacheFolder   缓存文件夹
+     * @param cacheFileName 缓存文件名称
+     * @param format        文件格式
+     * @param dropPolicy    丢弃策略
+     * @param maxFileSize    单个文件大小上限,{@link LogStorageManager#UNLIMITED}为不限制
+     * @param isNeedCompress 是否压缩分段
+     * @param maxDiskUsage   总容量上限,{@link LogStorageManager#UNLIMITED}为不限制
+     */
+    public LogWriter(String cacheFolder, String cacheFileName, int format, int dropPolicy,
+                     long maxFileSize, boolean isNeedCompress, long maxDiskUsage) {
+        this.cacheFolder = cacheFolder;
+        this.cacheFileName = cacheFileName;
+        this.format = format;
+        this.dropPolicy = dropPolicy;
+        this.maxFileSize = maxFileSize;
+        this.isNeedCompress = isNeedCompress;
+        this.maxDiskUsage = maxDiskUsage;
+    }
+
+    /**
+     * 设置同步策略,需要在 {@link #start()} 之前调用
+     *
+     * @param syncPolicy         {@link #SYNC_NONE}、{@link #SYNC_BATCH} 或 {@link #SYNC_INTERVAL}
+     * @param syncIntervalMillis 同步间隔(ms),仅 {@link #SYNC_INTERVAL} 时有效
+     */
+    public void setSyncPolicy(int syncPolicy, long syncIntervalMillis) {
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    @Override
+    public int getInputs() {
+        return format == FORMAT_BINARY ? INPUT_REPORT : INPUT_TEXT;
+    }
+
+    /**
+     * 开启写入线程
+     */
+    @Override
+    public void start() {
+        if (logWriterThread != null) {
+            return;
+        }
+        logWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loopWrite();
+            }
+        }, "LogWriter_Thread");
+        logWriterThread.setPriority(Thread.MIN_PRIORITY);
+        logWriterThread.start();
+    }
+
+    /**
+     * 提交待写入的日志,不会阻塞调用线程
+     *
+     * @param report 卡顿报告
+     */
+    public void submit(JankReport report) {
+        if (report == null) {
+            return;
+        }
+        if (pendingReports.offer(report)) {
+            return;
+        }
+        //队列已满,按照丢弃策略处理;接近ANR的日志总是丢弃最旧的一条
+        if (dropPolicy == DROP_POLICY_OLDEST || report.getSeverity() >= JankSeverity.NEAR_ANR) {
+            if (pendingReports.poll() != null) {
+                droppedReportCount.incrementAndGet();
+            }
+            if (!pendingReports.offer(report)) {
+                droppedReportCount.incrementAndGet();
+            }
+        } else {
+            droppedReportCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void submit(JankReport report, JankEvent event) {
+        submit(report);
+    }
+
+    /**
+     * 停止写入线程,已提交的日志会在写完后退出
+     */
+    @Override
+    public void stop() {
+        if (logWriterThread == null) {
+            return;
+        }
+        //保证结束标记一定能放入队列
+        while (!pendingReports.offer(STOP_MARKER)) {
+            if (pendingReports.poll() != null) {
+                droppedReportCount.incrementAndGet();
+            }
+        }
+        logWriterThread = null;
+    }
+
+    /**
+     * 丢弃的日志数量
+     */
+    public long getDroppedReportCount() {
+        return droppedReportCount.get();
+    }
+
+    /**
+     * 与其他日志合并写入的日志数量
+     */
+    public long getCoalescedReportCount() {
+        return coalescedReportCount;
+    }
+
+    /**
+     * 写入循环：阻塞等待第一条日志,再取出其余已到达的日志,合并写入;
+     * 队列为空时处理到期的同步,以及待处理的压缩、清理工作(每次一项)
+     */
+    private void loopWrite() {
+        List<JankReport> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        storageManager = new LogStorageManager(new File(getRootFolderPath()), cacheFileName, getFileExtension(),
+                maxFileSize, isNeedCompress, maxDiskUsage);
+        storageManager.recover();
+        boolean isStopped = false;
+        while (!isStopped) {
+            batch.clear();
+            JankReport first;
+            try {
+                first = nextReport();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            pendingReports.drainTo(batch, MAX_BATCH_SIZE - 1);
+            int stopIndex = batch.indexOf(STOP_MARKER);
+            if (stopIndex >= 0) {
+                isStopped = true;
+                batch.subList(stopIndex, batch.size()).clear();
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            coalescedReportCount += batch.size() - 1;
+            try {
+                ensureCacheFileOpen();
+                if (cacheFile == null) {
+                    continue;
+                }
+                if (format == FORMAT_BINARY) {
+                    saveReportsAsBinary(batch);
+                } else {
+                    saveReportsAsText(batch);
+                }
+                syncIfNeed(hasUrgentReport(batch));
+                rolloverIfNeed();
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeCacheFile();
+            }
+        }
+        closeCacheFile();
+    }
+
+    /**
+     * 取出下一条待写入的日志;队列为空时先处理到期的同步和待处理的存储工作,此时可能返回null
+     */
+    private JankReport nextReport() throws InterruptedException {
+        JankReport report;
+        if (isNeedSync) {
+            long waitMillis = lastSyncMillis + syncIntervalMillis - SystemClock.uptimeMillis();
+            report = waitMillis > 0 ? pendingReports.poll(waitMillis, TimeUnit.MILLISECONDS) : pendingReports.poll();
+            if (report == null) {
+                syncCacheFile();
+            }
+            return report;
+        }
+        if (storageManager.hasPendingWork()) {
+            report = pendingReports.poll();
+            if (report == null) {
+                storageManager.doPendingWork(cacheFile == null ? null : cacheFile.getFile());
+            }
+            return report;
+        }
+        return pendingReports.take();
+    }
+
+    /**
+     * 以文本格式合并写入,每条日志为一条记录
+     */
+    private void saveReportsAsText(List<JankReport> batch) throws IOException {
+        for (JankReport report : batch) {
+            if (report.getText() != null) {
+                journal.appendRecord(report.getText());
+            }
+        }
+        flushJournal();
+    }
+
+    /**
+     * 以二进制格式合并写入,每条日志(包括新出现的帧字符串)为一条记录
+     */
+    private void saveReportsAsBinary(List<JankReport> batch) throws IOException {
+        for (JankReport report : batch) {
+            binaryLogEncoder.encode(report);
+            appendBinaryRecord();
+        }
+        flushJournal();
+    }
+
+    /**
+     * 将二进制编码的内容作为一条记录
+     */
+    private void appendBinaryRecord() {
+        journal.appendRecord(binaryLogEncoder.getBuffer(), 0, binaryLogEncoder.getLength());
+        binaryLogEncoder.clearBuffer();
+    }
+
+    /**
+     * 将编码好的记录一次写入文件
+     */
+    private void flushJournal() throws IOException {
+        cacheFile.append(journal.getBuffer(), 0, journal.getLength());
+        journal.clearBuffer();
+    }
+
+    /**
+     * 是否有需要立即同步的日志(接近ANR,进程随时可能被杀)
+     */
+    private static boolean hasUrgentReport(List<JankReport> batch) {
+        for (JankReport report : batch) {
+            if (report.getSeverity() >= JankSeverity.NEAR_ANR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 合并写入后根据同步策略同步
+     *
+     * @param isUrgent 是否立即同步(不受同步策略限制)
+     */
+    private void syncIfNeed(boolean isUrgent) {
+        if (isUrgent) {
+            syncCacheFile(true);
+            return;
+        }
+        if (syncPolicy == SYNC_INTERVAL && SystemClock.uptimeMillis() - lastSyncMillis < syncIntervalMillis) {
+            isNeedSync = true;
+            return;
+        }
+        syncCacheFile();
+    }
+
+    /**
+     * 同步当前文件(SYNC_NONE时不同步),并更新检查点
+     */
+    private void syncCacheFile() {
+        syncCacheFile(false);
+    }
+
+    /**
+     * 同步当前文件,并更新检查点
+     *
+     * @param isForce 是否忽略同步策略强制同步
+     */
+    private void syncCacheFile(boolean isForce) {
+        isNeedSync = false;
+        lastSyncMillis = SystemClock.uptimeMillis();
+        if (cacheFile == null) {
+            return;
+        }
+        if (syncPolicy != SYNC_NONE || isForce) {
+            cacheFile.force();
+        }
+        if (checkpointFile == null) {
+            return;
+        }
+        try {
+            LogJournal.writeCheckpoint(checkpointFile, cacheFile.size());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 当前文件达到大小上限时关闭,交给存储管理重命名为分段,下次写入时打开新文件
+     */
+    private void rolloverIfNeed() {
+        if (cacheFile == null || !storageManager.isNeedRollover(cacheFile.size())) {
+            return;
+        }
+        File closedFile = cacheFile.getFile();
+        closeCacheFile();
+        getCheckpointFile(closedFile).delete();
+        storageManager.rollover(closedFile);
+    }
+
+    /**
+     * 缓存根目录
+     */
+    private String getRootFolderPath() {
+        return Environment.getExternalStorageDirectory() + "/" + cacheFolder;
+    }
+
+    /**
+     * 缓存文件扩展名
+     */
+    private String getFileExtension() {
+        return format == FORMAT_BINARY ? BinaryLogFormat.FILE_EXTENSION : ".txt";
+    }
+
+    /**
+     * 缓存文件对应的检查点文件
+     */
+    private static File getCheckpointFile(File file) {
+        return new File(file.getPath() + LogJournal.CHECKPOINT_EXTENSION);
+    }
+
+    /**
+     * 保证当天的缓存文件已经打开,跨天时关闭旧文件并打开新文件
+     * 当天的文件在多次写入之间保持打开,跨天时才切换文件
+     */
+    private void ensureCacheFileOpen() throws IOException {
+        long now = System.currentTimeMillis();
+        if (cacheFile != null && now < nextRolloverMillis) {
+            return;
+        }
+        closeCacheFile();
+        //根据配置生成文件夹地址
+        final String finalFileFolderPath = getRootFolderPath() + "/" + TimeUtils.getFileFolderNameByTime();
+        //校验文件夹是否存在,不存在则创建
+        File fileFolder = new File(finalFileFolderPath);
+        if (!FileUtils.ensureFolder(fileFolder)) {
+            return;
+        }
+        File file = new File(fileFolder, cacheFileName + getFileExtension());
+        File checkpoint = getCheckpointFile(file);
+        if (file.exists()) {
+            if (LogJournal.isJournalOrEmpty(file)) {
+                //截掉上次异常退出时不完整的记录
+                LogJournal.recover(file, LogJournal.readCheckpoint(checkpoint));
+            } else {
+                //旧版本直接写入的文件,作为分段保留,重新开始
+                checkpoint.delete();
+                storageManager.rollover(file);
+            }
+        }
+        cacheFile = new FileUtils.MappedAppendFile(file);
+        checkpointFile = new RandomAccessFile(checkpoint, "rw");
+        nextRolloverMillis = TimeUtils.getNextDayStartMillis();
+        if (format == FORMAT_BINARY) {
+            //新文件写入文件头,已有文件追加时清空字符串表,编号重新开始
+            binaryLogEncoder.clearBuffer();
+            if (cacheFile.size() == 0) {
+                binaryLogEncoder.encodeHeader();
+            } else {
+                binaryLogEncoder.encodeReset();
+            }
+            appendBinaryRecord();
+            flushJournal();
+        }
+    }
+
+    /**
+     * 关闭当前的缓存文件
+     */
+    private void closeCacheFile() {
+        if (cacheFile != null) {
+            syncCacheFile();
+            cacheFile.close();
+            cacheFile = null;
+        }
+        if (checkpointFile != null) {
+            try {
+                checkpointFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            checkpointFile = null;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.simon.uiwatch.log;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Looper;
+import android.os.Message;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.lang.reflect.Field;
+
+/**
+ * 主线程消息队列的积压采样：已到期但还未处理的消息数量,以及其中最早到期的消息已经延迟的时长
+ * 一条很慢的消息和大量很小的消息都会造成卡顿,后者在堆栈中每次都不同,需要通过积压才能看出来
+ * <p>
+ * 队列为MessageQueue.mMessages开始的链表(按到期时间排列),通过反射遍历,反射只在首次使用时解析一次,失败时输出一次日志,之后不再尝试;
+ * Looper.dump需要为每条消息生成字符串,且在持有队列锁期间遍历整个队列,无法限制耗时,因此不使用
+ * <p>
+ * Android 9(API 28)起限制应用访问隐藏接口,MessageQueue.mMessages和Message.next都在限制范围内,
+ * 因此在API 28及以上不使用反射,积压采样不可用({@link #sample()}始终返回false)
+ * <p>
+ * 遍历时不持有队列的锁,不会阻塞主线程取消息和其他线程发送消息;代价是可能读到正在修改的链表,结果只作为近似值：
+ * 被回收的消息会进入消息池(到期时间为0,target为null),因此遇到到期时间倒退(链表按到期时间排列)时停止;
+ * 遇到未到期的消息即停止,并限制遍历的数量和耗时,积压再多或链表异常也不会让采样本身变慢,超出限制时数量记为截断
+ * <p>
+ * 注意：非线程安全,只允许在LogNotifier_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class MessageQueueSampler {
+    /**
+     * 单次最多遍历的消息数量
+     */
+    private static final int MAX_WALK_MESSAGES = 512;
+
+    /**
+     * 单次遍历的最长耗时(纳秒)
+     */
+    private static final long MAX_WALK_NANOS = 200000L;
+
+    /**
+     * 每遍历多少条消息检查一次耗时
+     */
+    private static final int TIME_CHECK_INTERVAL = 32;
+
+    /**
+     * Android 9(API 28),开始限制隐藏接口(compileSdkVersion低于28,没有VERSION_CODES.P)
+     */
+    private static final int HIDDEN_API_RESTRICTED_SDK = 28;
+
+    /**
+     * 日志TAG
+     */
+    private final String tag;
+
+    /**
+     * 是否已经解析过反射
+     */
+    private boolean isResolved;
+
+    /**
+     * 主线程的消息队列,不可用时为null
+     */
+    private MessageQueue queue;
+    private Field messagesField;
+    private Field nextField;
+
+    /**
+     * 最近一次采样的积压数量
+     */
+    private int pendingCount;
+
+    /**
+     * 最近一次采样是否超出遍历限制
+     */
+    private boolean isTruncated;
+
+    /**
+     * 最近一次采样最早到期的消息已经延迟的时长(纳秒)
+     */
+    private long latenessNanos;
+
+    /**
+     * 构造方法
+     *
+     * @param tag 积压采样不可用时输出日志的TAG
+     */
+    public MessageQueueSampler(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * 采样一次,结果通过 {@link #getPendingCount()} 等读取
+     *
+     * @return 是否采样成功,平台不支持时返回false
+     */
+    public boolean sample() {
+        if (!isResolved) {
+            resolve();
+        }
+        if (queue == null) {
+            return false;
+        }
+        try {
+            walk();
+            return true;
+        } catch (Exception e) {
+            //隐藏接口被限制或实现不同,之后不再尝试
+            disable(e);
+            return false;
+        }
+    }
+
+    private void walk() throws IllegalAccessException {
+        int count = 0;
+        int walked = 0;
+        long oldestWhen = 0;
+        long lastWhen = 0;
+        boolean truncated = false;
+        long startNanos = System.nanoTime();
+        long now = SystemClock.uptimeMillis();
+        Message message = (Message) messagesField.get(queue);
+        while (message != null) {
+            long when = message.getWhen();
+            if (when > now) {
+                //之后的消息都未到期
+                break;
+            }
+            if (when < lastWhen) {
+                //读到了正在修改的链表(消息已被取出并回收),之后的内容不可信
+                break;
+            }
+            lastWhen = when;
+            //target为null的是同步屏障,不是待处理的消息
+            if (message.getTarget() != null) {
+                //sendMessageAtFrontOfQueue的到期时间为0,无法计算延迟
+                if (oldestWhen == 0 && when > 0) {
+                    oldestWhen = when;
+                }
+                count++;
+            }
+            walked++;
+            if (count >= MAX_WALK_MESSAGES || walked >= MAX_WALK_MESSAGES * 2 || (walked % TIME_CHECK_INTERVAL == 0
+                    && System.nanoTime() - startNanos > MAX_WALK_NANOS)) {
+                truncated = true;
+                break;
+            }
+            message = (Message) nextField.get(message);
+        }
+        pendingCount = count;
+        isTruncated = truncated;
+        latenessNanos = oldestWhen == 0 ? 0 : (now - oldestWhen) * 1000000L;
+    }
+
+    /**
+     * 解析反射,只进行一次
+     */
+    @SuppressLint("NewApi")
+    private void resolve() {
+        isResolved = true;
+        if (Build.VERSION.SDK_INT >= HIDDEN_API_RESTRICTED_SDK) {
+            //隐藏接口被限制,不尝试反射
+            Log.w(tag, "main queue backlog is unavailable on API " + Build.VERSION.SDK_INT
+                    + ": hidden MessageQueue fields are restricted");
+            return;
+        }
+        try {
+            Looper mainLooper = Looper.getMainLooper();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                queue = mainLooper.getQueue();
+            } else {
+                Field queueField = Looper.class.getDeclaredField("mQueue");
+                queueField.setAccessible(true);
+                queue = (MessageQueue) queueField.get(mainLooper);
+            }
+            messagesField = MessageQueue.class.getDeclaredField("mMessages");
+            messagesField.setAccessible(true);
+            nextField = Message.class.getDeclaredField("next");
+            nextField.setAccessible(true);
+        } catch (Throwable e) {
+            disable(e);
+        }
+    }
+
+    /**
+     * 反射失败,之后不再尝试;只在这里输出日志,因此只输出一次
+     */
+    private void disable(Throwable e) {
+        queue = null;
+        Log.w(tag, "main queue backlog is unavailable: " + e);
+    }
+
+    /**
+     * 已到期但还未处理的消息数量(不含同步屏障)
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * 是否超出遍历限制(实际数量大于 {@link #getPendingCount()})
+     */
+    public boolean isTruncated() {
+        return isTruncated;
+    }
+
+    /**
+     * 最早到期的消息已经延迟的时长(纳秒,精度为1ms),没有积压时为0
+     */
+    public long getLatenessNanos() {
+        return latenessNanos;
+    }
+}
@@ -0,0 +1,361 @@
+package com.simon.uiwatch.log;
+
+import com.simon.uiwatch.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 持久化的采样环形缓冲
+ * 最新的N条采样同时写入内存映射文件,主线程长时间卡死导致ANR或进程被杀时,内容仍然保留在文件中,
+ * 下次开启时检测到上次会话没有正常结束,从文件中恢复最后的采样
+ * <p>
+ * 文件：
+ * 1.samples.ring：文件头 + 固定数量的槽位,每个槽位为 序号(long) + 采样时间(long) + 帧数量(int) + 帧ID(int * MAX_SLOT_FRAMES),
+ * 写入槽位时先将序号置0,最后写入序号,进程在写入过程中被杀时该槽位序号为0,恢复时忽略
+ * 2.frames.dict：帧字典,每行一个帧字符串,行号即帧ID,新出现的帧在引用它的采样之前追加
+ * <p>
+ * 写入只是内存拷贝,由系统负责写回,进程被杀不会丢失;断电不在考虑范围内
+ * <p>
+ * 注意：非线程安全,只允许在LogExecutor_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class PersistentSampleRing {
+    /**
+     * 采样文件名称
+     */
+    private static final String RING_FILE_NAME = "samples.ring";
+
+    /**
+     * 帧字典文件名称
+     */
+    private static final String DICT_FILE_NAME = "frames.dict";
+
+    /**
+     * 文件头标识 "UWSR"
+     */
+    private static final int MAGIC = 0x55575352;
+
+    /**
+     * 格式版本
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * 会话状态：已正常结束
+     */
+    private static final int STATE_CLEAN = 0;
+
+    /**
+     * 会话状态：运行中
+     */
+    private static final int STATE_RUNNING = 1;
+
+    /**
+     * 每个槽位最多保存的帧数量,更深的堆栈只保存靠近栈顶的部分
+     */
+    private static final int MAX_SLOT_FRAMES = 128;
+
+    //------------- header layout-------------------
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_STATE = 8;
+    private static final int OFFSET_CAPACITY = 12;
+    private static final int OFFSET_SLOT_FRAMES = 16;
+    private static final int OFFSET_START_WALL_MILLIS = 24;
+    private static final int OFFSET_START_NANOS = 32;
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * 槽位头：序号 + 采样时间 + 帧数量
+     */
+    private static final int SLOT_HEADER_SIZE = 8 + 8 + 4;
+
+    private static final int SLOT_SIZE = SLOT_HEADER_SIZE + 4 * MAX_SLOT_FRAMES;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 文件夹
+     */
+    private final File folder;
+
+    /**
+     * 采样文件
+     */
+    private RandomAccessFile ringFile;
+
+    /**
+     * 采样文件的映射
+     */
+    private MappedByteBuffer ringBuffer;
+
+    /**
+     * 帧字典文件
+     */
+    private FileUtils.MappedAppendFile dictFile;
+
+    /**
+     * 槽位数量
+     */
+    private int capacity;
+
+    /**
+     * 下一条采样的序号,从1开始
+     */
+    private long nextSeq;
+
+    /**
+     * 已写入帧字典文件的帧数量
+     */
+    private int persistedFrameCount;
+
+    /**
+     * 帧字符串 + 换行,复用
+     */
+    private final StringBuilder lineBuilder = new StringBuilder();
+
+    /**
+     * 构造方法
+     *
+     * @param folder 文件所在的文件夹
+     */
+    public PersistentSampleRing(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * 恢复上次没有正常结束的会话中的采样
+     *
+     * @return 恢复出的报告(跳过的帧数为0,时间为最后一条采样的时间),上次正常结束或没有可恢复的采样时返回null
+     */
+    public JankReport recover() {
+        File file = new File(folder, RING_FILE_NAME);
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try {
+            ByteBuffer data = ByteBuffer.wrap(readFile(file));
+            if (data.getInt(OFFSET_MAGIC) != MAGIC || data.getInt(OFFSET_VERSION) != VERSION
+                    || data.getInt(OFFSET_STATE) != STATE_RUNNING
+                    || data.getInt(OFFSET_SLOT_FRAMES) != MAX_SLOT_FRAMES) {
+                return null;
+            }
+            int slotCount = Math.min(data.getInt(OFFSET_CAPACITY), (data.capacity() - HEADER_SIZE) / SLOT_SIZE);
+            long startWallMillis = data.getLong(OFFSET_START_WALL_MILLIS);
+            long startNanos = data.getLong(OFFSET_START_NANOS);
+            List<String> frames = readDictionary(new File(folder, DICT_FILE_NAME));
+            //收集完整的槽位,按序号排序
+            List<Integer> slots = new ArrayList<>();
+            final long[] seqs = new long[Math.max(0, slotCount)];
+            for (int slot = 0; slot < slotCount; slot++) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                seqs[slot] = data.getLong(offset);
+                int count = data.getInt(offset + 16);
+                if (seqs[slot] <= 0 || count <= 0 || count > MAX_SLOT_FRAMES
+                        || !isFrameIdsValid(data, offset + SLOT_HEADER_SIZE, count, frames.size())) {
+                    continue;
+                }
+                slots.add(slot);
+            }
+            if (slots.isEmpty()) {
+                return null;
+            }
+            Collections.sort(slots, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return seqs[a] < seqs[b] ? -1 : (seqs[a] == seqs[b] ? 0 : 1);
+                }
+            });
+            return buildReport(data, slots, frames, startWallMillis, startNanos);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 开始新的会话,清空旧的内容
+     *
+     * @param capacity 槽位数量
+     */
+    public void open(int capacity) throws IOException {
+        close();
+        if (!FileUtils.ensureFolder(folder)) {
+            throw new IOException("can not create folder: " + folder);
+        }
+        this.capacity = Math.max(1, capacity);
+        File dict = new File(folder, DICT_FILE_NAME);
+        if (dict.exists() && !dict.delete()) {
+            throw new IOException("can not delete: " + dict);
+        }
+        dictFile = new FileUtils.MappedAppendFile(dict);
+        persistedFrameCount = 0;
+        nextSeq = 1;
+        int size = HEADER_SIZE + this.capacity * SLOT_SIZE;
+        ringFile = new RandomAccessFile(new File(folder, RING_FILE_NAME), "rw");
+        ringFile.setLength(0);
+        ringFile.setLength(size);
+        ringBuffer = ringFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        ringBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        ringBuffer.putInt(OFFSET_VERSION, VERSION);
+        ringBuffer.putInt(OFFSET_CAPACITY, this.capacity);
+        ringBuffer.putInt(OFFSET_SLOT_FRAMES, MAX_SLOT_FRAMES);
+        ringBuffer.putLong(OFFSET_START_WALL_MILLIS, System.currentTimeMillis());
+        ringBuffer.putLong(OFFSET_START_NANOS, System.nanoTime());
+        ringBuffer.putInt(OFFSET_STATE, STATE_RUNNING);
+    }
+
+    /**
+     * 将字典中新出现的帧追加到帧字典文件,需要在写入引用它们的采样之前调用
+     *
+     * @param dictionary 帧字典
+     */
+    public void appendFrames(StackFrameDictionary dictionary) throws IOException {
+        int size = dictionary.size();
+        while (persistedFrameCount < size) {
+            lineBuilder.setLength(0);
+            lineBuilder.append(dictionary.getFrameString(persistedFrameCount)).append('\n');
+            dictFile.append(lineBuilder);
+            persistedFrameCount++;
+        }
+    }
+
+    /**
+     * 写入一条采样,覆盖最旧的槽位
+     *
+     * @param ids       帧ID缓冲
+     * @param count     有效数量
+     * @param timestamp 采样时间(System.nanoTime)
+     */
+    public void add(int[] ids, int count, long timestamp) {
+        int offset = HEADER_SIZE + (int) ((nextSeq - 1) % capacity) * SLOT_SIZE;
+        count = Math.min(count, MAX_SLOT_FRAMES);
+        //先作废槽位,写完内容后再写入序号
+        ringBuffer.putLong(offset, 0);
+        ringBuffer.putLong(offset + 8, timestamp);
+        ringBuffer.putInt(offset + 16, count);
+        int idsOffset = offset + SLOT_HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            ringBuffer.putInt(idsOffset + i * 4, ids[i]);
+        }
+        ringBuffer.putLong(offset, nextSeq++);
+    }
+
+    /**
+     * 正常结束会话
+     */
+    public void close() {
+        if (ringBuffer != null) {
+            ringBuffer.putInt(OFFSET_STATE, STATE_CLEAN);
+            ringBuffer.force();
+            ringBuffer = null;
+        }
+        if (ringFile != null) {
+            try {
+                ringFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            ringFile = null;
+        }
+        if (dictFile != null) {
+            dictFile.close();
+            dictFile = null;
+        }
+    }
+
+    /**
+     * 根据排序后的槽位生成报告
+     */
+    private JankReport buildReport(ByteBuffer data, List<Integer> slots, List<String> dictFrames,
+                                   long startWallMillis, long startNanos) {
+        int sampleCount = slots.size();
+        int[] reportIndexes = new int[dictFrames.size()];
+        Arrays.fill(reportIndexes, -1);
+        List<String> frames = new ArrayList<>();
+        long[] sampleTimestamps = new long[sampleCount];
+        int[] sampleOffsets = new int[sampleCount + 1];
+        int totalFrameCount = 0;
+        for (int slot : slots) {
+            totalFrameCount += data.getInt(HEADER_SIZE + slot * SLOT_SIZE + 16);
+        }
+        int[] sampleFrames = new int[totalFrameCount];
+        int position = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            int offset = HEADER_SIZE + slots.get(i) * SLOT_SIZE;
+            sampleTimestamps[i] = data.getLong(offset + 8);
+            sampleOffsets[i] = position;
+            int count = data.getInt(offset + 16);
+            for (int j = 0; j < count; j++) {
+                int frameId = data.getInt(offset + SLOT_HEADER_SIZE + j * 4);
+                if (reportIndexes[frameId] < 0) {
+                    reportIndexes[frameId] = frames.size();
+                    frames.add(dictFrames.get(frameId));
+                }
+                sampleFrames[position++] = reportIndexes[frameId];
+            }
+        }
+        sampleOffsets[sampleCount] = position;
+        long lastNanos = sampleTimestamps[sampleCount - 1];
+        long wallTimeMillis = startWallMillis + (lastNanos - startNanos) / 1000000;
+        return new JankReport(wallTimeMillis, sampleTimestamps[0], lastNanos, 0,
+                frames.toArray(new String[frames.size()]), sampleTimestamps, sampleOffsets, sampleFrames, null);
+    }
+
+    private static boolean isFrameIdsValid(ByteBuffer data, int offset, int count, int frameCount) {
+        for (int i = 0; i < count; i++) {
+            int frameId = data.getInt(offset + i * 4);
+            if (frameId < 0 || frameId >= frameCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取帧字典,忽略末尾不完整的行
+     */
+    private static List<String> readDictionary(File file) throws IOException {
+        List<String> frames = new ArrayList<>();
+        if (!file.isFile()) {
+            return frames;
+        }
+        byte[] data = readFile(file);
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                frames.add(new String(data, lineStart, i - lineStart, UTF_8));
+                lineStart = i + 1;
+            } else if (data[i] == 0) {
+                //映射区域残留的0
+                break;
+            }
+        }
+        return frames;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(data);
+            return data;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 卡顿期间主线程消息队列的积压(不可变)
+ * 由卡顿帧时间范围内的多次采样汇总：已到期但还未处理的消息的最大数量,以及最早到期的消息的最大延迟
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public final class QueueBacklog {
+    /**
+     * 采样次数
+     */
+    private final int sampleCount;
+
+    /**
+     * 积压消息的最大数量
+     */
+    private final int maxPendingCount;
+
+    /**
+     * 最大数量是否超出遍历限制(实际更多)
+     */
+    private final boolean isPendingCountTruncated;
+
+    /**
+     * 最早到期的消息的最大延迟(纳秒)
+     */
+    private final long maxLatenessNanos;
+
+    public QueueBacklog(int sampleCount, int maxPendingCount, boolean isPendingCountTruncated, long maxLatenessNanos) {
+        this.sampleCount = sampleCount;
+        this.maxPendingCount = maxPendingCount;
+        this.isPendingCountTruncated = isPendingCountTruncated;
+        this.maxLatenessNanos = maxLatenessNanos;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 已到期但还未处理的消息的最大数量(不含同步屏障)
+     */
+    public int getMaxPendingCount() {
+        return maxPendingCount;
+    }
+
+    /**
+     * 最大数量是否超出遍历限制,为true时实际积压多于 {@link #getMaxPendingCount()}
+     */
+    public boolean isPendingCountTruncated() {
+        return isPendingCountTruncated;
+    }
+
+    /**
+     * 最早到期的消息的最大延迟(纳秒,精度为1ms)
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueBacklog{maxPending=" + maxPendingCount + (isPendingCountTruncated ? "+" : "")
+                + ", maxLateness=" + maxLatenessNanos / 1000000 + "ms"
+                + ", samples=" + sampleCount + "}";
+    }
+}
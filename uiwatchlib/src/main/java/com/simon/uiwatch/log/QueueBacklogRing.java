@@ -0,0 +1,102 @@
+package com.simon.uiwatch.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 主线程消息队列积压的环形缓冲
+ * 每次采样时由LogNotifier_Thread写入采样时间、积压数量和最早到期消息的延迟,输出卡顿时由LogExecutor_Thread读取并汇总
+ * <p>
+ * 单写单读：只允许一个线程调用 {@link #add(long, int, boolean, long)},读取时不加锁,通过写入数量判断是否被覆盖
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class QueueBacklogRing {
+    /**
+     * 容量(2的幂),以5ms的最小采样间隔约可保存5秒
+     */
+    private static final int CAPACITY = 1024;
+
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * 采样时间(纳秒,System.nanoTime)
+     */
+    private final long[] timestamps = new long[CAPACITY];
+
+    /**
+     * 积压数量,超出遍历限制时为负数(取反)
+     */
+    private final int[] pendingCounts = new int[CAPACITY];
+
+    /**
+     * 最早到期消息的延迟(纳秒)
+     */
+    private final long[] latenesses = new long[CAPACITY];
+
+    /**
+     * 已写入的数量,写入数据之后再更新
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+
+    /**
+     * 写入一次采样(不分配内存、不加锁)
+     *
+     * @param timestampNanos 采样时间
+     * @param pendingCount   积压数量
+     * @param isTruncated    是否超出遍历限制
+     * @param latenessNanos  最早到期消息的延迟
+     */
+    public void add(long timestampNanos, int pendingCount, boolean isTruncated, long latenessNanos) {
+        long count = writeCount.get();
+        int slot = (int) (count & MASK);
+        timestamps[slot] = timestampNanos;
+        pendingCounts[slot] = isTruncated ? ~pendingCount : pendingCount;
+        latenesses[slot] = latenessNanos;
+        writeCount.lazySet(count + 1);
+    }
+
+    /**
+     * 汇总时间范围内的采样
+     *
+     * @param startNanos 开始时间
+     * @param endNanos   结束时间
+     * @return 范围内没有采样或读取期间被覆盖时返回null
+     */
+    public QueueBacklog getBacklog(long startNanos, long endNanos) {
+        long count = writeCount.get();
+        long oldest = Math.max(0, count - CAPACITY);
+        int sampleCount = 0;
+        int maxPendingCount = 0;
+        boolean isTruncated = false;
+        long maxLatenessNanos = 0;
+        long index = count - 1;
+        for (; index >= oldest; index--) {
+            int slot = (int) (index & MASK);
+            long timestamp = timestamps[slot];
+            if (timestamp > endNanos) {
+                continue;
+            }
+            if (timestamp < startNanos) {
+                break;
+            }
+            int pendingCount = pendingCounts[slot];
+            boolean truncated = pendingCount < 0;
+            if (truncated) {
+                pendingCount = ~pendingCount;
+            }
+            if (pendingCount > maxPendingCount || (pendingCount == maxPendingCount && truncated)) {
+                maxPendingCount = pendingCount;
+                isTruncated = truncated;
+            }
+            maxLatenessNanos = Math.max(maxLatenessNanos, latenesses[slot]);
+            sampleCount++;
+        }
+        //读取期间被覆盖则放弃
+        if (sampleCount == 0 || writeCount.get() - (index + 1) > CAPACITY) {
+            return null;
+        }
+        return new QueueBacklog(sampleCount, maxPendingCount, isTruncated, maxLatenessNanos);
+    }
+}
@@ -0,0 +1,96 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 采样频率统计
+ * 由LogNotifier_Thread写入,任意线程可以获取快照
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class SampleRateMeter {
+    /**
+     * 最近一次采样的时间(uptime ms)
+     */
+    private long lastSampleUptime = -1;
+
+    /**
+     * 采样次数
+     */
+    private long sampleCount;
+
+    /**
+     * 连续采样的间隔数量(看门狗模式下,两段采样之间的空闲时间不计入)
+     */
+    private long intervalCount;
+
+    /**
+     * 连续采样的总时长(ms)
+     */
+    private long activeDurationMs;
+
+    /**
+     * 跳过的采样点数量
+     */
+    private long skippedSlotCount;
+
+    /**
+     * 抖动总和(ms)
+     */
+    private long totalJitterMs;
+
+    /**
+     * 最大抖动(ms)
+     */
+    private long maxJitterMs;
+
+    /**
+     * 记录一次采样
+     *
+     * @param targetUptime 计划的采样时间(uptime ms)
+     * @param actualUptime 实际的采样时间(uptime ms)
+     * @param continuous   是否紧接上一次采样(false表示一段新的采样的开始)
+     */
+    public synchronized void onSample(long targetUptime, long actualUptime, boolean continuous) {
+        if (continuous && lastSampleUptime >= 0) {
+            intervalCount++;
+            activeDurationMs += actualUptime - lastSampleUptime;
+        }
+        lastSampleUptime = actualUptime;
+        sampleCount++;
+        long jitter = Math.max(0, actualUptime - targetUptime);
+        totalJitterMs += jitter;
+        maxJitterMs = Math.max(maxJitterMs, jitter);
+    }
+
+    /**
+     * 记录跳过的采样点
+     *
+     * @param count 跳过的数量
+     */
+    public synchronized void onSkippedSlots(long count) {
+        skippedSlotCount += count;
+    }
+
+    /**
+     * 重置统计
+     */
+    public synchronized void reset() {
+        lastSampleUptime = -1;
+        sampleCount = 0;
+        intervalCount = 0;
+        activeDurationMs = 0;
+        skippedSlotCount = 0;
+        totalJitterMs = 0;
+        maxJitterMs = 0;
+    }
+
+    /**
+     * 获取统计快照
+     */
+    public synchronized SamplingStats snapshot() {
+        double sampleRateHz = activeDurationMs <= 0 ? 0 : intervalCount * 1000.0 / activeDurationMs;
+        double meanJitterMs = sampleCount == 0 ? 0 : (double) totalJitterMs / sampleCount;
+        return new SamplingStats(sampleCount, activeDurationMs, sampleRateHz, skippedSlotCount, meanJitterMs, maxJitterMs);
+    }
+}
@@ -0,0 +1,104 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 采样统计(不可变)
+ * 用于确认实际的采样精度：实际采样频率、跳过的采样点以及采样时间的抖动
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class SamplingStats {
+    /**
+     * 采样次数
+     */
+    private final long sampleCount;
+
+    /**
+     * 连续采样的总时长(ms)
+     */
+    private final long durationMs;
+
+    /**
+     * 实际采样频率(Hz)
+     */
+    private final double sampleRateHz;
+
+    /**
+     * 因为线程繁忙而跳过的采样点数量
+     */
+    private final long skippedSlotCount;
+
+    /**
+     * 平均抖动(ms),即实际采样时间晚于计划时间的平均值
+     */
+    private final double meanJitterMs;
+
+    /**
+     * 最大抖动(ms)
+     */
+    private final long maxJitterMs;
+
+    public SamplingStats(long sampleCount, long durationMs, double sampleRateHz, long skippedSlotCount, double meanJitterMs, long maxJitterMs) {
+        this.sampleCount = sampleCount;
+        this.durationMs = durationMs;
+        this.sampleRateHz = sampleRateHz;
+        this.skippedSlotCount = skippedSlotCount;
+        this.meanJitterMs = meanJitterMs;
+        this.maxJitterMs = maxJitterMs;
+    }
+
+    /**
+     * 采样次数
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 连续采样的总时长(ms),看门狗模式下不包含空闲时间
+     */
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * 实际采样频率(Hz)
+     */
+    public double getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /**
+     * 跳过的采样点数量
+     */
+    public long getSkippedSlotCount() {
+        return skippedSlotCount;
+    }
+
+    /**
+     * 平均抖动(ms)
+     */
+    public double getMeanJitterMs() {
+        return meanJitterMs;
+    }
+
+    /**
+     * 最大抖动(ms)
+     */
+    public long getMaxJitterMs() {
+        return maxJitterMs;
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingStats{" +
+                "sampleCount=" + sampleCount +
+                ", durationMs=" + durationMs +
+                ", sampleRateHz=" + sampleRateHz +
+                ", skippedSlotCount=" + skippedSlotCount +
+                ", meanJitterMs=" + meanJitterMs +
+                ", maxJitterMs=" + maxJitterMs +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 一次超时的主线程消息(不可变)
+ * 主线程只保存Looper打印的原始字符串和开始、结束时间,目标Handler、callback和what在输出时(LogExecutor_Thread)才解析
+ * <p>
+ * 原始字符串的格式：">>>>> Dispatching to " + msg.target + " " + msg.callback + ": " + msg.what,
+ * 其中target为 "Handler (类名) {hash}"
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public final class SlowMessage {
+    private static final String DISPATCHING_PREFIX = ">>>>> Dispatching to ";
+
+    /**
+     * Looper打印的原始字符串
+     */
+    private final String dispatchingLog;
+
+    /**
+     * 开始处理的时间(纳秒,System.nanoTime)
+     */
+    private final long startNanos;
+
+    /**
+     * 处理结束的时间(纳秒,System.nanoTime)
+     */
+    private final long endNanos;
+
+    public SlowMessage(String dispatchingLog, long startNanos, long endNanos) {
+        this.dispatchingLog = dispatchingLog;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    /**
+     * 处理耗时(纳秒)
+     */
+    public long getDurationNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * 解析后的描述,例如 "Handler (android.view.Choreographer$FrameHandler) {1a2b3c}, callback=null, what=0",
+     * 格式不同时返回去掉前缀的原始字符串
+     */
+    public String describe() {
+        String log = dispatchingLog;
+        if (log == null) {
+            return null;
+        }
+        if (!log.startsWith(DISPATCHING_PREFIX)) {
+            return log;
+        }
+        log = log.substring(DISPATCHING_PREFIX.length());
+        int whatIndex = log.lastIndexOf(": ");
+        //target的toString以"}"结尾,之后为callback
+        int targetEnd = log.indexOf("} ");
+        if (whatIndex < 0 || targetEnd < 0 || targetEnd > whatIndex) {
+            return log;
+        }
+        return log.substring(0, targetEnd + 1)
+                + ", callback=" + log.substring(targetEnd + 2, whatIndex)
+                + ", what=" + log.substring(whatIndex + 2);
+    }
+}
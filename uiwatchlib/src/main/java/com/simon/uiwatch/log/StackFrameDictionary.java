@@ -0,0 +1,205 @@
+package com.simon.uiwatch.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 堆栈帧字典
+ * 每个不同的StackTraceElement只保存一次,并映射为一个递增的int类型ID,
+ * 采样时只记录ID,只有在真正输出卡顿信息时才构建对应的字符串
+ * <p>
+ * ID分配后不会回收,不再使用的帧会一直保留,帧数量过多时由使用方通过 {@link #internFrom(StackFrameDictionary, int)}
+ * 只将仍在使用的帧收录到新的字典
+ * <p>
+ * 注意：非线程安全,只允许在LogExecutor_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class StackFrameDictionary {
+    /**
+     * 未分类的帧标记
+     */
+    public static final byte FLAG_UNKNOWN = 0;
+
+    /**
+     * 占位帧的类名
+     */
+    public static final String PLACEHOLDER_CLASS_NAME = "...";
+
+    /**
+     * 初始容量
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * 帧 -> ID 的映射
+     */
+    private Map<StackTraceElement, Integer> frameIdMap;
+
+    /**
+     * 占位帧文本 -> ID 的映射
+     */
+    private Map<String, Integer> placeholderIdMap;
+
+    /**
+     * ID -> 帧 的映射(下标即ID)
+     */
+    private List<StackTraceElement> frameList;
+
+    /**
+     * ID -> 帧字符串的缓存,输出时才懒加载
+     */
+    private String[] frameStrings;
+
+    /**
+     * ID -> 帧标记(例如是否包含关键词),由使用方自行定义,每个帧只需计算一次
+     */
+    private byte[] frameFlags;
+
+    public StackFrameDictionary() {
+        clear();
+    }
+
+    /**
+     * 获取帧对应的ID,不存在则新建
+     *
+     * @param frame 堆栈帧
+     * @return 帧ID
+     */
+    public int intern(StackTraceElement frame) {
+        Integer id = frameIdMap.get(frame);
+        if (id != null) {
+            return id;
+        }
+        int newId = frameList.size();
+        frameIdMap.put(frame, newId);
+        frameList.add(frame);
+        ensureCapacity(newId + 1);
+        return newId;
+    }
+
+    /**
+     * 获取占位帧(例如折叠后的多个帧)对应的ID,不存在则新建
+     * 占位帧以类名为 {@link #PLACEHOLDER_CLASS_NAME}、方法名为文本的帧表示,输出时直接使用文本
+     *
+     * @param text 占位帧的文本
+     * @return 帧ID
+     */
+    public int internPlaceholder(String text) {
+        Integer id = placeholderIdMap.get(text);
+        if (id != null) {
+            return id;
+        }
+        int newId = frameList.size();
+        placeholderIdMap.put(text, newId);
+        frameList.add(new StackTraceElement(PLACEHOLDER_CLASS_NAME, text, null, -1));
+        ensureCapacity(newId + 1);
+        frameStrings[newId] = text;
+        return newId;
+    }
+
+    /**
+     * 将另一个字典中的帧收录到本字典(重建字典时使用),占位帧仍作为占位帧收录,帧标记不复制
+     *
+     * @param source 原字典
+     * @param id     帧在原字典中的ID
+     * @return 帧在本字典中的ID
+     */
+    public int internFrom(StackFrameDictionary source, int id) {
+        StackTraceElement frame = source.getFrame(id);
+        if (source.placeholderIdMap.containsKey(frame.getMethodName())
+                && PLACEHOLDER_CLASS_NAME.equals(frame.getClassName())) {
+            return internPlaceholder(frame.getMethodName());
+        }
+        return intern(frame);
+    }
+
+    /**
+     * 获取ID对应的帧
+     *
+     * @param id 帧ID
+     */
+    public StackTraceElement getFrame(int id) {
+        return frameList.get(id);
+    }
+
+    /**
+     * 获取ID对应的帧字符串,首次获取时构建并缓存
+     *
+     * @param id 帧ID
+     */
+    public String getFrameString(int id) {
+        String frameString = frameStrings[id];
+        if (frameString == null) {
+            frameString = frameList.get(id).toString();
+            frameStrings[id] = frameString;
+        }
+        return frameString;
+    }
+
+    /**
+     * 获取帧标记
+     *
+     * @param id 帧ID
+     * @return 未设置时返回 {@link #FLAG_UNKNOWN}
+     */
+    public byte getFlag(int id) {
+        return frameFlags[id];
+    }
+
+    /**
+     * 设置帧标记
+     *
+     * @param id   帧ID
+     * @param flag 标记
+     */
+    public void setFlag(int id, byte flag) {
+        frameFlags[id] = flag;
+    }
+
+    /**
+     * 清除全部帧标记(例如筛选规则变化后)
+     */
+    public void clearFlags() {
+        Arrays.fill(frameFlags, FLAG_UNKNOWN);
+    }
+
+    /**
+     * 已收录的帧数量
+     */
+    public int size() {
+        return frameList.size();
+    }
+
+    /**
+     * 清空字典,之前分配的ID全部失效
+     */
+    public void clear() {
+        frameIdMap = new HashMap<>(INITIAL_CAPACITY);
+        placeholderIdMap = new HashMap<>();
+        frameList = new ArrayList<>(INITIAL_CAPACITY);
+        frameStrings = new String[INITIAL_CAPACITY];
+        frameFlags = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * 扩容缓存数组,按2倍增长
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= frameFlags.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, frameFlags.length * 2);
+        String[] newFrameStrings = new String[newCapacity];
+        System.arraycopy(frameStrings, 0, newFrameStrings, 0, frameStrings.length);
+        frameStrings = newFrameStrings;
+        byte[] newFrameFlags = new byte[newCapacity];
+        System.arraycopy(frameFlags, 0, newFrameFlags, 0, frameFlags.length);
+        frameFlags = newFrameFlags;
+    }
+}
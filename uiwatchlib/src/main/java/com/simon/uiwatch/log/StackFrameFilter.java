@@ -0,0 +1,213 @@
+package com.simon.uiwatch.log;
+
+import java.util.Arrays;
+
+/**
+ * 堆栈帧筛选
+ * 在帧ID上依次进行：
+ * 1.排除：包含排除关键词的帧直接丢弃
+ * 2.折叠：连续的系统帧(android.*、java.*、com.android.internal.* 等)折叠为一个占位帧,栈顶帧始终保留
+ * 3.保留：未设置关键词时全部保留,否则只保留包含关键词的帧(关键词优先于折叠);
+ * 设置了关键词时没有任何帧包含关键词的采样整体丢弃,不会因为保留了栈顶帧而通过筛选
+ * 4.深度：只保留从栈顶开始的若干帧,栈顶方向最先出现的应用帧始终保留
+ * <p>
+ * 每个帧的分类结果缓存在帧字典中,只计算一次
+ * 注意：非线程安全,筛选只允许在LogExecutor_Thread中进行
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class StackFrameFilter {
+    /**
+     * 不限制深度
+     */
+    public static final int UNLIMITED_DEPTH = 0;
+
+    /**
+     * 保留的帧
+     */
+    private static final byte FLAG_USEFUL = 1;
+    /**
+     * 丢弃的帧
+     */
+    private static final byte FLAG_USELESS = 2;
+    /**
+     * 可折叠的系统帧
+     */
+    private static final byte FLAG_FRAMEWORK = 3;
+
+    /**
+     * 系统帧的类名前缀
+     */
+    private static final String[] FRAMEWORK_PREFIXES = {
+            "android.", "java.", "javax.", "dalvik.", "libcore.", "com.android.internal."
+    };
+
+    /**
+     * 包含的关键词,为null时全部包含
+     */
+    private KeywordMatcher includeMatcher;
+
+    /**
+     * 排除的关键词,为null时不排除
+     */
+    private KeywordMatcher excludeMatcher;
+
+    /**
+     * 是否折叠连续的系统帧
+     */
+    private boolean isCollapseFrameworkFrames;
+
+    /**
+     * 最大深度,0为不限制
+     */
+    private int maxDepth = UNLIMITED_DEPTH;
+
+    /**
+     * 折叠数量 -> 占位帧ID的缓存(0表示未创建),避免每次拼接占位帧文本
+     */
+    private int[] placeholderIds = new int[16];
+
+    /**
+     * 设置包含的关键词
+     *
+     * @param keyWords 关键词,为空时全部包含
+     */
+    public void setIncludeKeyWords(String[] keyWords) {
+        includeMatcher = KeywordMatcher.compile(keyWords);
+    }
+
+    /**
+     * 设置排除的关键词
+     *
+     * @param keyWords 关键词,为空时不排除
+     */
+    public void setExcludeKeyWords(String[] keyWords) {
+        excludeMatcher = KeywordMatcher.compile(keyWords);
+    }
+
+    /**
+     * 设置是否折叠连续的系统帧
+     */
+    public void setCollapseFrameworkFrames(boolean isCollapseFrameworkFrames) {
+        this.isCollapseFrameworkFrames = isCollapseFrameworkFrames;
+    }
+
+    /**
+     * 设置最大深度
+     *
+     * @param maxDepth 最大深度,{@link #UNLIMITED_DEPTH} 为不限制
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * 规则变化后(开启监控时)清除缓存的分类结果
+     *
+     * @param dictionary 帧字典
+     */
+    public void reset(StackFrameDictionary dictionary) {
+        dictionary.clearFlags();
+        Arrays.fill(placeholderIds, 0);
+    }
+
+    /**
+     * 筛选一次采样
+     *
+     * @param dictionary 帧字典
+     * @param frameIds   采样的帧ID(栈顶在前)
+     * @param count      帧数量
+     * @param out        筛选结果,长度不小于count,可以与frameIds为同一个数组
+     * @return 筛选后的帧数量
+     */
+    public int filter(StackFrameDictionary dictionary, int[] frameIds, int count, int[] out) {
+        int outCount = 0;
+        int collapsedCount = 0;
+        int firstUsefulIndex = -1;
+        for (int i = 0; i < count; i++) {
+            int frameId = frameIds[i];
+            byte flag = classify(dictionary, frameId);
+            if (flag == FLAG_USELESS) {
+                continue;
+            }
+            if (flag == FLAG_FRAMEWORK && i > 0) {
+                collapsedCount++;
+                continue;
+            }
+            if (collapsedCount > 0) {
+                out[outCount++] = getPlaceholderId(dictionary, collapsedCount);
+                collapsedCount = 0;
+            }
+            if (flag == FLAG_USEFUL && firstUsefulIndex < 0) {
+                firstUsefulIndex = outCount;
+            }
+            out[outCount++] = frameId;
+        }
+        //栈顶帧和占位帧不算匹配,例如主线程空闲或只有系统帧的堆栈
+        if (includeMatcher != null && firstUsefulIndex < 0) {
+            return 0;
+        }
+        if (collapsedCount > 0) {
+            out[outCount++] = getPlaceholderId(dictionary, collapsedCount);
+        }
+        if (maxDepth > 0 && outCount > maxDepth) {
+            if (firstUsefulIndex >= maxDepth) {
+                out[maxDepth - 1] = out[firstUsefulIndex];
+            }
+            outCount = maxDepth;
+        }
+        return outCount;
+    }
+
+    /**
+     * 帧的分类,首次计算后缓存在字典中
+     */
+    private byte classify(StackFrameDictionary dictionary, int frameId) {
+        byte flag = dictionary.getFlag(frameId);
+        if (flag != StackFrameDictionary.FLAG_UNKNOWN) {
+            return flag;
+        }
+        StackTraceElement frame = dictionary.getFrame(frameId);
+        if (excludeMatcher != null && excludeMatcher.matches(frame)) {
+            flag = FLAG_USELESS;
+        } else if (includeMatcher != null && includeMatcher.matches(frame)) {
+            flag = FLAG_USEFUL;
+        } else if (isCollapseFrameworkFrames && isFrameworkFrame(frame)) {
+            flag = FLAG_FRAMEWORK;
+        } else {
+            flag = includeMatcher == null ? FLAG_USEFUL : FLAG_USELESS;
+        }
+        dictionary.setFlag(frameId, flag);
+        return flag;
+    }
+
+    /**
+     * 是否为系统帧
+     */
+    private static boolean isFrameworkFrame(StackTraceElement frame) {
+        String className = frame.getClassName();
+        for (String prefix : FRAMEWORK_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取折叠了count个系统帧的占位帧ID
+     */
+    private int getPlaceholderId(StackFrameDictionary dictionary, int count) {
+        if (count >= placeholderIds.length) {
+            placeholderIds = Arrays.copyOf(placeholderIds, Math.max(count + 1, placeholderIds.length * 2));
+        }
+        int id = placeholderIds[count];
+        if (id == 0) {
+            id = dictionary.internPlaceholder("... " + count + " framework frames ...");
+            placeholderIds[count] = id;
+        }
+        return id;
+    }
+}
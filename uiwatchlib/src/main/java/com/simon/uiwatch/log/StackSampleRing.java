@@ -0,0 +1,407 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 堆栈采样缓冲
+ * 容量固定(由cacheDataSize决定),每个槽位记录一个不同的堆栈：调用树中的栈顶节点、出现次数以及首次/最近一次出现的时间;
+ * 帧保存在 {@link CallTree} 中,相同的前缀(ActivityThread.main、Looper.loop等)只保存一次,
+ * 相同的堆栈对应同一个节点,再次出现时只累加次数,不占用新的槽位;
+ * 缓冲已满时淘汰最久没有出现的堆栈,长时间卡在同一处的堆栈不会被交替出现的堆栈挤出
+ * <p>
+ * 槽位中的次数和时间是整个会话的累计值,同一处堆栈在多次卡顿中出现时会跨越多个卡顿;
+ * 另外按顺序记录最近 {@link #HISTORY_SIZE} 次采样属于哪个槽位,输出时通过 {@link #selectWindow(long, long)}
+ * 只统计卡顿时间范围内的出现次数和首次/最近一次出现的时间
+ * <p>
+ * 注意：非线程安全,只允许在LogExecutor_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class StackSampleRing {
+    /**
+     * 采样记录的数量,按最小采样间隔(5ms)可以覆盖约10s
+     */
+    static final int HISTORY_SIZE = 2048;
+
+    /**
+     * 槽位数量
+     */
+    private final int capacity;
+
+    /**
+     * 调用树,保存所有槽位的帧
+     */
+    private final CallTree callTree = new CallTree();
+
+    /**
+     * 每个槽位的堆栈在调用树中的栈顶节点
+     */
+    private final int[] nodes;
+
+    /**
+     * 每个槽位的堆栈首次出现的时间(System.nanoTime)
+     */
+    private final long[] timestamps;
+
+    /**
+     * 每个槽位的堆栈最近一次出现的时间(System.nanoTime)
+     */
+    private final long[] lastTimestamps;
+
+    /**
+     * 每个槽位的堆栈出现的次数
+     */
+    private final int[] repeatCounts;
+
+    /**
+     * 每个槽位的堆栈最近一次出现时主线程的状态(Thread.State的序号,-1为未知)
+     */
+    private final byte[] threadStates;
+
+    /**
+     * 每个槽位的堆栈最近一次出现时主线程等待的锁及其持有者(仅BLOCKED时,可为null)
+     */
+    private final String[] lockInfos;
+
+    /**
+     * 按首次出现的时间排列的槽位,下标0为最旧的一条
+     */
+    private final int[] order;
+
+    /**
+     * 每个槽位的代数,槽位被淘汰后重新使用时加1,用于识别采样记录是否仍然属于该槽位
+     */
+    private final int[] generations;
+
+    /**
+     * 采样记录：采样时间、槽位以及槽位的代数,环形缓冲
+     */
+    private final long[] historyTimestamps = new long[HISTORY_SIZE];
+    private final int[] historySlots = new int[HISTORY_SIZE];
+    private final int[] historyGenerations = new int[HISTORY_SIZE];
+
+    /**
+     * 下一条采样记录写入的位置
+     */
+    private int historyNext;
+
+    /**
+     * 有效的采样记录数量
+     */
+    private int historySize;
+
+    /**
+     * {@link #selectWindow(long, long)} 的结果：每个槽位在时间范围内的出现次数和首次/最近一次出现的时间
+     */
+    private final int[] windowRepeatCounts;
+    private final long[] windowTimestamps;
+    private final long[] windowLastTimestamps;
+
+    /**
+     * 当前有效的槽位数量
+     */
+    private int size;
+
+    /**
+     * 构造方法
+     *
+     * @param capacity 槽位数量,最少为1
+     */
+    public StackSampleRing(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.nodes = new int[this.capacity];
+        this.timestamps = new long[this.capacity];
+        this.lastTimestamps = new long[this.capacity];
+        this.repeatCounts = new int[this.capacity];
+        this.threadStates = new byte[this.capacity];
+        this.lockInfos = new String[this.capacity];
+        this.order = new int[this.capacity];
+        this.generations = new int[this.capacity];
+        this.windowRepeatCounts = new int[this.capacity];
+        this.windowTimestamps = new long[this.capacity];
+        this.windowLastTimestamps = new long[this.capacity];
+    }
+
+    /**
+     * 写入一次采样：堆栈已存在时累加次数,否则写入新的槽位,缓冲已满时淘汰最久没有出现的一条
+     *
+     * @param ids         帧ID缓冲(栈顶在前)
+     * @param count       有效数量,大于0
+     * @param timestamp   采样时间
+     * @param threadState 采样时主线程的状态(Thread.State的序号,-1为未知)
+     * @param lockInfo    采样时主线程等待的锁及其持有者,可为null
+     * @return true:新的堆栈 false:已存在的堆栈
+     */
+    public boolean add(int[] ids, int count, long timestamp, int threadState, String lockInfo) {
+        int node = callTree.insert(ids, count);
+        callTree.addSamples(node, 1);
+        int slot = findSlot(node);
+        if (slot >= 0) {
+            repeatCounts[slot]++;
+            lastTimestamps[slot] = timestamp;
+            threadStates[slot] = (byte) threadState;
+            lockInfos[slot] = lockInfo;
+            addHistory(slot, timestamp);
+            return false;
+        }
+        if (size < capacity) {
+            slot = size;
+            size++;
+        } else {
+            slot = removeLeastRecent();
+        }
+        nodes[slot] = node;
+        timestamps[slot] = timestamp;
+        lastTimestamps[slot] = timestamp;
+        repeatCounts[slot] = 1;
+        threadStates[slot] = (byte) threadState;
+        lockInfos[slot] = lockInfo;
+        order[size - 1] = slot;
+        generations[slot]++;
+        addHistory(slot, timestamp);
+        return true;
+    }
+
+    /**
+     * 清空缓冲
+     */
+    public void clear() {
+        callTree.clear();
+        size = 0;
+        historyNext = 0;
+        historySize = 0;
+    }
+
+    /**
+     * 帧字典重建后替换全部堆栈的帧ID,调用树随之重建,次数、时间和采样记录不变
+     *
+     * @param idMap 旧帧ID -> 新帧ID,覆盖全部堆栈用到的帧
+     */
+    public void remapFrameIds(int[] idMap) {
+        int[][] stacks = new int[size][];
+        for (int i = 0; i < size; i++) {
+            int slot = order[i];
+            int[] ids = new int[callTree.getDepth(nodes[slot])];
+            callTree.getFrameIds(nodes[slot], ids);
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = idMap[ids[j]];
+            }
+            stacks[i] = ids;
+        }
+        callTree.clear();
+        for (int i = 0; i < size; i++) {
+            int slot = order[i];
+            nodes[slot] = callTree.insert(stacks[i], stacks[i].length);
+            callTree.addSamples(nodes[slot], repeatCounts[slot]);
+        }
+    }
+
+    /**
+     * 统计每条堆栈在[startNanos, endNanos]内的出现次数和首次/最近一次出现的时间,
+     * 结果通过 {@link #getWindowRepeatCount(int)} 等读取,直到下次调用或写入新的采样;
+     * 早于最旧一条采样记录的部分不统计
+     *
+     * @param startNanos 开始时间
+     * @param endNanos   结束时间
+     * @return 时间范围内的采样次数
+     */
+    public int selectWindow(long startNanos, long endNanos) {
+        for (int slot = 0; slot < size; slot++) {
+            windowRepeatCounts[slot] = 0;
+        }
+        int total = 0;
+        for (int i = 0; i < historySize; i++) {
+            //从最旧的一条开始
+            int position = (historyNext - historySize + i + HISTORY_SIZE) % HISTORY_SIZE;
+            long timestamp = historyTimestamps[position];
+            if (timestamp < startNanos) {
+                continue;
+            }
+            if (timestamp > endNanos) {
+                break;
+            }
+            int slot = historySlots[position];
+            if (generations[slot] != historyGenerations[position]) {
+                //槽位已被淘汰
+                continue;
+            }
+            if (windowRepeatCounts[slot] == 0) {
+                windowTimestamps[slot] = timestamp;
+            }
+            windowRepeatCounts[slot]++;
+            windowLastTimestamps[slot] = timestamp;
+            total++;
+        }
+        return total;
+    }
+
+    /**
+     * 获取第index条堆栈在 {@link #selectWindow(long, long)} 的时间范围内出现的次数
+     *
+     * @param index 0为最早出现的一条
+     */
+    public int getWindowRepeatCount(int index) {
+        return windowRepeatCounts[slotOf(index)];
+    }
+
+    /**
+     * 获取第index条堆栈在 {@link #selectWindow(long, long)} 的时间范围内首次出现的时间,次数为0时无意义
+     *
+     * @param index 0为最早出现的一条
+     */
+    public long getWindowTimestamp(int index) {
+        return windowTimestamps[slotOf(index)];
+    }
+
+    /**
+     * 获取第index条堆栈在 {@link #selectWindow(long, long)} 的时间范围内最近一次出现的时间,次数为0时无意义
+     *
+     * @param index 0为最早出现的一条
+     */
+    public long getWindowLastTimestamp(int index) {
+        return windowLastTimestamps[slotOf(index)];
+    }
+
+    /**
+     * 不同堆栈的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 槽位数量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前所有堆栈的出现次数之和(采样次数)
+     */
+    public int getTotalRepeatCount() {
+        return callTree.getSampleCount(CallTree.ROOT);
+    }
+
+    /**
+     * 获取第index条堆栈的帧数量
+     *
+     * @param index 0为最早出现的一条
+     */
+    public int getFrameCount(int index) {
+        return callTree.getDepth(nodes[slotOf(index)]);
+    }
+
+    /**
+     * 将第index条堆栈的帧ID写入缓冲
+     *
+     * @param index 0为最早出现的一条
+     * @param out   缓冲(栈顶在前),长度不小于 {@link #getFrameCount(int)}
+     * @return 帧数量
+     */
+    public int getFrameIds(int index, int[] out) {
+        return callTree.getFrameIds(nodes[slotOf(index)], out);
+    }
+
+    /**
+     * 获取第index条堆栈首次出现的时间(会话内累计)
+     *
+     * @param index 0为最早出现的一条
+     */
+    public long getTimestamp(int index) {
+        return timestamps[slotOf(index)];
+    }
+
+    /**
+     * 获取第index条堆栈最近一次出现的时间(会话内累计)
+     *
+     * @param index 0为最早出现的一条
+     */
+    public long getLastTimestamp(int index) {
+        return lastTimestamps[slotOf(index)];
+    }
+
+    /**
+     * 获取第index条堆栈出现的次数(会话内累计)
+     *
+     * @param index 0为最早出现的一条
+     */
+    public int getRepeatCount(int index) {
+        return repeatCounts[slotOf(index)];
+    }
+
+    /**
+     * 获取第index条堆栈最近一次出现时主线程的状态
+     *
+     * @param index 0为最早出现的一条
+     * @return Thread.State的序号,-1为未知
+     */
+    public int getThreadState(int index) {
+        return threadStates[slotOf(index)];
+    }
+
+    /**
+     * 获取第index条堆栈最近一次出现时主线程等待的锁及其持有者
+     *
+     * @param index 0为最早出现的一条
+     * @return 不是BLOCKED或平台不支持时返回null
+     */
+    public String getLockInfo(int index) {
+        return lockInfos[slotOf(index)];
+    }
+
+    /**
+     * 写入一条采样记录,已满时覆盖最旧的一条
+     */
+    private void addHistory(int slot, long timestamp) {
+        historyTimestamps[historyNext] = timestamp;
+        historySlots[historyNext] = slot;
+        historyGenerations[historyNext] = generations[slot];
+        historyNext = (historyNext + 1) % HISTORY_SIZE;
+        if (historySize < HISTORY_SIZE) {
+            historySize++;
+        }
+    }
+
+    /**
+     * 查找相同的堆栈
+     *
+     * @return 槽位下标,不存在时返回-1
+     */
+    private int findSlot(int node) {
+        for (int slot = 0; slot < size; slot++) {
+            if (nodes[slot] == node) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 移除最久没有出现的堆栈,并从调用树中减去其采样
+     *
+     * @return 空出的槽位
+     */
+    private int removeLeastRecent() {
+        int index = 0;
+        for (int i = 1; i < size; i++) {
+            if (lastTimestamps[order[i]] < lastTimestamps[order[index]]) {
+                index = i;
+            }
+        }
+        int slot = order[index];
+        System.arraycopy(order, index + 1, order, index, size - index - 1);
+        callTree.addSamples(nodes[slot], -repeatCounts[slot]);
+        return slot;
+    }
+
+    /**
+     * 逻辑下标转换为槽位下标
+     */
+    private int slotOf(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return order[index];
+    }
+}
@@ -0,0 +1,157 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 主线程卡住的跟踪
+ * 卡住由上一帧和本次连续忙碌共同确定：开始时间取上一帧和连续忙碌开始时间中较晚的一个,
+ * 长时间没有帧(静止画面、后台)后主线程开始忙碌时从忙碌开始计算,而不是从很久之前的上一帧计算
+ * <p>
+ * 1.同一次卡住期间每个等级只请求一次抓取,有新的帧或新的连续忙碌时为新的一次卡住
+ * 2.接近ANR时提前输出,记录该次卡住的上一帧和时间范围;之后结束该次卡住的卡顿帧(从同一帧开始)
+ * 或与其重叠的超时消息不再重复输出,只跳过一次
+ * <p>
+ * 注意：非线程安全,只允许在LogNotifier_Thread中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class StallTracker {
+    /**
+     * 卡顿等级的划分
+     */
+    private final JankSeverity jankSeverity;
+
+    /**
+     * 主线程本次连续忙碌的开始时间(空闲采样之后第一次不空闲的采样时间,纳秒),0表示没有
+     */
+    private long busySinceNanos;
+
+    /**
+     * 当前卡住之前的最后一帧(纳秒),0表示没有
+     */
+    private long stallFrameNanos;
+
+    /**
+     * 当前卡住所属的连续忙碌的开始时间(纳秒),0表示没有
+     */
+    private long stallBusySinceNanos;
+
+    /**
+     * 当前卡住期间已经请求抓取的最高等级
+     */
+    private int stallSeverity = JankSeverity.JANK;
+
+    /**
+     * 已经提前输出的卡住之前的最后一帧(纳秒),0表示没有
+     */
+    private long reportedFrameNanos;
+
+    /**
+     * 已经提前输出的卡住的时间范围(纳秒)
+     */
+    private long reportedStartNanos;
+    private long reportedEndNanos;
+
+    /**
+     * 构造方法
+     *
+     * @param jankSeverity 卡顿等级的划分
+     */
+    public StallTracker(JankSeverity jankSeverity) {
+        this.jankSeverity = jankSeverity;
+    }
+
+    /**
+     * 重置(开启监控时)
+     */
+    public void reset() {
+        busySinceNanos = 0;
+        stallFrameNanos = 0;
+        stallBusySinceNanos = 0;
+        stallSeverity = JankSeverity.JANK;
+        reportedFrameNanos = 0;
+        reportedStartNanos = 0;
+        reportedEndNanos = 0;
+    }
+
+    /**
+     * 主线程空闲的采样,本次连续忙碌结束
+     */
+    public void onIdleSample() {
+        busySinceNanos = 0;
+    }
+
+    /**
+     * 主线程忙碌的采样,计算卡住的时长
+     *
+     * @param frameTimeNanos 最近一帧的时间(纳秒),大于0
+     * @param timestamp      本次采样的时间(纳秒)
+     * @param now            当前时间(纳秒)
+     * @return 需要抓取全部线程堆栈的等级(冻帧及以上),不需要时返回 {@link JankSeverity#JANK};
+     * 返回接近ANR时同时记录为已经提前输出
+     */
+    public int onBusySample(long frameTimeNanos, long timestamp, long now) {
+        if (busySinceNanos == 0) {
+            busySinceNanos = timestamp;
+        }
+        if (frameTimeNanos != stallFrameNanos || busySinceNanos != stallBusySinceNanos) {
+            stallFrameNanos = frameTimeNanos;
+            stallBusySinceNanos = busySinceNanos;
+            stallSeverity = JankSeverity.JANK;
+        }
+        long startNanos = getStallStartNanos();
+        int severity = jankSeverity.classify(now - startNanos);
+        if (severity < JankSeverity.FREEZE || severity <= stallSeverity) {
+            return JankSeverity.JANK;
+        }
+        stallSeverity = severity;
+        if (severity >= JankSeverity.NEAR_ANR) {
+            reportedFrameNanos = stallFrameNanos;
+            reportedStartNanos = startNanos;
+            reportedEndNanos = now;
+        }
+        return severity;
+    }
+
+    /**
+     * 当前卡住的开始时间(纳秒),0表示没有
+     */
+    public long getStallStartNanos() {
+        return Math.max(stallFrameNanos, stallBusySinceNanos);
+    }
+
+    /**
+     * 卡顿帧是否结束了已经提前输出的卡住(从同一帧开始),是则清除记录
+     *
+     * @param lastFrameNanos 卡顿帧的上一帧(纳秒)
+     * @return true:已经输出过,不再输出
+     */
+    public boolean consumeReportedFrame(long lastFrameNanos) {
+        if (reportedFrameNanos == 0 || lastFrameNanos != reportedFrameNanos) {
+            return false;
+        }
+        clearReported();
+        return true;
+    }
+
+    /**
+     * 超时消息是否与已经提前输出的卡住重叠,是则清除记录
+     *
+     * @param startNanos 消息的开始时间(纳秒)
+     * @param endNanos   消息的结束时间(纳秒)
+     * @return true:已经输出过,不再输出
+     */
+    public boolean consumeReportedMessage(long startNanos, long endNanos) {
+        if (reportedFrameNanos == 0 || startNanos > reportedEndNanos || endNanos < reportedStartNanos) {
+            return false;
+        }
+        clearReported();
+        return true;
+    }
+
+    private void clearReported() {
+        reportedFrameNanos = 0;
+        reportedStartNanos = 0;
+        reportedEndNanos = 0;
+    }
+}
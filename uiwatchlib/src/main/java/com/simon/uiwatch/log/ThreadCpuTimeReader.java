@@ -0,0 +1,159 @@
+package com.simon.uiwatch.log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 读取线程的CPU时间(utime + stime),来源为 /proc/self/task/&lt;tid&gt;/stat
+ * 文件只打开一次,每次从头重新读取到预先分配的缓冲中,手动解析数字,读取过程不分配对象;
+ * 精度为时钟节拍(USER_HZ,Linux用户空间接口固定为100,即10ms)
+ * <p>
+ * 注意：非线程安全,只允许在一个线程中使用
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class ThreadCpuTimeReader {
+    /**
+     * 每个时钟节拍的纳秒数(USER_HZ = 100)
+     */
+    private static final long NANOS_PER_TICK = 1000000000L / 100;
+
+    /**
+     * utime在stat中的字段序号(从1开始),stime紧随其后
+     */
+    private static final int UTIME_FIELD = 14;
+
+    /**
+     * stat文件路径
+     */
+    private final String path;
+
+    /**
+     * 读取缓冲,复用;stat只需要读到stime即可,超出的部分不读
+     */
+    private final byte[] buffer = new byte[512];
+
+    /**
+     * 打开的stat文件,首次读取时打开
+     */
+    private RandomAccessFile statFile;
+
+    /**
+     * 是否读取失败过(文件不存在或格式不对),失败后不再尝试
+     */
+    private boolean isFailed;
+
+    /**
+     * @param path stat文件路径
+     */
+    public ThreadCpuTimeReader(String path) {
+        this.path = path;
+    }
+
+    /**
+     * 读取当前进程中指定线程的CPU时间
+     *
+     * @param tid 线程ID(Linux线程ID,主线程与进程ID相同)
+     */
+    public static ThreadCpuTimeReader forThread(int tid) {
+        return new ThreadCpuTimeReader("/proc/self/task/" + tid + "/stat");
+    }
+
+    /**
+     * 读取CPU时间
+     *
+     * @return 用户态和内核态CPU时间之和(纳秒),读取失败时返回-1
+     */
+    public long read() {
+        if (isFailed) {
+            return -1;
+        }
+        try {
+            if (statFile == null) {
+                statFile = new RandomAccessFile(path, "r");
+            }
+            statFile.seek(0);
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = statFile.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            long ticks = parseCpuTicks(buffer, length);
+            if (ticks < 0) {
+                isFailed = true;
+                close();
+                return -1;
+            }
+            return ticks * NANOS_PER_TICK;
+        } catch (IOException e) {
+            isFailed = true;
+            close();
+            return -1;
+        }
+    }
+
+    /**
+     * 关闭stat文件
+     */
+    public void close() {
+        if (statFile == null) {
+            return;
+        }
+        try {
+            statFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        statFile = null;
+    }
+
+    /**
+     * 解析stat内容中的utime + stime
+     * 格式为 "pid (comm) state ppid ...",comm中可能包含空格和括号,从最后一个')'之后开始计数字段
+     *
+     * @param data   stat内容
+     * @param length 有效长度
+     * @return 时钟节拍数,格式不对时返回-1
+     */
+    static long parseCpuTicks(byte[] data, int length) {
+        int position = length - 1;
+        while (position >= 0 && data[position] != ')') {
+            position--;
+        }
+        if (position < 0) {
+            return -1;
+        }
+        //')'之后为空格和第3个字段(state)
+        position++;
+        int field = 2;
+        long total = 0;
+        int parsedFields = 0;
+        while (position < length && parsedFields < 2) {
+            if (data[position] == ' ') {
+                field++;
+                position++;
+                continue;
+            }
+            if (field < UTIME_FIELD) {
+                position++;
+                continue;
+            }
+            long value = 0;
+            int digits = 0;
+            while (position < length && data[position] >= '0' && data[position] <= '9') {
+                value = value * 10 + (data[position] - '0');
+                position++;
+                digits++;
+            }
+            //stime之后还有其他字段,数字之后没有空格说明内容被截断
+            if (digits == 0 || position >= length || data[position] != ' ') {
+                return -1;
+            }
+            total += value;
+            parsedFields++;
+        }
+        return parsedFields == 2 ? total : -1;
+    }
+}
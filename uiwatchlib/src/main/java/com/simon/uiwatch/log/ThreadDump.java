@@ -0,0 +1,136 @@
+package com.simon.uiwatch.log;
+
+/**
+ * 一次全部线程的堆栈(不可变,不含主线程)
+ * 在冻帧或接近ANR时由LogExecutor_Thread抓取,帧经过帧字典去重;
+ * 状态和堆栈都相同的线程(例如空闲的线程池)合并为一组,只保存一次
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public final class ThreadDump {
+    private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+    /**
+     * 抓取的时间(纳秒,System.nanoTime)
+     */
+    private final long captureNanos;
+
+    /**
+     * 用到的所有帧(去重)
+     */
+    private final String[] frames;
+
+    /**
+     * 每组的线程名称(以", "分隔)
+     */
+    private final String[] groupThreadNames;
+
+    /**
+     * 每组的线程数量
+     */
+    private final int[] groupThreadCounts;
+
+    /**
+     * 每组的线程状态(Thread.State的序号)
+     */
+    private final int[] groupThreadStates;
+
+    /**
+     * 每组的帧在groupFrames中的起始位置,长度为组数+1
+     */
+    private final int[] groupOffsets;
+
+    /**
+     * 所有组的帧下标(指向frames),栈顶在前
+     */
+    private final int[] groupFrames;
+
+    public ThreadDump(long captureNanos, String[] frames, String[] groupThreadNames, int[] groupThreadCounts,
+                      int[] groupThreadStates, int[] groupOffsets, int[] groupFrames) {
+        this.captureNanos = captureNanos;
+        this.frames = frames;
+        this.groupThreadNames = groupThreadNames;
+        this.groupThreadCounts = groupThreadCounts;
+        this.groupThreadStates = groupThreadStates;
+        this.groupOffsets = groupOffsets;
+        this.groupFrames = groupFrames;
+    }
+
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * 不同帧的数量
+     */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * 获取帧的字符串
+     *
+     * @param frameIndex 帧下标
+     */
+    public String getFrame(int frameIndex) {
+        return frames[frameIndex];
+    }
+
+    /**
+     * 组的数量
+     */
+    public int getGroupCount() {
+        return groupThreadNames.length;
+    }
+
+    /**
+     * 组内的线程名称(以", "分隔)
+     */
+    public String getGroupThreadNames(int groupIndex) {
+        return groupThreadNames[groupIndex];
+    }
+
+    /**
+     * 组内的线程数量
+     */
+    public int getGroupThreadCount(int groupIndex) {
+        return groupThreadCounts[groupIndex];
+    }
+
+    /**
+     * 组内线程的状态(Thread.State的序号)
+     */
+    public int getGroupThreadStateOrdinal(int groupIndex) {
+        return groupThreadStates[groupIndex];
+    }
+
+    /**
+     * 组内线程的状态
+     *
+     * @return 未知时返回null
+     */
+    public Thread.State getGroupThreadState(int groupIndex) {
+        int state = groupThreadStates[groupIndex];
+        return state >= 0 && state < THREAD_STATES.length ? THREAD_STATES[state] : null;
+    }
+
+    /**
+     * 组的帧数量
+     */
+    public int getGroupFrameCount(int groupIndex) {
+        return groupOffsets[groupIndex + 1] - groupOffsets[groupIndex];
+    }
+
+    /**
+     * 获取组的帧下标
+     *
+     * @param groupIndex 组下标
+     * @param frameIndex 第几个帧,0为栈顶
+     * @return 帧下标,可通过 {@link #getFrame(int)} 获取字符串
+     */
+    public int getGroupFrame(int groupIndex, int frameIndex) {
+        return groupFrames[groupOffsets[groupIndex] + frameIndex];
+    }
+}
@@ -0,0 +1,133 @@
+package com.simon.uiwatch.sink;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.simon.uiwatch.log.JankEvent;
+import com.simon.uiwatch.log.JankReport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步的输出目标
+ * 每个输出目标有自己的线程和有界队列,提交时只入队,处理在自己的线程中进行;
+ * 队列已满时丢弃新提交的内容并记录丢弃的数量,处理过慢不会影响采样和其他输出目标
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public abstract class AsyncJankSink implements JankSink {
+    /**
+     * 默认的队列容量
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * 线程名称
+     */
+    private final String threadName;
+
+    /**
+     * 队列容量
+     */
+    private final int queueCapacity;
+
+    /**
+     * 队列中待处理的数量
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * 丢弃的数量
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile Handler sinkHandler;
+
+    /**
+     * 构造方法
+     *
+     * @param threadName    线程名称
+     * @param queueCapacity 队列容量,最少为1
+     */
+    protected AsyncJankSink(String threadName, int queueCapacity) {
+        this.threadName = threadName;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    @Override
+    public void start() {
+        if (sinkHandler != null) {
+            return;
+        }
+        HandlerThread sinkThread = new HandlerThread(threadName, Process.THREAD_PRIORITY_BACKGROUND);
+        sinkThread.start();
+        sinkHandler = new Handler(sinkThread.getLooper());
+    }
+
+    @Override
+    public void submit(final JankReport report, final JankEvent event) {
+        Handler handler = sinkHandler;
+        if (handler == null) {
+            return;
+        }
+        if (pendingCount.incrementAndGet() > queueCapacity) {
+            pendingCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                pendingCount.decrementAndGet();
+                try {
+                    onJank(report, event);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        Handler handler = sinkHandler;
+        if (handler == null) {
+            return;
+        }
+        sinkHandler = null;
+        //处理完队列中的内容后退出
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                onStop();
+                Looper.myLooper().quit();
+            }
+        });
+    }
+
+    /**
+     * 因队列已满而丢弃的数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 处理一次卡顿,在输出目标自己的线程中调用
+     *
+     * @param report 报告,可能为null(见 {@link #getInputs()})
+     * @param event  事件,可能为null(见 {@link #getInputs()})
+     */
+    protected abstract void onJank(JankReport report, JankEvent event);
+
+    /**
+     * 队列中的内容处理完后、线程退出前调用,在输出目标自己的线程中调用
+     */
+    protected void onStop() {
+    }
+}
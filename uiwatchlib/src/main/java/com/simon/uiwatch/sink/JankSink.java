@@ -0,0 +1,60 @@
+package com.simon.uiwatch.sink;
+
+import com.simon.uiwatch.log.JankEvent;
+import com.simon.uiwatch.log.JankReport;
+
+/**
+ * 卡顿的输出目标(logcat、文件、内存、回调等)
+ * <p>
+ * 每次卡顿由LogExecutor_Thread统一生成输出目标需要的内容,每种内容只生成一次,再分发给所有输出目标;
+ * 没有任何输出目标需要的内容不会生成,例如关闭logcat且只缓存二进制文件时不会格式化文本
+ * <p>
+ * 注意：{@link #submit(JankReport, JankEvent)} 在LogExecutor_Thread中调用,不允许阻塞,
+ * 耗时的工作需要交给输出目标自己的线程和队列(见 {@link AsyncJankSink}),
+ * 这样某个输出目标处理过慢(例如负载较高时的logcat)不会影响其他输出目标
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public interface JankSink {
+    /**
+     * 需要结构化的报告(帧为字符串,同一个帧只保存一次),{@link JankReport#getText()} 可能为null
+     */
+    int INPUT_REPORT = 1;
+
+    /**
+     * 需要带文本格式内容的报告
+     */
+    int INPUT_TEXT = 1 << 1;
+
+    /**
+     * 需要卡顿事件(帧为StackTraceElement,带线程状态)
+     */
+    int INPUT_EVENT = 1 << 2;
+
+    /**
+     * 需要的内容,可随时变化,返回0时不分发
+     *
+     * @return {@link #INPUT_REPORT}、{@link #INPUT_TEXT}、{@link #INPUT_EVENT} 的组合
+     */
+    int getInputs();
+
+    /**
+     * 开启监控时调用
+     */
+    void start();
+
+    /**
+     * 提交一次卡顿,不允许阻塞
+     *
+     * @param report 报告,不需要 {@link #INPUT_REPORT} 或 {@link #INPUT_TEXT} 时可能为null
+     * @param event  事件,不需要 {@link #INPUT_EVENT} 时可能为null
+     */
+    void submit(JankReport report, JankEvent event);
+
+    /**
+     * 关闭监控时调用,已提交的内容需要处理完
+     */
+    void stop();
+}
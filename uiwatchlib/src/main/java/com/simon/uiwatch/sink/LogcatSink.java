@@ -0,0 +1,37 @@
+package com.simon.uiwatch.sink;
+
+import com.simon.uiwatch.log.JankEvent;
+import com.simon.uiwatch.log.JankReport;
+import com.simon.uiwatch.util.LogUtils;
+
+/**
+ * 输出到logcat
+ * 在独立的LogcatSink_Thread中分段输出文本,logcat负载较高时不会阻塞采样和文件写入
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class LogcatSink extends AsyncJankSink {
+    /**
+     * 日志TAG
+     */
+    private final String tag;
+
+    public LogcatSink(String tag) {
+        super("LogcatSink_Thread", DEFAULT_QUEUE_CAPACITY);
+        this.tag = tag;
+    }
+
+    @Override
+    public int getInputs() {
+        return INPUT_TEXT;
+    }
+
+    @Override
+    protected void onJank(JankReport report, JankEvent event) {
+        if (report != null && report.getText() != null) {
+            LogUtils.printLog(tag, report.getText());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.simon.uiwatch.sink;
+
+import com.simon.uiwatch.log.JankEvent;
+import com.simon.uiwatch.log.JankReport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 保存在内存中的输出目标
+ * 只保留最新的若干条报告(环形缓冲),适合在应用内查看或在需要时(例如用户反馈)一并上报;
+ * 提交只是一次数组写入,直接在LogExecutor_Thread中进行,不需要单独的线程
+ *
+ * @author Simon
+ * @version v1.0
+ * @date 2018/7/1
+ */
+public class MemoryJankSink implements JankSink {
+    /**
+     * 报告缓冲
+     */
+    private final JankReport[] reports;
+
+    /**
+     * 是否需要文本格式的内容
+     */
+    private final boolean isNeedText;
+
+    /**
+     * 写入的总数量
+     */
+    private long writeCount;
+
+    /**
+     * 构造方法
+     *
+     * @param capacity   保留的报告数量,最少为1
+     * @param isNeedText 是否需要文本格式的内容(不需要时报告中的文本可能为null)
+     */
+    public MemoryJankSink(int capacity, boolean isNeedText) {
+        this.reports = new JankReport[Math.max(1, capacity)];
+        this.isNeedText = isNeedText;
+    }
+
+    @Override
+    public int getInputs() {
+        return isNeedText ? INPUT_TEXT : INPUT_REPORT;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public synchronized void submit(JankReport report, JankEvent event) {
+        if (report == null) {
+            return;
+        }
+        reports[(int) (writeCount % reports.length)] = report;
+        writeCount++;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * 获取保留的报告
+     *
+     * @return 按时间排列的报告,最旧的在前
+     */
+    public synchronized List<JankReport> getReports() {
+        int size = (int) Math.min(writeCount, reports.length);
+        List<JankReport> result = new ArrayList<>(size);
+        for (long i = writeCount - size; i < writeCount; i++) {
+            result.add(reports[(int) (i % reports.length)]);
+        }
+        return result;
+    }
+
+    /**
+     * 清空保留的报告
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < reports.length; i++) {
+            reports[i] = null;
+        }
+        writeCount = 0;
+    }
+}
@@ -1,5 +1,21 @@
 package com.simon.uiwatch.util;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.zip.GZIPOutputStream;
+
 /**
  * 文件工具类，用于创建新文件，追加文件内容等
  *
@@ -7,4 +23,229 @@ package com.simon.uiwatch.util;
  * @date 18-6-27
  */
 public class FileUtils {
+
+    /**
+     * 校验文件夹是否存在,不存在则创建
+     *
+     * @param folder 文件夹
+     * @return 文件夹是否可用
+     */
+    public static boolean ensureFolder(File folder) {
+        return folder.isDirectory() || folder.mkdirs();
+    }
+
+    /**
+     * 将文件压缩为gzip格式
+     *
+     * @param source 源文件
+     * @param target 目标文件,已存在则覆盖
+     */
+    public static void gzip(File source, File target) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(target), 8192);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 基于内存映射的追加写文件
+     * 文件在多次写入之间保持打开,写入位置之后预先映射一段固定大小的区域,
+     * 追加内容只是一次内存拷贝,区域写满后再映射下一段,关闭时截掉未使用的部分
+     * <p>
+     * 注意：非线程安全,只允许在一个线程中使用;
+     * 进程异常退出时文件末尾可能残留未使用的映射区域(内容为0),再次打开时会自动截掉
+     */
+    public static class MappedAppendFile {
+        /**
+         * 每次映射的区域大小
+         */
+        private static final int CHUNK_SIZE = 256 * 1024;
+
+        /**
+         * 文件
+         */
+        private final File file;
+
+        /**
+         * 文件
+         */
+        private RandomAccessFile randomAccessFile;
+
+        /**
+         * 文件通道
+         */
+        private FileChannel channel;
+
+        /**
+         * 当前映射的区域
+         */
+        private MappedByteBuffer mappedBuffer;
+
+        /**
+         * 有效内容的长度
+         */
+        private long size;
+
+        /**
+         * 字符编码器,复用
+         */
+        private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+
+        /**
+         * 打开文件,不存在则创建
+         *
+         * @param file 文件
+         */
+        public MappedAppendFile(File file) throws IOException {
+            this.file = file;
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            size = findContentEnd();
+            channel.truncate(size);
+        }
+
+        /**
+         * 对应的文件
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * 有效内容的长度
+         */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * 追加字节
+         *
+         * @param data 数据
+         * @param off  起始位置
+         * @param len  长度
+         */
+        public void append(byte[] data, int off, int len) throws IOException {
+            ensureMapped(len);
+            mappedBuffer.put(data, off, len);
+            size += len;
+        }
+
+        /**
+         * 追加缓冲中剩余的字节
+         *
+         * @param data 数据
+         */
+        public void append(ByteBuffer data) throws IOException {
+            int len = data.remaining();
+            ensureMapped(len);
+            mappedBuffer.put(data);
+            size += len;
+        }
+
+        /**
+         * 以UTF-8编码追加字符,直接编码到映射区域中,不产生中间的byte数组
+         *
+         * @param chars 字符
+         */
+        public void append(CharSequence chars) throws IOException {
+            CharBuffer charBuffer = CharBuffer.wrap(chars);
+            encoder.reset();
+            ensureMapped(1);
+            while (true) {
+                int start = mappedBuffer.position();
+                CoderResult result = encoder.encode(charBuffer, mappedBuffer, true);
+                size += mappedBuffer.position() - start;
+                if (result.isOverflow()) {
+                    //当前区域已满,映射下一段继续写入
+                    remap(CHUNK_SIZE);
+                    continue;
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                break;
+            }
+        }
+
+        /**
+         * 将映射区域的内容同步到存储设备
+         */
+        public void force() {
+            if (mappedBuffer != null) {
+                mappedBuffer.force();
+            }
+        }
+
+        /**
+         * 关闭文件,并截掉未使用的映射区域
+         */
+        public void close() {
+            force();
+            mappedBuffer = null;
+            try {
+                channel.truncate(size);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * 保证映射区域剩余空间足够,不够时重新映射
+         *
+         * @param len 需要的长度
+         */
+        private void ensureMapped(int len) throws IOException {
+            if (mappedBuffer != null && mappedBuffer.remaining() >= len) {
+                return;
+            }
+            remap(Math.max(CHUNK_SIZE, len));
+        }
+
+        /**
+         * 从有效内容末尾开始映射新的区域
+         *
+         * @param length 映射长度
+         */
+        private void remap(int length) throws IOException {
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, size, length);
+        }
+
+        /**
+         * 查找有效内容的末尾(跳过上次异常退出残留的0)
+         */
+        private long findContentEnd() throws IOException {
+            long end = channel.size();
+            ByteBuffer scanBuffer = ByteBuffer.allocate(4096);
+            while (end > 0) {
+                int len = (int) Math.min(scanBuffer.capacity(), end);
+                scanBuffer.clear();
+                scanBuffer.limit(len);
+                channel.read(scanBuffer, end - len);
+                for (int i = len - 1; i >= 0; i--) {
+                    if (scanBuffer.get(i) != 0) {
+                        return end - len + i + 1;
+                    }
+                }
+                end -= len;
+            }
+            return 0;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.simon.uiwatch.util;
 
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
 
 /**
@@ -30,6 +31,15 @@ public class TimeUtils {
         return DATE_FORMAT.format(new Date());
     }
 
+    /**
+     * 格式化指定的时间 格式化：YYYY-MM-DD hh:mm:ss
+     *
+     * @param timeMillis 时间戳(ms)
+     * @return 格式化后的时间
+     */
+    public static String formatTime(long timeMillis) {
+        return DATE_FORMAT.format(new Date(timeMillis));
+    }
 
     /**
      * 获取当前的时间 格式化：YYYY-MM-DD
@@ -39,4 +49,19 @@ public class TimeUtils {
     public static String getFileFolderNameByTime() {
         return DATE_FORMAT_1.format(new Date());
     }
+
+    /**
+     * 获取下一天开始的时间,用于判断是否需要切换到新一天的文件夹
+     *
+     * @return 下一天0点的时间戳(ms)
+     */
+    public static long getNextDayStartMillis() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
 }
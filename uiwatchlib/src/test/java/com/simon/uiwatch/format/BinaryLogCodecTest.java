@@ -0,0 +1,220 @@
+package com.simon.uiwatch.format;
+
+import com.simon.uiwatch.log.JankReport;
+import com.simon.uiwatch.log.JankSeverity;
+import com.simon.uiwatch.log.QueueBacklog;
+import com.simon.uiwatch.log.ThreadDump;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link BinaryLogEncoder} 编码后经 {@link BinaryLogDecoder} 解码的测试
+ */
+public class BinaryLogCodecTest {
+    private static final long MS = 1000000L;
+
+    private static final String[] FRAMES = {
+            "com.simon.app.MainActivity.onClick(MainActivity.java:42)",
+            "android.view.View.performClick(View.java:6256)",
+            "android.os.Looper.loop(Looper.java:164)",
+            "android.app.ActivityThread.main(ActivityThread.java:6494)"
+    };
+
+    /**
+     * 解码结果
+     */
+    private static class Jank {
+        long wallTimeMillis;
+        long durationNanos;
+        long skippedFrames;
+        List<BinaryLogDecoder.Sample> samples;
+        BinaryLogDecoder.Detail detail;
+    }
+
+    private static List<Jank> decode(byte[] data) throws IOException {
+        final List<Jank> janks = new ArrayList<>();
+        new BinaryLogDecoder(data).decode(new BinaryLogDecoder.DetailedJankVisitor() {
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames,
+                               List<BinaryLogDecoder.Sample> samples) {
+                onJank(wallTimeMillis, durationNanos, skippedFrames, samples, null);
+            }
+
+            @Override
+            public void onJank(long wallTimeMillis, long durationNanos, long skippedFrames,
+                               List<BinaryLogDecoder.Sample> samples, BinaryLogDecoder.Detail detail) {
+                Jank jank = new Jank();
+                jank.wallTimeMillis = wallTimeMillis;
+                jank.durationNanos = durationNanos;
+                jank.skippedFrames = skippedFrames;
+                jank.samples = samples;
+                jank.detail = detail;
+                janks.add(jank);
+            }
+        });
+        return janks;
+    }
+
+    private static byte[] encoded(BinaryLogEncoder encoder) {
+        return Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+    }
+
+    /**
+     * 两次采样：第一次为完整的4帧,第二次为栈底的3帧
+     */
+    private static JankReport simpleReport(long wallTimeMillis) {
+        return new JankReport(wallTimeMillis, 1000 * MS, 1100 * MS, 5, FRAMES,
+                new long[]{1010 * MS, 1050 * MS}, new long[]{1040 * MS, 1050 * MS}, new int[]{4, 1},
+                new int[]{0, 4, 7}, new int[]{0, 1, 2, 3, 1, 2, 3}, null);
+    }
+
+    @Test
+    public void roundTrip_samples() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.encodeHeader();
+        encoder.encode(simpleReport(1530000000000L));
+        List<Jank> janks = decode(encoded(encoder));
+        assertEquals(1, janks.size());
+        Jank jank = janks.get(0);
+        assertEquals(1530000000000L, jank.wallTimeMillis);
+        assertEquals(100 * MS, jank.durationNanos);
+        assertEquals(5, jank.skippedFrames);
+        assertNull(jank.detail);
+        assertEquals(2, jank.samples.size());
+        BinaryLogDecoder.Sample first = jank.samples.get(0);
+        assertEquals(10 * MS, first.offsetNanos);
+        assertEquals(Arrays.asList(FRAMES), first.frames);
+        assertEquals(4, first.repeatCount);
+        assertEquals(30 * MS, first.durationNanos);
+        BinaryLogDecoder.Sample second = jank.samples.get(1);
+        assertEquals(50 * MS, second.offsetNanos);
+        assertEquals(Arrays.asList(FRAMES).subList(1, 4), second.frames);
+        assertEquals(1, second.repeatCount);
+        assertEquals(0, second.durationNanos);
+    }
+
+    @Test
+    public void roundTrip_negativeOffset() throws IOException {
+        //卡顿开始前最近出现的一条,偏移为负
+        JankReport report = new JankReport(1L, 1000 * MS, 1100 * MS, 5, FRAMES, new long[]{990 * MS},
+                new int[]{0, 1}, new int[]{0}, null);
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.encodeHeader();
+        encoder.encode(report);
+        assertEquals(-10 * MS, decode(encoded(encoder)).get(0).samples.get(0).offsetNanos);
+    }
+
+    @Test
+    public void roundTrip_detail() throws IOException {
+        ThreadDump threadDump = new ThreadDump(1200 * MS,
+                new String[]{"java.lang.Object.wait(Native Method)", "com.simon.app.Worker.run(Worker.java:10)"},
+                new String[]{"worker-1, worker-2", "io"}, new int[]{2, 1},
+                new int[]{Thread.State.WAITING.ordinal(), Thread.State.RUNNABLE.ordinal()},
+                new int[]{0, 2, 3}, new int[]{0, 1, 1});
+        JankReport report = new JankReport(2L, 1000 * MS, 1800 * MS, 48, FRAMES,
+                new long[]{1010 * MS, 1050 * MS}, new long[]{1700 * MS, 1050 * MS}, new int[]{30, 1},
+                new int[]{0, 4, 7}, new int[]{0, 1, 2, 3, 1, 2, 3}, null, JankSeverity.FREEZE, threadDump,
+                new int[]{Thread.State.BLOCKED.ordinal(), Thread.State.RUNNABLE.ordinal()},
+                new String[]{"java.lang.Object@1a2b held by worker-1", null}, 300 * MS, 800 * MS,
+                "Handler (android.app.ActivityThread$H) {1a2b}, callback=null, what=159", 750 * MS,
+                new QueueBacklog(12, 130, true, 650 * MS));
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.encodeHeader();
+        encoder.encode(report);
+        Jank jank = decode(encoded(encoder)).get(0);
+        BinaryLogDecoder.Detail detail = jank.detail;
+        assertNotNull(detail);
+        assertEquals(JankSeverity.FREEZE, detail.severity);
+        assertEquals(200 * MS, detail.threadDumpOffsetNanos);
+        assertEquals(2, detail.threadGroups.size());
+        BinaryLogDecoder.ThreadDumpGroup group = detail.threadGroups.get(0);
+        assertEquals("worker-1, worker-2", group.threadNames);
+        assertEquals(2, group.threadCount);
+        assertEquals(Thread.State.WAITING, group.state);
+        assertEquals(Arrays.asList("java.lang.Object.wait(Native Method)",
+                "com.simon.app.Worker.run(Worker.java:10)"), group.frames);
+        assertEquals(Thread.State.RUNNABLE, detail.threadGroups.get(1).state);
+        assertEquals(Thread.State.BLOCKED, jank.samples.get(0).threadState);
+        assertEquals("java.lang.Object@1a2b held by worker-1", jank.samples.get(0).lockInfo);
+        assertEquals(Thread.State.RUNNABLE, jank.samples.get(1).threadState);
+        assertNull(jank.samples.get(1).lockInfo);
+        assertEquals(300 * MS, detail.cpuTimeNanos);
+        assertEquals(800 * MS, detail.cpuWallNanos);
+        assertEquals("Handler (android.app.ActivityThread$H) {1a2b}, callback=null, what=159", detail.slowMessage);
+        assertEquals(750 * MS, detail.slowMessageNanos);
+        assertEquals(12, detail.queueSampleCount);
+        assertEquals(130, detail.queueMaxPendingCount);
+        assertTrue(detail.isQueuePendingTruncated);
+        assertEquals(650 * MS, detail.queueMaxLatenessNanos);
+    }
+
+    @Test
+    public void roundTrip_detailWithoutOptionalParts() throws IOException {
+        JankReport report = new JankReport(3L, 1000 * MS, 1800 * MS, 48, FRAMES, new long[]{1010 * MS},
+                new long[]{1010 * MS}, new int[]{1}, new int[]{0, 4}, new int[]{0, 1, 2, 3}, null,
+                JankSeverity.NEAR_ANR, null, null, null, -1, 0, null, 0, null);
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.encodeHeader();
+        encoder.encode(report);
+        Jank jank = decode(encoded(encoder)).get(0);
+        BinaryLogDecoder.Detail detail = jank.detail;
+        assertNotNull(detail);
+        assertEquals(JankSeverity.NEAR_ANR, detail.severity);
+        assertEquals(0, detail.threadGroups.size());
+        assertEquals(-1, detail.cpuTimeNanos);
+        assertNull(detail.slowMessage);
+        assertEquals(0, detail.queueSampleCount);
+        assertFalse(detail.isQueuePendingTruncated);
+        assertNull(jank.samples.get(0).threadState);
+    }
+
+    @Test
+    public void roundTrip_framesWrittenOncePerFile() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.encodeHeader();
+        encoder.encode(simpleReport(1L));
+        int firstLength = encoder.getLength();
+        encoder.encode(simpleReport(2L));
+        //第二次只写入帧编号,比第一次短
+        assertTrue(encoder.getLength() - firstLength < firstLength);
+        //向已有文件追加时清空字符串表,之后的帧重新写入
+        encoder.encodeReset();
+        encoder.encode(simpleReport(3L));
+        List<Jank> janks = decode(encoded(encoder));
+        assertEquals(3, janks.size());
+        for (int i = 0; i < janks.size(); i++) {
+            assertEquals(i + 1, janks.get(i).wallTimeMillis);
+            assertEquals(Arrays.asList(FRAMES), janks.get(i).samples.get(0).frames);
+        }
+    }
+
+    @Test
+    public void decode_ignoresIncompleteTail() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.encodeHeader();
+        encoder.encode(simpleReport(1L));
+        int firstLength = encoder.getLength();
+        encoder.encode(simpleReport(2L));
+        byte[] data = encoded(encoder);
+        assertEquals(1, decode(Arrays.copyOf(data, data.length - 1)).size());
+        assertEquals(1, decode(Arrays.copyOf(data, firstLength + 3)).size());
+        //映射区域残留的0
+        assertEquals(2, decode(Arrays.copyOf(data, data.length + 64)).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsUnknownFormat() throws IOException {
+        decode("not a binary log".getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,199 @@
+package com.simon.uiwatch.format;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LogJournal} 记录格式和恢复的测试
+ */
+public class LogJournalTest {
+    private static byte[] bytes(String text) throws IOException {
+        return text.getBytes("UTF-8");
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+
+    private static byte[] journal(String... records) {
+        LogJournal journal = new LogJournal();
+        for (String record : records) {
+            journal.appendRecord(record);
+        }
+        return Arrays.copyOf(journal.getBuffer(), journal.getLength());
+    }
+
+    private static File writeFile(byte[] data) throws IOException {
+        File file = File.createTempFile("journal", ".log");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.write(data);
+        } finally {
+            randomAccessFile.close();
+        }
+        return file;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(data);
+            return data;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Test
+    public void appendRecord_unwrap() throws IOException {
+        LogJournal journal = new LogJournal();
+        journal.appendRecord("第一条\n");
+        byte[] binary = {0, 1, 2, (byte) 0xFE};
+        journal.appendRecord(binary, 0, binary.length);
+        byte[] data = Arrays.copyOf(journal.getBuffer(), journal.getLength());
+        assertTrue(LogJournal.isJournal(data));
+        assertEquals(LogJournal.HEADER_SIZE * 2 + bytes("第一条\n").length + binary.length + 2, data.length);
+        assertArrayEquals(concat(bytes("第一条\n"), binary), LogJournal.unwrap(data));
+        assertFalse(LogJournal.isJournal(bytes("plain text")));
+    }
+
+    @Test
+    public void appendRecord_growsBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("卡顿").append(i);
+        }
+        LogJournal journal = new LogJournal();
+        journal.appendRecord(text);
+        byte[] data = Arrays.copyOf(journal.getBuffer(), journal.getLength());
+        assertArrayEquals(bytes(text.toString()), LogJournal.unwrap(data));
+    }
+
+    @Test
+    public void recover_keepsCompleteRecords() throws IOException {
+        byte[] data = journal("first", "second");
+        File file = writeFile(data);
+        try {
+            assertEquals(data.length, LogJournal.recover(file, 0));
+            assertEquals(data.length, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recover_truncatesIncompleteRecord() throws IOException {
+        byte[] complete = journal("first", "second");
+        byte[] partial = journal("third record");
+        File file = writeFile(concat(complete, Arrays.copyOf(partial, partial.length - 3)));
+        try {
+            assertEquals(complete.length, LogJournal.recover(file, 0));
+            assertArrayEquals(complete, readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recover_truncatesZeroTail() throws IOException {
+        byte[] complete = journal("first");
+        File file = writeFile(concat(complete, new byte[4096]));
+        try {
+            assertEquals(complete.length, LogJournal.recover(file, 0));
+            assertEquals(complete.length, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recover_stopsAtCorruptedRecord() throws IOException {
+        byte[] first = journal("first");
+        byte[] second = journal("second");
+        //内容被改写,CRC不一致;之后的记录即使完整也一并截掉
+        second[LogJournal.HEADER_SIZE] = 'S';
+        File file = writeFile(concat(first, second, journal("third")));
+        try {
+            assertEquals(first.length, LogJournal.recover(file, 0));
+            assertArrayEquals(first, readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recover_startsFromCheckpoint() throws IOException {
+        byte[] first = journal("first");
+        byte[] rest = journal("second");
+        File file = writeFile(concat(first, rest, bytes("#J0000")));
+        try {
+            assertEquals(first.length + rest.length, LogJournal.recover(file, first.length));
+            //检查点超出文件长度时不可信,从头开始
+            assertEquals(first.length + rest.length, LogJournal.recover(file, file.length() + 100));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recover_recordLargerThanScanBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("frame").append(i).append('\n');
+        }
+        byte[] data = journal("first", text.toString(), "last");
+        File file = writeFile(concat(data, bytes("#J")));
+        try {
+            assertEquals(data.length, LogJournal.recover(file, 0));
+            assertArrayEquals(data, readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkpoint_roundTrip() throws IOException {
+        File file = File.createTempFile("journal", LogJournal.CHECKPOINT_EXTENSION);
+        try {
+            assertEquals(0, LogJournal.readCheckpoint(file));
+            RandomAccessFile checkpointFile = new RandomAccessFile(file, "rw");
+            try {
+                LogJournal.writeCheckpoint(checkpointFile, 123456789L);
+            } finally {
+                checkpointFile.close();
+            }
+            assertEquals(123456789L, LogJournal.readCheckpoint(file));
+            //校验不一致(写了一半)时视为没有检查点
+            checkpointFile = new RandomAccessFile(file, "rw");
+            try {
+                checkpointFile.seek(8);
+                checkpointFile.writeLong(0);
+            } finally {
+                checkpointFile.close();
+            }
+            assertEquals(0, LogJournal.readCheckpoint(file));
+        } finally {
+            file.delete();
+        }
+    }
+}
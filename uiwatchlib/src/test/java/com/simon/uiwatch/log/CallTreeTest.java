@@ -0,0 +1,85 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CallTree} 的测试
+ */
+public class CallTreeTest {
+    @Test
+    public void insert_sameStackReturnsSameNode() {
+        CallTree tree = new CallTree();
+        int node = tree.insert(new int[]{3, 2, 1}, 3);
+        tree.addSamples(node, 1);
+        assertEquals(node, tree.insert(new int[]{3, 2, 1}, 3));
+        assertEquals(3, tree.getDepth(node));
+        int[] out = new int[3];
+        assertEquals(3, tree.getFrameIds(node, out));
+        assertArrayEquals(new int[]{3, 2, 1}, out);
+    }
+
+    @Test
+    public void insert_sharesCommonPrefix() {
+        CallTree tree = new CallTree();
+        int a = tree.insert(new int[]{3, 2, 1}, 3);
+        tree.addSamples(a, 2);
+        int b = tree.insert(new int[]{4, 2, 1}, 3);
+        tree.addSamples(b, 1);
+        assertTrue(a != b);
+        //栈底的两帧只保存一次,经过的次数为两个堆栈之和
+        int prefix = tree.insert(new int[]{2, 1}, 2);
+        assertEquals(3, tree.getSampleCount(prefix));
+        assertEquals(2, tree.getSampleCount(a));
+        assertEquals(1, tree.getSampleCount(b));
+        assertEquals(3, tree.getSampleCount(CallTree.ROOT));
+    }
+
+    @Test
+    public void insert_usesOnlyCountFrames() {
+        CallTree tree = new CallTree();
+        int node = tree.insert(new int[]{9, 2, 1, 7}, 3);
+        assertEquals(3, tree.getDepth(node));
+        assertEquals(node, tree.insert(new int[]{9, 2, 1}, 3));
+    }
+
+    @Test
+    public void addSamples_recyclesNodesWithoutSamples() {
+        CallTree tree = new CallTree();
+        int a = tree.insert(new int[]{3, 2, 1}, 3);
+        tree.addSamples(a, 1);
+        int b = tree.insert(new int[]{4, 2, 1}, 3);
+        tree.addSamples(b, 1);
+        tree.addSamples(a, -1);
+        assertEquals(1, tree.getSampleCount(CallTree.ROOT));
+        //共用的前缀仍然有效
+        assertEquals(1, tree.getSampleCount(tree.insert(new int[]{2, 1}, 2)));
+        //回收后再次插入得到新的节点,帧正确
+        int c = tree.insert(new int[]{5, 2, 1}, 3);
+        tree.addSamples(c, 1);
+        int[] out = new int[3];
+        tree.getFrameIds(c, out);
+        assertArrayEquals(new int[]{5, 2, 1}, out);
+        assertEquals(1, tree.getSampleCount(c));
+        assertEquals(b, tree.insert(new int[]{4, 2, 1}, 3));
+    }
+
+    @Test
+    public void insert_growsBeyondInitialCapacity() {
+        CallTree tree = new CallTree();
+        int[] nodes = new int[2000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = tree.insert(new int[]{i + 10, 2, 1}, 3);
+            tree.addSamples(nodes[i], 1);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            assertEquals(nodes[i], tree.insert(new int[]{i + 10, 2, 1}, 3));
+        }
+        assertEquals(nodes.length, tree.getSampleCount(CallTree.ROOT));
+        tree.clear();
+        assertEquals(0, tree.getSampleCount(CallTree.ROOT));
+    }
+}
@@ -0,0 +1,69 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CpuTimeRing} 的测试
+ */
+public class CpuTimeRingTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void getCpuTime_usesFirstAndLastSampleInWindow() {
+        CpuTimeRing ring = new CpuTimeRing();
+        ring.add(0, 0);
+        ring.add(10 * MS, 5 * MS);
+        ring.add(20 * MS, 15 * MS);
+        ring.add(30 * MS, 15 * MS);
+        ring.add(40 * MS, 20 * MS);
+        long[] out = new long[2];
+        assertTrue(ring.getCpuTime(5 * MS, 35 * MS, out));
+        assertEquals(10 * MS, out[0]);
+        assertEquals(20 * MS, out[1]);
+        assertTrue(ring.getCpuTime(0, 40 * MS, out));
+        assertEquals(20 * MS, out[0]);
+        assertEquals(40 * MS, out[1]);
+    }
+
+    @Test
+    public void getCpuTime_needsTwoSamples() {
+        CpuTimeRing ring = new CpuTimeRing();
+        long[] out = new long[2];
+        assertFalse(ring.getCpuTime(0, 100 * MS, out));
+        ring.add(10 * MS, 5 * MS);
+        assertFalse(ring.getCpuTime(0, 100 * MS, out));
+        ring.add(20 * MS, 6 * MS);
+        assertFalse(ring.getCpuTime(25 * MS, 100 * MS, out));
+        assertFalse(ring.getCpuTime(12 * MS, 18 * MS, out));
+        assertTrue(ring.getCpuTime(0, 100 * MS, out));
+        assertEquals(MS, out[0]);
+    }
+
+    @Test
+    public void getCpuTime_afterWrapAround() {
+        CpuTimeRing ring = new CpuTimeRing();
+        for (int i = 0; i < 3000; i++) {
+            ring.add(i * MS, i * MS / 2);
+        }
+        long[] out = new long[2];
+        //最旧的采样已被覆盖,只统计仍在缓冲中的部分
+        assertTrue(ring.getCpuTime(0, 2999 * MS, out));
+        assertEquals(2999 * MS - out[1], (3000 - 1024) * MS);
+        assertEquals(out[1] / 2, out[0]);
+        assertTrue(ring.getCpuTime(2500 * MS, 2600 * MS, out));
+        assertEquals(100 * MS, out[1]);
+        assertEquals(50 * MS, out[0]);
+    }
+
+    @Test
+    public void getCpuTime_rejectsDecreasingCpuTime() {
+        CpuTimeRing ring = new CpuTimeRing();
+        ring.add(10 * MS, 8 * MS);
+        ring.add(20 * MS, 2 * MS);
+        assertFalse(ring.getCpuTime(0, 100 * MS, new long[2]));
+    }
+}
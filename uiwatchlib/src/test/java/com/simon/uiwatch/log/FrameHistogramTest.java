@@ -0,0 +1,95 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link FrameHistogram} 的测试
+ */
+public class FrameHistogramTest {
+    private static final long MS = 1000000L;
+
+    /**
+     * 分位数不小于实际值,且相对误差不超过1/64
+     */
+    private static void assertPercentile(long expectedNanos, long actualNanos) {
+        assertTrue("expected " + expectedNanos + " but was " + actualNanos,
+                actualNanos >= expectedNanos && actualNanos <= expectedNanos + expectedNanos / 64 + 1000);
+    }
+
+    @Test
+    public void getValueAtPercentile_empty() {
+        FrameHistogram histogram = new FrameHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void getValueAtPercentile_uniform() {
+        FrameHistogram histogram = new FrameHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * MS, false);
+        }
+        assertPercentile(500 * MS, histogram.getValueAtPercentile(50));
+        assertPercentile(900 * MS, histogram.getValueAtPercentile(90));
+        assertPercentile(990 * MS, histogram.getValueAtPercentile(99));
+        assertPercentile(999 * MS, histogram.getValueAtPercentile(99.9));
+        assertEquals(1000 * MS, histogram.getValueAtPercentile(100));
+        assertPercentile(MS, histogram.getValueAtPercentile(0));
+        assertEquals(1000 * MS, histogram.getMaxNanos());
+        assertEquals(500500 * MS / 1000, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void getValueAtPercentile_smallValuesAreExact() {
+        FrameHistogram histogram = new FrameHistogram();
+        histogram.record(16000, false);
+        histogram.record(33000, false);
+        histogram.record(100000, false);
+        assertEquals(16999, histogram.getValueAtPercentile(33));
+        assertEquals(33999, histogram.getValueAtPercentile(66));
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void getValueAtPercentile_neverExceedsMax() {
+        FrameHistogram histogram = new FrameHistogram();
+        histogram.record(16666667, false);
+        assertEquals(16666667, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void record_countsSlowAndFrozenFrames() {
+        FrameHistogram histogram = new FrameHistogram();
+        histogram.record(16 * MS, false);
+        histogram.record(40 * MS, true);
+        histogram.record(800 * MS, true);
+        histogram.record(-1, true);
+        assertEquals(3, histogram.getTotalCount());
+        assertEquals(2, histogram.getSlowFrameCount());
+        assertEquals(1, histogram.getFrozenFrameCount());
+        assertEquals(2.0 / 3, histogram.getSlowFrameRatio(), 1e-9);
+    }
+
+    @Test
+    public void add_mergesHistograms() {
+        FrameHistogram first = new FrameHistogram();
+        FrameHistogram second = new FrameHistogram();
+        for (int i = 1; i <= 50; i++) {
+            first.record(i * MS, false);
+            second.record((i + 50) * MS, i > 40);
+        }
+        first.add(second);
+        assertEquals(100, first.getTotalCount());
+        assertEquals(10, first.getSlowFrameCount());
+        assertPercentile(50 * MS, first.getValueAtPercentile(50));
+        assertEquals(100 * MS, first.getMaxNanos());
+        FrameHistogram snapshot = first.snapshotAndReset();
+        assertEquals(100, snapshot.getTotalCount());
+        assertEquals(0, first.getTotalCount());
+        assertEquals(0, first.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,67 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link KeywordMatcher} 的测试
+ */
+public class KeywordMatcherTest {
+    private static StackTraceElement frame(String className, String methodName) {
+        return new StackTraceElement(className, methodName, "Test.java", 1);
+    }
+
+    @Test
+    public void compile_nullKeyWords() {
+        assertNull(KeywordMatcher.compile(null));
+    }
+
+    @Test
+    public void matches_classOrMethodName() {
+        KeywordMatcher matcher = KeywordMatcher.compile(new String[]{"com.simon", "onDraw"});
+        assertTrue(matcher.matches(frame("com.simon.app.MainActivity", "onCreate")));
+        assertTrue(matcher.matches(frame("android.view.View", "onDraw")));
+        assertFalse(matcher.matches(frame("android.view.View", "draw")));
+        assertFalse(matcher.matches(frame("com.simo.App", "run")));
+    }
+
+    @Test
+    public void matches_acrossClassAndMethodName() {
+        KeywordMatcher matcher = KeywordMatcher.compile(new String[]{"Activity.onCreate"});
+        assertTrue(matcher.matches(frame("com.simon.app.MainActivity", "onCreate")));
+        assertFalse(matcher.matches(frame("com.simon.app.MainActivity", "onResume")));
+    }
+
+    @Test
+    public void matches_overlappingKeyWords() {
+        //"abcd"匹配失败后需要回退到"bc"
+        KeywordMatcher matcher = KeywordMatcher.compile(new String[]{"abcd", "bce"});
+        assertTrue(matcher.matches("xabce"));
+        assertTrue(matcher.matches("abcd"));
+        assertFalse(matcher.matches("abcbd"));
+    }
+
+    @Test
+    public void matches_nonAsciiKeyWords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(new String[]{"卡顿"});
+        assertTrue(matcher.matches("测试卡顿"));
+        assertFalse(matcher.matches("测试卡"));
+    }
+
+    @Test
+    public void matches_ignoresNullKeyWords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(new String[]{null, "Looper"});
+        assertTrue(matcher.matches(frame("android.os.Looper", "loop")));
+        assertFalse(matcher.matches(frame("android.os.Handler", "dispatchMessage")));
+    }
+
+    @Test
+    public void matches_emptyKeyWordMatchesAll() {
+        KeywordMatcher matcher = KeywordMatcher.compile(new String[]{""});
+        assertTrue(matcher.matches(frame("a", "b")));
+        assertTrue(matcher.matches(""));
+    }
+}
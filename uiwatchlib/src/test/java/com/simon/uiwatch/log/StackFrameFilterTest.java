@@ -0,0 +1,66 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link StackFrameFilter} 的测试
+ */
+public class StackFrameFilterTest {
+    private static final StackTraceElement[] IDLE_STACK = {
+            new StackTraceElement("android.os.MessageQueue", "nativePollOnce", null, -2),
+            new StackTraceElement("android.os.MessageQueue", "next", "MessageQueue.java", 325),
+            new StackTraceElement("android.os.Looper", "loop", "Looper.java", 142),
+            new StackTraceElement("android.app.ActivityThread", "main", "ActivityThread.java", 6494)
+    };
+
+    private static final StackTraceElement[] APP_STACK = {
+            new StackTraceElement("java.lang.Thread", "sleep", null, -2),
+            new StackTraceElement("com.simon.app.MainActivity", "onClick", "MainActivity.java", 42),
+            new StackTraceElement("android.view.View", "performClick", "View.java", 6256),
+            new StackTraceElement("android.os.Looper", "loop", "Looper.java", 142)
+    };
+
+    private static int filter(StackFrameFilter filter, StackFrameDictionary dictionary,
+                              StackTraceElement[] stack, int[] out) {
+        int[] ids = new int[stack.length];
+        for (int i = 0; i < stack.length; i++) {
+            ids[i] = dictionary.intern(stack[i]);
+        }
+        return filter.filter(dictionary, ids, ids.length, out);
+    }
+
+    @Test
+    public void filter_collapsedStackWithoutKeyWordIsDropped() {
+        StackFrameFilter filter = new StackFrameFilter();
+        filter.setIncludeKeyWords(new String[]{"com.simon"});
+        filter.setCollapseFrameworkFrames(true);
+        StackFrameDictionary dictionary = new StackFrameDictionary();
+        //栈顶帧始终保留,但没有帧包含关键词
+        assertEquals(0, filter(filter, dictionary, IDLE_STACK, new int[IDLE_STACK.length]));
+    }
+
+    @Test
+    public void filter_collapsedStackWithKeyWordKeepsTop() {
+        StackFrameFilter filter = new StackFrameFilter();
+        filter.setIncludeKeyWords(new String[]{"com.simon"});
+        filter.setCollapseFrameworkFrames(true);
+        StackFrameDictionary dictionary = new StackFrameDictionary();
+        int[] out = new int[APP_STACK.length];
+        assertEquals(3, filter(filter, dictionary, APP_STACK, out));
+        assertEquals("java.lang.Thread", dictionary.getFrame(out[0]).getClassName());
+        assertEquals("com.simon.app.MainActivity", dictionary.getFrame(out[1]).getClassName());
+        assertEquals("... 2 framework frames ...", dictionary.getFrameString(out[2]));
+    }
+
+    @Test
+    public void filter_collapsedStackWithoutKeyWordsIsKept() {
+        StackFrameFilter filter = new StackFrameFilter();
+        filter.setCollapseFrameworkFrames(true);
+        StackFrameDictionary dictionary = new StackFrameDictionary();
+        int[] out = new int[IDLE_STACK.length];
+        assertEquals(2, filter(filter, dictionary, IDLE_STACK, out));
+        assertEquals("... 3 framework frames ...", dictionary.getFrameString(out[1]));
+    }
+}
@@ -0,0 +1,131 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StackSampleRing} 的测试
+ */
+public class StackSampleRingTest {
+    private static final int[] STACK_A = {3, 2, 1};
+    private static final int[] STACK_B = {4, 2, 1};
+    private static final int[] STACK_C = {5, 1};
+
+    private static int[] frameIds(StackSampleRing ring, int index) {
+        int[] out = new int[ring.getFrameCount(index)];
+        ring.getFrameIds(index, out);
+        return out;
+    }
+
+    @Test
+    public void add_sameStackIsDeduplicated() {
+        StackSampleRing ring = new StackSampleRing(4);
+        assertTrue(ring.add(STACK_A, 3, 100, Thread.State.RUNNABLE.ordinal(), null));
+        assertFalse(ring.add(STACK_A, 3, 200, Thread.State.BLOCKED.ordinal(), "lock"));
+        assertEquals(1, ring.size());
+        assertEquals(2, ring.getRepeatCount(0));
+        assertEquals(100, ring.getTimestamp(0));
+        assertEquals(200, ring.getLastTimestamp(0));
+        assertEquals(Thread.State.BLOCKED.ordinal(), ring.getThreadState(0));
+        assertEquals("lock", ring.getLockInfo(0));
+        assertArrayEquals(STACK_A, frameIds(ring, 0));
+    }
+
+    @Test
+    public void add_prefixIsNotTheSameStack() {
+        StackSampleRing ring = new StackSampleRing(4);
+        ring.add(STACK_A, 3, 100, -1, null);
+        //只有栈底的两帧,与STACK_A共用前缀但不是同一个堆栈
+        assertTrue(ring.add(new int[]{2, 1}, 2, 200, -1, null));
+        assertEquals(2, ring.size());
+        assertEquals(2, ring.getFrameCount(1));
+        assertNull(ring.getLockInfo(1));
+    }
+
+    @Test
+    public void add_evictsLeastRecentlySeen() {
+        StackSampleRing ring = new StackSampleRing(2);
+        ring.add(STACK_A, 3, 100, -1, null);
+        ring.add(STACK_B, 3, 200, -1, null);
+        ring.add(STACK_A, 3, 300, -1, null);
+        //STACK_A首次出现更早,但最近一次出现晚于STACK_B,淘汰STACK_B
+        assertTrue(ring.add(STACK_C, 2, 400, -1, null));
+        assertEquals(2, ring.size());
+        assertArrayEquals(STACK_A, frameIds(ring, 0));
+        assertEquals(2, ring.getRepeatCount(0));
+        assertArrayEquals(STACK_C, frameIds(ring, 1));
+        assertEquals(3, ring.getTotalRepeatCount());
+        //被淘汰的堆栈再次出现时作为新的堆栈
+        assertTrue(ring.add(STACK_B, 3, 500, -1, null));
+        assertArrayEquals(STACK_C, frameIds(ring, 0));
+        assertArrayEquals(STACK_B, frameIds(ring, 1));
+        assertEquals(1, ring.getRepeatCount(1));
+    }
+
+    @Test
+    public void selectWindow_countsOnlySamplesInWindow() {
+        StackSampleRing ring = new StackSampleRing(4);
+        ring.add(STACK_A, 3, 100, -1, null);
+        ring.add(STACK_A, 3, 200, -1, null);
+        ring.add(STACK_A, 3, 1000, -1, null);
+        ring.add(STACK_B, 3, 1100, -1, null);
+        ring.add(STACK_A, 3, 1200, -1, null);
+        ring.add(STACK_B, 3, 2000, -1, null);
+        assertEquals(3, ring.selectWindow(900, 1500));
+        assertEquals(2, ring.getWindowRepeatCount(0));
+        assertEquals(1000, ring.getWindowTimestamp(0));
+        assertEquals(1200, ring.getWindowLastTimestamp(0));
+        assertEquals(1, ring.getWindowRepeatCount(1));
+        assertEquals(1100, ring.getWindowTimestamp(1));
+        //会话内累计的次数不受影响
+        assertEquals(4, ring.getRepeatCount(0));
+        assertEquals(0, ring.selectWindow(300, 900));
+        assertEquals(0, ring.getWindowRepeatCount(0));
+    }
+
+    @Test
+    public void selectWindow_skipsEvictedStacks() {
+        StackSampleRing ring = new StackSampleRing(1);
+        ring.add(STACK_A, 3, 100, -1, null);
+        ring.add(STACK_B, 3, 200, -1, null);
+        //STACK_A的采样记录属于被淘汰的槽位,不计入STACK_B
+        assertEquals(1, ring.selectWindow(0, 300));
+        assertEquals(1, ring.getWindowRepeatCount(0));
+        assertEquals(200, ring.getWindowTimestamp(0));
+    }
+
+    @Test
+    public void remapFrameIds_keepsCountsAndHistory() {
+        StackSampleRing ring = new StackSampleRing(4);
+        ring.add(STACK_A, 3, 100, -1, null);
+        ring.add(STACK_B, 3, 200, -1, null);
+        ring.add(STACK_A, 3, 300, -1, null);
+        //帧1~4重建为0~3
+        ring.remapFrameIds(new int[]{-1, 0, 1, 2, 3, -1});
+        assertArrayEquals(new int[]{2, 1, 0}, frameIds(ring, 0));
+        assertArrayEquals(new int[]{3, 1, 0}, frameIds(ring, 1));
+        assertEquals(2, ring.getRepeatCount(0));
+        assertEquals(3, ring.getTotalRepeatCount());
+        assertEquals(2, ring.selectWindow(150, 350));
+        assertEquals(1, ring.getWindowRepeatCount(0));
+        //使用新ID的相同堆栈仍然去重
+        assertFalse(ring.add(new int[]{3, 1, 0}, 3, 400, -1, null));
+        assertEquals(2, ring.getRepeatCount(1));
+    }
+
+    @Test
+    public void clear_removesAllStacks() {
+        StackSampleRing ring = new StackSampleRing(2);
+        ring.add(STACK_A, 3, 100, -1, null);
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.getTotalRepeatCount());
+        assertEquals(0, ring.selectWindow(0, 200));
+        assertTrue(ring.add(STACK_A, 3, 300, -1, null));
+    }
+}
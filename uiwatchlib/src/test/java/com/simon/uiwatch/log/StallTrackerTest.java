@@ -0,0 +1,85 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StallTracker} 的测试
+ */
+public class StallTrackerTest {
+    private static final long MS = 1000000L;
+
+    private static final long FREEZE_NANOS = JankSeverity.DEFAULT_FREEZE_MS * MS;
+
+    private static final long NEAR_ANR_NANOS = JankSeverity.DEFAULT_NEAR_ANR_MS * MS;
+
+    private static StallTracker newTracker() {
+        StallTracker tracker = new StallTracker(new JankSeverity());
+        tracker.reset();
+        return tracker;
+    }
+
+    @Test
+    public void freezeThenFrameLands_reportedOnce() {
+        StallTracker tracker = newTracker();
+        long frame = 1000 * MS;
+        assertEquals(JankSeverity.JANK, tracker.onBusySample(frame, frame, frame + 10 * MS));
+        assertEquals(JankSeverity.FREEZE, tracker.onBusySample(frame, frame + FREEZE_NANOS, frame + FREEZE_NANOS));
+        //同一次卡住期间每个等级只请求一次
+        assertEquals(JankSeverity.JANK, tracker.onBusySample(frame, frame + FREEZE_NANOS + 10 * MS,
+                frame + FREEZE_NANOS + 10 * MS));
+        assertEquals(JankSeverity.NEAR_ANR, tracker.onBusySample(frame, frame + NEAR_ANR_NANOS,
+                frame + NEAR_ANR_NANOS));
+        assertEquals(JankSeverity.JANK, tracker.onBusySample(frame, frame + NEAR_ANR_NANOS + 10 * MS,
+                frame + NEAR_ANR_NANOS + 10 * MS));
+        assertEquals(frame, tracker.getStallStartNanos());
+        //帧到达：结束该次卡住的卡顿帧只跳过一次
+        assertTrue(tracker.consumeReportedFrame(frame));
+        assertFalse(tracker.consumeReportedFrame(frame));
+    }
+
+    @Test
+    public void freezeWithoutNearAnr_isNotReported() {
+        StallTracker tracker = newTracker();
+        long frame = 1000 * MS;
+        tracker.onBusySample(frame, frame, frame + 10 * MS);
+        assertEquals(JankSeverity.FREEZE, tracker.onBusySample(frame, frame + FREEZE_NANOS, frame + FREEZE_NANOS));
+        assertFalse(tracker.consumeReportedFrame(frame));
+    }
+
+    @Test
+    public void busyRunAfterLongIdle_startsAtBusyRun() {
+        StallTracker tracker = newTracker();
+        long frame = 1000 * MS;
+        long busySince = frame + 60000 * MS;
+        //很久之前的上一帧不计入卡住的时长
+        assertEquals(JankSeverity.JANK, tracker.onBusySample(frame, busySince, busySince));
+        assertEquals(busySince, tracker.getStallStartNanos());
+        assertEquals(JankSeverity.NEAR_ANR, tracker.onBusySample(frame, busySince + NEAR_ANR_NANOS,
+                busySince + NEAR_ANR_NANOS));
+        //与提前输出的卡住重叠的超时消息不再输出,卡住之前的消息仍然输出
+        assertFalse(tracker.consumeReportedMessage(frame, busySince - 10 * MS));
+        assertTrue(tracker.consumeReportedMessage(busySince - 5 * MS, busySince + NEAR_ANR_NANOS + 100 * MS));
+        assertFalse(tracker.consumeReportedFrame(frame));
+    }
+
+    @Test
+    public void newBusyRun_isNewStall() {
+        StallTracker tracker = newTracker();
+        long frame = 1000 * MS;
+        long busySince = frame + 60000 * MS;
+        tracker.onBusySample(frame, busySince, busySince);
+        assertEquals(JankSeverity.FREEZE, tracker.onBusySample(frame, busySince + FREEZE_NANOS,
+                busySince + FREEZE_NANOS));
+        tracker.onIdleSample();
+        long nextBusySince = busySince + 2 * FREEZE_NANOS;
+        assertEquals(JankSeverity.JANK, tracker.onBusySample(frame, nextBusySince, nextBusySince));
+        assertEquals(nextBusySince, tracker.getStallStartNanos());
+        //新的连续忙碌重新按等级请求
+        assertEquals(JankSeverity.FREEZE, tracker.onBusySample(frame, nextBusySince + FREEZE_NANOS,
+                nextBusySince + FREEZE_NANOS));
+    }
+}
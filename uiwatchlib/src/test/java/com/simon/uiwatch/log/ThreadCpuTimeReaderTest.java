@@ -0,0 +1,67 @@
+package com.simon.uiwatch.log;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * /proc/self/task/[tid]/stat 解析的测试
+ */
+public class ThreadCpuTimeReaderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 第14、15个字段(utime、stime)为150和50
+     */
+    private static final String FIELDS = " S 1 1234 0 0 -1 4194560 100 0 0 0 150 50 0 0 20 0 1 0 12345 0 0\n";
+
+    private static long parse(String stat) {
+        byte[] data = stat.getBytes(UTF_8);
+        return ThreadCpuTimeReader.parseCpuTicks(data, data.length);
+    }
+
+    @Test
+    public void parseCpuTicks_simpleComm() {
+        assertEquals(200, parse("1234 (main)" + FIELDS));
+    }
+
+    @Test
+    public void parseCpuTicks_commWithSpaces() {
+        assertEquals(200, parse("1234 (Jit thread pool)" + FIELDS));
+    }
+
+    @Test
+    public void parseCpuTicks_commWithParentheses() {
+        assertEquals(200, parse("1234 (a) S 1 (b))" + FIELDS));
+        assertEquals(200, parse("1234 ())" + FIELDS));
+    }
+
+    @Test
+    public void parseCpuTicks_ignoresBytesAfterLength() {
+        byte[] data = ("1234 (main)" + FIELDS).getBytes(UTF_8);
+        byte[] buffer = new byte[data.length + 16];
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        buffer[data.length] = ')';
+        assertEquals(200, ThreadCpuTimeReader.parseCpuTicks(buffer, data.length));
+    }
+
+    @Test
+    public void parseCpuTicks_truncated() {
+        String stat = "1234 (main)" + FIELDS;
+        //在comm中、utime之前、utime之后以及stime中截断
+        assertEquals(-1, parse(stat.substring(0, 8)));
+        assertEquals(-1, parse(stat.substring(0, stat.indexOf(" 150 "))));
+        assertEquals(-1, parse(stat.substring(0, stat.indexOf(" 150 ") + 4)));
+        assertEquals(-1, parse(stat.substring(0, stat.indexOf(" 50 ") + 2)));
+        assertEquals(-1, parse(stat.substring(0, stat.indexOf(" 50 ") + 3)));
+        assertEquals(-1, parse(""));
+    }
+
+    @Test
+    public void parseCpuTicks_malformed() {
+        assertEquals(-1, parse("1234 main" + FIELDS));
+        assertEquals(-1, parse("1234 (main) S 1 1234 0 0 -1 4194560 100 0 0 0 1x0 50 0 0\n"));
+    }
+}